@@ -0,0 +1,110 @@
+import subprocess
+import json
+import os
+import sys
+import time
+import urllib.request
+import urllib.error
+
+from comparison import crawl_datasets, bcolors
+
+# compares diff throughput of a fresh `java -jar` per file (as comparison.py does) against the resident diff
+# server (`--server`), which keeps the jvm, soot and the jit warm between files.
+# usage: python3 server_throughput.py [max_files] [strategy]
+
+PDG_JAR_PATH = "../../target/soot-pdg-1.0-SNAPSHOT.jar"
+SERVER_PORT = 8765
+SERVER_URL = f"http://localhost:{SERVER_PORT}"
+TIMEOUT = 90
+
+
+def run_cli(file_info, strategy):
+    cmd = ["java", "-jar", PDG_JAR_PATH,
+           file_info["before_file_dir"], file_info["after_file_dir"],
+           file_info["before_compiled_dir"], file_info["after_compiled_dir"],
+           file_info["before_class_fullyqualified"], file_info["after_class_fullyqualified"], strategy]
+    try:
+        subprocess.run(cmd, capture_output=True, text=True, timeout=TIMEOUT).check_returncode()
+        return True
+    except (subprocess.TimeoutExpired, subprocess.CalledProcessError):
+        return False
+
+
+def start_server():
+    server = subprocess.Popen(["java", "-jar", PDG_JAR_PATH, "--server", str(SERVER_PORT)],
+                              stdout=subprocess.DEVNULL, stderr=subprocess.DEVNULL)
+    # wait for the server to come up, this startup cost is counted in the server's total
+    for _ in range(300):
+        try:
+            urllib.request.urlopen(f"{SERVER_URL}/health", timeout=1)
+            return server
+        except (urllib.error.URLError, ConnectionError):
+            time.sleep(0.1)
+    server.kill()
+    raise RuntimeError("diff server did not start")
+
+
+def run_server(file_info, strategy):
+    body = json.dumps({
+        "srcSourceFilePath": file_info["before_file_dir"],
+        "dstSourceFilePath": file_info["after_file_dir"],
+        "beforeDir": file_info["before_compiled_dir"],
+        "afterDir": file_info["after_compiled_dir"],
+        "class1Name": file_info["before_class_fullyqualified"],
+        "class2Name": file_info["after_class_fullyqualified"],
+        "matchingStrategy": strategy.upper(),
+    }).encode("utf-8")
+    request = urllib.request.Request(f"{SERVER_URL}/diff", data=body, headers={"Content-Type": "application/json"})
+    try:
+        with urllib.request.urlopen(request, timeout=TIMEOUT) as response:
+            json.loads(response.read())
+        return True
+    except (urllib.error.URLError, ValueError):
+        return False
+
+
+def report(name, files, ok, seconds):
+    print(f"{bcolors.OKGREEN}[{name}]{bcolors.ENDC} {ok}/{files} files diffed in {seconds:.1f}s "
+          f"({files / seconds:.2f} files/s, {1000 * seconds / files:.0f} ms/file)")
+
+
+def main():
+    max_files = int(sys.argv[1]) if len(sys.argv) > 1 else 50
+    strategy = sys.argv[2] if len(sys.argv) > 2 else "vf2"
+
+    files, _ = crawl_datasets()
+    files = files[:max_files]
+    if not files:
+        print(f"{bcolors.FAIL}[error]{bcolors.ENDC} no dataset files found, run compiler.py first")
+        return
+    print(f"{bcolors.OKBLUE}[notif]{bcolors.ENDC} diffing {len(files)} files with strategy {strategy}")
+
+    start = time.perf_counter()
+    cli_ok = sum(run_cli(file_info, strategy) for file_info in files)
+    cli_seconds = time.perf_counter() - start
+
+    start = time.perf_counter()
+    server = start_server()
+    try:
+        server_ok = sum(run_server(file_info, strategy) for file_info in files)
+    finally:
+        server.terminate()
+        server.wait()
+    server_seconds = time.perf_counter() - start
+
+    report("cli", len(files), cli_ok, cli_seconds)
+    report("server", len(files), server_ok, server_seconds)
+    print(f"{bcolors.BOLD}speedup: {cli_seconds / server_seconds:.2f}x{bcolors.ENDC}")
+
+    with open("server_throughput.json", "w") as f:
+        json.dump({
+            "files": len(files),
+            "strategy": strategy,
+            "cli": {"ok": cli_ok, "seconds": cli_seconds},
+            "server": {"ok": server_ok, "seconds": server_seconds},
+        }, f, indent=4)
+
+
+if __name__ == "__main__":
+    os.system("")
+    main()
@@ -0,0 +1,22 @@
+package org.pdgdiff.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * entry point of target/benchmarks.jar, jmh's own Main (taking the same arguments) but writing the results as json,
+ * to jmh-result.json unless -rff names another file, so runs can be kept and compared to catch regressions. a result
+ * format given with -rf takes precedence.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (!arguments.contains("-rf")) {
+            arguments.add(0, "-rf");
+            arguments.add(1, "json");
+        }
+        org.openjdk.jmh.Main.main(arguments.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,114 @@
+package org.pdgdiff.bench;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pdgdiff.edit.RecoveryProcessor;
+import org.pdgdiff.edit.model.EditOperation;
+import org.pdgdiff.io.BinaryOperationFormatter;
+import org.pdgdiff.io.BinaryOperationReader;
+import org.pdgdiff.io.JsonOperationSerializer;
+import org.pdgdiff.io.OperationStreamWriter;
+import org.pdgdiff.matching.GraphMatcherFactory;
+import org.pdgdiff.matching.StrategySettings;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * writing and reading an aggregated edit script as (indented and compact) json and in BinaryOperationFormatter's
+ * format. setUp checks that the binary script reads back to the operations written, and prints the size of each form.
+ *
+ * run with: mvn -P jmh package && java -jar target/benchmarks.jar EditScriptFormatBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EditScriptFormatBenchmark {
+
+    @Param({"10000", "100000"})
+    public int operations;
+
+    private StrategySettings settings;
+    private List<EditOperation> editScript;
+    private String json;
+    private byte[] compactJson;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() throws Exception {
+        settings = new StrategySettings(RecoveryProcessor.RecoveryStrategy.CLEANUP_AND_FLATTEN,
+                GraphMatcherFactory.MatchingStrategy.VF2, true);
+        editScript = SyntheticEditScripts.random(new Random(42), operations);
+
+        json = writeJson(false);
+        compactJson = writeJson(true).getBytes(StandardCharsets.UTF_8);
+        binary = writeBinary();
+
+        List<EditOperation> readBack = BinaryOperationReader.readAll(new ByteArrayInputStream(binary));
+        if (!readBack.equals(editScript)) {
+            throw new IllegalStateException("binary edit script does not read back to the operations written");
+        }
+        System.out.println("\nsize of " + operations + " operations: json " + json.getBytes(StandardCharsets.UTF_8).length
+                + " bytes, compact json " + compactJson.length + " bytes, binary " + binary.length + " bytes");
+    }
+
+    @Benchmark
+    public String jsonWrite() throws Exception {
+        return writeJson(false);
+    }
+
+    @Benchmark
+    public String compactJsonWrite() throws Exception {
+        return writeJson(true);
+    }
+
+    @Benchmark
+    public byte[] binaryWrite() throws Exception {
+        return writeBinary();
+    }
+
+    @Benchmark
+    public JsonElement jsonRead() {
+        // as the downstream jobs read diff.json
+        return JsonParser.parseReader(new InputStreamReader(new ByteArrayInputStream(compactJson), StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public List<EditOperation> binaryRead() throws Exception {
+        return BinaryOperationReader.readAll(new ByteArrayInputStream(binary));
+    }
+
+    private String writeJson(boolean compact) throws Exception {
+        StringWriter writer = new StringWriter();
+        new JsonOperationSerializer(editScript, settings, compact).writeTo(writer);
+        return writer.toString();
+    }
+
+    private byte[] writeBinary() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OperationStreamWriter writer = new OperationStreamWriter(new BinaryOperationFormatter(out), settings)) {
+            writer.write(editScript);
+        }
+        return out.toByteArray();
+    }
+}
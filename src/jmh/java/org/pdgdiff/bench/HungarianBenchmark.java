@@ -0,0 +1,55 @@
+package org.pdgdiff.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pdgdiff.matching.models.ged.HungarianAlgorithm;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HungarianAlgorithm.minimizeAssignment on n x n cost matrices shaped like GEDMatcher's: substitution costs in [0, 2]
+ * with a cheaper near-diagonal (the nodes an edit left in place) and row/column 0 as the algorithm's sentinel.
+ *
+ * run with: mvn -P jmh package && java -jar target/benchmarks.jar HungarianBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HungarianBenchmark {
+
+    @Param({"16", "64", "256", "1024"})
+    public int n;
+
+    private double[][] costMatrix;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        costMatrix = new double[n][n];
+        for (int i = 1; i < n; i++) {
+            for (int j = 1; j < n; j++) {
+                double cost = 2.0 * random.nextDouble();
+                costMatrix[i][j] = Math.abs(i - j) < 3 ? cost / 4 : cost;
+            }
+        }
+    }
+
+    @Benchmark
+    public int[] minimizeAssignment() {
+        // it does not write to the matrix, so the same one is reused
+        return HungarianAlgorithm.minimizeAssignment(costMatrix);
+    }
+}
@@ -0,0 +1,163 @@
+package org.pdgdiff.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pdgdiff.matching.models.heuristic.JaroWinklerSimilarity;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JaroWinklerSimilarity against the implementation it replaced (LegacyJaroWinkler below, allocating its match flags
+ * on every call), scoring one Jimple-like label against a row of candidates as GEDMatcher does.
+ *
+ * run with: mvn -P jmh package && java -jar target/benchmarks.jar JaroWinklerBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JaroWinklerBenchmark {
+
+    private static final String[] TEMPLATES = {
+            "$i%d = $i%d + %d",
+            "if $i%d >= %d goto label%d",
+            "$r%d = virtualinvoke r0.<org.example.Service: java.lang.String lookup(int)>($i%d)",
+            "r%d.<org.example.Model: int count%d> = $i%d",
+            "staticinvoke <java.lang.System: void arraycopy(java.lang.Object,int,java.lang.Object,int,int)>(r%d, %d, r%d, 0, $i%d)",
+            "return $i%d",
+            "$z%d = interfaceinvoke r%d.<java.util.List: boolean add(java.lang.Object)>(r%d)",
+            "goto label%d"
+    };
+
+    @Param({"64", "512"})
+    public int candidates;
+
+    private String label;
+    private String[] row;
+    private double[] out;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        label = randomLabel(random);
+        row = new String[candidates];
+        for (int k = 0; k < candidates; k++) {
+            row[k] = randomLabel(random);
+        }
+        out = new double[candidates];
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) {
+        for (String candidate : row) {
+            blackhole.consume(LegacyJaroWinkler.similarity(label, candidate));
+        }
+    }
+
+    @Benchmark
+    public void pairwise(Blackhole blackhole) {
+        for (String candidate : row) {
+            blackhole.consume(JaroWinklerSimilarity.JaroWinklerSimilarity(label, candidate));
+        }
+    }
+
+    @Benchmark
+    public void pairwiseThreshold(Blackhole blackhole) {
+        for (String candidate : row) {
+            blackhole.consume(JaroWinklerSimilarity.JaroWinklerSimilarity(label, candidate, 0.9));
+        }
+    }
+
+    @Benchmark
+    public double[] batch() {
+        JaroWinklerSimilarity.JaroWinklerSimilarity(label, row, row.length, 0.0, out);
+        return out;
+    }
+
+    @Benchmark
+    public double[] batchThreshold() {
+        JaroWinklerSimilarity.JaroWinklerSimilarity(label, row, row.length, 0.9, out);
+        return out;
+    }
+
+    private static String randomLabel(Random random) {
+        String template = TEMPLATES[random.nextInt(TEMPLATES.length)];
+        Object[] args = new Object[5];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = random.nextInt(12);
+        }
+        return String.format(template, args);
+    }
+
+    // JaroWinklerSimilarity as it was before the scratch buffers and thresholds, kept as the baseline
+    static final class LegacyJaroWinkler {
+
+        static double similarity(String s1, String s2) {
+            double jaro = jaro(s1, s2);
+            int prefixLength = JaroWinklerSimilarity.commonPrefixLength(s1, s2);
+            return jaro + (prefixLength * 0.1 * (1 - jaro));
+        }
+
+        static double jaro(String s1, String s2) {
+            if (s1.equals(s2)) {
+                return 1.0;
+            }
+            if (s1.isEmpty() || s2.isEmpty()) {
+                return 0.0;
+            }
+
+            int matchDistance = Math.max(s1.length(), s2.length()) / 2 - 1;
+            boolean[] s1Matches = new boolean[s1.length()];
+            boolean[] s2Matches = new boolean[s2.length()];
+
+            int matches = 0;
+            int transpositions = 0;
+            for (int i = 0; i < s1.length(); i++) {
+                int start = Math.max(0, i - matchDistance);
+                int end = Math.min(i + matchDistance + 1, s2.length());
+                for (int j = start; j < end; j++) {
+                    if (!s2Matches[j] && s1.charAt(i) == s2.charAt(j)) {
+                        s1Matches[i] = true;
+                        s2Matches[j] = true;
+                        matches++;
+                        break;
+                    }
+                }
+            }
+            if (matches == 0) {
+                return 0.0;
+            }
+
+            int k = 0;
+            for (int i = 0; i < s1.length(); i++) {
+                if (s1Matches[i]) {
+                    while (!s2Matches[k]) {
+                        k++;
+                    }
+                    if (s1.charAt(i) != s2.charAt(k)) {
+                        transpositions++;
+                    }
+                    k++;
+                }
+            }
+            transpositions /= 2;
+
+            return ((matches / (double) s1.length()) +
+                    (matches / (double) s2.length()) +
+                    ((matches - transpositions) / (double) matches)) / 3.0;
+        }
+    }
+}
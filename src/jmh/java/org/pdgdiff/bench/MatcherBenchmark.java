@@ -0,0 +1,78 @@
+package org.pdgdiff.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pdgdiff.graph.PDG;
+import org.pdgdiff.matching.NodeMapping;
+import org.pdgdiff.matching.models.ged.GEDMatcher;
+import org.pdgdiff.matching.models.ged.GEDResult;
+import org.pdgdiff.matching.models.ullmann.UllmannMatcher;
+import org.pdgdiff.matching.models.vf2.VF2Budget;
+import org.pdgdiff.matching.models.vf2.VF2Matcher;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the node matchers (VF2Matcher, UllmannMatcher, GEDMatcher) on a synthetic before/after pair of methods of nodes
+ * statements (see SyntheticPDGs.pair), unchanged or with changeRate of the statements rewritten and as many inserted.
+ * the pdgs' CompactPDG and NodeFeatures are built in setUp, as in a diff they are once per pdg and shared by all the
+ * pairs it is matched in.
+ *
+ * VF2 runs with a backtrack budget, as its search on a changed pair can otherwise take as long as it likes (the
+ * budget being deterministic, unlike a time limit, the work measured is the same from run to run).
+ *
+ * run with: mvn -P jmh package && java -jar target/benchmarks.jar MatcherBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatcherBenchmark {
+
+    private static final VF2Budget VF2_BUDGET = new VF2Budget(0, 0, 100_000);
+
+    @Param({"16", "64", "256"})
+    public int nodes;
+
+    @Param({"0.0", "0.1"})
+    public double changeRate;
+
+    private PDG before;
+    private PDG after;
+
+    @Setup
+    public void setUp() {
+        PDG[] pair = SyntheticPDGs.pair(42, nodes, changeRate);
+        before = pair[0];
+        after = pair[1];
+        for (PDG pdg : pair) {
+            pdg.getNodeFeatures();
+        }
+    }
+
+    @Benchmark
+    public NodeMapping vf2() {
+        return new VF2Matcher(before, after, VF2_BUDGET).match();
+    }
+
+    @Benchmark
+    public NodeMapping ullmann() {
+        return new UllmannMatcher(before, after).match();
+    }
+
+    @Benchmark
+    public GEDResult ged() {
+        return new GEDMatcher(before, after).match();
+    }
+}
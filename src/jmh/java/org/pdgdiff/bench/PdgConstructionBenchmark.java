@@ -0,0 +1,78 @@
+package org.pdgdiff.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pdgdiff.graph.GraphGenerator;
+import org.pdgdiff.util.SootContext;
+import org.pdgdiff.util.SootInitializer;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GraphGenerator.constructPdg over every concrete method of a class, by default the before version of the test class
+ * the repository ships (compiled to target/classes), so nothing beyond the build is needed. the bodies are retrieved
+ * in setUp, as Main does before building the pdgs, so only the cfg, post-dominators, def/use chains and the graph
+ * itself are measured. point it at other classes with e.g. -p classDir=path/to/classes -p className=org.example.Foo.
+ *
+ * run with: mvn -P jmh package && java -jar target/benchmarks.jar PdgConstructionBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PdgConstructionBenchmark {
+
+    @Param({"target/classes"})
+    public String classDir;
+
+    @Param({"org.pdgdiff.testclasses.TestFileBefore", "org.pdgdiff.testclasses.TestFileAfter"})
+    public String className;
+
+    private SootContext sootContext;
+    private List<SootMethod> methods;
+
+    @Setup
+    public void setUp() {
+        sootContext = SootContext.create();
+        sootContext.activate();
+        SootInitializer.initializeSoot(classDir, className);
+
+        SootClass sootClass = Scene.v().getSootClass(className);
+        methods = new ArrayList<>();
+        for (SootMethod method : sootClass.getMethods()) {
+            if (method.isConcrete()) {
+                method.retrieveActiveBody();
+                methods.add(method);
+            }
+        }
+        if (methods.isEmpty()) {
+            throw new IllegalStateException("no concrete methods in " + className + " (from " + classDir + ")");
+        }
+    }
+
+    @Benchmark
+    public void constructPdgs(Blackhole blackhole) {
+        // the scene is per thread, jmh need not call this on the thread that ran setUp
+        sootContext.activate();
+        for (SootMethod method : methods) {
+            blackhole.consume(GraphGenerator.constructPdg(method));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.pdgdiff.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pdgdiff.edit.RecoveryProcessor;
+import org.pdgdiff.edit.model.EditOperation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RecoveryProcessor.recoverMappings with each RecoveryStrategy, over a synthetic script of the size of a class's
+ * (operations) or a whole aggregated diff's. the script is copied on every call, as some strategies remove from it in
+ * place, the copy being part of the time measured (it is small next to any of the strategies but NONE).
+ *
+ * run with: mvn -P jmh package && java -jar target/benchmarks.jar RecoveryBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecoveryBenchmark {
+
+    // all of them
+    @Param
+    public RecoveryProcessor.RecoveryStrategy strategy;
+
+    @Param({"1000", "10000"})
+    public int operations;
+
+    private List<EditOperation> editScript;
+
+    @Setup
+    public void setUp() {
+        // about one operation per two lines, so many lines have several
+        editScript = SyntheticEditScripts.random(new Random(42), operations, operations * 2);
+    }
+
+    @Benchmark
+    public List<EditOperation> recoverMappings() {
+        return RecoveryProcessor.recoverMappings(new ArrayList<>(editScript), strategy);
+    }
+}
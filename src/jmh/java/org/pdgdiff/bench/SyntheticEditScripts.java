@@ -0,0 +1,67 @@
+package org.pdgdiff.bench;
+
+import org.pdgdiff.edit.model.Delete;
+import org.pdgdiff.edit.model.EditOperation;
+import org.pdgdiff.edit.model.Insert;
+import org.pdgdiff.edit.model.Move;
+import org.pdgdiff.edit.model.SyntaxDifference;
+import org.pdgdiff.edit.model.Update;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * synthetic edit scripts for the benchmarks, a mix of operations on source lines with snippets repeating as they do
+ * in real code. some land on the same lines (and some on line -1, as units hoisted to no source line do), so the
+ * recovery strategies have duplicates and conflicts to resolve.
+ */
+final class SyntheticEditScripts {
+
+    private static final String[] SNIPPETS = {
+            "int total = 0;",
+            "for (int i = 0; i < items.size(); i++) {",
+            "total += items.get(i).getPrice() * items.get(i).getQuantity();",
+            "if (total > limit) {",
+            "throw new IllegalStateException(\"limit exceeded: \" + total);",
+            "return total;",
+            "}",
+            "logger.debug(\"processing {} items\", items.size());",
+            "Map<String, List<Order>> byCustomer = new HashMap<>();",
+            "byCustomer.computeIfAbsent(order.getCustomer(), k -> new ArrayList<>()).add(order);"
+    };
+
+    private SyntheticEditScripts() {
+    }
+
+    // count operations over a class of 2000 lines
+    static List<EditOperation> random(Random random, int count) {
+        return random(random, count, 2000);
+    }
+
+    static List<EditOperation> random(Random random, int count, int lines) {
+        List<EditOperation> ops = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int line = random.nextInt(lines) - 1;
+            String code = SNIPPETS[random.nextInt(SNIPPETS.length)] + (random.nextInt(4) == 0 ? " // " + i : "");
+            switch (random.nextInt(5)) {
+                case 0:
+                    ops.add(new Insert(null, line, code));
+                    break;
+                case 1:
+                    ops.add(new Delete(null, line, code));
+                    break;
+                case 2:
+                    ops.add(new Move(null, line, line + random.nextInt(40), code));
+                    break;
+                case 3:
+                    ops.add(new Update(null, line, line + 1, code, SNIPPETS[random.nextInt(SNIPPETS.length)],
+                            new SyntaxDifference("flatten")));
+                    break;
+                default:
+                    ops.add(new Update(null, line, line, code, code + ";", null));
+            }
+        }
+        return ops;
+    }
+}
@@ -0,0 +1,251 @@
+package org.pdgdiff.bench;
+
+import org.pdgdiff.graph.CachedUnit;
+import org.pdgdiff.graph.GraphGenerator;
+import org.pdgdiff.graph.PDG;
+import soot.toolkits.graph.pdg.PDGNode;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * synthetic PDGs for the benchmarks, so they run without the gh-java dataset (or Soot loading any class). nodes are
+ * CachedUnits holding Jimple-like statements, as in PDGs loaded from the PDGCache, and the graph is shaped like that
+ * of a method body: each statement control dependent on the if enclosing it (top level ones on the method's first
+ * statement, standing in for its entry), data dependent on a few of the locals defined before it, and the condition of
+ * a loop also on the statement of its body that updates it.
+ *
+ * pair() gives the before and after versions of a method, the after one with some statements rewritten (same kind,
+ * other constant) and new ones inserted. it only gains statements, so the before version stays a subgraph of the
+ * after one and the exact matchers (VF2, Ullmann) have a mapping to find rather than exhausting the search for one.
+ */
+final class SyntheticPDGs {
+
+    private static final int FIRST_LINE = 10;
+
+    // how far back (in locals defined) a statement picks the locals it uses
+    private static final int USE_WINDOW = 12;
+
+    private static final String ENTRY = "r0 := @this: org.example.Synthetic";
+    private static final String[] ASSIGNS = {
+            "$i%d = $i%d + %d",
+            "$i%d = $i%d * %d",
+            "$i%d = virtualinvoke r0.<org.example.Synthetic: int compute(int,int)>($i%d, %d)",
+            "$i%d = staticinvoke <java.lang.Math: int max(int,int)>($i%d, %d)"
+    };
+    private static final String[] CONDITIONS = {
+            "if $i%d >= %d goto label%d",
+            "if $i%d == %d goto label%d",
+            "if $i%d < %d goto label%d"
+    };
+    private static final String[] INVOKES = {
+            "virtualinvoke r0.<org.example.Synthetic: void log(int,int)>($i%d, %d)",
+            "interfaceinvoke r%d.<java.util.List: boolean add(java.lang.Object)>($i%d)"
+    };
+
+    private SyntheticPDGs() {
+    }
+
+    /**
+     * the before and after versions of a method of about size statements, changeRate of its statements rewritten and
+     * as many again inserted after
+     */
+    static PDG[] pair(long seed, int size, double changeRate) {
+        Random random = new Random(seed);
+        List<Statement> before = generate(random, size);
+
+        List<Statement> after = new ArrayList<>(before.size());
+        Map<Statement, String> rewritten = new IdentityHashMap<>();
+        List<Statement> defs = new ArrayList<>();
+        for (Statement statement : before) {
+            after.add(statement);
+            if (statement.defines) {
+                defs.add(statement);
+            }
+            if (statement == before.get(0)) {
+                continue;
+            }
+            if (random.nextDouble() < changeRate) {
+                rewritten.put(statement, statement.text(random.nextInt(100)));
+            }
+            if (random.nextDouble() < changeRate) {
+                // under the same if, using the locals in scope there
+                Statement inserted = randomStatement(random, statement.parent, defs, false);
+                after.add(inserted);
+                if (inserted.defines) {
+                    defs.add(inserted);
+                }
+            }
+        }
+        return new PDG[]{build(before, new IdentityHashMap<>()), build(after, rewritten)};
+    }
+
+    private static List<Statement> generate(Random random, int size) {
+        List<Statement> statements = new ArrayList<>(size);
+        List<Statement> defs = new ArrayList<>();
+        Statement entry = new Statement(CachedUnit.Kind.OTHER, ENTRY, new Object[0], -1, null, new Statement[0], false);
+        statements.add(entry);
+
+        // ifs whose body is still being generated, innermost last, and the number of statements left in each
+        List<Statement> open = new ArrayList<>();
+        List<Integer> remaining = new ArrayList<>();
+        while (statements.size() < size) {
+            Statement parent = open.isEmpty() ? entry : open.get(open.size() - 1);
+            boolean mayBranch = open.size() < 4 && statements.size() < size - 2 && !defs.isEmpty();
+            Statement statement = randomStatement(random, parent, defs, mayBranch);
+            statements.add(statement);
+            if (statement.defines) {
+                defs.add(statement);
+            }
+
+            for (int i = open.size() - 1; i >= 0; i--) {
+                remaining.set(i, remaining.get(i) - 1);
+            }
+            while (!open.isEmpty() && remaining.get(remaining.size() - 1) <= 0) {
+                Statement closed = open.remove(open.size() - 1);
+                remaining.remove(remaining.size() - 1);
+                // every other if is a loop, its condition reading the last local its body defined
+                if (closed.loopUpdate == null && random.nextBoolean() && statement.defines) {
+                    closed.loopUpdate = statement;
+                }
+            }
+            if (statement.kind == CachedUnit.Kind.IF) {
+                open.add(statement);
+                remaining.add(2 + random.nextInt(7));
+            }
+        }
+        return statements;
+    }
+
+    private static Statement randomStatement(Random random, Statement parent, List<Statement> defs, boolean mayBranch) {
+        int roll = random.nextInt(100);
+        int constant = random.nextInt(100);
+        if (mayBranch && roll < 15) {
+            Statement used = pickUse(random, defs);
+            return new Statement(CachedUnit.Kind.IF, CONDITIONS[random.nextInt(CONDITIONS.length)],
+                    new Object[]{used.local, constant, random.nextInt(50)}, 1, parent, new Statement[]{used}, false);
+        }
+        if (defs.isEmpty() || roll < 80) {
+            int local = defs.size() + random.nextInt(1000) * 1000;
+            if (defs.isEmpty()) {
+                return new Statement(CachedUnit.Kind.ASSIGN, "$i%d = %d", new Object[]{local, constant}, 1, parent,
+                        new Statement[0], true);
+            }
+            Statement used = pickUse(random, defs);
+            return new Statement(CachedUnit.Kind.ASSIGN, ASSIGNS[random.nextInt(ASSIGNS.length)],
+                    new Object[]{local, used.local, constant}, 2, parent, new Statement[]{used}, true);
+        }
+        Statement first = pickUse(random, defs);
+        Statement second = pickUse(random, defs);
+        String format = INVOKES[random.nextInt(INVOKES.length)];
+        Object[] args = format.startsWith("virtualinvoke")
+                ? new Object[]{first.local, constant}
+                : new Object[]{constant, first.local};
+        int constantArg = format.startsWith("virtualinvoke") ? 1 : 0;
+        return new Statement(CachedUnit.Kind.OTHER, format, args, constantArg, parent,
+                first == second ? new Statement[]{first} : new Statement[]{first, second}, false);
+    }
+
+    private static Statement pickUse(Random random, List<Statement> defs) {
+        int window = Math.min(USE_WINDOW, defs.size());
+        return defs.get(defs.size() - 1 - random.nextInt(window));
+    }
+
+    private static PDG build(List<Statement> statements, Map<Statement, String> rewritten) {
+        Map<Statement, PDGNode> nodes = new IdentityHashMap<>();
+        Map<Statement, Integer> order = new IdentityHashMap<>();
+        SyntheticPDG pdg = null;
+        for (int i = 0; i < statements.size(); i++) {
+            Statement statement = statements.get(i);
+            String jimple = rewritten.containsKey(statement) ? rewritten.get(statement) : statement.text();
+            PDGNode node = new PDGNode(new CachedUnit(jimple, FIRST_LINE + i, statement.kind), PDGNode.Type.CFGNODE);
+            if (statement.kind == CachedUnit.Kind.IF) {
+                node.setAttrib(statement.loopUpdate != null ? PDGNode.Attribute.LOOPHEADER : PDGNode.Attribute.CONDHEADER);
+            }
+            if (pdg == null) {
+                pdg = new SyntheticPDG(node);
+            }
+            pdg.addNode(node);
+            nodes.put(statement, node);
+            order.put(statement, i);
+        }
+        for (Statement statement : statements) {
+            if (statement.parent != null) {
+                addEdge(pdg, nodes, order, statement.parent, statement, GraphGenerator.DependencyTypes.CONTROL_DEPENDENCY);
+            }
+            for (Statement used : statement.uses) {
+                addEdge(pdg, nodes, order, used, statement, GraphGenerator.DependencyTypes.DATA_DEPENDENCY);
+            }
+            if (statement.loopUpdate != null) {
+                addEdge(pdg, nodes, order, statement.loopUpdate, statement, GraphGenerator.DependencyTypes.DATA_DEPENDENCY);
+            }
+        }
+        return pdg;
+    }
+
+    // an edge and the dependents along it, as GraphGenerator adds them (back dependents included, by its rule)
+    private static void addEdge(PDG pdg, Map<Statement, PDGNode> nodes, Map<Statement, Integer> order,
+                                Statement from, Statement to, GraphGenerator.DependencyTypes type) {
+        PDGNode fromNode = nodes.get(from);
+        PDGNode toNode = nodes.get(to);
+        if (pdg.containsEdge(fromNode, toNode, type)) {
+            return;
+        }
+        pdg.addEdge(fromNode, toNode, type);
+        fromNode.addDependent(toNode);
+        boolean backEdge = type == GraphGenerator.DependencyTypes.CONTROL_DEPENDENCY
+                ? order.get(from) <= order.get(to)
+                : order.get(to) <= order.get(from);
+        if (backEdge) {
+            toNode.addBackDependent(fromNode);
+        }
+    }
+
+    private static final class Statement {
+        final CachedUnit.Kind kind;
+        final String format;
+        final Object[] args;
+        final int constantArg; // index in args of the constant a rewrite changes
+        final Statement parent; // the if this statement is in, null for the entry
+        final Statement[] uses;
+        final boolean defines;
+        final Object local; // the number of the local it defines
+        Statement loopUpdate; // for an if closing a loop, the statement of its body its condition reads
+
+        Statement(CachedUnit.Kind kind, String format, Object[] args, int constantArg, Statement parent,
+                  Statement[] uses, boolean defines) {
+            this.kind = kind;
+            this.format = format;
+            this.args = args;
+            this.constantArg = constantArg;
+            this.parent = parent;
+            this.uses = uses;
+            this.defines = defines;
+            this.local = defines ? args[0] : null;
+        }
+
+        String text() {
+            return String.format(format, args);
+        }
+
+        // the statement with another constant
+        String text(int constant) {
+            if (constantArg < 0 || constantArg >= args.length) {
+                return text();
+            }
+            Object[] changed = args.clone();
+            changed[constantArg] = constant;
+            return String.format(format, changed);
+        }
+    }
+
+    // startNode is only set by GraphGenerator and the PDGCache, in their package
+    private static final class SyntheticPDG extends PDG {
+        SyntheticPDG(PDGNode startNode) {
+            this.startNode = startNode;
+        }
+    }
+}
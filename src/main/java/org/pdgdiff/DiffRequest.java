@@ -0,0 +1,188 @@
+package org.pdgdiff;
+
+import org.pdgdiff.edit.RecoveryProcessor;
+import org.pdgdiff.matching.DiffContext;
+import org.pdgdiff.matching.GraphMatcherFactory;
+import org.pdgdiff.matching.StrategySettings;
+import org.pdgdiff.matching.models.ged.GEDMatcher;
+import org.pdgdiff.matching.models.vf2.VF2Budget;
+
+import java.util.Arrays;
+
+/**
+ * One differencing job, i.e. everything Main takes on the command line: the before/after source files, the
+ * directories holding their compiled classes, the fully qualified class names and the strategies to use. Also the
+ * JSON body accepted by the diff server (field names as below, strategies by enum name).
+ */
+public class DiffRequest {
+    private String srcSourceFilePath;
+    private String dstSourceFilePath;
+    private String beforeDir;
+    private String afterDir;
+    private String class1Name;
+    private String class2Name;
+
+    // defaults, as used by the cli
+    private GraphMatcherFactory.MatchingStrategy matchingStrategy = GraphMatcherFactory.MatchingStrategy.VF2;
+    private RecoveryProcessor.RecoveryStrategy recoveryStrategy = RecoveryProcessor.RecoveryStrategy.CLEANUP_AND_FLATTEN;
+    private boolean aggregateRecovery = true;
+    private double unmatchedThreshold = Double.POSITIVE_INFINITY;
+    // VF2 search limits per method pair, 0 for no limit
+    private long vf2MaxMillis = 0;
+    private long vf2MaxStates = 0;
+    private long vf2MaxBacktracks = 0;
+    // GED method pairs with more nodes than this use the sparse cost matrix
+    private int gedSparseAbove = GEDMatcher.DEFAULT_SPARSE_ABOVE;
+    // output format, defaulting to -Dpdgdiff.output.compact=true / -Dpdgdiff.output.methodScripts=false /
+    // -Dpdgdiff.output.binary=true if given
+    private boolean compactOutput = Boolean.getBoolean("pdgdiff.output.compact");
+    private boolean methodEditScripts = !"false".equalsIgnoreCase(System.getProperty("pdgdiff.output.methodScripts"));
+    private boolean binaryOutput = Boolean.getBoolean("pdgdiff.output.binary");
+    // debugging graphs, off unless -Dpdgdiff.output.pdgGraphs=true / -Dpdgdiff.output.deltaGraphs=true
+    private boolean pdgGraphOutput = Boolean.getBoolean("pdgdiff.output.pdgGraphs");
+    private boolean deltaGraphOutput = Boolean.getBoolean("pdgdiff.output.deltaGraphs");
+    // where diff.json and the other output is written, cleared at the start of the run. null for the default
+    private String outputDir = null;
+
+    // for gson, so that the defaults above apply to fields missing from the json
+    private DiffRequest() {
+    }
+
+    public DiffRequest(String srcSourceFilePath, String dstSourceFilePath, String beforeDir, String afterDir,
+                       String class1Name, String class2Name) {
+        this.srcSourceFilePath = srcSourceFilePath;
+        this.dstSourceFilePath = dstSourceFilePath;
+        this.beforeDir = beforeDir;
+        this.afterDir = afterDir;
+        this.class1Name = class1Name;
+        this.class2Name = class2Name;
+    }
+
+    // returns the name of the first required field that is not set, or null if the request is complete
+    public String getMissingField() {
+        if (srcSourceFilePath == null) return "srcSourceFilePath";
+        if (dstSourceFilePath == null) return "dstSourceFilePath";
+        if (beforeDir == null) return "beforeDir";
+        if (afterDir == null) return "afterDir";
+        if (class1Name == null) return "class1Name";
+        if (class2Name == null) return "class2Name";
+        return null;
+    }
+
+    // describes the first field whose value is not allowed, or returns null if there is none. gson leaves a strategy
+    // null for a name that is not one of the enum's (case matters), rather than failing
+    public String getInvalidField() {
+        if (matchingStrategy == null) {
+            return "matchingStrategy must be one of " + Arrays.toString(GraphMatcherFactory.MatchingStrategy.values());
+        }
+        if (recoveryStrategy == null) {
+            return "recoveryStrategy must be one of " + Arrays.toString(RecoveryProcessor.RecoveryStrategy.values());
+        }
+        return null;
+    }
+
+    public StrategySettings toStrategySettings() {
+        StrategySettings strategySettings = new StrategySettings(recoveryStrategy, matchingStrategy, aggregateRecovery);
+        strategySettings.setUnmatchedThreshold(unmatchedThreshold);
+        strategySettings.setVf2Budget(new VF2Budget(vf2MaxMillis, vf2MaxStates, vf2MaxBacktracks));
+        strategySettings.setGedSparseAbove(gedSparseAbove);
+        strategySettings.setCompactOutput(compactOutput);
+        strategySettings.setMethodEditScripts(methodEditScripts);
+        strategySettings.setBinaryOutput(binaryOutput);
+        strategySettings.setPdgGraphOutput(pdgGraphOutput);
+        strategySettings.setDeltaGraphOutput(deltaGraphOutput);
+        return strategySettings;
+    }
+
+    public String getSrcSourceFilePath() {
+        return srcSourceFilePath;
+    }
+
+    public String getDstSourceFilePath() {
+        return dstSourceFilePath;
+    }
+
+    public String getBeforeDir() {
+        return beforeDir;
+    }
+
+    public String getAfterDir() {
+        return afterDir;
+    }
+
+    public String getClass1Name() {
+        return class1Name;
+    }
+
+    public String getClass2Name() {
+        return class2Name;
+    }
+
+    // out/ unless set
+    public String getOutputDir() {
+        return outputDir != null ? outputDir : DiffContext.DEFAULT_OUTPUT_DIR;
+    }
+
+    // whether the output directory was set, rather than being the default
+    public boolean hasOutputDir() {
+        return outputDir != null;
+    }
+
+    public GraphMatcherFactory.MatchingStrategy getMatchingStrategy() {
+        return matchingStrategy;
+    }
+
+    public RecoveryProcessor.RecoveryStrategy getRecoveryStrategy() {
+        return recoveryStrategy;
+    }
+
+    public void setMatchingStrategy(GraphMatcherFactory.MatchingStrategy matchingStrategy) {
+        this.matchingStrategy = matchingStrategy;
+    }
+
+    public void setRecoveryStrategy(RecoveryProcessor.RecoveryStrategy recoveryStrategy) {
+        this.recoveryStrategy = recoveryStrategy;
+    }
+
+    public void setAggregateRecovery(boolean aggregateRecovery) {
+        this.aggregateRecovery = aggregateRecovery;
+    }
+
+    public void setUnmatchedThreshold(double unmatchedThreshold) {
+        this.unmatchedThreshold = unmatchedThreshold;
+    }
+
+    public void setVf2Budget(long maxMillis, long maxStates, long maxBacktracks) {
+        this.vf2MaxMillis = maxMillis;
+        this.vf2MaxStates = maxStates;
+        this.vf2MaxBacktracks = maxBacktracks;
+    }
+
+    public void setGedSparseAbove(int gedSparseAbove) {
+        this.gedSparseAbove = gedSparseAbove;
+    }
+
+    public void setCompactOutput(boolean compactOutput) {
+        this.compactOutput = compactOutput;
+    }
+
+    public void setMethodEditScripts(boolean methodEditScripts) {
+        this.methodEditScripts = methodEditScripts;
+    }
+
+    public void setBinaryOutput(boolean binaryOutput) {
+        this.binaryOutput = binaryOutput;
+    }
+
+    public void setPdgGraphOutput(boolean pdgGraphOutput) {
+        this.pdgGraphOutput = pdgGraphOutput;
+    }
+
+    public void setDeltaGraphOutput(boolean deltaGraphOutput) {
+        this.deltaGraphOutput = deltaGraphOutput;
+    }
+
+    public void setOutputDir(String outputDir) {
+        this.outputDir = outputDir;
+    }
+}
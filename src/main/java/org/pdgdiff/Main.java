@@ -1,30 +1,86 @@
 package org.pdgdiff;
 
+import org.pdgdiff.batch.BatchRunner;
 import org.pdgdiff.edit.RecoveryProcessor;
 import org.pdgdiff.graph.GraphExporter;
 import org.pdgdiff.graph.GraphGenerator;
 import org.pdgdiff.graph.PDG;
+import org.pdgdiff.graph.PDGCache;
+import org.pdgdiff.matching.DiffContext;
 import org.pdgdiff.matching.GraphMatcherFactory;
 import org.pdgdiff.matching.DiffEngine;
-import org.pdgdiff.matching.StrategySettings;
+import org.pdgdiff.server.DiffServer;
+import org.pdgdiff.util.DiffThreads;
+import org.pdgdiff.util.SootContext;
 import org.pdgdiff.util.SootInitializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import soot.Body;
 import soot.Scene;
 import soot.SootClass;
 import soot.SootMethod;
+import soot.toolkits.graph.ExceptionalUnitGraph;
+import soot.toolkits.graph.UnitGraph;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 import static org.pdgdiff.export.EditScriptExporter.copyResultsToOutput;
 
 public class Main {
 
+    private static final Logger logger = LoggerFactory.getLogger(Main.class);
+
+    // null unless enabled through -Dpdgdiff.cache.dir
+    private static final PDGCache pdgCache = PDGCache.fromSystemProperties();
+
     enum FILE_VERSION {
         SOURCE,
         DEST
     }
 
     public static void main(String[] args) {
-        System.out.println("Starting PDG Diff...");
+        logger.info("Starting PDG Diff...");
+        if (args.length >= 1 && args[0].equals("--server")) {
+            // resident mode, keeps the jvm and soot classes warm and serves diff requests over http
+            int port = DiffServer.DEFAULT_PORT;
+            if (args.length >= 2) {
+                try {
+                    port = Integer.parseInt(args[1]);
+                } catch (NumberFormatException e) {
+                    logger.warn("Invalid port provided, using default: {}", DiffServer.DEFAULT_PORT);
+                }
+            }
+            try {
+                DiffServer.start(port);
+            } catch (IOException e) {
+                logger.error("Could not start diff server: {}", e.getMessage());
+            }
+            return;
+        }
+        if (args.length >= 2 && args[0].equals("--batch")) {
+            // many file pairs in one jvm, as listed in a jsonl or csv manifest
+            Path outputDir = Paths.get(args.length >= 3 ? args[2] : BatchRunner.DEFAULT_OUTPUT_DIR);
+            long timeoutSeconds = BatchRunner.DEFAULT_TIMEOUT_SECONDS;
+            if (args.length >= 4) {
+                try {
+                    timeoutSeconds = Long.parseLong(args[3]);
+                } catch (NumberFormatException e) {
+                    logger.warn("Invalid timeout provided, using default: {}s", BatchRunner.DEFAULT_TIMEOUT_SECONDS);
+                }
+            }
+            try {
+                BatchRunner.run(Paths.get(args[1]), outputDir, timeoutSeconds);
+            } catch (IOException e) {
+                logger.error("Batch failed: {}", e.getMessage());
+            }
+            return;
+        }
+
         String class1Name, class2Name;
         String srcSourceFilePath, dstSourceFilePath;
         String beforeDir, afterDir;
@@ -33,11 +89,15 @@ public class Main {
         GraphMatcherFactory.MatchingStrategy matchingStrategy = GraphMatcherFactory.MatchingStrategy.VF2;
         org.pdgdiff.edit.RecoveryProcessor.RecoveryStrategy recoveryStrategy =  RecoveryProcessor.RecoveryStrategy.CLEANUP_AND_FLATTEN;
         boolean aggregateRecovery = true;
+        double unmatchedThreshold = Double.POSITIVE_INFINITY;
+        long vf2MaxMillis = 0;
 
 
         if (args.length < 6) {
             System.out.println("WARNING: Insufficient arguments provided.");
-            System.out.println("Usage: java org.pdgdiff.Main <beforeSourcePath> <afterSourcePath> <beforeCompiledDir> <afterCompiledDir> <beforeClassName> <afterClassName> [<matchingStrategy>] [<recoveryStrategy>]");
+            System.out.println("Usage: java org.pdgdiff.Main <beforeSourcePath> <afterSourcePath> <beforeCompiledDir> <afterCompiledDir> <beforeClassName> <afterClassName> [<matchingStrategy>] [<recoveryStrategy>] [<unmatchedThreshold>] [<vf2MaxMillis>]");
+            System.out.println("   or: java org.pdgdiff.Main --server [<port>]");
+            System.out.println("   or: java org.pdgdiff.Main --batch <manifest.jsonl|manifest.csv> [<outputDir>] [<timeoutSeconds>]");
             System.out.println("Using Maven: mvn clean compile && mvn exec:java -Dexec.mainClass=\"org.pdgdiff.Main\" -Dexec.args=\"<beforeSourcePath> <afterSourcePath> <beforeCompiledDir> <afterCompiledDir> <beforeClassName> <afterClassName>\"\n");
             System.out.println("> Using hardcoded information due to insufficient arguments...");
 
@@ -88,64 +148,99 @@ public class Main {
                 try {
                     matchingStrategy = GraphMatcherFactory.MatchingStrategy.valueOf(args[6].toUpperCase());
                 } catch (IllegalArgumentException e) {
-                    System.out.println("Invalid matching strategy provided, using default: VF2");
+                    logger.warn("Invalid matching strategy provided, using default: VF2");
                 }
             }
             if (args.length >= 8) {
                 try {
                     recoveryStrategy = org.pdgdiff.edit.RecoveryProcessor.RecoveryStrategy.valueOf(args[7].toUpperCase());
                 } catch (IllegalArgumentException e) {
-                    System.out.println("Invalid recovery strategy provided, using default: CLEANUP_AND_FLATTEN");
+                    logger.warn("Invalid recovery strategy provided, using default: CLEANUP_AND_FLATTEN");
+                }
+            }
+            if (args.length >= 9) {
+                // only used by GED_HUNGARIAN, method pairs at or above this edit distance are left unmatched
+                try {
+                    unmatchedThreshold = Double.parseDouble(args[8]);
+                } catch (NumberFormatException e) {
+                    logger.warn("Invalid unmatched threshold provided, leaving no methods unmatched");
+                }
+            }
+            if (args.length >= 10) {
+                // only used by VF2, time limit per method pair search after which the best partial mapping is used
+                try {
+                    vf2MaxMillis = Long.parseLong(args[9]);
+                } catch (NumberFormatException e) {
+                    logger.warn("Invalid VF2 time limit provided, leaving VF2 searches unbounded");
                 }
             }
 
         }
 
+        DiffRequest request = new DiffRequest(srcSourceFilePath, dstSourceFilePath, beforeDir, afterDir, class1Name, class2Name);
+        request.setMatchingStrategy(matchingStrategy);
+        request.setRecoveryStrategy(recoveryStrategy);
+        request.setAggregateRecovery(aggregateRecovery);
+        request.setUnmatchedThreshold(unmatchedThreshold);
+        request.setVf2Budget(vf2MaxMillis, 0, 0);
+        if (run(request)) {
+            // for the python visualiser, only from the cli as its files are shared by every diff
+            copyResultsToOutput(srcSourceFilePath, dstSourceFilePath,
+                    Paths.get(request.getOutputDir(), "diff.json").toString());
+        }
+    }
 
-
-        GraphExporter.clearOutputFolder("out");
-        SootInitializer.initializeSoot(beforeDir);
-
-        // Load all classes in the program
-        Scene.v().loadNecessaryClasses();
+    /**
+     * runs a single diff, writing the results to the request's output directory (out/ unless set, the aggregated
+     * delta to diff.json in it). returns false if no diff could be produced. called once by the cli, and once per
+     * request within the same jvm by DiffServer and BatchRunner.
+     */
+    public static boolean run(DiffRequest request) {
+        String srcSourceFilePath = request.getSrcSourceFilePath();
+        String dstSourceFilePath = request.getDstSourceFilePath();
+        String beforeDir = request.getBeforeDir();
+        String afterDir = request.getAfterDir();
+        String class1Name = request.getClass1Name();
+        String class2Name = request.getClass2Name();
+        boolean success = false;
+
+        String outputDir = request.getOutputDir();
+        GraphExporter.prepareOutputFolder(outputDir);
+        // edit scripts are aggregated in the context across the engine's difference calls, until it is finished
+        DiffContext context = new DiffContext(request.toStrategySettings(), outputDir);
+        DiffEngine engine = new DiffEngine(context);
 
         try {
-            // retrieve the classes from the Soot Scene
-            SootInitializer.initializeSoot(beforeDir);
-            Scene.v().loadNecessaryClasses();
-            Map<String, SootClass> beforeClasses = collectNestedClassesByFqn(class1Name);
+            // each version is loaded into its own soot context, and its pdgs built there, so the before scene does not
+            // have to be torn down to load the after one. only the target class and its nested classes are loaded
+            Map<String, List<PDG>> beforePdgsMap = loadPDGs(beforeDir, class1Name, FILE_VERSION.SOURCE, context);
+            Map<String, List<PDG>> afterPdgsMap = loadPDGs(afterDir, class2Name, FILE_VERSION.DEST, context);
 
-            SootInitializer.initializeSoot(afterDir);
-            Scene.v().loadNecessaryClasses();
-            Map<String, SootClass> afterClasses = collectNestedClassesByFqn(class2Name);
 
-
-            if (beforeClasses.size() == 1 && afterClasses.size() == 1) {
+            if (beforePdgsMap.size() == 1 && afterPdgsMap.size() == 1) {
                 // standard case, where only one class in each
 
-                System.out.println("\nDetected exactly ONE class in BEFORE and AFTER => using single-class logic.");
+                logger.info("Detected exactly ONE class in BEFORE and AFTER => using single-class logic.");
 
-                SootClass beforeFile = beforeClasses.values().iterator().next();
-                SootClass afterFile  = afterClasses.values().iterator().next();
+                Map.Entry<String, List<PDG>> beforeFile = beforePdgsMap.entrySet().iterator().next();
+                Map.Entry<String, List<PDG>> afterFile = afterPdgsMap.entrySet().iterator().next();
 
-                List<PDG> pdgsClass1 = generatePDGsForClass(beforeFile, FILE_VERSION.SOURCE);
-                List<PDG> pdgsClass2 = generatePDGsForClass(afterFile,  FILE_VERSION.DEST);
+                List<PDG> pdgsClass1 = beforeFile.getValue();
+                List<PDG> pdgsClass2 = afterFile.getValue();
 
-                System.out.println("PDGs generated for " + beforeFile.getName() + ": " + pdgsClass1.size());
-                System.out.println("PDGs generated for " + afterFile.getName()  + ": " + pdgsClass2.size());
+                logger.info("PDGs generated for {}: {}", beforeFile.getKey(), pdgsClass1.size());
+                logger.info("PDGs generated for {}: {}", afterFile.getKey(), pdgsClass2.size());
 
                 if (pdgsClass1.isEmpty() || pdgsClass2.isEmpty()) {
-                    System.out.println("ERROR: No PDGs generated for one or both classes. Probably no concrete methods. Exiting...");
-                    return;
+                    logger.error("No PDGs generated for one or both classes. Probably no concrete methods. Exiting...");
+                    return false;
                 }
-                StrategySettings strategySettings = new StrategySettings(recoveryStrategy, matchingStrategy, aggregateRecovery);
                 try {
-                    DiffEngine.difference(pdgsClass1, pdgsClass2, strategySettings, srcSourceFilePath, dstSourceFilePath);
-
-                    copyResultsToOutput(srcSourceFilePath, dstSourceFilePath);
+                    engine.difference(pdgsClass1, pdgsClass2, srcSourceFilePath, dstSourceFilePath);
+                    engine.finish();
+                    success = true;
                 } catch (Exception e) {
-                    e.printStackTrace();
-                    System.err.println("An error occurred during single-class diff: " + e.getMessage());
+                    logger.error("An error occurred during single-class diff: {}", e.getMessage(), e);
                 }
             } else {
                 // multi-class version
@@ -153,79 +248,101 @@ public class Main {
                 //  e,g, need to handle field insertions deletions. also for some reason, nested class line nums seem to be slightly mismatched. for whatever reason.
                 // TODO: improvemnet: handle class comparison etc properly.
 
-                Map<String, List<PDG>> beforePdgsMap = new HashMap<>();
-                for (Map.Entry<String, SootClass> entry : beforeClasses.entrySet()) {
-                    String fqn = entry.getKey();
-                    SootClass sc = entry.getValue();
-                    List<PDG> pdgs = generatePDGsForClass(sc, FILE_VERSION.SOURCE);
-                    beforePdgsMap.put(fqn, pdgs);
-                }
-
-                Map<String, List<PDG>> afterPdgsMap = new HashMap<>();
-                for (Map.Entry<String, SootClass> entry : afterClasses.entrySet()) {
-                    String fqn = entry.getKey();
-                    SootClass sc = entry.getValue();
-                    List<PDG> pdgs = generatePDGsForClass(sc, FILE_VERSION.DEST);
-                    afterPdgsMap.put(fqn, pdgs);
-                }
-
-                System.out.println("\nPDGs for 'before' file total: " + beforePdgsMap.values().stream().mapToInt(List::size).sum());
-                System.out.println("PDGs for 'after' file total: " + afterPdgsMap.values().stream().mapToInt(List::size).sum());
+                logger.info("PDGs for 'before' file total: {}", beforePdgsMap.values().stream().mapToInt(List::size).sum());
+                logger.info("PDGs for 'after' file total: {}", afterPdgsMap.values().stream().mapToInt(List::size).sum());
 
 
                 if (beforePdgsMap.isEmpty() || afterPdgsMap.isEmpty()) {
-                    System.out.println("ERROR: No PDGs generated for one or both classes. There are probably no concrete methods in the class. Exiting...");
-                    return;
+                    logger.error("No PDGs generated for one or both classes. There are probably no concrete methods in the class. Exiting...");
+                    return false;
                 }
 
-                StrategySettings strategySettings = new StrategySettings(recoveryStrategy, matchingStrategy, aggregateRecovery);
-
                 Set<String> allFqns = new HashSet<>();
-                System.out.println("Before classes: " + beforePdgsMap.keySet());
-                System.out.println("After classes: " + afterPdgsMap.keySet());
+                logger.info("Before classes: {}", beforePdgsMap.keySet());
+                logger.info("After classes: {}", afterPdgsMap.keySet());
 
                 allFqns.addAll(beforePdgsMap.keySet());
                 allFqns.addAll(afterPdgsMap.keySet());
 
-                System.out.println("All classes: " + allFqns);
+                logger.info("All classes: {}", allFqns);
 
+                List<List<PDG>> beforePdgLists = new ArrayList<>();
+                List<List<PDG>> afterPdgLists = new ArrayList<>();
                 for (String fqn : allFqns) {
                     // nb: this obviously assumes classes have the same name when making this comparison
-                    System.out.println("\n=== Comparing class: " + fqn + " ===");
+                    logger.info("=== Comparing class: {} ===", fqn);
 
                     List<PDG> beforePdgs = beforePdgsMap.getOrDefault(fqn, Collections.emptyList());
                     List<PDG> afterPdgs = afterPdgsMap.getOrDefault(fqn, Collections.emptyList());
 
                     // if that class has no pdgs in the before, but has some in the after, then it was added
-                    System.out.println("Before PDGs: " + beforePdgs);
-                    System.out.println("After PDGs: " + afterPdgs);
+                    logger.debug("Before PDGs: {}", beforePdgs);
+                    logger.debug("After PDGs: {}", afterPdgs);
                     if (beforePdgs.isEmpty() && !afterPdgs.isEmpty()) {
                         // this class is added
-                        System.out.println("Class " + fqn + " was ADDED in 'after'.");
-                        DiffEngine.difference(Collections.emptyList(), afterPdgs, strategySettings,
-                                srcSourceFilePath, dstSourceFilePath);
+                        logger.info("Class {} was ADDED in 'after'.", fqn);
                     } else if (!beforePdgs.isEmpty() && afterPdgs.isEmpty()) {
                         // the class is deleted
-                        System.out.println("Class " + fqn + " was DELETED in 'after'.");
-                        DiffEngine.difference(beforePdgs, Collections.emptyList(), strategySettings,
-                                srcSourceFilePath, dstSourceFilePath);
+                        logger.info("Class {} was DELETED in 'after'.", fqn);
                     } else {
                         // class existed in both, so normal method-level PDG diff
-                        System.out.println("Class " + fqn + " exists in both. Diffing method-level PDGs...");
-                        DiffEngine.difference(beforePdgs, afterPdgs, strategySettings, srcSourceFilePath, dstSourceFilePath);
+                        logger.info("Class {} exists in both. Diffing method-level PDGs...", fqn);
                     }
+                    beforePdgLists.add(beforePdgs);
+                    afterPdgLists.add(afterPdgs);
                 }
-
-                copyResultsToOutput(srcSourceFilePath, dstSourceFilePath);
-
-                SootInitializer.resetSoot();
+                // the classes are diffed concurrently, their edit scripts aggregated in the order of allFqns
+                engine.differenceAll(beforePdgLists, afterPdgLists, srcSourceFilePath, dstSourceFilePath);
+                engine.finish();
+                success = true;
             }
 
         } catch (Exception e) {
-            System.err.println("An error occurred while processing the classes: " + e.getMessage());
+            if (e instanceof InterruptedException) {
+                // e.g. a batch entry timing out, its remaining class and method tasks have been cancelled
+                Thread.currentThread().interrupt();
+            }
+            logger.error("An error occurred while processing the classes: {}", e.getMessage());
+        } finally {
+            // ends diff.json with whatever was diffed if the run failed part way
+            engine.finish();
+            // drops both versions' scenes
+            SootContext.release();
         }
 
-        SootInitializer.resetSoot();
+        if (pdgCache != null) {
+            logger.info("PDG cache: {} hits, {} misses, {} evictions so far",
+                    pdgCache.getHits(), pdgCache.getMisses(), pdgCache.getEvictions());
+        }
+
+        return success;
+    }
+
+    /**
+     * loads the given class (and its nested classes) from dir into a fresh soot context and builds their pdgs, keyed
+     * by class name. the context stays active on this thread until the next call or SootContext.release().
+     */
+    private static Map<String, List<PDG>> loadPDGs(String dir, String fqn, FILE_VERSION version, DiffContext context)
+            throws InterruptedException {
+        SootContext.create().activate();
+        SootInitializer.initializeSoot(dir, fqn);
+
+        // soot builds method bodies into the scene (resolving the classes they refer to), which is not safe from more
+        // than one thread, so that is done here one class after another. the pdgs are then built from the bodies
+        // concurrently
+        List<String> classNames = new ArrayList<>();
+        List<Callable<List<PDG>>> tasks = new ArrayList<>();
+        for (Map.Entry<String, SootClass> entry : collectNestedClassesByFqn(fqn).entrySet()) {
+            classNames.add(entry.getKey());
+            tasks.add(prepareClass(entry.getValue(), version, dir, context));
+        }
+        List<List<PDG>> pdgLists = DiffThreads.invokeAll(DiffThreads.Stage.CLASSES, tasks);
+
+        Map<String, List<PDG>> pdgsMap = new HashMap<>();
+        for (int i = 0; i < classNames.size(); i++) {
+            pdgsMap.put(classNames.get(i), pdgLists.get(i));
+        }
+        return pdgsMap;
     }
 
     private static Map<String, SootClass> collectNestedClassesByFqn(String fqn) {
@@ -236,50 +353,123 @@ public class Main {
                 result.put(fullName, sc);
             }
         }
-        System.out.println("Found " + result.size() + " classes in Soot that match FQN: " + fqn);
+        logger.info("Found {} classes in Soot that match FQN: {}", result.size(), fqn);
         for (SootClass sc : result.values()) {
-            System.out.println("  -> " + sc.getName());
+            logger.info("  -> {}", sc.getName());
         }
         return result;
     }
 
     /**
-     * method to generate PDGs for all methods in a given class and store them in a list
+     * takes the PDGs of a class from the PDG cache (if enabled) when the class file in dir was seen before, and
+     * otherwise retrieves the bodies of its methods. returns the task that generates the PDGs from them (or simply
+     * returns the cached ones)
      */
-    private static List<PDG> generatePDGsForClass(SootClass sootClass, FILE_VERSION version) {
+    private static Callable<List<PDG>> prepareClass(SootClass sootClass, FILE_VERSION version, String dir,
+                                                    DiffContext context) throws InterruptedException {
         if (sootClass.getName().matches(".*\\$\\d+")) {
             // for now, ignoring differencing of anon or synthetic classes as often marked as 'DANGLING' by soot
-            System.out.println("Skipping anonymous/synthetic class: " + sootClass.getName());
-            return Collections.emptyList();
+            logger.info("Skipping anonymous/synthetic class: {}", sootClass.getName());
+            return Collections::emptyList;
         }
 
-        List<PDG> pdgList = new ArrayList<>();
-        System.out.println("Generating PDGs for class: " + sootClass.getName());
+        String cacheKey = null;
+        if (pdgCache != null) {
+            cacheKey = PDGCache.keyOf(Paths.get(dir, sootClass.getName().replace('.', File.separatorChar) + ".class"));
+            List<PDG> cached = cacheKey == null ? null : pdgCache.get(cacheKey, sootClass);
+            if (cached != null) {
+                logger.info("Using cached PDGs for class: {}", sootClass.getName());
+                for (PDG pdg : cached) {
+                    exportPDG(pdg, sootClass, version, context);
+                }
+                return () -> cached;
+            }
+        }
+
+        // bodies and cfgs are built here, serially, as Soot's singletons they go through are not thread safe. only the
+        // rest of each pdg is built concurrently
+        List<SootMethod> methods = new ArrayList<>();
+        List<UnitGraph> cfgs = new ArrayList<>();
+        boolean complete = true;
         for (SootMethod method : sootClass.getMethods()) {
             if (method.isConcrete()) {
                 try {
-                    // retrieve the active body and generate the PDG
-                    method.retrieveActiveBody();
-                    System.out.println("Successfully retrieved active body for: " + method.getName() + " in " + sootClass.getName());
-
-                    PDG pdg = GraphGenerator.constructPdg(method);
-                    pdgList.add(pdg);
-                    System.out.println("PDG generated for method: " + method.getName());
-
-                    // likely pdg function names will clash across src/dest of the same file name, so need to specify version
-                    String baseFileName;
-                    if (version == FILE_VERSION.SOURCE) {
-                        baseFileName = "out/src_pdg" + sootClass.getName() + "_" + method.getName();
-                    } else {
-                        baseFileName = "out/dst_pdg_" + sootClass.getName() + "_" + method.getName();
-                    }
-                    GraphExporter.exportPDG(pdg, baseFileName + ".dot", baseFileName + ".txt");
+                    Body body = method.retrieveActiveBody();
+                    logger.debug("Successfully retrieved active body for: {} in {}", method.getName(), sootClass.getName());
+                    UnitGraph cfg = new ExceptionalUnitGraph(body);
+                    methods.add(method);
+                    cfgs.add(cfg);
                 } catch (Exception e) {
-                    System.err.println("Failed to retrieve body or generate PDG for method: " + method.getName());
-                    e.printStackTrace();
+                    complete = false;
+                    logger.error("Failed to retrieve body or build cfg for method: {}", method.getName(), e);
                 }
             }
         }
+        String key = cacheKey;
+        boolean bodiesComplete = complete;
+        return () -> generatePDGsForClass(sootClass, methods, cfgs, bodiesComplete, key, version, context);
+    }
+
+    /**
+     * method to generate PDGs for the given methods (with their cfgs, in the same order) of a class and store them in a
+     * list, building the PDGs of the methods concurrently. cached under cacheKey (if not null) unless a method failed
+     */
+    private static List<PDG> generatePDGsForClass(SootClass sootClass, List<SootMethod> methods, List<UnitGraph> cfgs,
+                                                  boolean complete, String cacheKey, FILE_VERSION version,
+                                                  DiffContext context) throws InterruptedException {
+        logger.info("Generating PDGs for class: {}", sootClass.getName());
+        List<Callable<PDG>> tasks = new ArrayList<>();
+        for (int i = 0; i < methods.size(); i++) {
+            SootMethod method = methods.get(i);
+            UnitGraph cfg = cfgs.get(i);
+            tasks.add(() -> {
+                try {
+                    PDG pdg = GraphGenerator.constructPdg(method, cfg);
+                    logger.debug("PDG generated for method: {}", method.getName());
+                    return pdg;
+                } catch (Exception e) {
+                    logger.error("Failed to retrieve body or generate PDG for method: {}", method.getName(), e);
+                    return null;
+                }
+            });
+        }
+
+        List<PDG> pdgList = new ArrayList<>();
+        for (PDG pdg : DiffThreads.invokeAll(DiffThreads.Stage.METHODS, tasks)) {
+            if (pdg == null) {
+                complete = false;
+                continue;
+            }
+            pdgList.add(pdg);
+            exportPDG(pdg, sootClass, version, context);
+        }
+        // a class with failed methods is rebuilt next time rather than cached without them
+        if (cacheKey != null && complete) {
+            pdgCache.put(cacheKey, pdgList);
+        }
         return pdgList;
     }
+
+    // queues the pdg's dot and txt files, if enabled
+    private static void exportPDG(PDG pdg, SootClass sootClass, FILE_VERSION version, DiffContext context)
+            throws InterruptedException {
+        if (!context.getSettings().isPdgGraphOutput()) {
+            return;
+        }
+        String outputDir = context.getOutputDir();
+        // likely pdg function names will clash across src/dest of the same file name, so need to specify version
+        String baseFileName;
+        if (version == FILE_VERSION.SOURCE) {
+            baseFileName = outputDir + "src_pdg" + sootClass.getName() + "_" + pdg.getMethod().getName();
+        } else {
+            baseFileName = outputDir + "dst_pdg_" + sootClass.getName() + "_" + pdg.getMethod().getName();
+        }
+        context.exportGraph(() -> {
+            try {
+                GraphExporter.exportPDG(pdg, baseFileName + ".dot", baseFileName + ".txt");
+            } catch (IOException e) {
+                logger.error("Failed to export PDG for method: {}", pdg.getMethod().getName(), e);
+            }
+        });
+    }
 }
@@ -0,0 +1,272 @@
+package org.pdgdiff.batch;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import org.pdgdiff.DiffRequest;
+import org.pdgdiff.Main;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs many diffs in one JVM from a manifest, so the JVM and Soot bootstrap are paid once per batch rather than once
+ * per file pair.
+ *
+ * The manifest is either JSONL, one DiffRequest object per line (see DiffServer for the field names), or CSV with a
+ * header row naming the same fields. An optional "id" field names the entry's output, defaulting to its line number.
+ * Blank lines and lines starting with # are skipped.
+ *
+ * Every entry runs on a worker thread with a timeout, and a failing or timed out entry is recorded and skipped without
+ * aborting the batch. Entries not naming their own outputDir write their output to [outputDir]/[id]/. The aggregated
+ * diff of each entry is copied to [outputDir]/[id].json (and its diff.bin, if binaryOutput is set, to
+ * [outputDir]/[id].bin), and one line per entry
+ * (id, classes, status, time, output file or error) is appended to [outputDir]/results.jsonl.
+ */
+public class BatchRunner {
+    private static final Logger logger = LoggerFactory.getLogger(BatchRunner.class);
+
+    public static final String DEFAULT_OUTPUT_DIR = "out-batch";
+    public static final long DEFAULT_TIMEOUT_SECONDS = 90;
+
+    // how long to wait for a timed out worker to notice its interrupt before moving on regardless
+    private static final long ABANDON_GRACE_SECONDS = 5;
+    private static final Gson gson = new Gson();
+
+    private static class Entry {
+        final String id;
+        final DiffRequest request;
+        final String parseError;
+
+        Entry(String id, DiffRequest request, String parseError) {
+            this.id = id;
+            this.request = request;
+            this.parseError = parseError;
+        }
+    }
+
+    public static void run(Path manifest, Path outputDir, long timeoutSeconds) throws IOException {
+        List<Entry> entries = readManifest(manifest);
+        Files.createDirectories(outputDir);
+        Path results = outputDir.resolve("results.jsonl");
+        logger.info("Batch of {} diffs from {}, writing to {}", entries.size(), manifest, outputDir);
+
+        int ok = 0;
+        ExecutorService worker = newWorker();
+        try (BufferedWriter resultWriter = Files.newBufferedWriter(results, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                logger.info("=== Batch entry {}/{}: {} ===", i + 1, entries.size(), entry.id);
+
+                String status;
+                String error = null;
+                Path output = null;
+                long start = System.nanoTime();
+
+                if (entry.parseError != null) {
+                    status = "invalid";
+                    error = entry.parseError;
+                } else {
+                    if (!entry.request.hasOutputDir()) {
+                        // a directory of its own, as a timed out entry's worker may still be writing to its output
+                        // while the next entries run
+                        entry.request.setOutputDir(outputDir.resolve(safeFileName(entry.id)).toString());
+                    }
+                    Future<Boolean> diff = worker.submit(() -> Main.run(entry.request));
+                    try {
+                        if (diff.get(timeoutSeconds, TimeUnit.SECONDS)) {
+                            output = outputDir.resolve(safeFileName(entry.id) + ".json");
+                            Path entryOutputDir = Paths.get(entry.request.getOutputDir());
+                            Files.copy(entryOutputDir.resolve("diff.json"), output, StandardCopyOption.REPLACE_EXISTING);
+                            Path binaryOutput = entryOutputDir.resolve("diff.bin");
+                            if (Files.exists(binaryOutput)) {
+                                Files.copy(binaryOutput, outputDir.resolve(safeFileName(entry.id) + ".bin"),
+                                        StandardCopyOption.REPLACE_EXISTING);
+                            }
+                            status = "ok";
+                            ok++;
+                        } else {
+                            status = "failed";
+                            error = "no diff could be produced";
+                        }
+                    } catch (TimeoutException e) {
+                        status = "timeout";
+                        error = "exceeded " + timeoutSeconds + "s";
+                        // Soot does not check for interrupts, so the worker may well keep running. it is abandoned
+                        // and the remaining entries get a fresh one, with soot contexts of its own
+                        diff.cancel(true);
+                        worker.shutdownNow();
+                        try {
+                            if (!worker.awaitTermination(ABANDON_GRACE_SECONDS, TimeUnit.SECONDS)) {
+                                logger.warn("Timed out worker for {} is still running, continuing without it", entry.id);
+                            }
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                        }
+                        worker = newWorker();
+                    } catch (ExecutionException e) {
+                        status = "failed";
+                        error = String.valueOf(e.getCause());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Batch interrupted", e);
+                    } catch (IOException e) {
+                        status = "failed";
+                        error = "could not copy diff output: " + e.getMessage();
+                    }
+                }
+
+                long millis = (System.nanoTime() - start) / 1_000_000;
+                logger.info("Batch entry {}: {} ({}ms)", entry.id, status, millis);
+                resultWriter.write(resultLine(entry, status, millis, output, error));
+                resultWriter.newLine();
+                resultWriter.flush();
+            }
+        } finally {
+            worker.shutdownNow();
+        }
+        logger.info("Batch complete: {}/{} diffs produced, see {}", ok, entries.size(), results);
+    }
+
+    private static ExecutorService newWorker() {
+        return Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "pdgdiff-batch-worker");
+            // an abandoned (timed out) worker must not keep the jvm alive once the batch is done
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static String resultLine(Entry entry, String status, long millis, Path output, String error) throws IOException {
+        StringWriter line = new StringWriter();
+        JsonWriter writer = new JsonWriter(line);
+        writer.beginObject();
+        writer.name("id").value(entry.id);
+        if (entry.request != null) {
+            writer.name("class1Name").value(entry.request.getClass1Name());
+            writer.name("class2Name").value(entry.request.getClass2Name());
+            writer.name("matchingStrategy").value(String.valueOf(entry.request.getMatchingStrategy()));
+        }
+        writer.name("status").value(status);
+        writer.name("millis").value(millis);
+        if (output != null) {
+            writer.name("output").value(output.toString());
+        }
+        if (error != null) {
+            writer.name("error").value(error);
+        }
+        writer.endObject();
+        writer.close();
+        return line.toString();
+    }
+
+    private static List<Entry> readManifest(Path manifest) throws IOException {
+        List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+        boolean csv = manifest.getFileName().toString().toLowerCase().endsWith(".csv");
+
+        List<Entry> entries = new ArrayList<>();
+        String[] header = null;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String defaultId = "entry-" + (i + 1);
+
+            JsonObject fields;
+            if (csv) {
+                List<String> values = parseCsvLine(line);
+                if (header == null) {
+                    header = values.toArray(new String[0]);
+                    continue;
+                }
+                fields = new JsonObject();
+                for (int c = 0; c < header.length && c < values.size(); c++) {
+                    if (!values.get(c).isEmpty()) {
+                        fields.addProperty(header[c].trim(), values.get(c));
+                    }
+                }
+            } else {
+                try {
+                    JsonElement element = JsonParser.parseString(line);
+                    if (!element.isJsonObject()) {
+                        entries.add(new Entry(defaultId, null, "not a JSON object"));
+                        continue;
+                    }
+                    fields = element.getAsJsonObject();
+                } catch (RuntimeException e) {
+                    entries.add(new Entry(defaultId, null, "malformed JSON: " + e.getMessage()));
+                    continue;
+                }
+            }
+
+            String id = fields.has("id") ? fields.get("id").getAsString() : defaultId;
+            try {
+                DiffRequest request = gson.fromJson(fields, DiffRequest.class);
+                String missing = request.getMissingField();
+                String invalid = request.getInvalidField();
+                if (missing != null) {
+                    entries.add(new Entry(id, null, "missing " + missing));
+                } else if (invalid != null) {
+                    entries.add(new Entry(id, null, invalid));
+                } else {
+                    entries.add(new Entry(id, request, null));
+                }
+            } catch (RuntimeException e) {
+                entries.add(new Entry(id, null, "invalid entry: " + e.getMessage()));
+            }
+        }
+        return entries;
+    }
+
+    // splits a CSV line on commas, honouring double quoted values ("" inside quotes being a literal quote)
+    private static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(current.toString().trim());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        values.add(current.toString().trim());
+        return values;
+    }
+
+    private static String safeFileName(String id) {
+        return id.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
@@ -1,6 +1,7 @@
 package org.pdgdiff.edit;
 
 import org.pdgdiff.edit.model.*;
+import org.pdgdiff.graph.NodeFeatures;
 import org.pdgdiff.graph.PDG;
 import org.pdgdiff.matching.GraphMapping;
 import org.pdgdiff.matching.NodeMapping;
@@ -41,6 +42,8 @@ public class EditScriptGenerator {
         SourceCodeMapper dstCodeMapper = new SourceCodeMapper(dstSourceFilePath);
 
         NodeMapping nodeMapping = graphMapping.getNodeMapping(srcPDG);
+        NodeFeatures srcFeatures = srcPDG.getNodeFeatures();
+        NodeFeatures dstFeatures = dstPDG.getNodeFeatures();
 
         Map<PDGNode, PDGNode> mappings = nodeMapping.getNodeMapping();
         Set<PDGNode> srcNodesMapped = mappings.keySet();
@@ -53,12 +56,13 @@ public class EditScriptGenerator {
             PDGNode dstNode = mappings.get(srcNode);
 
             if (!visitedNodes.contains(srcNode)) {
-                ComparisonResult compResult = nodesAreEqual(srcNode, dstNode, visitedNodes, srcCodeMapper, dstCodeMapper, nodeMapping);
+                ComparisonResult compResult = nodesAreEqual(srcNode, dstNode, visitedNodes, srcFeatures, dstFeatures,
+                        srcCodeMapper, dstCodeMapper);
 
                 if (!compResult.isEqual) {
                     if (compResult.isMove) {
-                        int oldLineNumber = getNodeLineNumber(srcNode);
-                        int newLineNumber = getNodeLineNumber(dstNode);
+                        int oldLineNumber = srcFeatures.getLineNumber(srcNode);
+                        int newLineNumber = dstFeatures.getLineNumber(dstNode);
                         String codeSnippet = srcCodeMapper.getCodeLine(oldLineNumber);
                         editScriptSet.add(new Move(srcNode, oldLineNumber, newLineNumber, codeSnippet));
                     } else if (!compResult.syntaxDifferences.isEmpty()) {
@@ -83,7 +87,7 @@ public class EditScriptGenerator {
         // handle deletions
         for (PDGNode srcNode : srcPDG) {
             if (!srcNodesMapped.contains(srcNode) && !visitedNodes.contains(srcNode)) {
-                int lineNumber = getNodeLineNumber(srcNode);
+                int lineNumber = srcFeatures.getLineNumber(srcNode);
                 String codeSnippet = srcCodeMapper.getCodeLine(lineNumber);
                 editScriptSet.add(new Delete(srcNode, lineNumber, codeSnippet));
             }
@@ -92,28 +96,46 @@ public class EditScriptGenerator {
         // handle insertions
         for (PDGNode dstNode : dstPDG) {
             if (!dstNodesMapped.contains(dstNode) && !visitedNodes.contains(dstNode)) {
-                int lineNumber = getNodeLineNumber(dstNode);
+                int lineNumber = dstFeatures.getLineNumber(dstNode);
                 String codeSnippet = dstCodeMapper.getCodeLine(lineNumber);
                 editScriptSet.add(new Insert(dstNode, lineNumber, codeSnippet));
             }
         }
 
         // structural signature diff, happens in every case to account for annotations changing even if signature itself doesnt.
+        editScriptSet.addAll(generateSignatureDiffs(srcMethod, destMethod, srcCodeMapper, dstCodeMapper));
+
+        return new ArrayList<>(editScriptSet);
+    }
+
+    /**
+     * edit script for a pair of methods whose bodies are identical (same PDG fingerprint), where the node level
+     * comparison is known to be empty and only the signature and annotations can differ.
+     */
+    public static List<EditOperation> generateSignatureScript(
+            String srcSourceFilePath,
+            String dstSourceFilePath,
+            SootMethod srcMethod,
+            SootMethod destMethod
+    ) throws IOException {
+        SourceCodeMapper srcCodeMapper = new SourceCodeMapper(srcSourceFilePath);
+        SourceCodeMapper dstCodeMapper = new SourceCodeMapper(dstSourceFilePath);
+        return new ArrayList<>(new HashSet<>(generateSignatureDiffs(srcMethod, destMethod, srcCodeMapper, dstCodeMapper)));
+    }
+
+    private static List<EditOperation> generateSignatureDiffs(SootMethod srcMethod, SootMethod destMethod,
+                                                              SourceCodeMapper srcCodeMapper, SourceCodeMapper dstCodeMapper) throws IOException {
         ParsedSignature oldSig = parseMethodSignature(srcMethod, srcCodeMapper);
         ParsedSignature newSig = parseMethodSignature(destMethod, dstCodeMapper);
 
         // misleading naming here , should probably rename to something including annotations
-        List<EditOperation> signatureDiffs =
-                compareSignatures(oldSig, newSig, srcMethod, destMethod, srcCodeMapper, dstCodeMapper);
-
-        editScriptSet.addAll(signatureDiffs);
-
-        return new ArrayList<>(editScriptSet);
+        return compareSignatures(oldSig, newSig, srcMethod, destMethod, srcCodeMapper, dstCodeMapper);
     }
 
 
     public static List<EditOperation> generateAddScript(PDG pdg, String sourceFilePath, SootMethod method) throws IOException {
         SourceCodeMapper codeMapper = new SourceCodeMapper(sourceFilePath);
+        NodeFeatures features = pdg.getNodeFeatures();
         List<EditOperation> editOperations = new ArrayList<>();
 
         // insert the method signature lines (approx.), handling for annoataions
@@ -132,7 +154,7 @@ public class EditScriptGenerator {
         editOperations.addAll(
                 collectNodesBFS(pdg).stream()
                         .map(node -> {
-                            int lineNumber = getNodeLineNumber(node);
+                            int lineNumber = features.getLineNumber(node);
                             String codeSnippet = codeMapper.getCodeLine(lineNumber);
                             return new Insert(node, lineNumber, codeSnippet);
                         })
@@ -144,7 +166,7 @@ public class EditScriptGenerator {
         int maxLine = editOperations.stream()
                 .mapToInt(op -> {
                     PDGNode node = op.getNode();
-                    return node == null ? -1 : getNodeLineNumber(node);
+                    return node == null ? -1 : features.getLineNumber(node);
                 })
                 .max()
                 .orElse(-1);
@@ -161,6 +183,7 @@ public class EditScriptGenerator {
 
     public static List<EditOperation> generateDeleteScript(PDG pdg, String sourceFilePath, SootMethod method) throws IOException {
         SourceCodeMapper codeMapper = new SourceCodeMapper(sourceFilePath);
+        NodeFeatures features = pdg.getNodeFeatures();
         List<EditOperation> editOperations = new ArrayList<>();
 
         // delete the method signature lines (approx.)
@@ -179,7 +202,7 @@ public class EditScriptGenerator {
         editOperations.addAll(
                 collectNodesBFS(pdg).stream()
                         .map(node -> {
-                            int lineNumber = getNodeLineNumber(node);
+                            int lineNumber = features.getLineNumber(node);
                             String codeSnippet = codeMapper.getCodeLine(lineNumber);
                             return new Delete(node, lineNumber, codeSnippet);
                         })
@@ -191,7 +214,7 @@ public class EditScriptGenerator {
         int maxLine = editOperations.stream()
                 .mapToInt(op -> {
                     PDGNode node = op.getNode();
-                    return node == null ? -1 : getNodeLineNumber(node);
+                    return node == null ? -1 : features.getLineNumber(node);
                 })
                 .max()
                 .orElse(-1);
@@ -236,8 +259,8 @@ public class EditScriptGenerator {
     }
 
     private static ComparisonResult nodesAreEqual(PDGNode n1, PDGNode n2, Set<PDGNode> visitedNodes,
-                                                  SourceCodeMapper srcCodeMapper, SourceCodeMapper dstCodeMapper,
-                                                  NodeMapping nodeMapping) {
+                                                  NodeFeatures srcFeatures, NodeFeatures dstFeatures,
+                                                  SourceCodeMapper srcCodeMapper, SourceCodeMapper dstCodeMapper) {
         if (visitedNodes.contains(n1)) {
             return new ComparisonResult(true);
         }
@@ -249,28 +272,31 @@ public class EditScriptGenerator {
         }
 
         if (n1.getType() == PDGNode.Type.CFGNODE) {
-            return compareCFGNodes(n1, n2, srcCodeMapper, dstCodeMapper);
+            return compareCFGNodes(n1, n2, srcFeatures, dstFeatures, srcCodeMapper, dstCodeMapper);
         }
 
         return new ComparisonResult(true);
     }
 
     private static ComparisonResult compareCFGNodes(PDGNode n1, PDGNode n2,
+                                                    NodeFeatures srcFeatures, NodeFeatures dstFeatures,
                                                     SourceCodeMapper srcCodeMapper, SourceCodeMapper dstCodeMapper) {
-        Unit unit1 = (Unit) n1.getNode();
-        Unit unit2 = (Unit) n2.getNode();
-
-        List<Unit> units1 = Collections.singletonList(unit1);
-        List<Unit> units2 = Collections.singletonList(unit2);
+        Set<SyntaxDifference> differences = new HashSet<>();
 
-        Set<SyntaxDifference> differences = compareUnitLists(units1, units2, srcCodeMapper, dstCodeMapper);
+        // compares the actual body representation of the units. labels of the compact pdgs are interned, so equals
+        // mostly returns on the reference check, but nodes outside them get labels that are not
+        if (!srcFeatures.getLabel(n1).equals(dstFeatures.getLabel(n2))) {
+            Unit unit1 = (Unit) n1.getNode();
+            Unit unit2 = (Unit) n2.getNode();
+            differences.add(new SyntaxDifference(unit1, unit2, srcCodeMapper, dstCodeMapper));
+        }
 
         if (!differences.isEmpty()) {
             return new ComparisonResult(false, false, differences);
         } else {
             // check for move operations based on line numbers
-            int lineNumber1 = getNodeLineNumber(n1);
-            int lineNumber2 = getNodeLineNumber(n2);
+            int lineNumber1 = srcFeatures.getLineNumber(n1);
+            int lineNumber2 = dstFeatures.getLineNumber(n2);
             if (lineNumber1 != lineNumber2 && lineNumber1 != -1 && lineNumber2 != -1) {
                 return new ComparisonResult(false, true, differences);
             }
@@ -279,51 +305,6 @@ public class EditScriptGenerator {
         return new ComparisonResult(true);
     }
 
-    private static Set<SyntaxDifference> compareUnitLists(List<Unit> units1, List<Unit> units2,
-                                                          SourceCodeMapper srcCodeMapper, SourceCodeMapper dstCodeMapper) {
-        Set<SyntaxDifference> differences = new HashSet<>();
-
-        int i = 0, j = 0;
-        while (i < units1.size() && j < units2.size()) {
-            Unit unit1 = units1.get(i);
-            Unit unit2 = units2.get(j);
-
-            if (unitsAreEqual(unit1, unit2)) {
-                i++;
-                j++;
-            } else {
-                SyntaxDifference diff = new SyntaxDifference(unit1, unit2, srcCodeMapper, dstCodeMapper);
-                differences.add(diff);
-                i++;
-                j++;
-            }
-        }
-
-        // handle remaining units in units1 (deletions)
-        while (i < units1.size()) {
-            SyntaxDifference diff = new SyntaxDifference(units1.get(i), null, srcCodeMapper, dstCodeMapper);
-            differences.add(diff);
-            i++;
-        }
-
-        // handle remaining units in units2 (insertions)
-        while (j < units2.size()) {
-            SyntaxDifference diff = new SyntaxDifference(null, units2.get(j), srcCodeMapper, dstCodeMapper);
-            differences.add(diff);
-            j++;
-        }
-
-        return differences;
-    }
-
-    private static boolean unitsAreEqual(Unit unit1, Unit unit2) {
-        if (unit1 == null || unit2 == null) {
-            return false;
-        }
-        // compares the actual body representation of the units
-        return unit1.toString().equals(unit2.toString());
-    }
-
     private static int getLineNumber(Unit unit) {
         return CodeAnalysisUtils.getLineNumber(unit);
     }
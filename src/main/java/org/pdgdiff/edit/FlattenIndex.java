@@ -0,0 +1,159 @@
+package org.pdgdiff.edit;
+
+import org.pdgdiff.edit.model.Delete;
+import org.pdgdiff.matching.models.heuristic.LevenshteinDistance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * index over the deletes of an edit script, answering for an insert which (unused) delete is the most similar one,
+ * as RecoveryProcessor's flatten pass would find by comparing it with every delete, without doing so:
+ *
+ * - deletes are blocked by their normalised code, a delete with the same normalised code as the insert is a perfect
+ *   match and needs no further comparison.
+ * - otherwise candidates are retrieved through an inverted index of character bigrams. a delete within edit distance
+ *   k of the insert shares at least max(|a|, |b|) - 1 - 2k bigrams with it (each edit destroys at most two), so
+ *   deletes sharing fewer cannot reach the threshold and are never compared.
+ * - the remaining candidates are compared with a bounded levenshtein, bounded by the threshold and by the best
+ *   similarity found so far.
+ *
+ * ties are broken towards the earliest delete, as in the pairwise scan.
+ */
+class FlattenIndex {
+
+    private final List<Delete> deletes;
+    private final String[] normalized;
+    private final Map<String, List<Integer>> byNormalized = new HashMap<>();
+    private final Map<Integer, Postings> postings = new HashMap<>();
+
+    // per-query scratch, bigram counts shared with each touched delete
+    private final int[] common;
+    private final int[] touched;
+
+    FlattenIndex(List<Delete> deletes) {
+        this.deletes = deletes;
+        this.normalized = new String[deletes.size()];
+        this.common = new int[deletes.size()];
+        this.touched = new int[deletes.size()];
+
+        for (int d = 0; d < deletes.size(); d++) {
+            String norm = RecoveryProcessor.normalizeCode(deletes.get(d).getCodeSnippet());
+            normalized[d] = norm;
+            byNormalized.computeIfAbsent(norm, k -> new ArrayList<>()).add(d);
+            for (Map.Entry<Integer, Integer> e : bigramCounts(norm).entrySet()) {
+                postings.computeIfAbsent(e.getKey(), k -> new Postings()).add(d, e.getValue());
+            }
+        }
+    }
+
+    /**
+     * the unused delete most similar to code, if its similarity is at least threshold, otherwise null
+     */
+    Delete bestMatch(String code, Set<Delete> usedDeletes, double threshold) {
+        String norm = RecoveryProcessor.normalizeCode(code);
+
+        List<Integer> same = byNormalized.get(norm);
+        if (same != null) {
+            for (int d : same) {
+                if (!usedDeletes.contains(deletes.get(d))) {
+                    return deletes.get(d);
+                }
+            }
+        }
+
+        int la = norm.length();
+        // k <= (1 - threshold) * maxLength, so the bigrams a candidate must share are at least
+        // maxLength * (2 * threshold - 1) - 1 >= la * (2 * threshold - 1) - 1. while that is positive, deletes sharing
+        // no bigram with norm (those not in its postings) cannot reach the threshold
+        boolean indexed = la * (2 * threshold - 1) - 1 > 0;
+        int touchedCount = 0;
+        if (!indexed) {
+            // too short (or threshold too low) for the bigram filter, compare against every delete
+            for (int d = 0; d < deletes.size(); d++) {
+                touched[touchedCount++] = d;
+            }
+        } else {
+            for (Map.Entry<Integer, Integer> e : bigramCounts(norm).entrySet()) {
+                Postings list = postings.get(e.getKey());
+                if (list == null) {
+                    continue;
+                }
+                int count = e.getValue();
+                for (int p = 0; p < list.size; p++) {
+                    int d = list.deletes[p];
+                    if (common[d] == 0) {
+                        touched[touchedCount++] = d;
+                    }
+                    common[d] += Math.min(count, list.counts[p]);
+                }
+            }
+            Arrays.sort(touched, 0, touchedCount);
+        }
+
+        double bestSimilarity = -1.0;
+        Delete best = null;
+        for (int t = 0; t < touchedCount; t++) {
+            int d = touched[t];
+            int shared = common[d];
+            common[d] = 0;
+            Delete del = deletes.get(d);
+            if (usedDeletes.contains(del)) {
+                continue;
+            }
+
+            String other = normalized[d];
+            int maxLength = Math.max(la, other.length());
+            int k = LevenshteinDistance.maxDistance(maxLength, threshold, false);
+            if (best != null) {
+                k = Math.min(k, LevenshteinDistance.maxDistance(maxLength, bestSimilarity, true));
+            }
+            if (k < 0 || Math.abs(la - other.length()) > k) {
+                continue;
+            }
+            if (indexed && shared < maxLength - 1 - 2 * k) {
+                continue;
+            }
+
+            int distance = LevenshteinDistance.distance(norm, other, k);
+            if (distance > k) {
+                continue;
+            }
+            double similarity = maxLength == 0 ? 1.0 : 1.0 - (double) distance / maxLength;
+            if (similarity > bestSimilarity) {
+                bestSimilarity = similarity;
+                best = del;
+            }
+        }
+        return best;
+    }
+
+    private static Map<Integer, Integer> bigramCounts(String s) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (int i = 0; i + 1 < s.length(); i++) {
+            counts.merge((s.charAt(i) << 16) | s.charAt(i + 1), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    // deletes containing a bigram, in delete order, with the number of times they contain it
+    private static final class Postings {
+        int[] deletes = new int[4];
+        int[] counts = new int[4];
+        int size = 0;
+
+        void add(int d, int count) {
+            if (size == deletes.length) {
+                deletes = Arrays.copyOf(deletes, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            deletes[size] = d;
+            counts[size] = count;
+            size++;
+        }
+    }
+}
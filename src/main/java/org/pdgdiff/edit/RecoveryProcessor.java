@@ -1,6 +1,7 @@
 package org.pdgdiff.edit;
 
 import org.pdgdiff.edit.model.*;
+import org.pdgdiff.matching.models.heuristic.LevenshteinDistance;
 
 import java.util.*;
 
@@ -81,8 +82,6 @@ public class RecoveryProcessor {
         // 'flatterning' edit operations involves assessing pairs of insert->delete and delete->insert operations that are similar and can be turned into a update.
         // if identical, these can be changed to be just a MOVE. if similar, they can be changed to be an UPDATE.
 
-        List<EditOperation> flattenedScript = new ArrayList<>(editScript); // not inplace, think this is better design choice, todo change cleanupduplciates to be same
-
         List<Insert> inserts = new ArrayList<>();
         List<Delete> deletes = new ArrayList<>();
         List<EditOperation> others = new ArrayList<>();
@@ -99,33 +98,26 @@ public class RecoveryProcessor {
 
         Set<Insert> usedInserts = new HashSet<>();
         Set<Delete> usedDeletes = new HashSet<>();
+        // ops squashed into a move or update, by how many of their (equal) occurrences in editScript to drop
+        Map<EditOperation, Integer> squashed = new HashMap<>();
+        List<EditOperation> flattenedOps = new ArrayList<>();
 
-        // greedily match each insert with eh best delete.
+        // greedily match each insert with eh best delete. the index only compares an insert with deletes that can
+        // reach the threshold, finding the same delete as comparing it with all of them would.
+        // could implement the following BUT can argue that it doesnt matter too much, still provides a good differencing.
+        // if (Math.abs(ins.getLineNumber() - del.getLineNumber()) > 5) continue;
+        FlattenIndex index = new FlattenIndex(deletes);
+        double threshold = 0.7;
 
         for (Insert ins : inserts) {
-            double bestSimilarity = -1.0;
-            Delete bestDelete = null;
-
-            for (Delete del : deletes) {
-                if (usedDeletes.contains(del)) {
-                    continue;
-                }
+            Delete bestDelete = index.bestMatch(ins.getCodeSnippet(), usedDeletes, threshold);
 
-                // could implement the following BUT can argue that it doesnt matter too much, still provides a good differencing.
-                // if (Math.abs(ins.getLineNumber() - del.getLineNumber()) > 5) continue;
-
-                double similarity = computeSimilarity(ins.getCodeSnippet(), del.getCodeSnippet());
-                if (similarity > bestSimilarity) {
-                    bestSimilarity = similarity;
-                    bestDelete = del;
-                }
-            }
-
-            double threshold = 0.7;
-
-            if (bestDelete != null && bestSimilarity >= threshold) {
+            if (bestDelete != null) {
                 usedInserts.add(ins);
                 usedDeletes.add(bestDelete);
+                // 'squash' the inserts and delete operations into the new move/update.
+                squashed.merge(ins, 1, Integer::sum);
+                squashed.merge(bestDelete, 1, Integer::sum);
                 // Write this as a move if identical.
                 if (Objects.equals(ins.getCodeSnippet(), bestDelete.getCodeSnippet())) {
                     if (ins.getLineNumber() != bestDelete.getLineNumber()) {
@@ -135,14 +127,9 @@ public class RecoveryProcessor {
                                 ins.getLineNumber(),
                                 ins.getCodeSnippet()
                         );
-                        flattenedScript.add(move);
-                        flattenedScript.remove(ins);
-                        flattenedScript.remove(bestDelete);
-                    } else {
-                        // dont need a move, literally the same line number.
-                        flattenedScript.remove(ins);
-                        flattenedScript.remove(bestDelete);
+                        flattenedOps.add(move);
                     }
+                    // else dont need a move, literally the same line number.
                 } else {
                     // TODO: could properly calculate syntax difference for Update, not sure if that criritical howerver.
 
@@ -154,18 +141,30 @@ public class RecoveryProcessor {
                             ins.getCodeSnippet(),
                             new SyntaxDifference("flatten") // this just provides an indicator that this is a flattened operation
                     );
-                    flattenedScript.add(update);
-
-                    // 'squash' the inserts and delete operations into the new update.
-                    flattenedScript.remove(ins);
-                    flattenedScript.remove(bestDelete);
-//                }
+                    flattenedOps.add(update);
                 }
             } else {
                 // conditions not met so retain this insert operation. can remove this else but just for clarity at this stage.
             }
         }
 
+        // not inplace, think this is better design choice, todo change cleanupduplciates to be same
+        // drops the first occurrence of a squashed op per squash, as List.remove would, in a single pass
+        List<EditOperation> flattenedScript = new ArrayList<>(editScript.size() + flattenedOps.size());
+        for (EditOperation op : editScript) {
+            Integer toDrop = squashed.get(op);
+            if (toDrop != null) {
+                if (toDrop == 1) {
+                    squashed.remove(op);
+                } else {
+                    squashed.put(op, toDrop - 1);
+                }
+                continue;
+            }
+            flattenedScript.add(op);
+        }
+        flattenedScript.addAll(flattenedOps);
+
         // cleanup, add inserts and deletes we haevnt resolved.
         for (Insert ins : inserts) {
             if (!usedInserts.contains(ins)) {
@@ -352,41 +351,12 @@ public class RecoveryProcessor {
         int maxLength = Math.max(norm1.length(), norm2.length());
         if (maxLength == 0) return 1.0;
 
-        int distance = levenshteinDistance(norm1, norm2);
+        int distance = LevenshteinDistance.distance(norm1, norm2);
         return 1.0 - (double) distance / maxLength;
     }
 
-    private static String normalizeCode(String code) {
+    static String normalizeCode(String code) {
         // rm whitespace and comments
         return code.replaceAll("\\s+", "").replaceAll("//.*|/\\*((.|\\n)(?!=*/))+\\*/", "");
     }
-
-
-    private static int levenshteinDistance(String s, String t) {
-        // TODO: refactor into Similartiy file alongside JaroWinkely
-        int m = s.length();
-        int n = t.length();
-
-        int[][] d = new int[m + 1][n + 1];
-
-        for (int i = 0; i <= m; i++) {
-            d[i][0] = i;
-        }
-        for (int j = 0; j <= n; j++) {
-            d[0][j] = j;
-        }
-
-        for (int i = 1; i <= m; i++) {
-            char s_i = s.charAt(i - 1);
-            for (int j = 1; j <= n; j++) {
-                char t_j = t.charAt(j - 1);
-                int cost = (s_i == t_j) ? 0 : 1;
-                d[i][j] = Math.min(
-                        Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1),
-                        d[i - 1][j - 1] + cost
-                );
-            }
-        }
-        return d[m][n];
-    }
 }
@@ -255,7 +255,10 @@ public class SignatureDiffGenerator {
                     double deleteCost = dp[i - 1][j] + 1;
                     double insertCost = dp[i][j - 1] + 1;
 
-                    double similarity = JaroWinklerSimilarity.jaroSimilarity(oldStr, newStr);
+                    // an update is only taken if strictly cheaper than both, so the similarity only matters above
+                    // the level that makes it so (less a little slack against rounding)
+                    double minSimilarity = 1.0 - (Math.min(deleteCost, insertCost) - dp[i - 1][j - 1]) - 1e-9;
+                    double similarity = JaroWinklerSimilarity.jaroSimilarity(oldStr, newStr, minSimilarity);
                     double updateCost = dp[i - 1][j - 1] + (1.0 - similarity);
 
                     if (deleteCost <= insertCost && deleteCost <= updateCost) {
@@ -13,6 +13,12 @@ public abstract class EditOperation {
         return node;
     }
 
+    // drops the references into the pdg (and so the soot body), for operations kept until the whole diff is done.
+    // getNode() returns null afterwards, what is serialised is unaffected
+    public void detach() {
+        node = null;
+    }
+
     public abstract String getName();
 
     @Override
@@ -42,6 +42,13 @@ public class SyntaxDifference {
         this.message = message;
     }
 
+    // as read back from a serialised edit script, which only holds the message and jimple
+    public SyntaxDifference(String message, String oldJimpleCode, String newJimpleCode) {
+        this.message = message;
+        this.oldJimpleCode = oldJimpleCode;
+        this.newJimpleCode = newJimpleCode;
+    }
+
     public String getMessage() {
         return message;
     }
@@ -70,11 +77,18 @@ public class SyntaxDifference {
         return newJimpleCode;
     }
 
+    // drops the units, keeping the lines and code taken from them
+    public void detach() {
+        oldUnit = null;
+        newUnit = null;
+    }
+
     @Override
     public String toString() {
         if (message != null) {
             return message;
-        } else if (oldUnit != null || newUnit != null) {
+        } else if (oldJimpleCode != null || newJimpleCode != null) {
+            // i.e. a unit difference, the jimple is kept when the units are detached
             return String.format(
                     "Unit Difference at lines %d -> %d:\nOld Code: '%s'\nNew Code: '%s'\nOld Jimple: '%s'\nNew Jimple: '%s'",
                     oldLineNumber, newLineNumber,
@@ -45,6 +45,14 @@ public class Update extends EditOperation {
         return syntaxDifference;
     }
 
+    @Override
+    public void detach() {
+        super.detach();
+        if (syntaxDifference != null) {
+            syntaxDifference.detach();
+        }
+    }
+
     @Override
     public String getName() {
         return "Update";
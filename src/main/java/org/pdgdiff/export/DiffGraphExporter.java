@@ -4,6 +4,8 @@ import org.pdgdiff.graph.GraphGenerator;
 import org.pdgdiff.graph.PDG;
 import org.pdgdiff.matching.GraphMapping;
 import org.pdgdiff.matching.NodeMapping;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import soot.Unit;
 import soot.tagkit.LineNumberTag;
 import soot.toolkits.graph.pdg.PDGNode;
@@ -17,6 +19,8 @@ import java.util.stream.Collectors;
 
 public class DiffGraphExporter {
 
+    private static final Logger logger = LoggerFactory.getLogger(DiffGraphExporter.class);
+
     /**
      * This generates a singular 'delta' dot file, i.e. a way of representing the changes that have happeend on one graph and
      * taken it to another graph
@@ -39,11 +43,11 @@ public class DiffGraphExporter {
             PDG dstPDG = entry.getValue();
             NodeMapping nodeMapping = graphMapping.getNodeMapping(srcPDG);
 
-            String srcMethod = (srcPDG.getCFG() != null)
-                    ? srcPDG.getCFG().getBody().getMethod().getName()
+            String srcMethod = (srcPDG.getMethod() != null)
+                    ? srcPDG.getMethod().getName()
                     : "UnknownSrcMethod";
-            String dstMethod = (dstPDG.getCFG() != null)
-                    ? dstPDG.getCFG().getBody().getMethod().getName()
+            String dstMethod = (dstPDG.getMethod() != null)
+                    ? dstPDG.getMethod().getName()
                     : "UnknownDstMethod";
 
             String dotFileName = "diff_" + srcMethod + "_TO_" + dstMethod + ".dot";
@@ -199,9 +203,9 @@ public class DiffGraphExporter {
             }
 
             writer.println("}");
-            System.out.println("Created PDG diff: " + outputDotFile.getAbsolutePath());
+            logger.debug("Created PDG diff: {}", outputDotFile.getAbsolutePath());
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.error("Failed to export PDG diff to {}", outputDotFile, e);
         }
     }
 
@@ -2,14 +2,23 @@ package org.pdgdiff.export;
 
 import org.pdgdiff.edit.model.EditOperation;
 import org.pdgdiff.graph.PDG;
+import org.pdgdiff.io.BinaryOperationFormatter;
+import org.pdgdiff.io.JsonOperationFormatter;
 import org.pdgdiff.io.JsonOperationSerializer;
 import org.pdgdiff.io.OperationSerializer;
+import org.pdgdiff.io.OperationStreamWriter;
+import org.pdgdiff.matching.DiffContext;
 import org.pdgdiff.matching.GraphMapping;
 import org.pdgdiff.matching.StrategySettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -20,33 +29,38 @@ import static org.pdgdiff.export.ExportUtils.generateHash;
 
 public class EditScriptExporter {
 
+    private static final Logger logger = LoggerFactory.getLogger(EditScriptExporter.class);
+
     private static final int MAX_FILENAME_LENGTH = 255; // probably max, otherwise sometimes have issues with OS FS
 
 
     public static void exportEditScript(List<EditOperation> editScript, String method1Signature, String method2Signature, StrategySettings strategySettings) {
+        exportEditScript(editScript, method1Signature, method2Signature, strategySettings, DiffContext.DEFAULT_OUTPUT_DIR, false);
+    }
+
+    public static void exportEditScript(List<EditOperation> editScript, String method1Signature, String method2Signature,
+                                        StrategySettings strategySettings, String outputDir, boolean compact) {
         // Sanitize method names for use in filenames
         String method1Safe = method1Signature.replaceAll("[^a-zA-Z0-9\\.\\-]", "_");
         String method2Safe = method2Signature.replaceAll("[^a-zA-Z0-9\\.\\-]", "_");
 
-        String outputDir = "out/";
         String filename = outputDir + "editScript_" + method1Safe + "_to_" + method2Safe + ".json";
 
         // check if too long, otherwise will fail
         if (filename.length() > MAX_FILENAME_LENGTH) {
             String method1Abbrev = generateHash(method1Safe);
-            System.out.println("Method name too big to save to file, hashed;" + method1Safe + " -> " + method1Abbrev);
+            logger.debug("Method name too big to save to file, hashed;{} -> {}", method1Safe, method1Abbrev);
             String method2Abbrev = generateHash(method2Safe);
-            System.out.println("Method name too big to save to file, hashed;" + method2Safe + " -> " + method2Abbrev);
+            logger.debug("Method name too big to save to file, hashed;{} -> {}", method2Safe, method2Abbrev);
             filename = outputDir + "editScript_" + method1Abbrev + "_to_" + method2Abbrev + "_concat.json";
         }
 
-        try (Writer writer = new FileWriter(filename)) {
-            OperationSerializer serializer = new JsonOperationSerializer(editScript, strategySettings);
+        try (Writer writer = new BufferedWriter(new FileWriter(filename))) {
+            OperationSerializer serializer = new JsonOperationSerializer(editScript, strategySettings, compact);
             serializer.writeTo(writer);
-            System.out.println("Edit script exported to: " + filename);
+            logger.debug("Edit script exported to: {}", filename);
         } catch (Exception e) {
-            System.err.println("Failed to export edit script to " + filename);
-            e.printStackTrace();
+            logger.error("Failed to export edit script to {}", filename, e);
         }
     }
 
@@ -60,11 +74,11 @@ public class EditScriptExporter {
 
             graphMapping.getGraphMapping().forEach((srcPDG, dstPDG) -> {
                 try {
-                    String srcMethodSignature = srcPDG.getCFG().getBody().getMethod().getSignature();
-                    String dstMethodSignature = dstPDG.getCFG().getBody().getMethod().getSignature();
+                    String srcMethodSignature = srcPDG.getMethod().getSignature();
+                    String dstMethodSignature = dstPDG.getMethod().getSignature();
                     writer.write(srcMethodSignature + " -> " + dstMethodSignature + "\n");
                 } catch (IOException e) {
-                    System.err.println("Error writing mapping to file: " + e.getMessage());
+                    logger.error("Error writing mapping to file: {}", e.getMessage());
                 }
             });
 
@@ -73,10 +87,10 @@ public class EditScriptExporter {
                     .filter(pdg -> !graphMapping.getGraphMapping().containsKey(pdg))
                     .forEach(pdg -> {
                         try {
-                            String methodSignature = pdg.getCFG().getBody().getMethod().getSignature();
+                            String methodSignature = pdg.getMethod().getSignature();
                             writer.write(methodSignature + "\n");
                         } catch (IOException e) {
-                            System.err.println("Error writing unmatched source graph to file: " + e.getMessage());
+                            logger.error("Error writing unmatched source graph to file: {}", e.getMessage());
                         }
                     });
 
@@ -85,41 +99,54 @@ public class EditScriptExporter {
                     .filter(pdg -> !graphMapping.getGraphMapping().containsValue(pdg))
                     .forEach(pdg -> {
                         try {
-                            String methodSignature = pdg.getCFG().getBody().getMethod().getSignature();
+                            String methodSignature = pdg.getMethod().getSignature();
                             writer.write(methodSignature + "\n");
                         } catch (IOException e) {
-                            System.err.println("Error writing unmatched destination graph to file: " + e.getMessage());
+                            logger.error("Error writing unmatched destination graph to file: {}", e.getMessage());
                         }
                     });
 
-            System.out.println("Graph mappings exported to: " + filename);
+            logger.debug("Graph mappings exported to: {}", filename);
         } catch (IOException e) {
-            System.err.println("Failed to export graph mappings to " + filename);
+            logger.error("Failed to export graph mappings to {}", filename, e);
         }
     }
 
 
 
-    public static void writeAggregatedEditScript(List<EditOperation> aggregatedEditScripts, String filename, StrategySettings strategySettings) {
-        try (Writer writer = new FileWriter(filename)) {
-            OperationSerializer serializer = new JsonOperationSerializer(aggregatedEditScripts, strategySettings);
-            serializer.writeTo(writer);
-            System.out.println("Edit script exported to: " + filename);
+    /**
+     * opens the aggregated edit script (diff.json) for writing as the method pairs' scripts come in, see
+     * OperationStreamWriter. the settings are written up front.
+     */
+    public static OperationStreamWriter openAggregatedEditScript(String filename, StrategySettings strategySettings) throws Exception {
+        Writer writer = new BufferedWriter(new FileWriter(filename));
+        try {
+            return new OperationStreamWriter(new JsonOperationFormatter(writer, strategySettings.isCompactOutput()), strategySettings);
+        } catch (Exception e) {
+            writer.close();
+            throw e;
+        }
+    }
+
+    // as openAggregatedEditScript, in BinaryOperationFormatter's format
+    public static OperationStreamWriter openBinaryEditScript(String filename, StrategySettings strategySettings) throws Exception {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(filename));
+        try {
+            return new OperationStreamWriter(new BinaryOperationFormatter(out), strategySettings);
         } catch (Exception e) {
-            System.err.println("Failed to export edit script to " + filename);
-            e.printStackTrace();
+            out.close();
+            throw e;
         }
     }
 
-    public static void copyResultsToOutput(String beforeSourceDir, String afterSourceDir) {
+    public static void copyResultsToOutput(String beforeSourceDir, String afterSourceDir, String diffOutputPath) {
         try {
             Files.copy(Paths.get(beforeSourceDir), Paths.get("py-visualise/testclasses/TestFileBefore.java"), StandardCopyOption.REPLACE_EXISTING);
             Files.copy(Paths.get(afterSourceDir), Paths.get("py-visualise/testclasses/TestFileAfter.java"), StandardCopyOption.REPLACE_EXISTING);
-            Files.copy(Paths.get("out/diff.json"), Paths.get("py-visualise/out/diff.json"), StandardCopyOption.REPLACE_EXISTING);
-            System.out.println(" --> results copied to python visualiser");
+            Files.copy(Paths.get(diffOutputPath), Paths.get("py-visualise/out/diff.json"), StandardCopyOption.REPLACE_EXISTING);
+            logger.info(" --> results copied to python visualiser");
         } catch (IOException e) {
-            System.err.println("An error occurred while copying the source files to the output folder: " + e.getMessage());
-            e.printStackTrace();
+            logger.error("An error occurred while copying the source files to the output folder: {}", e.getMessage(), e);
 
         }
     }
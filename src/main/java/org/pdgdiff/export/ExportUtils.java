@@ -1,11 +1,16 @@
 package org.pdgdiff.export;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 public class ExportUtils {
 
+    private static final Logger logger = LoggerFactory.getLogger(ExportUtils.class);
+
     public static String generateHash(String methodName) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
@@ -16,7 +21,7 @@ public class ExportUtils {
             }
             return hexString.toString();
         } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
+            logger.error("SHA-256 not available", e);
             return methodName + ": failed to generate hash for method name!";
         }
     }
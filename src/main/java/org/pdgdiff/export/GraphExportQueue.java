@@ -0,0 +1,103 @@
+package org.pdgdiff.export;
+
+import org.pdgdiff.util.SootContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * writes the debugging graphs of a diff (the PDG dot/txt files and the delta graphs) on a background thread, off the
+ * diff's critical path. exports are written one at a time in the order they were submitted, so files appended to or
+ * overwritten by several exports end up as if written directly.
+ *
+ * the queue is bounded: a diff producing graphs faster than they can be written waits for room rather than keeping
+ * them all (and the pdgs they refer to) in memory. close() waits for everything submitted to be written.
+ */
+public class GraphExportQueue implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(GraphExportQueue.class);
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    // stands for the end of the queue, taken by the writer after everything submitted before close()
+    private static final Runnable END = () -> {
+    };
+
+    private final BlockingQueue<Runnable> queue;
+    private final Thread writer;
+    private volatile boolean closed = false;
+
+    public GraphExportQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public GraphExportQueue(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::writeAll, "pdgdiff-graph-export");
+        // an abandoned diff's writer must not keep the jvm alive
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * queues an export, waiting for room if the queue is full. it runs with the SootContext active on the calling
+     * thread, as rendering units can reach into the scene. exports submitted after close() are dropped
+     */
+    public void submit(Runnable export) throws InterruptedException {
+        SootContext sootContext = SootContext.active();
+        Runnable task = () -> {
+            sootContext.activate();
+            try {
+                export.run();
+            } finally {
+                SootContext.release();
+            }
+        };
+        // polling, so a late submit (from a task of a failed diff still running) cannot wait forever on a queue no
+        // writer takes from anymore
+        while (!closed) {
+            if (queue.offer(task, 100, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+        logger.debug("Graph export queue closed, dropping export");
+    }
+
+    /**
+     * waits for every export submitted so far to be written, then stops the writer. only the first call does anything
+     */
+    @Override
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        queue.put(END);
+        writer.join();
+    }
+
+    private void writeAll() {
+        while (true) {
+            Runnable export;
+            try {
+                export = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (export == END) {
+                return;
+            }
+            try {
+                export.run();
+            } catch (RuntimeException e) {
+                // a graph that cannot be written is only a missing debugging artifact, the rest still are
+                logger.error("Failed to export graph", e);
+            }
+        }
+    }
+}
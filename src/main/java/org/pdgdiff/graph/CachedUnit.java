@@ -0,0 +1,76 @@
+package org.pdgdiff.graph;
+
+import soot.Unit;
+import soot.UnitPrinter;
+import soot.jimple.AssignStmt;
+import soot.jimple.IfStmt;
+import soot.jimple.SwitchStmt;
+import soot.jimple.internal.AbstractStmt;
+import soot.tagkit.LineNumberTag;
+
+/**
+ * Stand-in for a Jimple statement of a PDG loaded from the PDGCache. it keeps what the differencing reads from a unit,
+ * i.e. its Jimple text, its source line (as a LineNumberTag) and what kind of statement it was, without Soot having
+ * to build the method body again. it cannot be used for any further Soot analysis.
+ */
+public class CachedUnit extends AbstractStmt {
+
+    // the statement kinds NodeFeasibility distinguishes
+    public enum Kind {
+        ASSIGN,
+        IF,
+        SWITCH,
+        OTHER;
+
+        public static Kind of(Unit unit) {
+            if (unit instanceof CachedUnit) return ((CachedUnit) unit).getKind();
+            if (unit instanceof AssignStmt) return ASSIGN;
+            if (unit instanceof IfStmt) return IF;
+            if (unit instanceof SwitchStmt) return SWITCH;
+            return OTHER;
+        }
+    }
+
+    private final String jimple;
+    private final int lineNumber;
+    private final Kind kind;
+
+    public CachedUnit(String jimple, int lineNumber, Kind kind) {
+        this.jimple = jimple;
+        this.lineNumber = lineNumber;
+        this.kind = kind;
+        if (lineNumber >= 0) {
+            addTag(new LineNumberTag(lineNumber));
+        }
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    @Override
+    public Object clone() {
+        return new CachedUnit(jimple, lineNumber, kind);
+    }
+
+    // control flow is not kept, the cfg is never rebuilt from cached units
+    @Override
+    public boolean fallsThrough() {
+        return true;
+    }
+
+    @Override
+    public boolean branches() {
+        return false;
+    }
+
+    @Override
+    public void toString(UnitPrinter up) {
+        up.literal(jimple);
+    }
+
+    @Override
+    public String toString() {
+        return jimple;
+    }
+}
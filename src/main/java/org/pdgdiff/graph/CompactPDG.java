@@ -0,0 +1,325 @@
+package org.pdgdiff.graph;
+
+import soot.toolkits.graph.pdg.PDGNode;
+
+import java.util.*;
+
+/**
+ * Frozen, integer-indexed snapshot of a PDG. Nodes are dense ints, edges are held in CSR arrays (sorted per row) with
+ * a per-edge bitmask for the dependency kind, and small graphs additionally get dense adjacency bitsets so that edge
+ * queries are a single bit test. This is built once from a constructed PDG (see PDG.getCompactPDG()) and used by the
+ * matchers in place of hashing PDGNodes and probing the label lists of HashMutableEdgeLabelledDirectedGraph.
+ *
+ * Node order: indices [0, reachableCount) are exactly the nodes returned by GraphTraversal.collectNodesBFS, in the
+ * same order, the remaining indices are nodes not reachable from the start node (in PDG iteration order).
+ */
+public final class CompactPDG {
+
+    public static final byte CONTROL = 1;
+    public static final byte DATA = 2;
+
+    // dense bitsets are only kept when n*n bits stays within this bound (512KB per edge kind)
+    private static final long DENSE_BITS_LIMIT = 1L << 22;
+
+    private final PDGNode[] nodes;
+    private final Map<PDGNode, Integer> indexOf;
+    private final int reachableCount;
+
+    // outgoing edges, targets sorted ascending per row, kinds aligned with targets
+    private final int[] succOffsets;
+    private final int[] succTargets;
+    private final byte[] succKinds;
+
+    // incoming edges, same layout as above
+    private final int[] predOffsets;
+    private final int[] predTargets;
+    private final byte[] predKinds;
+
+    // dependents followed by back-dependents of each node (as PDGNode exposes them), insertion order, no duplicates
+    private final int[] neighbourOffsets;
+    private final int[] neighbourTargets;
+
+    // symmetric closure of the neighbour relation, sorted per row, used for adjacency checks
+    private final int[] adjacentOffsets;
+    private final int[] adjacentTargets;
+
+    // row-major n*n adjacency bitsets, null for large graphs
+    private final long[] controlBits;
+    private final long[] dataBits;
+
+    private final int[] attribs;
+    private final int controlEdgeCount;
+    private final int dataEdgeCount;
+
+    private CompactPDG(PDG pdg) {
+        List<PDGNode> bfs = pdg.getNodesBFS();
+        this.reachableCount = bfs.size();
+
+        // usin IdentityHashMap because PDGNode doesnt implement equals and hashCode. starts from the pdg's cached bfs
+        // index, extended with the unreachable nodes
+        this.indexOf = new IdentityHashMap<>(pdg.getBFSIndex());
+        List<PDGNode> ordered = new ArrayList<>(bfs);
+        for (PDGNode node : pdg) {
+            if (!indexOf.containsKey(node)) {
+                indexOf.put(node, ordered.size());
+                ordered.add(node);
+            }
+        }
+        this.nodes = ordered.toArray(new PDGNode[0]);
+        int n = nodes.length;
+
+        this.attribs = new int[n];
+        for (int i = 0; i < n; i++) {
+            attribs[i] = nodes[i].getAttrib().ordinal();
+        }
+
+        // outgoing edges from the labelled edge graph
+        this.succOffsets = new int[n + 1];
+        List<int[]> rows = new ArrayList<>(n);
+        int edgeCount = 0;
+        int ctrl = 0;
+        int data = 0;
+        for (int i = 0; i < n; i++) {
+            List<PDGNode> succs = pdg.containsNode(nodes[i]) ? pdg.getSuccsOf(nodes[i]) : Collections.<PDGNode>emptyList();
+            int[] row = new int[succs.size()];
+            int k = 0;
+            for (PDGNode succ : succs) {
+                Integer j = indexOf.get(succ);
+                if (j != null) {
+                    row[k++] = j;
+                }
+            }
+            row = Arrays.copyOf(row, k);
+            Arrays.sort(row);
+            rows.add(row);
+            edgeCount += row.length;
+        }
+        this.succTargets = new int[edgeCount];
+        this.succKinds = new byte[edgeCount];
+        int pos = 0;
+        for (int i = 0; i < n; i++) {
+            succOffsets[i] = pos;
+            for (int j : rows.get(i)) {
+                byte kind = 0;
+                if (pdg.hasControlEdge(nodes[i], nodes[j])) {
+                    kind |= CONTROL;
+                    ctrl++;
+                }
+                if (pdg.hasDataEdge(nodes[i], nodes[j])) {
+                    kind |= DATA;
+                    data++;
+                }
+                succTargets[pos] = j;
+                succKinds[pos] = kind;
+                pos++;
+            }
+        }
+        succOffsets[n] = pos;
+        this.controlEdgeCount = ctrl;
+        this.dataEdgeCount = data;
+
+        // incoming edges are the transpose, filled in ascending source order so rows come out sorted
+        this.predOffsets = new int[n + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            predOffsets[succTargets[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            predOffsets[i + 1] += predOffsets[i];
+        }
+        this.predTargets = new int[edgeCount];
+        this.predKinds = new byte[edgeCount];
+        int[] fill = Arrays.copyOf(predOffsets, n);
+        for (int i = 0; i < n; i++) {
+            for (int e = succOffsets[i]; e < succOffsets[i + 1]; e++) {
+                int slot = fill[succTargets[e]]++;
+                predTargets[slot] = i;
+                predKinds[slot] = succKinds[e];
+            }
+        }
+
+        // neighbours as seen through PDGNode.getDependents / getBackDependets
+        this.neighbourOffsets = new int[n + 1];
+        int[][] neighbourRows = new int[n][];
+        int neighbourCount = 0;
+        for (int i = 0; i < n; i++) {
+            LinkedHashSet<Integer> seen = new LinkedHashSet<>();
+            for (PDGNode dep : nodes[i].getDependents()) {
+                Integer j = indexOf.get(dep);
+                if (j != null) seen.add(j);
+            }
+            for (PDGNode dep : nodes[i].getBackDependets()) {
+                Integer j = indexOf.get(dep);
+                if (j != null) seen.add(j);
+            }
+            int[] row = new int[seen.size()];
+            int k = 0;
+            for (int j : seen) {
+                row[k++] = j;
+            }
+            neighbourRows[i] = row;
+            neighbourCount += row.length;
+        }
+        this.neighbourTargets = new int[neighbourCount];
+        pos = 0;
+        for (int i = 0; i < n; i++) {
+            neighbourOffsets[i] = pos;
+            System.arraycopy(neighbourRows[i], 0, neighbourTargets, pos, neighbourRows[i].length);
+            pos += neighbourRows[i].length;
+        }
+        neighbourOffsets[n] = pos;
+
+        // symmetric adjacency, sorted and deduplicated
+        List<Set<Integer>> adjacent = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            adjacent.add(new TreeSet<Integer>());
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j : neighbourRows[i]) {
+                adjacent.get(i).add(j);
+                adjacent.get(j).add(i);
+            }
+        }
+        this.adjacentOffsets = new int[n + 1];
+        int adjacentCount = 0;
+        for (Set<Integer> row : adjacent) {
+            adjacentCount += row.size();
+        }
+        this.adjacentTargets = new int[adjacentCount];
+        pos = 0;
+        for (int i = 0; i < n; i++) {
+            adjacentOffsets[i] = pos;
+            for (int j : adjacent.get(i)) {
+                adjacentTargets[pos++] = j;
+            }
+        }
+        adjacentOffsets[n] = pos;
+
+        if ((long) n * n <= DENSE_BITS_LIMIT) {
+            int words = (int) (((long) n * n + 63) >>> 6);
+            this.controlBits = new long[words];
+            this.dataBits = new long[words];
+            for (int i = 0; i < n; i++) {
+                for (int e = succOffsets[i]; e < succOffsets[i + 1]; e++) {
+                    long bit = (long) i * n + succTargets[e];
+                    if ((succKinds[e] & CONTROL) != 0) controlBits[(int) (bit >>> 6)] |= 1L << bit;
+                    if ((succKinds[e] & DATA) != 0) dataBits[(int) (bit >>> 6)] |= 1L << bit;
+                }
+            }
+        } else {
+            this.controlBits = null;
+            this.dataBits = null;
+        }
+    }
+
+    public static CompactPDG of(PDG pdg) {
+        return new CompactPDG(pdg);
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    // number of nodes reachable from the start node, these occupy indices [0, reachableCount)
+    public int getReachableCount() {
+        return reachableCount;
+    }
+
+    public PDGNode getNode(int i) {
+        return nodes[i];
+    }
+
+    // returns -1 for nodes that are not part of this graph
+    public int indexOf(PDGNode node) {
+        Integer i = indexOf.get(node);
+        return i == null ? -1 : i;
+    }
+
+    public int getAttrib(int i) {
+        return attribs[i];
+    }
+
+    public int getControlEdgeCount() {
+        return controlEdgeCount;
+    }
+
+    public int getDataEdgeCount() {
+        return dataEdgeCount;
+    }
+
+    public boolean hasControlEdge(int src, int tgt) {
+        return hasEdge(src, tgt, CONTROL, controlBits);
+    }
+
+    public boolean hasDataEdge(int src, int tgt) {
+        return hasEdge(src, tgt, DATA, dataBits);
+    }
+
+    // an edge of either dependency type
+    public boolean hasAnyEdge(int src, int tgt) {
+        return edgeKind(src, tgt) != 0;
+    }
+
+    // bitmask of CONTROL / DATA for the edge src -> tgt, 0 if there is none
+    public byte edgeKind(int src, int tgt) {
+        int e = Arrays.binarySearch(succTargets, succOffsets[src], succOffsets[src + 1], tgt);
+        return e >= 0 ? succKinds[e] : 0;
+    }
+
+    // true if either node lists the other as a dependent or back-dependent
+    public boolean areAdjacent(int a, int b) {
+        return Arrays.binarySearch(adjacentTargets, adjacentOffsets[a], adjacentOffsets[a + 1], b) >= 0;
+    }
+
+    // CSR accessors, iterate with: for (int e = succStart(i); e < succEnd(i); e++) { succTarget(e) ... }
+    public int succStart(int i) {
+        return succOffsets[i];
+    }
+
+    public int succEnd(int i) {
+        return succOffsets[i + 1];
+    }
+
+    public int succTarget(int e) {
+        return succTargets[e];
+    }
+
+    public byte succKind(int e) {
+        return succKinds[e];
+    }
+
+    public int predStart(int i) {
+        return predOffsets[i];
+    }
+
+    public int predEnd(int i) {
+        return predOffsets[i + 1];
+    }
+
+    public int predTarget(int e) {
+        return predTargets[e];
+    }
+
+    public byte predKind(int e) {
+        return predKinds[e];
+    }
+
+    public int neighbourStart(int i) {
+        return neighbourOffsets[i];
+    }
+
+    public int neighbourEnd(int i) {
+        return neighbourOffsets[i + 1];
+    }
+
+    public int neighbourTarget(int e) {
+        return neighbourTargets[e];
+    }
+
+    private boolean hasEdge(int src, int tgt, byte kind, long[] bits) {
+        if (bits != null) {
+            long bit = (long) src * nodes.length + tgt;
+            return (bits[(int) (bit >>> 6)] & (1L << bit)) != 0;
+        }
+        return (edgeKind(src, tgt) & kind) != 0;
+    }
+}
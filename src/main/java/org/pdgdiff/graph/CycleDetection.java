@@ -1,5 +1,7 @@
 package org.pdgdiff.graph;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import soot.Unit;
 import soot.tagkit.LineNumberTag;
 import soot.tagkit.Tag;
@@ -10,33 +12,33 @@ import java.util.*;
 // implements Tarjans algorithm for detection of strongly connected components
 public class CycleDetection {
 
-    private static boolean debug = true;
-    private static int index = 0;
-    // usin IdentityHashMap because PDGNode doesnt implement equals and hashCode
-    private static Map<PDGNode, Integer> indices = new IdentityHashMap<>();
-    private static Map<PDGNode, Integer> lowLinks = new IdentityHashMap<>();
-    private static Deque<PDGNode> stack = new ArrayDeque<>();
-    private static Set<Set<PDGNode>> stronglyConnectedComponents = new HashSet<>();
+    // the cycles found are logged at debug
+    private static final Logger logger = LoggerFactory.getLogger(CycleDetection.class);
 
-    public static void setLogging(boolean enable) {
-        debug = enable;
+    // state of one run of the algorithm, a fresh instance per hasCycle call so concurrent calls share nothing
+    private final PDG pdg;
+    private int index = 0;
+    // usin IdentityHashMap because PDGNode doesnt implement equals and hashCode
+    private final Map<PDGNode, Integer> indices = new IdentityHashMap<>();
+    private final Map<PDGNode, Integer> lowLinks = new IdentityHashMap<>();
+    private final Deque<PDGNode> stack = new ArrayDeque<>();
+    private final Set<PDGNode> onStack = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<Set<PDGNode>> stronglyConnectedComponents = new HashSet<>();
+
+    private CycleDetection(PDG pdg) {
+        this.pdg = pdg;
     }
 
     public static boolean hasCycle(PDG pdg) {
-        if (debug) System.out.println("[CycleDetection] Detecting cycles using Tarjan's Algorithm");
-
-        index = 0;
-        indices.clear();
-        lowLinks.clear();
-        stack.clear();
-        stronglyConnectedComponents.clear();
+        logger.debug("[CycleDetection] Detecting cycles using Tarjan's Algorithm");
 
+        CycleDetection tarjan = new CycleDetection(pdg);
         List<PDGNode> allNodes = GraphTraversal.collectNodesBFS(pdg);
 
         // tarjan's algorithm starting from each node
         for (PDGNode node : allNodes) {
-            if (!indices.containsKey(node)) {
-                strongConnect(node, pdg);
+            if (!tarjan.indices.containsKey(node)) {
+                tarjan.strongConnect(node);
             }
         }
 
@@ -45,7 +47,7 @@ public class CycleDetection {
         int maxCycleSize = 0;
         List<Set<PDGNode>> maxSizeSCCs = new ArrayList<>();
 
-        for (Set<PDGNode> scc : stronglyConnectedComponents) {
+        for (Set<PDGNode> scc : tarjan.stronglyConnectedComponents) {
             if (scc.size() > 1 || hasSelfLoop(scc, pdg)) {
                 hasCycle = true;
 
@@ -58,56 +60,43 @@ public class CycleDetection {
                     maxSizeSCCs.add(scc);
                 }
 
-                if (debug) {
-                    System.out.println("[CycleDetection] Cycle detected in SCC:");
-                    for (PDGNode node : scc) {
-                        int lineNumber = getLineNumberFromPDGNode(node);
-                        if (lineNumber != -1) {
-                            System.out.println("  Node: " + node + " at line " + lineNumber);
-                        } else {
-                            System.out.println("  Node: " + node + " (line number not available)");
-                        }
-                    }
+                if (logger.isDebugEnabled()) {
+                    logger.debug("[CycleDetection] Cycle detected in SCC:");
+                    logNodes(scc);
                 }
             }
         }
 
-        if (hasCycle && debug) {
-            System.out.println("[CycleDetection] Largest cycle size: " + maxCycleSize);
+        if (hasCycle && logger.isDebugEnabled()) {
+            logger.debug("[CycleDetection] Largest cycle size: {}", maxCycleSize);
             for (Set<PDGNode> scc : maxSizeSCCs) {
-                System.out.println("[CycleDetection] -> Largest cycle detected in this SCC:");
-                for (PDGNode node : scc) {
-                    int lineNumber = getLineNumberFromPDGNode(node);
-                    if (lineNumber != -1) {
-                        System.out.println("  Node: " + node + " at line " + lineNumber);
-                    } else {
-                        System.out.println("  Node: " + node + " (line number not available)");
-                    }
-                }
+                logger.debug("[CycleDetection] -> Largest cycle detected in this SCC:");
+                logNodes(scc);
             }
         }
 
-        if (!hasCycle && debug) {
-            System.out.println("[CycleDetection] No cycles detected in graph");
+        if (!hasCycle) {
+            logger.debug("[CycleDetection] No cycles detected in graph");
         }
 
         return hasCycle;
     }
 
     // gather SCCs
-    private static void strongConnect(PDGNode node, PDG pdg) {
+    private void strongConnect(PDGNode node) {
         indices.put(node, index);
         lowLinks.put(node, index);
         index++;
         stack.push(node);
+        onStack.add(node);
 
         List<PDGNode> successors = pdg.getSuccsOf(node);
 
         for (PDGNode dependent : successors) {
             if (!indices.containsKey(dependent)) {
-                strongConnect(dependent, pdg);
+                strongConnect(dependent);
                 lowLinks.put(node, Math.min(lowLinks.get(node), lowLinks.get(dependent)));
-            } else if (stack.contains(dependent)) {
+            } else if (onStack.contains(dependent)) {
                 lowLinks.put(node, Math.min(lowLinks.get(node), indices.get(dependent)));
             }
         }
@@ -118,12 +107,24 @@ public class CycleDetection {
             PDGNode w;
             do {
                 w = stack.pop();
+                onStack.remove(w);
                 scc.add(w);
             } while (w != node);
             stronglyConnectedComponents.add(scc);
         }
     }
 
+    private static void logNodes(Set<PDGNode> scc) {
+        for (PDGNode node : scc) {
+            int lineNumber = getLineNumberFromPDGNode(node);
+            if (lineNumber != -1) {
+                logger.debug("  Node: {} at line {}", node, lineNumber);
+            } else {
+                logger.debug("  Node: {} (line number not available)", node);
+            }
+        }
+    }
+
     private static boolean hasSelfLoop(Set<PDGNode> scc, PDG pdg) {
         for (PDGNode node : scc) {
             for (PDGNode succ : pdg.getSuccsOf(node)) {
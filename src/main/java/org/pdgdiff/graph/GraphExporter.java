@@ -1,7 +1,8 @@
 package org.pdgdiff.graph;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import soot.SootMethod;
-import soot.toolkits.graph.UnitGraph;
 import soot.toolkits.graph.pdg.PDGNode;
 
 import java.io.*;
@@ -11,12 +12,41 @@ import java.util.Set;
 
 public class GraphExporter {
 
-    public static void clearOutputFolder(String folderPath) {
+    private static final Logger logger = LoggerFactory.getLogger(GraphExporter.class);
+
+    // marks an output folder as one pdgdiff created, only those are ever cleared
+    public static final String OUTPUT_MARKER = ".pdgdiff-output";
+
+    /**
+     * creates the output folder, or clears the files of a previous run from it. only folders pdgdiff created (or found
+     * empty), i.e. holding its marker file, are cleared. any other folder is written into as it is, so pointing the
+     * output at an existing directory never deletes files pdgdiff did not write.
+     */
+    public static void prepareOutputFolder(String folderPath) {
         File outputFolder = new File(folderPath);
-        if (outputFolder.exists()) {
-            File[] files = outputFolder.listFiles();
-            if (files != null) {
-                for (File file : files) {
+        File marker = new File(outputFolder, OUTPUT_MARKER);
+        if (marker.isFile()) {
+            clearOutputFolder(outputFolder);
+            return;
+        }
+        String[] existing = outputFolder.list();
+        if (existing != null && existing.length > 0) {
+            logger.warn("Output folder {} was not created by pdgdiff, writing into it without clearing it", folderPath);
+            return;
+        }
+        outputFolder.mkdirs();
+        try {
+            marker.createNewFile();
+        } catch (IOException e) {
+            logger.warn("Could not mark output folder {}, it will not be cleared: {}", folderPath, e.getMessage());
+        }
+    }
+
+    private static void clearOutputFolder(File outputFolder) {
+        File[] files = outputFolder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.getName().equals(OUTPUT_MARKER)) {
                     file.delete();
                 }
             }
@@ -25,8 +55,7 @@ public class GraphExporter {
 
 
     public static void exportPDG(PDG pdg, String dotFileName, String txtFileName) throws IOException {
-        UnitGraph cfg = pdg.getCFG();
-        SootMethod method = (cfg != null) ? cfg.getBody().getMethod() : null;
+        SootMethod method = pdg.getMethod();
 
         exportPDGToDot(pdg, dotFileName);
 
@@ -86,10 +115,10 @@ public class GraphExporter {
             }
 
             writer.println("}");
-            System.out.println("PDG exported to DOT file: " + fileName);
+            logger.debug("PDG exported to DOT file: {}", fileName);
 
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.error("Failed to export PDG to {}", fileName, e);
         }
     }
 
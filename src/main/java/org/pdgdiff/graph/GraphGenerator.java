@@ -1,5 +1,7 @@
 package org.pdgdiff.graph;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import soot.Body;
 import soot.SootClass;
 import soot.SootMethod;
@@ -11,7 +13,12 @@ import soot.toolkits.scalar.SimpleLocalDefs;
 import soot.toolkits.scalar.SimpleLocalUses;
 import soot.toolkits.scalar.UnitValueBoxPair;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,6 +28,8 @@ import java.util.Map;
  */
 public class GraphGenerator {
 
+    private static final Logger logger = LoggerFactory.getLogger(GraphGenerator.class);
+
     // enum for dependency types
     public enum DependencyTypes {
         CONTROL_DEPENDENCY,
@@ -29,9 +38,17 @@ public class GraphGenerator {
 
 
     public static PDG constructPdg(SootMethod method) {
-        Body body = method.retrieveActiveBody();
-        System.out.println("Generating PDG for method: " + method.getName());
-        UnitGraph eug = new ExceptionalUnitGraph(body);
+        return constructPdg(method, new ExceptionalUnitGraph(method.retrieveActiveBody()));
+    }
+
+    /**
+     * builds the PDG of a method from its cfg. building the ExceptionalUnitGraph goes through Soot's per scene
+     * singletons (throw analysis, ThrowableSet.Manager, the class hierarchy), which are not thread safe, so it must be
+     * done serially, while this part only reads the body and can run for several methods at once.
+     */
+    public static PDG constructPdg(SootMethod method, UnitGraph eug) {
+        Body body = eug.getBody();
+        logger.debug("Generating PDG for method: {}", method.getName());
 
         // soots api for creating postdominator tree
         MHGDominatorTree<Unit> postdominatorTree = new MHGDominatorTree(new MHGPostDominatorsFinder(eug));
@@ -41,6 +58,7 @@ public class GraphGenerator {
 
         PDG pdg = new PDG();
         pdg.setCFG(eug);
+        pdg.setMethod(method);
 
         SimpleLocalDefs definitions = new SimpleLocalDefs(eug);
         SimpleLocalUses uses = new SimpleLocalUses(body, definitions);
@@ -75,12 +93,12 @@ public class GraphGenerator {
                     pdg.addEdge(frontierNode, node, DependencyTypes.CONTROL_DEPENDENCY);
                     frontierNode.addDependent(node);
 
-                    System.out.println("Control Dependency: " + frontierNode + " -> " + node);
+                    logger.trace("Control Dependency: {} -> {}", frontierNode, node);
 
                     // preliminary but if fronteid is earlier or equal to 'unit', treat it as a backedge
                     if (isBackEdge(frontier, unit, unitOrder)) {
                         node.addBackDependent(frontierNode);
-                        System.out.println("  => (Back edge) " + node + " <- " + frontierNode);
+                        logger.trace("  => (Back edge) {} <- {}", node, frontierNode);
                     }
                 }
             }
@@ -98,19 +116,74 @@ public class GraphGenerator {
                     }
                     pdg.addEdge(node, useNode, DependencyTypes.DATA_DEPENDENCY);
                     node.addDependent(useNode);
-                    System.out.println("Data Dependency: " + node + " -> " + useNode);
+                    logger.trace("Data Dependency: {} -> {}", node, useNode);
 
                     // preliminary but if 'useUnit' is earlier or equal to 'unit', treat it as a backedge
                     if (isBackEdge(useUnit, unit, unitOrder)) {
                         useNode.addBackDependent(node);
-                        System.out.println("  => (Data Back edge) " + useNode + " <- " + node);
+                        logger.trace("  => (Data Back edge) {} <- {}", useNode, node);
                     }
                 }
             }
         }
+
+        List<PDGNode> nodesInUnitOrder = new ArrayList<>(allUnits.size());
+        for (Unit unit : allUnits) {
+            nodesInUnitOrder.add(unitToNodeMap.get(unit));
+        }
+        pdg.setFingerprint(computeFingerprint(pdg, nodesInUnitOrder), Collections.unmodifiableList(nodesInUnitOrder));
         return pdg;
     }
 
+    /**
+     * SHA-256 over the units (text, attribute) in body order, each followed by its outgoing edges as (target position,
+     * dependency type) sorted. unchanged methods hash the same no matter which locals/objects the two Soot runs
+     * created, so identical hashes mean the bodies are the same node for node. line numbers are left out, so a method
+     * that only moved (lines added or removed above it) still hashes the same, GraphMatcher tells the two apart.
+     */
+    private static String computeFingerprint(PDG pdg, List<PDGNode> nodesInUnitOrder) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        Map<PDGNode, Integer> position = new HashMap<>();
+        for (int i = 0; i < nodesInUnitOrder.size(); i++) {
+            position.put(nodesInUnitOrder.get(i), i);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (PDGNode node : nodesInUnitOrder) {
+            Unit unit = (Unit) node.getNode();
+            sb.setLength(0);
+            sb.append(unit).append('\0')
+                    .append(node.getAttrib().ordinal()).append('\0');
+
+            List<PDGNode> succs = pdg.getSuccsOf(node);
+            long[] edges = new long[succs.size() * DependencyTypes.values().length];
+            int k = 0;
+            for (PDGNode succ : succs) {
+                for (DependencyTypes label : pdg.getLabelsForEdges(node, succ)) {
+                    edges[k++] = ((long) position.get(succ) << 8) | label.ordinal();
+                }
+            }
+            edges = Arrays.copyOf(edges, k);
+            Arrays.sort(edges);
+            for (long edge : edges) {
+                sb.append(edge >>> 8).append(':').append(edge & 0xff).append(',');
+            }
+            sb.append('\n');
+            digest.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
     private static boolean isBackEdge(Unit frontier, Unit unit, Map<Unit, Integer> orderMap) {
         // return true if 'frontier' is same or earlier in the ordering => likely a backward/loop edge.
         return orderMap.get(frontier) <= orderMap.get(unit);
@@ -1,8 +1,10 @@
 package org.pdgdiff.graph;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import soot.toolkits.graph.pdg.PDGNode;
 
-import java.util.*;
+import java.util.List;
 
 /**
  * this class is used to traverse the graph using bfs and collect all nodes. This acts as a helper function for other
@@ -11,53 +13,28 @@ import java.util.*;
  */
 public class GraphTraversal {
 
-    private static boolean debug = false;
-
-    public static void setLogging(boolean enable) {
-        debug = enable;
-    }
+    // traversal steps are logged at trace
+    private static final Logger logger = LoggerFactory.getLogger(GraphTraversal.class);
 
+    /**
+     * the nodes reachable from the start node in bfs order. cached on the pdg (see PDG.getNodesBFS), so repeated calls
+     * are cheap, the list is unmodifiable.
+     */
     public static List<PDGNode> collectNodesBFS(PDG pdg) {
-        if (debug) System.out.println("[BFS] Traversing graph");
-
-        PDGNode start_node = pdg.getStartNode();
-        List<PDGNode> nodeList = new ArrayList<>();
-
-        if (start_node == null) {
-            if (debug) System.out.println("[BFS] No start node found in the PDG.");
-            return nodeList;
-        }
-
-        Queue<PDGNode> queue = new LinkedList<>();
-        Set<PDGNode> visited = new HashSet<>();
-
-        queue.add(start_node);
-        visited.add(start_node);
-        nodeList.add(start_node);
-
-        // begin BFS
-        while (!queue.isEmpty()) {
-            PDGNode current_node = queue.poll();
-            if (debug) System.out.println("[BFS] Visiting node: " + current_node.toShortString());
-
-            // add dependents to the queue
-            List<PDGNode> dependents = current_node.getDependents();
-            for (PDGNode dependent : dependents) {
-                if (!visited.contains(dependent)) {
-                    queue.add(dependent);
-                    visited.add(dependent);
-                    nodeList.add(dependent);
-                }
+        List<PDGNode> nodeList = pdg.getNodesBFS();
+        if (logger.isTraceEnabled()) {
+            if (pdg.getStartNode() == null) {
+                logger.trace("[BFS] No start node found in the PDG.");
+            }
+            for (PDGNode node : nodeList) {
+                logger.trace("[BFS] Visiting node: {}", node.toShortString());
             }
         }
-
-        if (debug) System.out.println("[BFS] BFS Graph traversal complete.");
         return nodeList;
     }
 
     public static int getNodeCount(PDG pdg) {
-        List<PDGNode> nodeList = collectNodesBFS(pdg);
-        return nodeList.size();
+        return pdg.getNodeCount();
     }
 
 }
@@ -0,0 +1,116 @@
+package org.pdgdiff.graph;
+
+import org.pdgdiff.matching.NodeFeasibility;
+import org.pdgdiff.util.CodeAnalysisUtils;
+import soot.Unit;
+import soot.toolkits.graph.pdg.PDGNode;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Per-node features of a PDG that the matchers and the edit script generator compare, derived once per PDG (see
+ * PDG.getNodeFeatures()) rather than on every comparison. Indexed like the PDG's CompactPDG, i.e. [0, reachableCount)
+ * in BFS order followed by the unreachable nodes.
+ *
+ * - label: the node's text without the 'Type: CFGNODE: ' prefix, for a CFG node the Jimple of its unit. interned, so
+ *   labels of the same text are the same instance across PDGs.
+ * - category: NodeFeasibility.categoryOf bitmask.
+ * - attrib: PDGNode.Attribute ordinal.
+ * - line number: source line of a CFG node's unit, -1 if unknown.
+ * - token hash: hash of the label's tokens with Jimple local names and labels replaced by placeholders, so statements
+ *   that only differ in the temporaries they use share it.
+ */
+public final class NodeFeatures {
+
+    // locals as Soot names them (r0, $i1, $stack2, ...), and branch targets
+    private static final Pattern TOKEN = Pattern.compile("\\$?[a-z]+\\d+|\\w+|[^\\s\\w]");
+    private static final Pattern LOCAL = Pattern.compile("\\$?(?:[rizbcslfd]|stack)\\d+");
+    private static final Pattern LABEL = Pattern.compile("label\\d+");
+
+    private final CompactPDG compactPDG;
+    private final String[] labels;
+    private final int[] categories;
+    private final int[] lineNumbers;
+    private final int[] tokenHashes;
+
+    private NodeFeatures(CompactPDG compactPDG) {
+        this.compactPDG = compactPDG;
+        int n = compactPDG.size();
+        this.labels = new String[n];
+        this.categories = new int[n];
+        this.lineNumbers = new int[n];
+        this.tokenHashes = new int[n];
+        for (int i = 0; i < n; i++) {
+            PDGNode node = compactPDG.getNode(i);
+            labels[i] = labelOf(node).intern();
+            categories[i] = NodeFeasibility.categoryOf(node);
+            lineNumbers[i] = node.getType() == PDGNode.Type.CFGNODE
+                    ? CodeAnalysisUtils.getLineNumber((Unit) node.getNode())
+                    : -1;
+            tokenHashes[i] = tokenHash(labels[i]);
+        }
+    }
+
+    public static NodeFeatures of(PDG pdg) {
+        return new NodeFeatures(pdg.getCompactPDG());
+    }
+
+    public int size() {
+        return labels.length;
+    }
+
+    public String getLabel(int i) {
+        return labels[i];
+    }
+
+    public int getCategory(int i) {
+        return categories[i];
+    }
+
+    public int getAttrib(int i) {
+        return compactPDG.getAttrib(i);
+    }
+
+    public int getLineNumber(int i) {
+        return lineNumbers[i];
+    }
+
+    public int getTokenHash(int i) {
+        return tokenHashes[i];
+    }
+
+    // by node, for callers working on PDGNodes. nodes of another PDG get their features derived on the spot
+    public String getLabel(PDGNode node) {
+        int i = compactPDG.indexOf(node);
+        return i >= 0 ? labels[i] : labelOf(node);
+    }
+
+    public int getLineNumber(PDGNode node) {
+        int i = compactPDG.indexOf(node);
+        if (i >= 0) {
+            return lineNumbers[i];
+        }
+        return node.getType() == PDGNode.Type.CFGNODE ? CodeAnalysisUtils.getLineNumber((Unit) node.getNode()) : -1;
+    }
+
+    private static String labelOf(PDGNode node) {
+        // remove beginning of  'Type: CFGNODE: <code begins here>'
+        return node.toString().substring(15);
+    }
+
+    private static int tokenHash(String label) {
+        int hash = 1;
+        Matcher tokens = TOKEN.matcher(label);
+        while (tokens.find()) {
+            String token = tokens.group();
+            if (LOCAL.matcher(token).matches()) {
+                token = "$local";
+            } else if (LABEL.matcher(token).matches()) {
+                token = "$label";
+            }
+            hash = 31 * hash + token.hashCode();
+        }
+        return hash;
+    }
+}
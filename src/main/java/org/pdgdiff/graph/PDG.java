@@ -1,10 +1,17 @@
 package org.pdgdiff.graph;
 
+import soot.SootMethod;
 import soot.toolkits.graph.HashMutableEdgeLabelledDirectedGraph;
 import soot.toolkits.graph.UnitGraph;
 import soot.toolkits.graph.pdg.PDGNode;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Program Dependency Graph (PDG) class that extends the Soot HashMutableEdgeLabelledDirectedGraph. this is
@@ -13,7 +20,14 @@ import java.util.List;
  */
 public class PDG extends HashMutableEdgeLabelledDirectedGraph<PDGNode, GraphGenerator.DependencyTypes> {
     private UnitGraph cfg = null;
+    private SootMethod method = null;
     protected PDGNode startNode = null;
+    private CompactPDG compactPDG = null;
+    private NodeFeatures nodeFeatures = null;
+    private String fingerprint = null;
+    private List<PDGNode> nodesInUnitOrder = null;
+    private List<PDGNode> nodesBFS = null;
+    private Map<PDGNode, Integer> bfsIndex = null;
 
     public PDG() {
         super();
@@ -27,6 +41,15 @@ public class PDG extends HashMutableEdgeLabelledDirectedGraph<PDGNode, GraphGene
         return cfg;
     }
 
+    public void setMethod(SootMethod method) {
+        this.method = method;
+    }
+
+    // the method this pdg was built for. set even when the pdg came from the PDGCache, unlike the cfg
+    public SootMethod getMethod() {
+        return method;
+    }
+
     public PDGNode getStartNode() {
         return startNode;
     }
@@ -42,4 +65,140 @@ public class PDG extends HashMutableEdgeLabelledDirectedGraph<PDGNode, GraphGene
     public List<GraphGenerator.DependencyTypes> getEdgeLabels(PDGNode src, PDGNode tgt) {
         return this.getLabelsForEdges(src, tgt);
     }
+
+    /**
+     * canonical hash of the method body (units and the dependency edges, not their line numbers), set by
+     * GraphGenerator.constructPdg. two PDGs with the same fingerprint have identical bodies node for node, pairing up
+     * the nodes of getNodesInUnitOrder(), possibly on other lines. null if unknown, e.g. after the graph was mutated.
+     */
+    public synchronized String getFingerprint() {
+        return fingerprint;
+    }
+
+    // all nodes, in the order of their units in the method body. null whenever the fingerprint is
+    public synchronized List<PDGNode> getNodesInUnitOrder() {
+        return nodesInUnitOrder;
+    }
+
+    synchronized void setFingerprint(String fingerprint, List<PDGNode> nodesInUnitOrder) {
+        this.fingerprint = fingerprint;
+        this.nodesInUnitOrder = nodesInUnitOrder;
+    }
+
+    /**
+     * returns the integer-indexed snapshot of this graph used by the matchers. built lazily on first use (i.e. once
+     * construction is finished) and dropped whenever the graph is mutated through the methods below.
+     */
+    public synchronized CompactPDG getCompactPDG() {
+        if (compactPDG == null) {
+            compactPDG = CompactPDG.of(this);
+        }
+        return compactPDG;
+    }
+
+    // labels, categories etc. of the nodes, indexed like getCompactPDG(). built lazily and dropped along with it
+    public synchronized NodeFeatures getNodeFeatures() {
+        if (nodeFeatures == null) {
+            nodeFeatures = NodeFeatures.of(this);
+        }
+        return nodeFeatures;
+    }
+
+    /**
+     * the nodes reachable from the start node, in breadth-first order along their dependents (see
+     * GraphTraversal.collectNodesBFS). computed once on first use and dropped whenever the graph is mutated through the
+     * methods below, so it must not be asked for while the graph (or the dependents of its nodes) is still being built.
+     */
+    public synchronized List<PDGNode> getNodesBFS() {
+        if (nodesBFS == null) {
+            nodesBFS = Collections.unmodifiableList(traverseBFS());
+        }
+        return nodesBFS;
+    }
+
+    // number of nodes reachable from the start node, i.e. getNodesBFS().size()
+    public int getNodeCount() {
+        return getNodesBFS().size();
+    }
+
+    // position of each node in getNodesBFS(), by identity. nodes not reachable from the start node are absent
+    public synchronized Map<PDGNode, Integer> getBFSIndex() {
+        if (bfsIndex == null) {
+            List<PDGNode> bfs = getNodesBFS();
+            // identity, PDGNode doesnt implement equals and hashCode
+            Map<PDGNode, Integer> index = new IdentityHashMap<>(bfs.size() * 2);
+            for (int i = 0; i < bfs.size(); i++) {
+                index.put(bfs.get(i), i);
+            }
+            bfsIndex = Collections.unmodifiableMap(index);
+        }
+        return bfsIndex;
+    }
+
+    private List<PDGNode> traverseBFS() {
+        List<PDGNode> nodeList = new ArrayList<>();
+        if (startNode == null) {
+            return nodeList;
+        }
+        ArrayDeque<PDGNode> queue = new ArrayDeque<>();
+        Set<PDGNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        queue.add(startNode);
+        visited.add(startNode);
+        nodeList.add(startNode);
+        while (!queue.isEmpty()) {
+            for (PDGNode dependent : queue.poll().getDependents()) {
+                if (visited.add(dependent)) {
+                    queue.add(dependent);
+                    nodeList.add(dependent);
+                }
+            }
+        }
+        return nodeList;
+    }
+
+    // drops everything derived from the graph, rebuilt on next use
+    private synchronized void invalidateCompactPDG() {
+        compactPDG = null;
+        nodesBFS = null;
+        bfsIndex = null;
+        nodeFeatures = null;
+        fingerprint = null;
+        nodesInUnitOrder = null;
+    }
+
+    @Override
+    public void addNode(PDGNode node) {
+        invalidateCompactPDG();
+        super.addNode(node);
+    }
+
+    @Override
+    public void removeNode(PDGNode node) {
+        invalidateCompactPDG();
+        super.removeNode(node);
+    }
+
+    @Override
+    public void addEdge(PDGNode from, PDGNode to, GraphGenerator.DependencyTypes label) {
+        invalidateCompactPDG();
+        super.addEdge(from, to, label);
+    }
+
+    @Override
+    public void removeEdge(PDGNode from, PDGNode to, GraphGenerator.DependencyTypes label) {
+        invalidateCompactPDG();
+        super.removeEdge(from, to, label);
+    }
+
+    @Override
+    public void removeAllEdges(PDGNode from, PDGNode to) {
+        invalidateCompactPDG();
+        super.removeAllEdges(from, to);
+    }
+
+    @Override
+    public void removeAllEdges(GraphGenerator.DependencyTypes label) {
+        invalidateCompactPDG();
+        super.removeAllEdges(label);
+    }
 }
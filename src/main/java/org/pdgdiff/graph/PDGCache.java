@@ -0,0 +1,388 @@
+package org.pdgdiff.graph;
+
+import org.pdgdiff.util.CodeAnalysisUtils;
+import org.pdgdiff.util.SootInitializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.tagkit.LineNumberTag;
+import soot.toolkits.graph.pdg.PDGNode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * On-disk cache of the PDGs of a class, so that a class file seen before (e.g. the unchanged side of consecutive
+ * commits in a history walk) does not need its method bodies rebuilt by Soot and its PDGs by GraphGenerator.
+ *
+ * An entry holds the PDGs of all concrete methods of one class file in a compact binary format: per method its
+ * sub-signature and start line, and per node its Jimple text, line number and statement kind plus the dependency
+ * edges, in the same order as originally built. It is keyed by the SHA-256 of the class file bytes and of the Soot
+ * options, so a recompiled class or a change in how Soot builds Jimple never hits a stale entry.
+ *
+ * The total size of the cache directory is bounded, least recently used entries being evicted first (file
+ * modification times keep track of use across runs).
+ *
+ * Enabled by setting the system property pdgdiff.cache.dir, pdgdiff.cache.maxMB bounds its size.
+ */
+public class PDGCache {
+    private static final Logger logger = LoggerFactory.getLogger(PDGCache.class);
+
+    public static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+
+    private static final int MAGIC = 0x50444743; // "PDGC"
+    // bump whenever the format below or the way GraphGenerator builds pdgs changes
+    private static final int FORMAT_VERSION = 2;
+    private static final String SUFFIX = ".pdgc";
+
+    private final Path directory;
+    private final long maxBytes;
+
+    // key -> entry size, in access order (least recently used first)
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public PDGCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+
+        // pick up the entries of earlier runs, oldest first
+        File[] files = directory.toFile().listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (File file : files) {
+                String name = file.getName();
+                entries.put(name.substring(0, name.length() - SUFFIX.length()), file.length());
+                totalBytes += file.length();
+            }
+        }
+    }
+
+    // the cache configured through system properties, or null if caching is not enabled
+    public static PDGCache fromSystemProperties() {
+        String dir = System.getProperty("pdgdiff.cache.dir");
+        if (dir == null || dir.isEmpty()) {
+            return null;
+        }
+        long maxBytes = DEFAULT_MAX_BYTES;
+        String maxMB = System.getProperty("pdgdiff.cache.maxMB");
+        if (maxMB != null) {
+            try {
+                maxBytes = Long.parseLong(maxMB) * 1024 * 1024;
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid pdgdiff.cache.maxMB, using default: {}", DEFAULT_MAX_BYTES / (1024 * 1024));
+            }
+        }
+        try {
+            PDGCache cache = new PDGCache(Paths.get(dir), maxBytes);
+            logger.info("Using PDG cache in {}", dir);
+            return cache;
+        } catch (IOException e) {
+            logger.warn("Could not open PDG cache in {}, continuing without it: {}", dir, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * key of the entry for the given class file, i.e. the SHA-256 of its bytes and the Soot options. null if the class
+     * file cannot be read, in which case its PDGs cannot be cached.
+     */
+    public static String keyOf(Path classFile) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(Files.readAllBytes(classFile));
+            digest.update(SootInitializer.describeOptions().getBytes(StandardCharsets.UTF_8));
+            digest.update(Integer.toString(FORMAT_VERSION).getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (IOException e) {
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * the cached PDGs of sootClass (which must have been loaded from the class file the key was made from), in the
+     * order they were stored, or null on a miss.
+     */
+    public List<PDG> get(String key, SootClass sootClass) {
+        Path file = fileOf(key);
+        synchronized (this) {
+            // get rather than containsKey, to mark the entry as recently used
+            if (entries.get(key) == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            List<PDG> pdgs = readPDGs(in, sootClass);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.incrementAndGet();
+            return pdgs;
+        } catch (IOException | RuntimeException e) {
+            // unreadable or not matching the class after all, drop it and rebuild
+            logger.warn("Dropping unusable PDG cache entry {}: {}", key, e.toString());
+            remove(key);
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    // stores the PDGs of one class file under key, evicting the least recently used entries if the cache is full
+    public void put(String key, List<PDG> pdgs) {
+        Path file = fileOf(key);
+        Path tmp = directory.resolve(key + ".tmp" + Thread.currentThread().getId());
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                writePDGs(out, pdgs);
+            }
+            // readers only ever see complete entries
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            long size = Files.size(file);
+            synchronized (this) {
+                Long previous = entries.put(key, size);
+                totalBytes += size - (previous == null ? 0 : previous);
+                evictIfFull();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not cache PDGs under {}: {}", key, e.toString());
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private synchronized void evictIfFull() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        // always keeps the newest entry, even if it alone is over the bound
+        while (totalBytes > maxBytes && entries.size() > 1 && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            try {
+                Files.deleteIfExists(fileOf(eldest.getKey()));
+            } catch (IOException e) {
+                logger.warn("Could not evict PDG cache entry {}: {}", eldest.getKey(), e.getMessage());
+            }
+            totalBytes -= eldest.getValue();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private synchronized void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        try {
+            Files.deleteIfExists(fileOf(key));
+        } catch (IOException ignored) {
+        }
+    }
+
+    private Path fileOf(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    private static void writePDGs(DataOutputStream out, List<PDG> pdgs) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(pdgs.size());
+        for (PDG pdg : pdgs) {
+            writePDG(out, pdg);
+        }
+    }
+
+    private static void writePDG(DataOutputStream out, PDG pdg) throws IOException {
+        SootMethod method = pdg.getMethod();
+        List<PDGNode> nodesInUnitOrder = pdg.getNodesInUnitOrder();
+        if (method == null || nodesInUnitOrder == null || pdg.getFingerprint() == null) {
+            throw new IllegalArgumentException("only PDGs as built by GraphGenerator can be cached");
+        }
+        writeString(out, method.getSubSignature());
+        out.writeInt(method.getJavaSourceStartLineNumber());
+        writeString(out, pdg.getFingerprint());
+
+        // nodes in graph order, which decides the order the matchers see them in
+        List<PDGNode> nodes = new ArrayList<>(pdg.size());
+        Map<PDGNode, Integer> index = new HashMap<>();
+        for (PDGNode node : pdg) {
+            index.put(node, nodes.size());
+            nodes.add(node);
+        }
+        out.writeInt(nodes.size());
+        for (PDGNode node : nodes) {
+            Unit unit = (Unit) node.getNode();
+            writeString(out, unit.toString());
+            out.writeInt(CodeAnalysisUtils.getLineNumber(unit));
+            out.writeByte(CachedUnit.Kind.of(unit).ordinal());
+            out.writeByte(node.getType().ordinal());
+            out.writeByte(node.getAttrib().ordinal());
+        }
+        for (PDGNode node : nodesInUnitOrder) {
+            out.writeInt(index.get(node));
+        }
+        out.writeInt(pdg.getStartNode() == null ? -1 : index.get(pdg.getStartNode()));
+
+        // edges per source in successor order, so that successor lists come out the same
+        for (PDGNode node : nodes) {
+            List<PDGNode> succs = pdg.getSuccsOf(node);
+            out.writeInt(succs.size());
+            for (PDGNode succ : succs) {
+                out.writeInt(index.get(succ));
+                List<GraphGenerator.DependencyTypes> labels = pdg.getLabelsForEdges(node, succ);
+                out.writeByte(labels.size());
+                for (GraphGenerator.DependencyTypes label : labels) {
+                    out.writeByte(label.ordinal());
+                }
+            }
+            writeIndices(out, node.getDependents(), index);
+            writeIndices(out, node.getBackDependets(), index);
+        }
+    }
+
+    private static List<PDG> readPDGs(DataInputStream in, SootClass sootClass) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("not a PDG cache entry of version " + FORMAT_VERSION);
+        }
+        int count = in.readInt();
+        List<PDG> pdgs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            pdgs.add(readPDG(in, sootClass));
+        }
+        return pdgs;
+    }
+
+    private static PDG readPDG(DataInputStream in, SootClass sootClass) throws IOException {
+        String subSignature = readString(in);
+        SootMethod method = sootClass.getMethodUnsafe(subSignature);
+        if (method == null) {
+            throw new IOException("no method " + subSignature + " in " + sootClass.getName());
+        }
+        // the method start line normally comes with its body, which is not built on a hit
+        int methodLine = in.readInt();
+        if (methodLine > 0 && !method.hasTag("LineNumberTag") && !method.hasTag("SourceLnPosTag")) {
+            method.addTag(new LineNumberTag(methodLine));
+        }
+        String fingerprint = readString(in);
+
+        PDG pdg = new PDG();
+        pdg.setMethod(method);
+
+        CachedUnit.Kind[] kinds = CachedUnit.Kind.values();
+        PDGNode.Type[] types = PDGNode.Type.values();
+        PDGNode.Attribute[] attribs = PDGNode.Attribute.values();
+        GraphGenerator.DependencyTypes[] labels = GraphGenerator.DependencyTypes.values();
+
+        PDGNode[] nodes = new PDGNode[in.readInt()];
+        for (int i = 0; i < nodes.length; i++) {
+            String jimple = readString(in);
+            int line = in.readInt();
+            CachedUnit.Kind kind = kinds[in.readByte()];
+            nodes[i] = new PDGNode(new CachedUnit(jimple, line, kind), types[in.readByte()]);
+            nodes[i].setAttrib(attribs[in.readByte()]);
+            pdg.addNode(nodes[i]);
+        }
+        List<PDGNode> nodesInUnitOrder = new ArrayList<>(nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            nodesInUnitOrder.add(nodes[in.readInt()]);
+        }
+        int start = in.readInt();
+        pdg.startNode = start < 0 ? null : nodes[start];
+
+        for (PDGNode node : nodes) {
+            int succCount = in.readInt();
+            for (int s = 0; s < succCount; s++) {
+                PDGNode succ = nodes[in.readInt()];
+                int labelCount = in.readByte();
+                for (int l = 0; l < labelCount; l++) {
+                    pdg.addEdge(node, succ, labels[in.readByte()]);
+                }
+            }
+            for (int dependent : readIndices(in)) {
+                node.addDependent(nodes[dependent]);
+            }
+            for (int backDependent : readIndices(in)) {
+                node.addBackDependent(nodes[backDependent]);
+            }
+        }
+
+        // after the edges, as adding them clears the fingerprint
+        pdg.setFingerprint(fingerprint, Collections.unmodifiableList(nodesInUnitOrder));
+        return pdg;
+    }
+
+    private static void writeIndices(DataOutputStream out, List<PDGNode> nodes, Map<PDGNode, Integer> index) throws IOException {
+        out.writeInt(nodes.size());
+        for (PDGNode node : nodes) {
+            out.writeInt(index.get(node));
+        }
+    }
+
+    private static int[] readIndices(DataInputStream in) throws IOException {
+        int[] indices = new int[in.readInt()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = in.readInt();
+        }
+        return indices;
+    }
+
+    // unlike writeUTF, not limited to 64k (long string constants end up in the jimple text)
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,234 @@
+package org.pdgdiff.io;
+
+import org.pdgdiff.edit.model.*;
+import org.pdgdiff.matching.StrategySettings;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * compact binary form of an edit script, read back by BinaryOperationReader. the same information as the json one
+ * (see JsonOperationFormatter), much cheaper to write and to parse.
+ *
+ * layout: the magic bytes 'PDGD' and a version byte, then records of a tag byte, the varint length of the payload and
+ * the payload, ending with an END record. readers skip records with tags they do not know.
+ *
+ * - STRING (code snippets, jimple, strategy names): utf-8 bytes, given the next id of the string table (from 1, 0
+ *   standing for null). each distinct string is written once, before the first record referring to it, and later
+ *   records refer to it by id. before a record whose strings would take the table past STRING_TABLE_LIMIT, a RESET
+ *   record clears it on both ends, which keeps the memory needed to write or read a long script bounded.
+ * - INFO: ids of the recovery and matching strategy names.
+ * - INSERT, DELETE: line, code id.
+ * - UPDATE: old line, new line, old and new code ids, then 0 for no syntax difference (a signature or class metadata
+ *   change) or 1 followed by the message, old and new jimple ids.
+ * - MOVE: old line, new line, code id.
+ *
+ * ids and lengths are unsigned varints, line numbers (which may be -1) zigzag varints.
+ */
+public class BinaryOperationFormatter implements OperationFormatter {
+
+    static final byte[] MAGIC = {'P', 'D', 'G', 'D'};
+    static final int VERSION = 1;
+
+    static final int TAG_END = 0;
+    static final int TAG_STRING = 1;
+    static final int TAG_RESET = 2;
+    static final int TAG_INFO = 3;
+    static final int TAG_INSERT = 4;
+    static final int TAG_DELETE = 5;
+    static final int TAG_UPDATE = 6;
+    static final int TAG_MOVE = 7;
+
+    static final int STRING_TABLE_LIMIT = 1 << 16;
+
+    private final OutputStream out;
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    // payload of the record being written
+    private byte[] payload = new byte[256];
+    private int payloadLength;
+    // tag and length of a record
+    private final byte[] header = new byte[6];
+
+    public BinaryOperationFormatter(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void writeInfo(StrategySettings settings) throws IOException {
+        String recoveryName = settings.getRecoveryStrategy().toString();
+        String matchingName = settings.getMatchingStrategy().toString();
+        makeRoom(missing(recoveryName) + missing(matchingName));
+        int recovery = stringId(recoveryName);
+        int matching = stringId(matchingName);
+        payloadLength = 0;
+        putVarint(recovery);
+        putVarint(matching);
+        writeRecord(TAG_INFO);
+    }
+
+    @Override
+    public void startOutput() throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+    }
+
+    @Override
+    public void endOutput() throws IOException {
+        payloadLength = 0;
+        writeRecord(TAG_END);
+        out.close();
+    }
+
+    @Override
+    public void startOperations() {
+        // operations follow the info record directly
+    }
+
+    @Override
+    public void endOperations() {
+    }
+
+    @Override
+    public void insertOperation(Insert operation) throws IOException {
+        makeRoom(missing(operation.getCodeSnippet()));
+        int code = stringId(operation.getCodeSnippet());
+        payloadLength = 0;
+        putLine(operation.getLineNumber());
+        putVarint(code);
+        writeRecord(TAG_INSERT);
+    }
+
+    @Override
+    public void deleteOperation(Delete operation) throws IOException {
+        makeRoom(missing(operation.getCodeSnippet()));
+        int code = stringId(operation.getCodeSnippet());
+        payloadLength = 0;
+        putLine(operation.getLineNumber());
+        putVarint(code);
+        writeRecord(TAG_DELETE);
+    }
+
+    @Override
+    public void updateOperation(Update operation) throws IOException {
+        SyntaxDifference diff = operation.getSyntaxDifference();
+        int newStrings = missing(operation.getOldCodeSnippet()) + missing(operation.getNewCodeSnippet());
+        if (diff != null) {
+            newStrings += missing(diff.getMessage()) + missing(diff.getOldJimpleCode()) + missing(diff.getNewJimpleCode());
+        }
+        makeRoom(newStrings);
+        int oldCode = stringId(operation.getOldCodeSnippet());
+        int newCode = stringId(operation.getNewCodeSnippet());
+        int message = 0;
+        int oldJimple = 0;
+        int newJimple = 0;
+        if (diff != null) {
+            message = stringId(diff.getMessage());
+            oldJimple = stringId(diff.getOldJimpleCode());
+            newJimple = stringId(diff.getNewJimpleCode());
+        }
+
+        payloadLength = 0;
+        putLine(operation.getOldLineNumber());
+        putLine(operation.getNewLineNumber());
+        putVarint(oldCode);
+        putVarint(newCode);
+        if (diff != null) {
+            putVarint(1);
+            putVarint(message);
+            putVarint(oldJimple);
+            putVarint(newJimple);
+        } else {
+            putVarint(0);
+        }
+        writeRecord(TAG_UPDATE);
+    }
+
+    @Override
+    public void moveOperation(Move operation) throws IOException {
+        makeRoom(missing(operation.getCodeSnippet()));
+        int code = stringId(operation.getCodeSnippet());
+        payloadLength = 0;
+        putLine(operation.getOldLineNumber());
+        putLine(operation.getNewLineNumber());
+        putVarint(code);
+        writeRecord(TAG_MOVE);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    // 1 if s would be added to the string table, 0 if it is null or there already
+    private int missing(String s) {
+        return s != null && !stringIds.containsKey(s) ? 1 : 0;
+    }
+
+    // resets the string table if the strings a record is about to add would not fit in it. done before the record
+    // takes any id, as a reset in between would leave it referring to ids from the cleared table. a string repeated
+    // within the record is counted twice, at worst resetting a little early
+    private void makeRoom(int newStrings) throws IOException {
+        if (stringIds.size() + newStrings > STRING_TABLE_LIMIT) {
+            stringIds.clear();
+            payloadLength = 0;
+            writeRecord(TAG_RESET);
+        }
+    }
+
+    // id of s in the string table, writing it out first if it is not there yet (after makeRoom for the record)
+    private int stringId(String s) throws IOException {
+        if (s == null) {
+            return 0;
+        }
+        Integer id = stringIds.get(s);
+        if (id != null) {
+            return id;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        payloadLength = 0;
+        ensurePayload(bytes.length);
+        System.arraycopy(bytes, 0, payload, 0, bytes.length);
+        payloadLength = bytes.length;
+        writeRecord(TAG_STRING);
+
+        int newId = stringIds.size() + 1;
+        stringIds.put(s, newId);
+        return newId;
+    }
+
+    private void writeRecord(int tag) throws IOException {
+        header[0] = (byte) tag;
+        int length = 1;
+        int value = payloadLength;
+        while ((value & ~0x7F) != 0) {
+            header[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        header[length++] = (byte) value;
+        out.write(header, 0, length);
+        out.write(payload, 0, payloadLength);
+    }
+
+    private void putLine(int line) {
+        putVarint((line << 1) ^ (line >> 31));
+    }
+
+    private void putVarint(int value) {
+        ensurePayload(payloadLength + 5);
+        while ((value & ~0x7F) != 0) {
+            payload[payloadLength++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        payload[payloadLength++] = (byte) value;
+    }
+
+    private void ensurePayload(int size) {
+        if (payload.length < size) {
+            payload = Arrays.copyOf(payload, Math.max(size, payload.length * 2));
+        }
+    }
+}
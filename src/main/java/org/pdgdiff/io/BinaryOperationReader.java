@@ -0,0 +1,196 @@
+package org.pdgdiff.io;
+
+import org.pdgdiff.edit.model.*;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.pdgdiff.io.BinaryOperationFormatter.*;
+
+/**
+ * reads an edit script written by BinaryOperationFormatter, one operation at a time. the operations come back as
+ * written, without pdg nodes, updates with their syntax difference's message and jimple only.
+ */
+public class BinaryOperationReader implements AutoCloseable {
+
+    private final InputStream in;
+    private String[] strings = new String[256];
+    private int stringCount = 0;
+    private byte[] payload = new byte[256];
+    private int position;
+    private int limit;
+
+    private String recoveryStrategy;
+    private String matchingStrategy;
+    private boolean ended = false;
+
+    public BinaryOperationReader(InputStream in) throws IOException {
+        this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in);
+        for (byte b : MAGIC) {
+            if (this.in.read() != b) {
+                throw new IOException("Not a binary edit script");
+            }
+        }
+        int version = this.in.read();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary edit script version " + version);
+        }
+    }
+
+    public static List<EditOperation> readAll(InputStream in) throws IOException {
+        List<EditOperation> operations = new ArrayList<>();
+        try (BinaryOperationReader reader = new BinaryOperationReader(in)) {
+            EditOperation op;
+            while ((op = reader.next()) != null) {
+                operations.add(op);
+            }
+        }
+        return operations;
+    }
+
+    // the strategies the script was made with, null if not written (or not reached yet, they precede the operations)
+    public String getRecoveryStrategy() {
+        return recoveryStrategy;
+    }
+
+    public String getMatchingStrategy() {
+        return matchingStrategy;
+    }
+
+    /**
+     * the next operation, or null once the end of the script is reached
+     */
+    public EditOperation next() throws IOException {
+        while (!ended) {
+            int tag = in.read();
+            if (tag < 0) {
+                throw new EOFException("Binary edit script ends without an end record");
+            }
+            readPayload(readVarint());
+
+            switch (tag) {
+                case TAG_END:
+                    ended = true;
+                    break;
+                case TAG_STRING:
+                    addString(new String(payload, 0, limit, StandardCharsets.UTF_8));
+                    break;
+                case TAG_RESET:
+                    Arrays.fill(strings, 0, stringCount, null);
+                    stringCount = 0;
+                    break;
+                case TAG_INFO:
+                    recoveryStrategy = nextString();
+                    matchingStrategy = nextString();
+                    break;
+                case TAG_INSERT:
+                    return new Insert(null, nextLine(), nextString());
+                case TAG_DELETE:
+                    return new Delete(null, nextLine(), nextString());
+                case TAG_UPDATE: {
+                    int oldLine = nextLine();
+                    int newLine = nextLine();
+                    String oldCode = nextString();
+                    String newCode = nextString();
+                    SyntaxDifference difference = null;
+                    if (nextVarint() != 0) {
+                        String message = nextString();
+                        String oldJimple = nextString();
+                        String newJimple = nextString();
+                        difference = new SyntaxDifference(message, oldJimple, newJimple);
+                    }
+                    return new Update(null, oldLine, newLine, oldCode, newCode, difference);
+                }
+                case TAG_MOVE: {
+                    int oldLine = nextLine();
+                    int newLine = nextLine();
+                    return new Move(null, oldLine, newLine, nextString());
+                }
+                default:
+                    // written by a newer version, the payload has been read past already
+                    break;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void addString(String s) {
+        if (stringCount == strings.length) {
+            strings = Arrays.copyOf(strings, stringCount * 2);
+        }
+        strings[stringCount++] = s;
+    }
+
+    private void readPayload(int length) throws IOException {
+        if (payload.length < length) {
+            payload = new byte[Math.max(length, payload.length * 2)];
+        }
+        int read = 0;
+        while (read < length) {
+            int n = in.read(payload, read, length - read);
+            if (n < 0) {
+                throw new EOFException("Binary edit script ends within a record");
+            }
+            read += n;
+        }
+        position = 0;
+        limit = length;
+    }
+
+    private int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Binary edit script ends within a record header");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in binary edit script");
+    }
+
+    private int nextVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (position >= limit) {
+                throw new IOException("Truncated record in binary edit script");
+            }
+            int b = payload[position++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in binary edit script");
+    }
+
+    private int nextLine() throws IOException {
+        int zigzag = nextVarint();
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    private String nextString() throws IOException {
+        int id = nextVarint();
+        if (id == 0) {
+            return null;
+        }
+        if (id > stringCount) {
+            throw new IOException("Reference to undefined string " + id + " in binary edit script");
+        }
+        return strings[id - 1];
+    }
+}
@@ -11,8 +11,15 @@ public class JsonOperationFormatter implements OperationFormatter {
     private final JsonWriter writer;
 
     public JsonOperationFormatter(Writer writer) {
+        this(writer, false);
+    }
+
+    // compact leaves out the indentation and newlines, for output read by machines rather than people
+    public JsonOperationFormatter(Writer writer, boolean compact) {
         this.writer = new JsonWriter(writer);
-        this.writer.setIndent("  ");
+        if (!compact) {
+            this.writer.setIndent("  ");
+        }
     }
 
     @Override
@@ -94,4 +101,9 @@ public class JsonOperationFormatter implements OperationFormatter {
         writer.name("code").value(operation.getCodeSnippet());
         writer.endObject();
     }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
 }
@@ -8,12 +8,19 @@ import java.util.List;
 
 public class JsonOperationSerializer extends OperationSerializer {
 
+    private final boolean compact;
+
     public JsonOperationSerializer(List<EditOperation> editScript, StrategySettings settings) {
+        this(editScript, settings, false);
+    }
+
+    public JsonOperationSerializer(List<EditOperation> editScript, StrategySettings settings, boolean compact) {
         super(editScript, settings);
+        this.compact = compact;
     }
 
     @Override
     protected OperationFormatter newFormatter(Writer writer) {
-        return new JsonOperationFormatter(writer);
+        return new JsonOperationFormatter(writer, compact);
     }
 }
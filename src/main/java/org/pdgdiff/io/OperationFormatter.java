@@ -17,4 +17,7 @@ public interface OperationFormatter {
     void deleteOperation(Delete operation) throws Exception;
     void updateOperation(Update operation) throws Exception;
     void moveOperation(Move operation) throws Exception;
+
+    // pushes what has been formatted so far through to the underlying writer
+    void flush() throws Exception;
 }
@@ -29,17 +29,21 @@ public abstract class OperationSerializer {
 
         formatter.startOperations();
         for (EditOperation op : editScript) {
-            if (op instanceof Insert) {
-                formatter.insertOperation((Insert) op);
-            } else if (op instanceof Delete) {
-                formatter.deleteOperation((Delete) op);
-            } else if (op instanceof Update) {
-                formatter.updateOperation((Update) op);
-            } else if (op instanceof Move) {
-                formatter.moveOperation((Move) op);
-            }
+            writeOperation(formatter, op);
         }
         formatter.endOperations();
         formatter.endOutput();
     }
+
+    static void writeOperation(OperationFormatter formatter, EditOperation op) throws Exception {
+        if (op instanceof Insert) {
+            formatter.insertOperation((Insert) op);
+        } else if (op instanceof Delete) {
+            formatter.deleteOperation((Delete) op);
+        } else if (op instanceof Update) {
+            formatter.updateOperation((Update) op);
+        } else if (op instanceof Move) {
+            formatter.moveOperation((Move) op);
+        }
+    }
 }
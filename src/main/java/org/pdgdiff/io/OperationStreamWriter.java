@@ -0,0 +1,44 @@
+package org.pdgdiff.io;
+
+import org.pdgdiff.edit.model.EditOperation;
+import org.pdgdiff.matching.StrategySettings;
+
+import java.util.List;
+
+/**
+ * writes an edit script through an OperationFormatter a part at a time, as the parts are produced, rather than
+ * holding the whole script in memory first as OperationSerializer does. the output looks the same: the header and
+ * settings are written on construction, each write() appends to the operations and is flushed through to the
+ * underlying writer, and close() ends the output (closing the writer).
+ */
+public class OperationStreamWriter implements AutoCloseable {
+    private final OperationFormatter formatter;
+    private int operationCount = 0;
+
+    public OperationStreamWriter(OperationFormatter formatter, StrategySettings settings) throws Exception {
+        this.formatter = formatter;
+        formatter.startOutput();
+        if (settings != null) {
+            formatter.writeInfo(settings);
+        }
+        formatter.startOperations();
+    }
+
+    public void write(List<EditOperation> operations) throws Exception {
+        for (EditOperation op : operations) {
+            OperationSerializer.writeOperation(formatter, op);
+        }
+        operationCount += operations.size();
+        formatter.flush();
+    }
+
+    public int getOperationCount() {
+        return operationCount;
+    }
+
+    @Override
+    public void close() throws Exception {
+        formatter.endOperations();
+        formatter.endOutput();
+    }
+}
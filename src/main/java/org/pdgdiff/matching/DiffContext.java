@@ -0,0 +1,223 @@
+package org.pdgdiff.matching;
+
+import org.pdgdiff.edit.RecoveryProcessor;
+import org.pdgdiff.edit.model.EditOperation;
+import org.pdgdiff.export.GraphExportQueue;
+import org.pdgdiff.io.OperationStreamWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.pdgdiff.export.EditScriptExporter.openAggregatedEditScript;
+import static org.pdgdiff.export.EditScriptExporter.openBinaryEditScript;
+
+/**
+ * Everything one diff (of a pair of files, possibly over several DiffEngine.difference calls for their nested classes)
+ * writes to or accumulates: its settings, the directory its output goes to, and the aggregated edit script, i.e.
+ * diff.json (and diff.bin) in that directory along with the scripts kept back for the aggregate recovery.
+ *
+ * Nothing here is shared between diffs, so diffs with contexts on different output directories can run at the same
+ * time. finish() completes the output once the diff is done.
+ */
+public class DiffContext {
+    private static final Logger logger = LoggerFactory.getLogger(DiffContext.class);
+
+    public static final String DEFAULT_OUTPUT_DIR = "out/";
+
+    private final StrategySettings settings;
+    private final String outputDir;
+
+    // edit scripts are written to diff.json (and diff.bin) as each method pair is done, only kept here (detached from
+    // their pdgs) if the recovery is to be run over all of them together at the end
+    private final List<EditOperation> aggregatedEditScripts = new ArrayList<>();
+    private OperationStreamWriter diffOutput;
+    private OperationStreamWriter binaryDiffOutput; // only if enabled in the settings
+    // writes the debugging graphs in the background, created on first use
+    private GraphExportQueue graphExports;
+    private boolean finished = false;
+
+    public DiffContext(StrategySettings settings) {
+        this(settings, DEFAULT_OUTPUT_DIR);
+    }
+
+    public DiffContext(StrategySettings settings, String outputDir) {
+        this.settings = settings;
+        this.outputDir = outputDir.endsWith("/") || outputDir.endsWith(File.separator) ? outputDir : outputDir + "/";
+    }
+
+    public StrategySettings getSettings() {
+        return settings;
+    }
+
+    // with a trailing separator, so file names can be appended directly
+    public String getOutputDir() {
+        return outputDir;
+    }
+
+    public String getDiffOutputPath() {
+        return outputDir + "diff.json";
+    }
+
+    public String getBinaryDiffOutputPath() {
+        return outputDir + "diff.bin";
+    }
+
+    /**
+     * queues an export of a debugging graph (see StrategySettings.isPdgGraphOutput and isDeltaGraphOutput), written in
+     * the background until finish(). dropped once the diff is finished
+     */
+    public void exportGraph(Runnable export) throws InterruptedException {
+        GraphExportQueue queue;
+        synchronized (this) {
+            if (finished) {
+                // a task of a failed diff still running, the graphs are not waited for anymore
+                return;
+            }
+            if (graphExports == null) {
+                graphExports = new GraphExportQueue();
+            }
+            queue = graphExports;
+        }
+        // outside the lock, it may wait for room in the queue
+        queue.submit(export);
+    }
+
+    /**
+     * opens diff.json (and diff.bin), as DiffEngine begins a diff. a context that is never started writes nothing
+     */
+    public synchronized void start() throws IOException {
+        if (finished) {
+            throw new IllegalStateException("diff already finished, " + getDiffOutputPath() + " is complete");
+        }
+        try {
+            openOutputs();
+        } catch (Exception e) {
+            throw new IOException("Could not open " + getDiffOutputPath(), e);
+        }
+    }
+
+    /**
+     * hands a finished (recovered) edit script on to the aggregated output, straight away unless it is to be
+     * recovered over together with the rest in finish()
+     */
+    public synchronized void emit(List<EditOperation> editScript) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("diff already finished, " + getDiffOutputPath() + " is complete");
+        }
+        if (settings.isAggregateRecovery()) {
+            for (EditOperation op : editScript) {
+                op.detach();
+            }
+            aggregatedEditScripts.addAll(editScript);
+            return;
+        }
+        try {
+            openOutputs();
+            writeOutputs(editScript);
+        } catch (Exception e) {
+            throw new IOException("Failed to write to " + getDiffOutputPath(), e);
+        }
+    }
+
+    /**
+     * completes diff.json (and diff.bin) once every edit script of the diff has been emitted: runs the aggregate
+     * recovery if enabled, then ends the output, and waits for the debugging graphs to be written. only the first call
+     * does anything, and only the latter if never started.
+     */
+    public synchronized void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            finishDiffOutput();
+        } finally {
+            closeGraphExports();
+        }
+    }
+
+    private void finishDiffOutput() {
+        if (diffOutput == null) {
+            aggregatedEditScripts.clear();
+            return;
+        }
+        try {
+            if (settings.isAggregateRecovery()) {
+                writeOutputs(RecoveryProcessor.recoverMappings(aggregatedEditScripts, settings.getRecoveryStrategy()));
+            }
+            int count = diffOutput.getOperationCount();
+            diffOutput.close();
+            diffOutput = null;
+            logger.info("Edit script exported to: {} ({} operations)", getDiffOutputPath(), count);
+            if (binaryDiffOutput != null) {
+                binaryDiffOutput.close();
+                binaryDiffOutput = null;
+                logger.info("Edit script exported to: {}", getBinaryDiffOutputPath());
+            }
+        } catch (Exception e) {
+            logger.error("Failed to export edit script to {}", getDiffOutputPath(), e);
+        } finally {
+            closeOutputs();
+            aggregatedEditScripts.clear();
+        }
+    }
+
+    private void closeGraphExports() {
+        if (graphExports == null) {
+            return;
+        }
+        try {
+            graphExports.close();
+        } catch (InterruptedException e) {
+            // the remaining graphs are written by the background thread, or not at all
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while waiting for the graph exports to be written");
+        }
+    }
+
+    private void openOutputs() throws Exception {
+        if (diffOutput != null) {
+            return;
+        }
+        try {
+            diffOutput = openAggregatedEditScript(getDiffOutputPath(), settings);
+            if (settings.isBinaryOutput()) {
+                binaryDiffOutput = openBinaryEditScript(getBinaryDiffOutputPath(), settings);
+            }
+        } catch (Exception e) {
+            closeOutputs();
+            throw e;
+        }
+    }
+
+    private void writeOutputs(List<EditOperation> editScript) throws Exception {
+        diffOutput.write(editScript);
+        if (binaryDiffOutput != null) {
+            binaryDiffOutput.write(editScript);
+        }
+    }
+
+    // closes whatever output is still open, after a failure
+    private void closeOutputs() {
+        if (diffOutput != null) {
+            try {
+                diffOutput.close();
+            } catch (Exception e) {
+                logger.error("Failed to close {}: {}", getDiffOutputPath(), e.getMessage());
+            }
+            diffOutput = null;
+        }
+        if (binaryDiffOutput != null) {
+            try {
+                binaryDiffOutput.close();
+            } catch (Exception e) {
+                logger.error("Failed to close {}: {}", getBinaryDiffOutputPath(), e.getMessage());
+            }
+            binaryDiffOutput = null;
+        }
+    }
+}
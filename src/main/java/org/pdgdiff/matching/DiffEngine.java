@@ -9,6 +9,9 @@ import org.pdgdiff.export.DiffGraphExporter;
 import org.pdgdiff.graph.CycleDetection;
 import org.pdgdiff.graph.GraphTraversal;
 import org.pdgdiff.graph.PDG;
+import org.pdgdiff.util.DiffThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import soot.SootClass;
 
 import soot.SootMethod;
@@ -16,33 +19,101 @@ import soot.SootMethod;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static org.pdgdiff.export.EditScriptExporter.*;
 
+/**
+ * differences the PDGs of a pair of files: pairs up their methods, generates and recovers an edit script per method
+ * pair and hands those on to the DiffContext, which writes the aggregated script. one engine per diff, holding no
+ * state beyond its context, so diffs in separate engines (with contexts on separate output directories, and each
+ * thread in its own SootContext) can run concurrently. within a diff, classes are matched and method pairs diffed on
+ * the DiffThreads pools, their output written in a fixed order by the calling thread, each method's script as soon as
+ * it (and those before it) is done.
+ */
 public class DiffEngine {
 
-    private static final List<EditOperation> aggregatedEditScripts = new ArrayList<>();
-    private static final boolean debug = false; // setting for development
+    private static final Logger logger = LoggerFactory.getLogger(DiffEngine.class);
 
+    private final DiffContext context;
 
-    public static void difference(List<PDG> pdgList1, List<PDG> pdgList2,
-                                  StrategySettings strategySettings, String srcSourceFilePath, String dstSourceFilePath) throws IOException {
+    public DiffEngine(DiffContext context) {
+        this.context = context;
+    }
+
+    public DiffContext getContext() {
+        return context;
+    }
+
+    /**
+     * completes the diff's output (see DiffContext.finish) once every call to difference for the pair of files is
+     * done
+     */
+    public void finish() {
+        context.finish();
+    }
+
+    /**
+     * pairs the methods of pdgList1 with those of pdgList2 (the pdgs of one class before and after) and emits their
+     * edit scripts to the context. the method pairs are diffed concurrently, their scripts emitted in order.
+     */
+    public void difference(List<PDG> pdgList1, List<PDG> pdgList2,
+                           String srcSourceFilePath, String dstSourceFilePath) throws IOException, InterruptedException {
+        context.start();
+        writeClassDiff(diffClass(pdgList1, pdgList2, srcSourceFilePath, dstSourceFilePath));
+    }
 
-        GraphMatcher matcher = GraphMatcherFactory.createMatcher(strategySettings.matchingStrategy, pdgList1, pdgList2);
-        // for each graph print the size and if it has a cycle (debug mode)
-        if (debug) pdgList1.forEach(pdg -> {
-            System.out.println("------");
-            System.out.println(pdg.getCFG().getBody().getMethod().getSignature());
-            System.out.println("Node count" + GraphTraversal.getNodeCount(pdg));
+    /**
+     * difference for several classes (a file's nested classes), pdgLists1.get(i) against pdgLists2.get(i). the classes
+     * are matched concurrently, but their method pairs diffed and emitted in the order of the lists, so the aggregated
+     * script is the same as that of calling difference for one class after another.
+     */
+    public void differenceAll(List<List<PDG>> pdgLists1, List<List<PDG>> pdgLists2,
+                              String srcSourceFilePath, String dstSourceFilePath) throws IOException, InterruptedException {
+        context.start();
+        List<Callable<ClassDiff>> tasks = new ArrayList<>();
+        for (int i = 0; i < pdgLists1.size(); i++) {
+            List<PDG> pdgList1 = pdgLists1.get(i);
+            List<PDG> pdgList2 = pdgLists2.get(i);
+            tasks.add(() -> diffClass(pdgList1, pdgList2, srcSourceFilePath, dstSourceFilePath));
+        }
+        List<Future<ClassDiff>> classDiffs = DiffThreads.submitAll(DiffThreads.Stage.CLASSES, tasks);
+        try {
+            for (Future<ClassDiff> classDiff : classDiffs) {
+                writeClassDiff(DiffThreads.get(classDiff));
+            }
+        } finally {
+            DiffThreads.cancelAll(classDiffs);
+        }
+    }
+
+    /**
+     * matches the pdgs of one class and lays out the tasks generating the edit scripts of its methods, without running
+     * or writing anything yet, so classes can be matched concurrently
+     */
+    private ClassDiff diffClass(List<PDG> pdgList1, List<PDG> pdgList2,
+                                String srcSourceFilePath, String dstSourceFilePath) throws IOException, InterruptedException {
+        StrategySettings strategySettings = context.getSettings();
+
+        GraphMatcher matcher = GraphMatcherFactory.createMatcher(strategySettings, pdgList1, pdgList2);
+        // for each graph log the size and if it has a cycle (trace level, these traverse the whole graph)
+        if (logger.isTraceEnabled()) pdgList1.forEach(pdg -> {
+            logger.trace("------");
+            logger.trace(pdg.getMethod().getSignature());
+            logger.trace("Node count {}", GraphTraversal.getNodeCount(pdg));
             CycleDetection.hasCycle(pdg);
         });
         // perform the actual graph matching
-        System.out.println("-> Beginning matching PDGs using strategy: " + strategySettings.matchingStrategy);
+        logger.info("-> Beginning matching PDGs using strategy: {}", strategySettings.matchingStrategy);
         GraphMapping graphMapping = matcher.matchPDGLists();
 
-        // TODO: clean up debug print stmts
-        System.out.println("--> Graph matching complete using strategy: " + strategySettings.matchingStrategy);
+        logger.info("--> Graph matching complete using strategy: {}", strategySettings.matchingStrategy);
+        logger.info("--> {} of {} method(s) paired by fingerprint, {} of them on other lines",
+                matcher.getIdenticalPairCount(), matcher.getFingerprintCandidateCount(), matcher.getMovedPairCount());
+        logger.info("--> Pair filter pruned {} of {} PDG pairs", matcher.getPrunedPairCount(),
+                matcher.getConsideredPairCount());
 
         // handle unmatched graphs, i.e. additions or deletions of methods to the versions
         List<PDG> unmatchedInList1 = pdgList1.stream()
@@ -53,114 +124,199 @@ public class DiffEngine {
                 .filter(pdg -> !graphMapping.getGraphMapping().containsValue(pdg))
                 .collect(Collectors.toList());
 
-        // generate edit scripts for unmatched methods discovered in above statements
-        generateEditScriptsForUnmatched(unmatchedInList1, unmatchedInList2, srcSourceFilePath, dstSourceFilePath, strategySettings);
-        exportGraphMappings(graphMapping, pdgList1, pdgList2, "out/");
-
-        DiffGraphExporter.exportDiffPDGs(
-                graphMapping,
-                pdgList1,
-                pdgList2,
-                "out/delta-graphs/"
-        );
-
-        graphMapping.getGraphMapping().forEach((srcPDG, dstPDG) -> {
-            String method1 = srcPDG.getCFG().getBody().getMethod().getSignature();
-            String method2 = dstPDG.getCFG().getBody().getMethod().getSignature();
-            System.out.println("---\n> PDG from class 1: " + method1 + " is matched with PDG from class 2: " + method2);
-            if (debug) {
-                System.out.println(GraphTraversal.getNodeCount(srcPDG));
-                CycleDetection.hasCycle(srcPDG);
-                System.out.println(GraphTraversal.getNodeCount(dstPDG));
-                CycleDetection.hasCycle(dstPDG);
-            }
-            NodeMapping nodeMapping = graphMapping.getNodeMapping(srcPDG);
-            if (nodeMapping != null) {
-                System.out.println("--- Node Mapping:");
-                nodeMapping.printMappings();
-
-                try {
-                    SootMethod srcObj = srcPDG.getCFG().getBody().getMethod();
-                    SootMethod destObj = dstPDG.getCFG().getBody().getMethod();
-
-                    List<EditOperation> editScript = EditScriptGenerator.generateEditScript(srcPDG, dstPDG, graphMapping,
-                            srcSourceFilePath, dstSourceFilePath, srcObj, destObj);
-
-                    List<EditOperation> recoveredEditScript = RecoveryProcessor.recoverMappings(editScript, strategySettings.recoveryStrategy);
-
-                    int editDistance = EditDistanceCalculator.calculateEditDistance(recoveredEditScript);
-                    System.out.println("--- Edit information ---");
-                    System.out.println("-- Edit Distance: " + editDistance);
-
-                    System.out.println("-- Edit Script:");
-                    for (EditOperation op : recoveredEditScript) {
-                        System.out.println(op);
-                    }
-
-                    // serialise and export
-                    aggregatedEditScripts.addAll(recoveredEditScript);
-                    exportEditScript(recoveredEditScript, method1, method2, strategySettings);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
-        });
+        // one task per method, in the order their scripts go into the aggregated script: unmatched methods (deleted,
+        // then added) and then the matched pairs
+        List<Callable<MethodScript>> tasks = new ArrayList<>();
+        for (PDG pdg : unmatchedInList1) {
+            tasks.add(() -> deleteScript(pdg, srcSourceFilePath, strategySettings));
+        }
+        for (PDG pdg : unmatchedInList2) {
+            tasks.add(() -> addScript(pdg, dstSourceFilePath, strategySettings));
+        }
+        graphMapping.getGraphMapping().forEach((srcPDG, dstPDG) -> tasks.add(() ->
+                pairScript(srcPDG, dstPDG, graphMapping, srcSourceFilePath, dstSourceFilePath, strategySettings)));
+
+        ClassDiff classDiff = new ClassDiff(graphMapping, pdgList1, pdgList2, tasks);
 
         // build edit script for class mappings at this point
         if (!pdgList1.isEmpty() && !pdgList2.isEmpty()) {
-            SootClass srcClass = pdgList1.get(0).getCFG().getBody().getMethod().getDeclaringClass();
-            SootClass dstClass = pdgList2.get(0).getCFG().getBody().getMethod().getDeclaringClass();
+            SootClass srcClass = pdgList1.get(0).getMethod().getDeclaringClass();
+            SootClass dstClass = pdgList2.get(0).getMethod().getDeclaringClass();
 
             // TODO: if one of these is empty, i need to mark it as an insertion or deletion of the entire class.
             //  so need to do a INSERT all or DELETE all for class metadata, this is currently not handled and only
             //  approximate.
             List<EditOperation> metadataScript = ClassMetadataDiffGenerator.generateClassMetadataDiff(srcClass, dstClass, srcSourceFilePath, dstSourceFilePath);
-            aggregatedEditScripts.addAll(metadataScript);
-            exportEditScript(metadataScript, "metadata", "metadata", null);
+            // not recovered, and exported without settings
+            classDiff.metadataScript = new MethodScript(metadataScript, "metadata", "metadata", null, null, null);
+        }
+        return classDiff;
+    }
+
+    /**
+     * writes out what diffing a class produced: its graph mappings, its delta graphs (queued, if enabled) and its edit
+     * scripts to their own files (if enabled) and on to the aggregated output. the method scripts are generated on the
+     * METHODS pool and each written as soon as it and those before it are done, so only a few are held at once. done
+     * by the calling thread, in class order, so the output does not depend on which class or method pair was done
+     * first.
+     */
+    private void writeClassDiff(ClassDiff classDiff) throws IOException, InterruptedException {
+        exportGraphMappings(classDiff.graphMapping, classDiff.pdgList1, classDiff.pdgList2, context.getOutputDir());
+
+        StrategySettings strategySettings = context.getSettings();
+        if (strategySettings.isDeltaGraphOutput()) {
+            context.exportGraph(() -> DiffGraphExporter.exportDiffPDGs(
+                    classDiff.graphMapping,
+                    classDiff.pdgList1,
+                    classDiff.pdgList2,
+                    context.getOutputDir() + "delta-graphs/"
+            ));
         }
 
-        if (strategySettings.isAggregateRecovery()) {
-            List<EditOperation> recAggregatedEditScripts = RecoveryProcessor.recoverMappings(aggregatedEditScripts, strategySettings.recoveryStrategy);
-            writeAggregatedEditScript(recAggregatedEditScripts, "out/diff.json", strategySettings);
-        } else {
-            writeAggregatedEditScript(aggregatedEditScripts, "out/diff.json", strategySettings);
+        DiffThreads.forEachInOrder(DiffThreads.Stage.METHODS, classDiff.tasks, this::writeMethodScript);
+        if (classDiff.metadataScript != null) {
+            writeMethodScript(classDiff.metadataScript);
         }
     }
 
-    private static void generateEditScriptsForUnmatched(List<PDG> unmatchedInList1, List<PDG> unmatchedInList2,
-                                                        String srcSourceFilePath, String dstSourceFilePath, StrategySettings strategySettings) {
-        unmatchedInList1.forEach(pdg -> {
-            try {
-                SootMethod method = pdg.getCFG().getBody().getMethod();
-                String methodSignature = pdg.getCFG().getBody().getMethod().getSignature();
-                System.out.println("Unmatched method in List 1 (to be deleted): " + methodSignature);
+    private void writeMethodScript(MethodScript script) throws IOException {
+        if (logger.isDebugEnabled()) {
+            logDetails(script);
+        }
+        if (script.editScript == null) {
+            return;
+        }
+        StrategySettings strategySettings = context.getSettings();
+        if (strategySettings.isMethodEditScripts()) {
+            // serialise and export
+            exportEditScript(script.editScript, script.method1, script.method2, script.exportSettings,
+                    context.getOutputDir(), strategySettings.isCompactOutput());
+        }
+        context.emit(script.editScript);
+    }
+
+    // the node mappings and edit operations of a method pair, at debug level
+    private static void logDetails(MethodScript script) {
+        if (script.description != null) {
+            logger.debug(script.description);
+        }
+        if (script.nodeMapping != null) {
+            logger.debug("--- Node Mapping:");
+            script.nodeMapping.printMappings();
+            if (script.editScript != null) {
+                logger.debug("--- Edit information ---");
+                logger.debug("-- Edit Distance: {}", EditDistanceCalculator.calculateEditDistance(script.editScript));
+
+                logger.debug("-- Edit Script:");
+                for (EditOperation op : script.editScript) {
+                    logger.debug("{}", op);
+                }
+            }
+        }
+    }
 
-                List<EditOperation> editScript = EditScriptGenerator.generateDeleteScript(pdg, srcSourceFilePath, method);
+    private MethodScript pairScript(PDG srcPDG, PDG dstPDG, GraphMapping graphMapping, String srcSourceFilePath,
+                                    String dstSourceFilePath, StrategySettings strategySettings) {
+        String method1 = srcPDG.getMethod().getSignature();
+        String method2 = dstPDG.getMethod().getSignature();
+        String description = "---\n> PDG from class 1: " + method1 + " is matched with PDG from class 2: " + method2;
+        if (logger.isTraceEnabled()) {
+            logger.trace("Node count {}", GraphTraversal.getNodeCount(srcPDG));
+            CycleDetection.hasCycle(srcPDG);
+            logger.trace("Node count {}", GraphTraversal.getNodeCount(dstPDG));
+            CycleDetection.hasCycle(dstPDG);
+        }
+        NodeMapping nodeMapping = graphMapping.getNodeMapping(srcPDG);
+        if (graphMapping.isIdentical(srcPDG)) {
+            // identical bodies, so the node level edit script is empty and only the signature can have changed
+            description += "\n--- Method body unchanged";
+            try {
+                List<EditOperation> editScript = EditScriptGenerator.generateSignatureScript(srcSourceFilePath,
+                        dstSourceFilePath, srcPDG.getMethod(), dstPDG.getMethod());
                 List<EditOperation> recoveredEditScript = RecoveryProcessor.recoverMappings(editScript, strategySettings.recoveryStrategy);
-                aggregatedEditScripts.addAll(recoveredEditScript);
-                exportEditScript(recoveredEditScript, methodSignature, "DELETION", strategySettings);
+                return new MethodScript(recoveredEditScript, method1, method2, strategySettings, description, null);
             } catch (Exception e) {
-                System.err.println("Failed to generate delete script for unmatched method in List 1");
-                e.printStackTrace();
+                logger.error("Failed to generate edit script for {} -> {}", method1, method2, e);
             }
-        });
-
-        unmatchedInList2.forEach(pdg -> {
+        } else if (nodeMapping != null) {
             try {
-                SootMethod method = pdg.getCFG().getBody().getMethod();
-                String methodSignature = pdg.getCFG().getBody().getMethod().getSignature();
-                System.out.println("Unmatched method in List 2 (to be added): " + methodSignature);
+                SootMethod srcObj = srcPDG.getMethod();
+                SootMethod destObj = dstPDG.getMethod();
+
+                List<EditOperation> editScript = EditScriptGenerator.generateEditScript(srcPDG, dstPDG, graphMapping,
+                        srcSourceFilePath, dstSourceFilePath, srcObj, destObj);
 
-                List<EditOperation> editScript = EditScriptGenerator.generateAddScript(pdg, dstSourceFilePath, method);
                 List<EditOperation> recoveredEditScript = RecoveryProcessor.recoverMappings(editScript, strategySettings.recoveryStrategy);
-                aggregatedEditScripts.addAll(recoveredEditScript);
-                exportEditScript(recoveredEditScript, "INSERTION", methodSignature, strategySettings);
+                return new MethodScript(recoveredEditScript, method1, method2, strategySettings, description, nodeMapping);
             } catch (Exception e) {
-                System.err.println("Failed to generate add script for unmatched method in List 2");
-                e.printStackTrace();
+                logger.error("Failed to generate edit script for {} -> {}", method1, method2, e);
             }
-        });
+        }
+        return new MethodScript(null, method1, method2, strategySettings, description, nodeMapping);
+    }
+
+    private MethodScript deleteScript(PDG pdg, String srcSourceFilePath, StrategySettings strategySettings) {
+        SootMethod method = pdg.getMethod();
+        String methodSignature = pdg.getMethod().getSignature();
+        String description = "Unmatched method in List 1 (to be deleted): " + methodSignature;
+        try {
+            List<EditOperation> editScript = EditScriptGenerator.generateDeleteScript(pdg, srcSourceFilePath, method);
+            List<EditOperation> recoveredEditScript = RecoveryProcessor.recoverMappings(editScript, strategySettings.recoveryStrategy);
+            return new MethodScript(recoveredEditScript, methodSignature, "DELETION", strategySettings, description, null);
+        } catch (Exception e) {
+            logger.error("Failed to generate delete script for unmatched method in List 1: {}", methodSignature, e);
+            return new MethodScript(null, methodSignature, "DELETION", strategySettings, description, null);
+        }
+    }
+
+    private MethodScript addScript(PDG pdg, String dstSourceFilePath, StrategySettings strategySettings) {
+        SootMethod method = pdg.getMethod();
+        String methodSignature = pdg.getMethod().getSignature();
+        String description = "Unmatched method in List 2 (to be added): " + methodSignature;
+        try {
+            List<EditOperation> editScript = EditScriptGenerator.generateAddScript(pdg, dstSourceFilePath, method);
+            List<EditOperation> recoveredEditScript = RecoveryProcessor.recoverMappings(editScript, strategySettings.recoveryStrategy);
+            return new MethodScript(recoveredEditScript, "INSERTION", methodSignature, strategySettings, description, null);
+        } catch (Exception e) {
+            logger.error("Failed to generate add script for unmatched method in List 2: {}", methodSignature, e);
+            return new MethodScript(null, "INSERTION", methodSignature, strategySettings, description, null);
+        }
     }
 
+    // what matching one class produced, and the tasks generating its method scripts, held until it is written out
+    private static final class ClassDiff {
+        final GraphMapping graphMapping;
+        final List<PDG> pdgList1;
+        final List<PDG> pdgList2;
+        final List<Callable<MethodScript>> tasks;
+        MethodScript metadataScript; // written after the methods', null if either class has no methods
 
+        ClassDiff(GraphMapping graphMapping, List<PDG> pdgList1, List<PDG> pdgList2,
+                  List<Callable<MethodScript>> tasks) {
+            this.graphMapping = graphMapping;
+            this.pdgList1 = pdgList1;
+            this.pdgList2 = pdgList2;
+            this.tasks = tasks;
+        }
+    }
+
+    // the (recovered) edit script of a method pair, null if it could not be generated, and what to print about it
+    private static final class MethodScript {
+        final List<EditOperation> editScript;
+        final String method1;
+        final String method2;
+        final StrategySettings exportSettings;
+        final String description;
+        final NodeMapping nodeMapping;
+
+        MethodScript(List<EditOperation> editScript, String method1, String method2, StrategySettings exportSettings,
+                     String description, NodeMapping nodeMapping) {
+            this.editScript = editScript;
+            this.method1 = method1;
+            this.method2 = method2;
+            this.exportSettings = exportSettings;
+            this.description = description;
+            this.nodeMapping = nodeMapping;
+        }
+    }
 }
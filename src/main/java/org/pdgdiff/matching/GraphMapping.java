@@ -1,9 +1,14 @@
 package org.pdgdiff.matching;
 
 import org.pdgdiff.graph.PDG;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * GraphMapping class to store mappings between PDGs. This class is used to store the mapping between
@@ -11,12 +16,17 @@ import java.util.Map;
  * is also stored.
  */
 public class GraphMapping {
+    private static final Logger logger = LoggerFactory.getLogger(GraphMapping.class);
+
     private Map<PDG, PDG> graphMapping;
     private Map<PDG, NodeMapping> nodeMappings;
+    private Set<PDG> identicalSrcPDGs; // src PDGs mapped onto a PDG with the same fingerprint
 
     public GraphMapping() {
-        this.graphMapping = new HashMap<>();
+        // in the order the pairs were mapped, which the method pairs' scripts (and so diff.json) follow
+        this.graphMapping = new LinkedHashMap<>();
         this.nodeMappings = new HashMap<>();
+        this.identicalSrcPDGs = new HashSet<>();
     }
 
     public void addGraphMapping(PDG srcPDG, PDG dstPDG, NodeMapping nodeMapping) {
@@ -24,6 +34,17 @@ public class GraphMapping {
         nodeMappings.put(srcPDG, nodeMapping);
     }
 
+    // maps two PDGs with identical bodies, their node mapping being the identity
+    public void addIdenticalGraphMapping(PDG srcPDG, PDG dstPDG, NodeMapping nodeMapping) {
+        addGraphMapping(srcPDG, dstPDG, nodeMapping);
+        identicalSrcPDGs.add(srcPDG);
+    }
+
+    // true if srcPDG was mapped onto a PDG with an identical body, i.e. its node level diff is empty
+    public boolean isIdentical(PDG srcPDG) {
+        return identicalSrcPDGs.contains(srcPDG);
+    }
+
     // retrieves the node mapping for a given PDG pair
     public NodeMapping getNodeMapping(PDG srcPDG) {
         return nodeMappings.get(srcPDG);
@@ -34,13 +55,16 @@ public class GraphMapping {
         return graphMapping;
     }
 
-    // pretty print all graph mappings for debugging (redundant otherwise)
+    // log all graph mappings at debug level (redundant otherwise)
     public void printGraphMappings() {
+        if (!logger.isDebugEnabled()) {
+            return;
+        }
         for (Map.Entry<PDG, PDG> entry : graphMapping.entrySet()) {
-            System.out.println("Source PDG: " + entry.getKey() + " --> Mapped to: " + entry.getValue());
+            logger.debug("Source PDG: {} --> Mapped to: {}", entry.getKey(), entry.getValue());
             NodeMapping nodeMapping = nodeMappings.get(entry.getKey());
             if (nodeMapping != null) {
-                System.out.println("Node Mappings for this PDG:");
+                logger.debug("Node Mappings for this PDG:");
                 nodeMapping.printMappings();
             }
         }
@@ -1,9 +1,19 @@
 package org.pdgdiff.matching;
 
+import org.pdgdiff.graph.NodeFeatures;
 import org.pdgdiff.graph.PDG;
 
+import soot.toolkits.graph.pdg.PDGNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
 
 /**
  * GraphMatcher abstract class to compare two lists of PDGs and find similarities, aiming to create a 1:1 mapping between
@@ -14,6 +24,14 @@ public abstract class GraphMatcher {
     protected List<PDG> srcPdgs;
     protected List<PDG> dstPdgs;
     protected GraphMapping graphMapping; // to store graph-level and node-level mappings
+    protected PairFilter pairFilter; // null disables pre-filtering of pairs
+
+    // pairs seen by the filter stage, and how many of those were never handed to the matcher
+    private final AtomicLong consideredPairs = new AtomicLong();
+    private final AtomicLong prunedPairs = new AtomicLong();
+    private int identicalPairs = 0;
+    private int movedPairs = 0; // of the identicalPairs, those on other lines
+    private int fingerprintCandidates = 0; // src PDGs looked up by fingerprint
 
     public GraphMatcher(List<PDG> srcPdgs, List<PDG> dstPdgs) {
         this.srcPdgs = srcPdgs;
@@ -22,5 +40,293 @@ public abstract class GraphMatcher {
         this.matchedPDGs = new HashSet<>();
     }
 
-    public abstract GraphMapping matchPDGLists();
-}
\ No newline at end of file
+    public GraphMapping matchPDGLists() {
+        // unchanged methods are mapped onto each other straight away, only the rest is left to the actual matcher
+        pairIdenticalPDGs();
+        return matchRemainingPDGLists();
+    }
+
+    /**
+     * matches srcPdgs against dstPdgs, which at this point only hold the PDGs without an identical counterpart.
+     */
+    protected abstract GraphMapping matchRemainingPDGLists();
+
+    public void setPairFilter(PairFilter pairFilter) {
+        this.pairFilter = pairFilter;
+    }
+
+    public long getConsideredPairCount() {
+        return consideredPairs.get();
+    }
+
+    public long getPrunedPairCount() {
+        return prunedPairs.get();
+    }
+
+    // pairs mapped by fingerprint, i.e. without running the matcher
+    public int getIdenticalPairCount() {
+        return identicalPairs;
+    }
+
+    // of getIdenticalPairCount(), the pairs whose bodies moved to other lines
+    public int getMovedPairCount() {
+        return movedPairs;
+    }
+
+    // how many src PDGs were looked up by fingerprint, out of which getIdenticalPairCount() were paired
+    public int getFingerprintCandidateCount() {
+        return fingerprintCandidates;
+    }
+
+    /**
+     * maps every src PDG onto the first unmapped dst PDG with the same fingerprint, using the identity node mapping
+     * (nodes paired up in unit order), and drops the mapped PDGs from srcPdgs and dstPdgs. the fingerprint leaves out
+     * line numbers, so a pair is only recorded as identical (an empty body diff) if every node kept its line, a moved
+     * one is mapped as usual and left to EditScriptGenerator, which finds the moves from the identity mapping.
+     */
+    private void pairIdenticalPDGs() {
+        fingerprintCandidates = srcPdgs.size();
+        Map<String, Deque<PDG>> dstByFingerprint = new HashMap<>();
+        for (PDG dstPdg : dstPdgs) {
+            if (dstPdg.getFingerprint() != null) {
+                dstByFingerprint.computeIfAbsent(dstPdg.getFingerprint(), k -> new ArrayDeque<>()).add(dstPdg);
+            }
+        }
+        if (dstByFingerprint.isEmpty()) {
+            return;
+        }
+
+        List<PDG> remainingSrc = new ArrayList<>();
+        HashSet<PDG> pairedDst = new HashSet<>();
+        for (PDG srcPdg : srcPdgs) {
+            Deque<PDG> candidates = srcPdg.getFingerprint() == null ? null : dstByFingerprint.get(srcPdg.getFingerprint());
+            PDG dstPdg = candidates == null ? null : candidates.poll();
+            List<PDGNode> srcNodes = srcPdg.getNodesInUnitOrder();
+            List<PDGNode> dstNodes = dstPdg == null ? null : dstPdg.getNodesInUnitOrder();
+            if (dstNodes == null || srcNodes == null || srcNodes.size() != dstNodes.size()) {
+                remainingSrc.add(srcPdg);
+                continue;
+            }
+            NodeMapping nodeMapping = new NodeMapping();
+            boolean sameLines = true;
+            NodeFeatures srcFeatures = srcPdg.getNodeFeatures();
+            NodeFeatures dstFeatures = dstPdg.getNodeFeatures();
+            for (int i = 0; i < srcNodes.size(); i++) {
+                nodeMapping.addMapping(srcNodes.get(i), dstNodes.get(i));
+                sameLines &= srcFeatures.getLineNumber(srcNodes.get(i)) == dstFeatures.getLineNumber(dstNodes.get(i));
+            }
+            if (sameLines) {
+                graphMapping.addIdenticalGraphMapping(srcPdg, dstPdg, nodeMapping);
+            } else {
+                graphMapping.addGraphMapping(srcPdg, dstPdg, nodeMapping);
+                movedPairs++;
+            }
+            pairedDst.add(dstPdg);
+            identicalPairs++;
+        }
+
+        List<PDG> remainingDst = new ArrayList<>();
+        for (PDG dstPdg : dstPdgs) {
+            if (!pairedDst.contains(dstPdg)) {
+                remainingDst.add(dstPdg);
+            }
+        }
+        this.srcPdgs = remainingSrc;
+        this.dstPdgs = remainingDst;
+    }
+
+    /**
+     * scores a single pair of PDGs, returning null if the pair cannot be matched at all.
+     */
+    protected interface PairScorer {
+        PairScore score(PDG srcPdg, PDG dstPdg);
+    }
+
+    /**
+     * scores every (src, dst) pair exactly once, spread over the common ForkJoinPool. cell [i][j] holds the score of
+     * srcPdgs[i] against dstPdgs[j], or null if the pair could not be matched (or was pruned by the pair filter).
+     */
+    protected PairScore[][] scoreAllPairs(PairScorer scorer) {
+        return scoreAllPairs(scorer, Double.NaN, false);
+    }
+
+    /**
+     * as scoreAllPairs(scorer), but with a pair filter set pairs whose bound cannot be strictly better than cutoff are
+     * not scored either, as the caller will discard them anyway. a NaN cutoff disables this.
+     */
+    protected PairScore[][] scoreAllPairs(PairScorer scorer, double cutoff, boolean higherIsBetter) {
+        int rows = srcPdgs.size();
+        int cols = dstPdgs.size();
+        PairScore[][] scores = new PairScore[rows][cols];
+        if (rows == 0 || cols == 0) {
+            return scores;
+        }
+
+        // build the compact graphs up front rather than have the workers contend on the lazy init
+        srcPdgs.forEach(PDG::getCompactPDG);
+        dstPdgs.forEach(PDG::getCompactPDG);
+
+        double[][] bounds = boundAllPairs();
+        IntStream.range(0, rows * cols).parallel().forEach(cell -> {
+            int i = cell / cols;
+            int j = cell % cols;
+            if (bounds != null) {
+                double bound = bounds[i][j];
+                if (Double.isNaN(bound) || (!Double.isNaN(cutoff) && !isBetter(bound, cutoff, higherIsBetter))) {
+                    prunedPairs.incrementAndGet();
+                    return;
+                }
+            }
+            scores[i][j] = scorer.score(srcPdgs.get(i), dstPdgs.get(j));
+        });
+        return scores;
+    }
+
+    /**
+     * greedy matching as selectGreedily(scoreAllPairs(scorer), ..) would do it, but pairs are only scored once their
+     * pair filter bound shows they could still be picked. each round, the most promising unscored pair of every
+     * remaining src PDG is scored (in parallel) until no unscored pair can beat the best scored one, which is then
+     * mapped. pairs that are never scored are counted as pruned. the result is the same as without the filter.
+     */
+    protected void matchGreedily(PairScorer scorer, boolean higherIsBetter) {
+        if (pairFilter == null) {
+            selectGreedily(scoreAllPairs(scorer), higherIsBetter);
+            return;
+        }
+        int rows = srcPdgs.size();
+        int cols = dstPdgs.size();
+        if (rows == 0 || cols == 0) {
+            return;
+        }
+
+        double[][] bounds = boundAllPairs();
+        PairScore[][] scores = new PairScore[rows][cols];
+        boolean[][] scored = new boolean[rows][cols];
+        boolean[] srcTaken = new boolean[rows];
+        boolean[] dstTaken = new boolean[cols];
+
+        while (true) {
+            int bestSrc;
+            int bestDst;
+            while (true) {
+                // best scored pair among the remaining ones, ties go to the first in (src, dst) order
+                bestSrc = -1;
+                bestDst = -1;
+                double bestScore = 0.0;
+                for (int i = 0; i < rows; i++) {
+                    if (srcTaken[i]) continue;
+                    for (int j = 0; j < cols; j++) {
+                        if (dstTaken[j] || scores[i][j] == null) continue;
+                        if (bestSrc == -1 || isBetter(scores[i][j].score, bestScore, higherIsBetter)) {
+                            bestScore = scores[i][j].score;
+                            bestSrc = i;
+                            bestDst = j;
+                        }
+                    }
+                }
+
+                // for every remaining src, its unscored pair with the best bound that could still take over
+                List<int[]> pending = new ArrayList<>();
+                for (int i = 0; i < rows; i++) {
+                    if (srcTaken[i]) continue;
+                    int pick = -1;
+                    for (int j = 0; j < cols; j++) {
+                        double bound = bounds[i][j];
+                        if (dstTaken[j] || scored[i][j] || Double.isNaN(bound)) continue;
+                        boolean canWin = bestSrc == -1
+                                || isBetter(bound, bestScore, higherIsBetter)
+                                || (bound == bestScore && (i < bestSrc || (i == bestSrc && j < bestDst)));
+                        if (canWin && (pick == -1 || isBetter(bound, bounds[i][pick], higherIsBetter))) {
+                            pick = j;
+                        }
+                    }
+                    if (pick != -1) {
+                        pending.add(new int[]{i, pick});
+                    }
+                }
+                if (pending.isEmpty()) {
+                    break;
+                }
+                pending.parallelStream().forEach(pair -> {
+                    scores[pair[0]][pair[1]] = scorer.score(srcPdgs.get(pair[0]), dstPdgs.get(pair[1]));
+                    scored[pair[0]][pair[1]] = true;
+                });
+            }
+
+            if (bestSrc == -1) {
+                // no good matches remain
+                break;
+            }
+            srcTaken[bestSrc] = true;
+            dstTaken[bestDst] = true;
+            graphMapping.addGraphMapping(srcPdgs.get(bestSrc), dstPdgs.get(bestDst), scores[bestSrc][bestDst].nodeMapping);
+        }
+
+        long unscored = 0;
+        for (boolean[] row : scored) {
+            for (boolean cell : row) {
+                if (!cell) unscored++;
+            }
+        }
+        prunedPairs.addAndGet(unscored);
+    }
+
+    /**
+     * pair filter bound of every (src, dst) pair, or null if there is no filter. also counts the pairs as considered.
+     */
+    private double[][] boundAllPairs() {
+        if (pairFilter == null) {
+            return null;
+        }
+        PDGSignature[] srcSignatures = srcPdgs.stream().map(PDGSignature::of).toArray(PDGSignature[]::new);
+        PDGSignature[] dstSignatures = dstPdgs.stream().map(PDGSignature::of).toArray(PDGSignature[]::new);
+        double[][] bounds = new double[srcSignatures.length][dstSignatures.length];
+        for (int i = 0; i < srcSignatures.length; i++) {
+            for (int j = 0; j < dstSignatures.length; j++) {
+                bounds[i][j] = pairFilter.bound(srcSignatures[i], dstSignatures[j]);
+            }
+        }
+        consideredPairs.addAndGet((long) srcSignatures.length * dstSignatures.length);
+        return bounds;
+    }
+
+    private static boolean isBetter(double score, double than, boolean higherIsBetter) {
+        return higherIsBetter ? score > than : score < than;
+    }
+
+    /**
+     * repeatedly takes the best remaining pair in the score matrix and maps it, until one side runs out or no
+     * scoreable pair remains. ties go to the first pair in (src, dst) list order, as with the original nested loop.
+     */
+    protected void selectGreedily(PairScore[][] scores, boolean higherIsBetter) {
+        boolean[] srcTaken = new boolean[srcPdgs.size()];
+        boolean[] dstTaken = new boolean[dstPdgs.size()];
+
+        while (true) {
+            int bestSrc = -1;
+            int bestDst = -1;
+            double bestScore = higherIsBetter ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+
+            for (int i = 0; i < srcTaken.length; i++) {
+                if (srcTaken[i]) continue;
+                for (int j = 0; j < dstTaken.length; j++) {
+                    if (dstTaken[j] || scores[i][j] == null) continue;
+                    double score = scores[i][j].score;
+                    if (higherIsBetter ? score > bestScore : score < bestScore) {
+                        bestScore = score;
+                        bestSrc = i;
+                        bestDst = j;
+                    }
+                }
+            }
+
+            if (bestSrc == -1) {
+                // no good matches remain
+                break;
+            }
+            srcTaken[bestSrc] = true;
+            dstTaken[bestDst] = true;
+            graphMapping.addGraphMapping(srcPdgs.get(bestSrc), dstPdgs.get(bestDst), scores[bestSrc][bestDst].nodeMapping);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.pdgdiff.matching;
 
 import org.pdgdiff.graph.PDG;
 import org.pdgdiff.matching.models.GEDGraphMatcher;
+import org.pdgdiff.matching.models.HungarianGEDGraphMatcher;
 import org.pdgdiff.matching.models.UllmannGraphMatcher;
 import org.pdgdiff.matching.models.VF2GraphMatcher;
 
@@ -12,7 +13,22 @@ public class GraphMatcherFactory {
     public enum MatchingStrategy {
         VF2,
         ULLMANN,
-        GED
+        GED,
+        GED_HUNGARIAN
+    }
+
+    public static GraphMatcher createMatcher(StrategySettings settings, List<PDG> srcPDGs, List<PDG> destPDGs) {
+        if (settings.getMatchingStrategy() == MatchingStrategy.GED_HUNGARIAN) {
+            return new HungarianGEDGraphMatcher(srcPDGs, destPDGs, settings.getUnmatchedThreshold(),
+                    settings.getGedSparseAbove());
+        }
+        if (settings.getMatchingStrategy() == MatchingStrategy.GED) {
+            return new GEDGraphMatcher(srcPDGs, destPDGs, settings.getGedSparseAbove());
+        }
+        if (settings.getMatchingStrategy() == MatchingStrategy.VF2) {
+            return new VF2GraphMatcher(srcPDGs, destPDGs, settings.getVf2Budget());
+        }
+        return createMatcher(settings.getMatchingStrategy(), srcPDGs, destPDGs);
     }
 
     public static GraphMatcher createMatcher(MatchingStrategy strategy, List<PDG> srcPDGs, List<PDG> destPDGs) {
@@ -23,6 +39,8 @@ public class GraphMatcherFactory {
                 return new UllmannGraphMatcher(srcPDGs, destPDGs);
             case GED:
                 return new GEDGraphMatcher(srcPDGs, destPDGs);
+            case GED_HUNGARIAN:
+                return new HungarianGEDGraphMatcher(srcPDGs, destPDGs);
             default:
                 throw new IllegalArgumentException("Unknown matching strategy: " + strategy);
         }
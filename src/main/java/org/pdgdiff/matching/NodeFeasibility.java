@@ -1,18 +1,32 @@
 package org.pdgdiff.matching;
 
+import org.pdgdiff.graph.CachedUnit;
 import soot.toolkits.graph.pdg.PDGNode;
 
 public class NodeFeasibility {
+    // bits returned by categoryOf, a node can fall in several categories
+    public static final int STATEMENT = 1;
+    public static final int DECLARATION = 1 << 1;
+    public static final int CONTROL_FLOW = 1 << 2;
+    public static final int DATA = 1 << 3;
+
     public static boolean isSameNodeCategory(PDGNode n1, PDGNode n2) {
-        // get unit for each node
-        Object node1 = n1.getNode();
-        Object node2 = n2.getNode();
-
-        // check for abstract syntax categories
-        return (isStatement(node1) && isStatement(node2)) ||
-                (isDeclaration(node1) && isDeclaration(node2)) ||
-                (isControlFlowNode(node1) && isControlFlowNode(node2)) ||
-                (isDataNode(node1) && isDataNode(node2));
+        // check for abstract syntax categories, two nodes are of the same category if they share any of them
+        return (categoryOf(n1) & categoryOf(n2)) != 0;
+    }
+
+    /**
+     * bitmask of the abstract syntax categories (STATEMENT, DECLARATION, CONTROL_FLOW, DATA) the node's unit falls in,
+     * 0 if it is in none of them
+     */
+    public static int categoryOf(PDGNode n) {
+        Object node = n.getNode();
+        int category = 0;
+        if (isStatement(node)) category |= STATEMENT;
+        if (isDeclaration(node)) category |= DECLARATION;
+        if (isControlFlowNode(node)) category |= CONTROL_FLOW;
+        if (isDataNode(node)) category |= DATA;
+        return category;
     }
 
     private static boolean isStatement(Object node) {
@@ -34,11 +48,19 @@ public class NodeFeasibility {
         return false;
     }
 
+    // units of cached PDGs remember the kind of the statement they stand for
     private static boolean isControlFlowNode(Object node) {
+        if (node instanceof CachedUnit) {
+            CachedUnit.Kind kind = ((CachedUnit) node).getKind();
+            return kind == CachedUnit.Kind.IF || kind == CachedUnit.Kind.SWITCH;
+        }
         return node instanceof soot.jimple.IfStmt || node instanceof soot.jimple.SwitchStmt;
     }
 
     private static boolean isDataNode(Object node) {
+        if (node instanceof CachedUnit) {
+            return ((CachedUnit) node).getKind() == CachedUnit.Kind.ASSIGN;
+        }
         return node instanceof soot.jimple.AssignStmt || node instanceof soot.jimple.ArrayRef;
     }
 }
@@ -1,5 +1,7 @@
 package org.pdgdiff.matching;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import soot.toolkits.graph.pdg.PDGNode;
 
 import java.util.HashMap;
@@ -10,6 +12,8 @@ import java.util.Map;
  * nodes in two PDGs that have been matched by the GraphMatcher.
  */
 public class NodeMapping {
+    private static final Logger logger = LoggerFactory.getLogger(NodeMapping.class);
+
     private Map<PDGNode, PDGNode> nodeMapping;
     private Map<PDGNode, PDGNode> reverseNodeMapping;
 
@@ -34,11 +38,13 @@ public class NodeMapping {
         return reverseNodeMapping;
     }
 
-    // print all node mappings for debugging
+    // log all node mappings, at debug level
     public void printMappings() {
+        if (!logger.isDebugEnabled()) {
+            return;
+        }
         for (Map.Entry<PDGNode, PDGNode> entry : nodeMapping.entrySet()) {
-            System.out.println("Source Node: " + entry.getKey()
-                    + " --> Mapped to: " + entry.getValue());
+            logger.debug("Source Node: {} --> Mapped to: {}", entry.getKey(), entry.getValue());
         }
     }
 
@@ -0,0 +1,81 @@
+package org.pdgdiff.matching;
+
+import org.pdgdiff.graph.CompactPDG;
+import org.pdgdiff.graph.NodeFeatures;
+import org.pdgdiff.graph.PDG;
+import soot.toolkits.graph.pdg.PDGNode;
+
+/**
+ * Cheap per-PDG summary used to pre-filter PDG pairs (see PairFilter) before running a full matcher on them. Like the
+ * matchers it only looks at the nodes reachable from the start node, i.e. compact indices [0, reachableCount).
+ */
+public class PDGSignature {
+    public final int nodeCount;
+    public final int[] attribCounts;    // indexed by PDGNode.Attribute ordinal
+    public final int[] categoryCounts;  // indexed by NodeFeasibility.categoryOf mask, [0] are uncategorised nodes
+    public final int controlEdgeCount;
+    public final int dataEdgeCount;
+    public final int edgeCount;         // node pairs with an edge of either kind
+    public final int startNodeDegree;   // edges into or out of the start node (compact index 0)
+
+    private PDGSignature(CompactPDG pdg, NodeFeatures features) {
+        this.nodeCount = pdg.getReachableCount();
+        this.attribCounts = new int[PDGNode.Attribute.values().length];
+        this.categoryCounts = new int[(NodeFeasibility.STATEMENT | NodeFeasibility.DECLARATION
+                | NodeFeasibility.CONTROL_FLOW | NodeFeasibility.DATA) + 1];
+
+        int ctrl = 0;
+        int data = 0;
+        int edges = 0;
+        int startDegree = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            attribCounts[pdg.getAttrib(i)]++;
+            categoryCounts[features.getCategory(i)]++;
+            for (int e = pdg.succStart(i); e < pdg.succEnd(i); e++) {
+                int target = pdg.succTarget(e);
+                if (target >= nodeCount) {
+                    continue;
+                }
+                edges++;
+                if ((pdg.succKind(e) & CompactPDG.CONTROL) != 0) ctrl++;
+                if ((pdg.succKind(e) & CompactPDG.DATA) != 0) data++;
+                if (i == 0 || target == 0) startDegree++;
+            }
+        }
+        this.controlEdgeCount = ctrl;
+        this.dataEdgeCount = data;
+        this.edgeCount = edges;
+        this.startNodeDegree = startDegree;
+    }
+
+    public static PDGSignature of(PDG pdg) {
+        return new PDGSignature(pdg.getCompactPDG(), pdg.getNodeFeatures());
+    }
+
+    /**
+     * number of nodes of the two PDGs that can possibly be paired up when pairs must share an attribute
+     */
+    public int attribOverlap(PDGSignature other) {
+        int overlap = 0;
+        for (int a = 0; a < attribCounts.length; a++) {
+            overlap += Math.min(attribCounts[a], other.attribCounts[a]);
+        }
+        return overlap;
+    }
+
+    /**
+     * necessary condition for every node of this PDG to be mapped onto a distinct node of the other one with the
+     * same attribute
+     */
+    public boolean attribsFitInto(PDGSignature other) {
+        if (nodeCount > other.nodeCount) {
+            return false;
+        }
+        for (int a = 0; a < attribCounts.length; a++) {
+            if (attribCounts[a] > other.attribCounts[a]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
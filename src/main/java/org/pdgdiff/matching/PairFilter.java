@@ -0,0 +1,11 @@
+package org.pdgdiff.matching;
+
+/**
+ * Cheap pre-filter stage run on (src, dst) PDG pairs before the expensive matcher is. From the signatures of both PDGs
+ * it gives an optimistic bound on the score the matcher could assign the pair, an upper bound for matchers where a
+ * higher score is better and a lower bound for distance based ones. Double.NaN means the matcher can never map the
+ * pair. GraphMatcher skips every pair whose bound cannot beat the best score it already has.
+ */
+public interface PairFilter {
+    double bound(PDGSignature srcSignature, PDGSignature dstSignature);
+}
@@ -0,0 +1,15 @@
+package org.pdgdiff.matching;
+
+/**
+ * Result of comparing a single (src, dst) PDG pair, i.e. the score the matcher assigns to the pair together with the
+ * node mapping that produced it. Whether a higher or lower score is better depends on the matcher.
+ */
+public class PairScore {
+    public final double score;
+    public final NodeMapping nodeMapping;
+
+    public PairScore(double score, NodeMapping nodeMapping) {
+        this.score = score;
+        this.nodeMapping = nodeMapping;
+    }
+}
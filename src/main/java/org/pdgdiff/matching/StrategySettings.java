@@ -1,11 +1,28 @@
 package org.pdgdiff.matching;
 
 import org.pdgdiff.edit.RecoveryProcessor;
+import org.pdgdiff.matching.models.ged.GEDMatcher;
+import org.pdgdiff.matching.models.vf2.VF2Budget;
 
 public class StrategySettings {
     protected RecoveryProcessor.RecoveryStrategy recoveryStrategy;
     protected GraphMatcherFactory.MatchingStrategy matchingStrategy;
     protected boolean aggregateRecovery;
+    // GED_HUNGARIAN only: method pairs with an edit distance at or above this are left unmatched
+    protected double unmatchedThreshold = Double.POSITIVE_INFINITY;
+    // VF2 only: limits on each method-pair search, past which the best partial mapping is used
+    protected VF2Budget vf2Budget = VF2Budget.UNLIMITED;
+    // GED and GED_HUNGARIAN only: method pairs with more nodes than this use the sparse cost matrix and solver
+    protected int gedSparseAbove = GEDMatcher.DEFAULT_SPARSE_ABOVE;
+    // json without indentation, for diff.json and the per-method edit scripts
+    protected boolean compactOutput = false;
+    // whether each method pair's edit script is also written to its own file next to diff.json
+    protected boolean methodEditScripts = true;
+    // whether diff.json is accompanied by diff.bin, the same script in BinaryOperationFormatter's format
+    protected boolean binaryOutput = false;
+    // debugging graphs, written in the background: each method's pdg as .dot and .txt, and a delta graph per method pair
+    protected boolean pdgGraphOutput = false;
+    protected boolean deltaGraphOutput = false;
 
     public StrategySettings(RecoveryProcessor.RecoveryStrategy recoveryStrategy, GraphMatcherFactory.MatchingStrategy matchingStrategy, boolean aggregateRecovery) {
         this.recoveryStrategy = recoveryStrategy;
@@ -26,6 +43,38 @@ public class StrategySettings {
         return aggregateRecovery;
     }
 
+    public double getUnmatchedThreshold() {
+        return unmatchedThreshold;
+    }
+
+    public VF2Budget getVf2Budget() {
+        return vf2Budget;
+    }
+
+    public int getGedSparseAbove() {
+        return gedSparseAbove;
+    }
+
+    public boolean isCompactOutput() {
+        return compactOutput;
+    }
+
+    public boolean isMethodEditScripts() {
+        return methodEditScripts;
+    }
+
+    public boolean isBinaryOutput() {
+        return binaryOutput;
+    }
+
+    public boolean isPdgGraphOutput() {
+        return pdgGraphOutput;
+    }
+
+    public boolean isDeltaGraphOutput() {
+        return deltaGraphOutput;
+    }
+
     public void setRecoveryStrategy(RecoveryProcessor.RecoveryStrategy recoveryStrategy) {
         this.recoveryStrategy = recoveryStrategy;
     }
@@ -33,4 +82,36 @@ public class StrategySettings {
     public void setMatchingStrategy(GraphMatcherFactory.MatchingStrategy matchingStrategy) {
         this.matchingStrategy = matchingStrategy;
     }
+
+    public void setUnmatchedThreshold(double unmatchedThreshold) {
+        this.unmatchedThreshold = unmatchedThreshold;
+    }
+
+    public void setVf2Budget(VF2Budget vf2Budget) {
+        this.vf2Budget = vf2Budget;
+    }
+
+    public void setGedSparseAbove(int gedSparseAbove) {
+        this.gedSparseAbove = gedSparseAbove;
+    }
+
+    public void setCompactOutput(boolean compactOutput) {
+        this.compactOutput = compactOutput;
+    }
+
+    public void setMethodEditScripts(boolean methodEditScripts) {
+        this.methodEditScripts = methodEditScripts;
+    }
+
+    public void setBinaryOutput(boolean binaryOutput) {
+        this.binaryOutput = binaryOutput;
+    }
+
+    public void setPdgGraphOutput(boolean pdgGraphOutput) {
+        this.pdgGraphOutput = pdgGraphOutput;
+    }
+
+    public void setDeltaGraphOutput(boolean deltaGraphOutput) {
+        this.deltaGraphOutput = deltaGraphOutput;
+    }
 }
@@ -3,11 +3,10 @@ package org.pdgdiff.matching.models;
 import org.pdgdiff.graph.PDG;
 import org.pdgdiff.matching.GraphMapping;
 import org.pdgdiff.matching.GraphMatcher;
-import org.pdgdiff.matching.NodeMapping;
+import org.pdgdiff.matching.PairScore;
 import org.pdgdiff.matching.models.ged.GEDMatcher;
 import org.pdgdiff.matching.models.ged.GEDResult;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -17,49 +16,30 @@ import java.util.List;
  */
 public class GEDGraphMatcher extends GraphMatcher {
 
+    // PDGs above this many nodes are matched with GEDMatcher's sparse path
+    private final int sparseAbove;
+
     public GEDGraphMatcher(List<PDG> srcPdgs, List<PDG> dstPdgs) {
+        this(srcPdgs, dstPdgs, GEDMatcher.DEFAULT_SPARSE_ABOVE);
+    }
+
+    public GEDGraphMatcher(List<PDG> srcPdgs, List<PDG> dstPdgs, int sparseAbove) {
         super(srcPdgs, dstPdgs);
+        this.sparseAbove = sparseAbove;
+        this.pairFilter = (src, dst) -> GEDMatcher.distanceLowerBound(src, dst, sparseAbove);
     }
 
     @Override
-    public GraphMapping matchPDGLists() {
-        List<PDG> unmappedSrcPdgs = new ArrayList<>(srcPdgs);
-        List<PDG> unmappedDstPdgs = new ArrayList<>(dstPdgs);
-
-        while (!unmappedSrcPdgs.isEmpty() && !unmappedDstPdgs.isEmpty()) {
-            double minDistance = Double.POSITIVE_INFINITY;
-            PDG bestSrcPdg = null;
-            PDG bestDstPdg = null;
-            NodeMapping bestNodeMapping = null;
-
-            // for each unmatched PDG in src and dest, compute the minimal graph-edit distance
-            for (PDG srcPdg : unmappedSrcPdgs) {
-                for (PDG dstPdg : unmappedDstPdgs) {
-                    GEDMatcher ged = new GEDMatcher(srcPdg, dstPdg);
-                    GEDResult result = ged.match();  // get (distance, nodeMapping)
-
-                    if (result != null && result.distance < minDistance) {
-                        minDistance = result.distance;
-                        bestSrcPdg = srcPdg;
-                        bestDstPdg = dstPdg;
-                        bestNodeMapping = result.nodeMapping;
-                    }
-                }
-            }
-
-            if (bestSrcPdg != null && bestDstPdg != null) {
-                //  found the "best" pair, remove them from the unmatched sets
-                unmappedSrcPdgs.remove(bestSrcPdg);
-                unmappedDstPdgs.remove(bestDstPdg);
-
-                // the chosen mapping added in the global GraphMapping
-                graphMapping.addGraphMapping(bestSrcPdg, bestDstPdg, bestNodeMapping);
-            } else {
-                // no good matches remain
-                break;
-            }
-        }
-
+    protected GraphMapping matchRemainingPDGLists() {
+        // compute the graph-edit distance of src/dest pairs (skipping those whose lower bound rules them out), then
+        // repeatedly map the minimal pair
+        matchGreedily((src, dst) -> scorePair(src, dst, sparseAbove), false);
         return graphMapping;
     }
+
+    static PairScore scorePair(PDG srcPdg, PDG dstPdg, int sparseAbove) {
+        GEDMatcher ged = new GEDMatcher(srcPdg, dstPdg, sparseAbove);
+        GEDResult result = ged.match();  // get (distance, nodeMapping)
+        return result == null ? null : new PairScore(result.distance, result.nodeMapping);
+    }
 }
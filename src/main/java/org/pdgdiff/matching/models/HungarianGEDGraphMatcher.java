@@ -0,0 +1,106 @@
+package org.pdgdiff.matching.models;
+
+import org.pdgdiff.graph.PDG;
+import org.pdgdiff.matching.GraphMapping;
+import org.pdgdiff.matching.GraphMatcher;
+import org.pdgdiff.matching.PairScore;
+import org.pdgdiff.matching.models.ged.GEDMatcher;
+import org.pdgdiff.matching.models.ged.HungarianAlgorithm;
+
+import java.util.List;
+
+/**
+ * A GraphMatcher that, like GEDGraphMatcher, computes the graph edit distance of every src/dest PDG pair, but instead
+ * of greedily taking the cheapest pair each round it solves a single method-level assignment problem over all pair
+ * distances with the Hungarian algorithm. This gives the assignment with minimal total edit distance.
+ *
+ * Pairs whose distance is at or above the unmatched threshold are never mapped, leaving both methods unmatched (to be
+ * reported as a deletion and an insertion). With an infinite threshold as many methods as possible are mapped, as in
+ * the greedy matcher.
+ */
+public class HungarianGEDGraphMatcher extends GraphMatcher {
+
+    private final double unmatchedThreshold;
+    // PDGs above this many nodes are matched with GEDMatcher's sparse path
+    private final int sparseAbove;
+
+    public HungarianGEDGraphMatcher(List<PDG> srcPdgs, List<PDG> dstPdgs) {
+        this(srcPdgs, dstPdgs, Double.POSITIVE_INFINITY);
+    }
+
+    public HungarianGEDGraphMatcher(List<PDG> srcPdgs, List<PDG> dstPdgs, double unmatchedThreshold) {
+        this(srcPdgs, dstPdgs, unmatchedThreshold, GEDMatcher.DEFAULT_SPARSE_ABOVE);
+    }
+
+    public HungarianGEDGraphMatcher(List<PDG> srcPdgs, List<PDG> dstPdgs, double unmatchedThreshold, int sparseAbove) {
+        super(srcPdgs, dstPdgs);
+        this.unmatchedThreshold = unmatchedThreshold;
+        this.sparseAbove = sparseAbove;
+        this.pairFilter = (src, dst) -> GEDMatcher.distanceLowerBound(src, dst, sparseAbove);
+    }
+
+    @Override
+    protected GraphMapping matchRemainingPDGLists() {
+        int rows = srcPdgs.size();
+        int cols = dstPdgs.size();
+        if (rows == 0 || cols == 0) {
+            return graphMapping;
+        }
+
+        boolean bounded = !Double.isInfinite(unmatchedThreshold);
+        // pairs that cannot get below the threshold are left unscored, they would be left unmatched regardless
+        PairScorer scorer = (src, dst) -> GEDGraphMatcher.scorePair(src, dst, sparseAbove);
+        PairScore[][] distances = bounded
+                ? scoreAllPairs(scorer, unmatchedThreshold, false)
+                : scoreAllPairs(scorer);
+
+        // HungarianAlgorithm.minimizeAssignment works on indices 1..n-1 (row/col 0 are its sentinel), so the square
+        // matrix carries a leading dummy row and column. padded cells stand for 'left unmatched': with a threshold
+        // a src method pays the threshold for that, and real pairs are capped at it, so a pair is only worth mapping
+        // if it is cheaper than leaving the method unmatched.
+        int n = Math.max(rows, cols) + 1;
+        double[][] costMatrix = new double[n][n];
+        for (int i = 1; i < n; i++) {
+            for (int j = 1; j < n; j++) {
+                boolean real = i <= rows && j <= cols && distances[i - 1][j - 1] != null;
+                if (real) {
+                    double distance = distances[i - 1][j - 1].score;
+                    costMatrix[i][j] = bounded ? Math.min(distance, unmatchedThreshold) : distance;
+                } else if (i <= rows) {
+                    costMatrix[i][j] = bounded ? unmatchedThreshold : 0.0;
+                } else {
+                    costMatrix[i][j] = 0.0;
+                }
+            }
+        }
+        if (!bounded) {
+            // unscoreable pairs must still lose against any real pair
+            double worst = 0.0;
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < cols; j++) {
+                    if (distances[i][j] != null) worst = Math.max(worst, distances[i][j].score);
+                }
+            }
+            for (int i = 1; i <= rows; i++) {
+                for (int j = 1; j <= cols; j++) {
+                    if (distances[i - 1][j - 1] == null) costMatrix[i][j] = worst + 1.0;
+                }
+            }
+        }
+
+        int[] assignment = HungarianAlgorithm.minimizeAssignment(costMatrix);
+
+        for (int i = 1; i <= rows; i++) {
+            int j = assignment[i];
+            if (j < 1 || j > cols) {
+                continue; // assigned to a dummy, i.e. unmatched
+            }
+            PairScore pair = distances[i - 1][j - 1];
+            if (pair == null || pair.score >= unmatchedThreshold) {
+                continue;
+            }
+            graphMapping.addGraphMapping(srcPdgs.get(i - 1), dstPdgs.get(j - 1), pair.nodeMapping);
+        }
+        return graphMapping;
+    }
+}
@@ -1,70 +1,66 @@
 package org.pdgdiff.matching.models;
 
-import org.pdgdiff.graph.GraphTraversal;
 import org.pdgdiff.graph.PDG;
 import org.pdgdiff.matching.GraphMapping;
 import org.pdgdiff.matching.GraphMatcher;
 import org.pdgdiff.matching.NodeMapping;
+import org.pdgdiff.matching.PDGSignature;
+import org.pdgdiff.matching.PairScore;
 import org.pdgdiff.matching.models.ullmann.UllmannMatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class UllmannGraphMatcher extends GraphMatcher {
+    private static final Logger logger = LoggerFactory.getLogger(UllmannGraphMatcher.class);
+
     public UllmannGraphMatcher(List<PDG> list1, List<PDG> list2) {
         super(list1, list2);
+        this.pairFilter = UllmannGraphMatcher::scoreUpperBound;
     }
 
     @Override
-    public GraphMapping matchPDGLists() {
-        List<PDG> unmappedPDGs1 = new ArrayList<>(srcPdgs);
-        List<PDG> unmappedPDGs2 = new ArrayList<>(dstPdgs);
-
-        while (!unmappedPDGs1.isEmpty() && !unmappedPDGs2.isEmpty()) {
-            double maxScore = Double.NEGATIVE_INFINITY;
-            PDG bestPdg1 = null;
-            PDG bestPdg2 = null;
-            NodeMapping bestNodeMapping = null;
+    protected GraphMapping matchRemainingPDGLists() {
+        // for each pair of PDGs compute similarity score at most once, then greedily map the best pairs
+        matchGreedily(UllmannGraphMatcher::scorePair, true);
 
-            // for each pair of unmapped PDGs, compute similarity score
-            for (PDG pdg1 : unmappedPDGs1) {
-                for (PDG pdg2 : unmappedPDGs2) {
-                    UllmannMatcher ullmannMatcher = new UllmannMatcher(pdg1, pdg2);
-                    NodeMapping nodeMapping = ullmannMatcher.match();
+        for (PDG pdg1 : srcPdgs) {
+            if (!graphMapping.getGraphMapping().containsKey(pdg1)) {
+                logger.debug("No matching PDG found for: {}", pdg1.getMethod().getSignature());
+            }
+        }
 
-                    if (nodeMapping != null && !nodeMapping.isEmpty()) {
-                        int mappedNodes = nodeMapping.size();
-                        int unmappedNodes1 = GraphTraversal.getNodeCount(pdg1) - mappedNodes;
-                        int unmappedNodes2 = GraphTraversal.getNodeCount(pdg2) - mappedNodes;
+        return graphMapping;
+    }
 
-                        // TODO: this is using same score as vf2 matcher, again not sure if this is ideal!
-                        double score = (double) mappedNodes / (mappedNodes + unmappedNodes1 + unmappedNodes2);
+    private static PairScore scorePair(PDG pdg1, PDG pdg2) {
+        UllmannMatcher ullmannMatcher = new UllmannMatcher(pdg1, pdg2);
+        NodeMapping nodeMapping = ullmannMatcher.match();
 
-                        if (score > maxScore) {
-                            maxScore = score;
-                            bestPdg1 = pdg1;
-                            bestPdg2 = pdg2;
-                            bestNodeMapping = nodeMapping;
-                        }
-                    }
-                }
-            }
-
-            if (bestPdg1 != null && bestPdg2 != null) {
-                // map the best pdg pair found
-                unmappedPDGs1.remove(bestPdg1);
-                unmappedPDGs2.remove(bestPdg2);
-                graphMapping.addGraphMapping(bestPdg1, bestPdg2, bestNodeMapping);
-            } else {
-                // no more matches found
-                break;
-            }
+        if (nodeMapping == null || nodeMapping.isEmpty()) {
+            return null;
         }
+        int mappedNodes = nodeMapping.size();
+        int unmappedNodes1 = pdg1.getCompactPDG().getReachableCount() - mappedNodes;
+        int unmappedNodes2 = pdg2.getCompactPDG().getReachableCount() - mappedNodes;
 
-        for (PDG pdg1 : unmappedPDGs1) {
-            System.out.println("No matching PDG found for: " + pdg1.getCFG().getBody().getMethod().getSignature());
-        }
+        // TODO: this is using same score as vf2 matcher, again not sure if this is ideal!
+        double score = (double) mappedNodes / (mappedNodes + unmappedNodes1 + unmappedNodes2);
+        return new PairScore(score, nodeMapping);
+    }
 
-        return graphMapping;
+    /**
+     * Ullmann only succeeds when every node of pdg1 is mapped onto a distinct node of pdg2 with the same attribute,
+     * in which case the score is fully determined by the node counts.
+     */
+    private static double scoreUpperBound(PDGSignature sig1, PDGSignature sig2) {
+        if (sig1.nodeCount == 0 || !sig1.attribsFitInto(sig2)) {
+            return Double.NaN;
+        }
+        int mappedNodes = sig1.nodeCount;
+        int unmappedNodes1 = sig1.nodeCount - mappedNodes;
+        int unmappedNodes2 = sig2.nodeCount - mappedNodes;
+        return (double) mappedNodes / (mappedNodes + unmappedNodes1 + unmappedNodes2);
     }
 }
@@ -1,71 +1,108 @@
 package org.pdgdiff.matching.models;
 
-import org.pdgdiff.graph.GraphTraversal;
 import org.pdgdiff.graph.PDG;
 import org.pdgdiff.matching.GraphMapping;
 import org.pdgdiff.matching.GraphMatcher;
 import org.pdgdiff.matching.NodeMapping;
+import org.pdgdiff.matching.PDGSignature;
+import org.pdgdiff.matching.PairScore;
+import org.pdgdiff.matching.models.vf2.VF2Budget;
 import org.pdgdiff.matching.models.vf2.VF2Matcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class VF2GraphMatcher extends GraphMatcher {
+    private static final Logger logger = LoggerFactory.getLogger(VF2GraphMatcher.class);
+
+    private final VF2Budget budget;
+    private final AtomicInteger budgetExhaustedPairs = new AtomicInteger();
+
     public VF2GraphMatcher(List<PDG> srcPdgs, List<PDG> dstPdgs) {
+        this(srcPdgs, dstPdgs, VF2Budget.UNLIMITED);
+    }
+
+    public VF2GraphMatcher(List<PDG> srcPdgs, List<PDG> dstPdgs, VF2Budget budget) {
         super(srcPdgs, dstPdgs);
+        this.budget = budget;
+        // unbounded, a pair ruled out by the filter cannot have a complete mapping, so cannot be matched. under a budget
+        // such a pair still gets the best partial mapping the search finds, so is only bounded by its node counts
+        this.pairFilter = budget.isUnlimited() ? VF2GraphMatcher::scoreUpperBound : VF2GraphMatcher::partialScoreUpperBound;
     }
 
     @Override
-    public GraphMapping matchPDGLists() {
-        List<PDG> unmappedSrcPdgs = new ArrayList<>(srcPdgs);
-        List<PDG> unmappedDstPdgs = new ArrayList<>(dstPdgs);
+    protected GraphMapping matchRemainingPDGLists() {
+        // a pair's score does not depend on which other pairs are already mapped, so every pair is scored at most
+        // once, and only if its upper bound shows it could still be the best remaining pair
+        matchGreedily(this::scorePair, true);
+        if (budgetExhaustedPairs.get() > 0) {
+            logger.warn("VF2 budget ({}) exhausted for {} method pairs, their best partial mappings were used",
+                    budget, budgetExhaustedPairs.get());
+        }
 
-        while (!unmappedSrcPdgs.isEmpty() && !unmappedDstPdgs.isEmpty()) {
-            double maxScore = Double.NEGATIVE_INFINITY;
-            PDG bestSrcPdg = null;
-            PDG bestDstPdg = null;
-            NodeMapping bestNodeMapping = null;
+        // handling PDGs in src that were not matched
+        for (PDG pdg1 : srcPdgs) {
+            if (!graphMapping.getGraphMapping().containsKey(pdg1)) {
+                logger.debug("No matching PDG found for: {}", pdg1.getMethod().getSignature());
+            }
+        }
 
-            // for each pair of unmapped PDGs, compute similarity score
-            for (PDG srcPdg : unmappedSrcPdgs) {
-                for (PDG dstPdg : unmappedDstPdgs) {
-                    VF2Matcher vf2Matcher = new VF2Matcher(srcPdg, dstPdg);
-                    NodeMapping nodeMapping = vf2Matcher.match();
+        return graphMapping;
+    }
 
-                    if (nodeMapping != null && !nodeMapping.isEmpty()) {
-                        int mappedNodes = nodeMapping.size();
-                        int unmappedSrcNodes = GraphTraversal.getNodeCount(srcPdg) - mappedNodes;
-                        int unmappedDstNodes = GraphTraversal.getNodeCount(dstPdg) - mappedNodes;
+    private PairScore scorePair(PDG srcPdg, PDG dstPdg) {
+        VF2Matcher vf2Matcher = new VF2Matcher(srcPdg, dstPdg, budget);
+        // a partial mapping (under a budget, when no complete one was found in it) scores lower than a complete one,
+        // as more nodes are unmapped
+        NodeMapping nodeMapping = vf2Matcher.match();
+        if (vf2Matcher.getOutcome() == VF2Matcher.Outcome.BUDGET_EXHAUSTED) {
+            budgetExhaustedPairs.incrementAndGet();
+        }
 
-                        // calculate the score that minimizes unmapped nodes, this is my 'similarity' metric as of rn lol
-                        // this might be to be improved. TODO look into other metrics/ measures.
-                        // TODO might want to add a threshold. possibly not all graphs should be mapped to all graphs!
-                        double score = (double) mappedNodes / (mappedNodes + unmappedSrcNodes + unmappedDstNodes);
+        if (nodeMapping == null || nodeMapping.isEmpty()) {
+            return null;
+        }
+        int mappedNodes = nodeMapping.size();
+        int unmappedSrcNodes = srcPdg.getCompactPDG().getReachableCount() - mappedNodes;
+        int unmappedDstNodes = dstPdg.getCompactPDG().getReachableCount() - mappedNodes;
 
-                        if (score > maxScore) {
-                            maxScore = score;
-                            bestSrcPdg = srcPdg;
-                            bestDstPdg = dstPdg;
-                            bestNodeMapping = nodeMapping;
-                        }
-                    }
-                }
-            }
+        // calculate the score that minimizes unmapped nodes, this is my 'similarity' metric as of rn lol
+        // this might be to be improved. TODO look into other metrics/ measures.
+        // TODO might want to add a threshold. possibly not all graphs should be mapped to all graphs!
+        double score = (double) mappedNodes / (mappedNodes + unmappedSrcNodes + unmappedDstNodes);
+        return new PairScore(score, nodeMapping);
+    }
 
-            if (bestSrcPdg != null && bestDstPdg != null) {
-                unmappedSrcPdgs.remove(bestSrcPdg);
-                unmappedDstPdgs.remove(bestDstPdg);
-                graphMapping.addGraphMapping(bestSrcPdg, bestDstPdg, bestNodeMapping);
-            } else {
-                break;
-            }
+    /**
+     * VF2 only returns complete mappings, i.e. every node of the smaller PDG mapped onto a compatible node of the
+     * larger one with the edges between mapped nodes agreeing. if the signatures allow that, the score is known
+     * upfront, otherwise the pair cannot be matched at all.
+     */
+    private static double scoreUpperBound(PDGSignature src, PDGSignature dst) {
+        PDGSignature smaller = src.nodeCount <= dst.nodeCount ? src : dst;
+        PDGSignature larger = smaller == src ? dst : src;
+        if (smaller.nodeCount == 0
+                || smaller.categoryCounts[0] > 0
+                || !smaller.attribsFitInto(larger)
+                || smaller.controlEdgeCount > larger.controlEdgeCount
+                || smaller.dataEdgeCount > larger.dataEdgeCount) {
+            return Double.NaN;
         }
+        return (double) smaller.nodeCount / larger.nodeCount;
+    }
 
-        // handling PDGs in src that were not matched
-        for (PDG pdg1 : unmappedSrcPdgs) {
-            System.out.println("No matching PDG found for: " + pdg1.getCFG().getBody().getMethod().getSignature());
+    /**
+     * with a budget, a pair VF2 cannot map completely still gets its best partial mapping, scored by the nodes it maps.
+     * that score is highest with every node of the smaller PDG mapped, i.e. the ratio of the node counts
+     */
+    private static double partialScoreUpperBound(PDGSignature src, PDGSignature dst) {
+        int smaller = Math.min(src.nodeCount, dst.nodeCount);
+        int larger = Math.max(src.nodeCount, dst.nodeCount);
+        if (smaller == 0) {
+            return Double.NaN;
         }
-
-        return graphMapping;
+        return (double) smaller / larger;
     }
 }
@@ -1,12 +1,15 @@
 package org.pdgdiff.matching.models.ged;
 
-import org.pdgdiff.matching.NodeFeasibility;
-import org.pdgdiff.graph.GraphTraversal;
+import org.pdgdiff.graph.CompactPDG;
+import org.pdgdiff.graph.NodeFeatures;
 import org.pdgdiff.graph.PDG;
 import org.pdgdiff.matching.NodeMapping;
+import org.pdgdiff.matching.PDGSignature;
 import soot.toolkits.graph.pdg.PDGNode;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -16,38 +19,66 @@ import static org.pdgdiff.matching.models.heuristic.JaroWinklerSimilarity.JaroWi
  * Performs a Graph Edit Distance node alignment between two PDGs.
  * Returns a GEDResult containing the (distance, nodeMapping).
  *
+ * PDGs with more than sparseAbove nodes take a sparse path instead of the dense n x n cost matrix and the O(n^3)
+ * HungarianAlgorithm: a src node is only a candidate for dst nodes of the same category and attribute (bucketed), and
+ * within such a bucket only for those at about the same relative position or with the same label. every other pair
+ * is treated as costing at least a deletion plus an insertion, i.e. is never substituted. the costs of the candidate
+ * pairs are kept in float CSR arrays and solved with SparseAssignment, where each node can also be deleted / inserted.
  */
 public class GEDMatcher {
 
-    private final PDG srcPdg;
-    private final PDG dstPdg;
+    // deletion and insertion costs, todo tune these
+    private static final double INSERTION_COST = 1.0;
+    private static final double DELETION_COST = 1.0;
+
+    private static final double ATTRIBUTE_PENALTY = 0.8;
+    private static final double ALPHA = 0.1;  // weighting for syntactic differences, i.e. string difference
+    private static final double BETA = 0.9;   // weighting for semantic difference, i.e. attribute difference
+
+    private static final double EDGE_PENALTY = 0.5;  // this is complete guess work.
+
+    // PDGs above this many nodes take the sparse path by default
+    public static final int DEFAULT_SPARSE_ABOVE = 500;
+    // sparse path: candidates on either side of a src node's relative position within its bucket
+    private static final int SPARSE_BAND = 32;
+
+    private final CompactPDG srcPdg;
+    private final CompactPDG dstPdg;
+    private final NodeFeatures srcFeatures;
+    private final NodeFeatures dstFeatures;
+    private final int sparseAbove;
 
     public GEDMatcher(PDG srcPdg, PDG dstPdg) {
-        this.srcPdg = srcPdg;
-        this.dstPdg = dstPdg;
+        this(srcPdg, dstPdg, DEFAULT_SPARSE_ABOVE);
+    }
+
+    public GEDMatcher(PDG srcPdg, PDG dstPdg, int sparseAbove) {
+        this.srcPdg = srcPdg.getCompactPDG();
+        this.dstPdg = dstPdg.getCompactPDG();
+        this.srcFeatures = srcPdg.getNodeFeatures();
+        this.dstFeatures = dstPdg.getNodeFeatures();
+        this.sparseAbove = sparseAbove;
     }
 
     // find edit distance and return node mappings
     public GEDResult match() {
-        List<PDGNode> srcNodes = new ArrayList<>(GraphTraversal.collectNodesBFS(srcPdg));
-        List<PDGNode> dstNodes = new ArrayList<>(GraphTraversal.collectNodesBFS(dstPdg));
+        // BFS-reachable nodes only, these are compact indices [0, reachableCount)
+        int n1 = srcPdg.getReachableCount();
+        int n2 = dstPdg.getReachableCount();
 
-        int n1 = srcNodes.size();
-        int n2 = dstNodes.size();
+        if (usesSparsePath(n1, n2, sparseAbove)) {
+            return matchSparse(n1, n2);
+        }
 
         // create square cost mat of n x n size, must be square for Hungarian algo
         // NOTE because its square there is going to be some dummy nodes (where its padded, pdg prob doesnt produce square mat)
         int n = Math.max(n1, n2);
         double[][] squareMatrix = new double[n][n];
 
-        // deletion and insertion costs, todo tune these
-        double insertionCostVal = 1.0;
-        double deletionCostVal  = 1.0;
-
         // fill the "real" submatrix of the cost matrix (where i < n1 and j < n2) with substitution costs for each node pair
         for (int i = 0; i < n1; i++) {
             for (int j = 0; j < n2; j++) {
-                squareMatrix[i][j] = substitutionCost(srcNodes.get(i), dstNodes.get(j));
+                squareMatrix[i][j] = substitutionCost(i, j);
             }
         }
 
@@ -62,11 +93,11 @@ public class GEDMatcher {
 
                 // i < n1 but j >= n2 => "dummy" node in PDG2 => old node i must be deleted
                 if (i < n1 && j >= n2) {
-                    squareMatrix[i][j] = deletionCostVal;
+                    squareMatrix[i][j] = DELETION_COST;
                 }
                 // i >= n1 but j < n2 => "dummy" node in PDG1 => new node j must be inserted
                 else if (i >= n1 && j < n2) {
-                    squareMatrix[i][j] = insertionCostVal;
+                    squareMatrix[i][j] = INSERTION_COST;
                 }
                 // i >= n1 && j >= n2 => both dummy => set cost = 0 or could change this to some small cost
                 else if (i >= n1 && j >= n2) {
@@ -94,7 +125,7 @@ public class GEDMatcher {
 
             // If i < n1 and j < n2 its within range of 'real' submat=> real node match => substitution
             if (i < n1 && j < n2) {
-                nodeMapping.addMapping(srcNodes.get(i), dstNodes.get(j));
+                nodeMapping.addMapping(srcPdg.getNode(i), dstPdg.getNode(j));
             }
             // todo: I believe inserts and deletes shouldn't be added to node mapping,
             //  and that their absence will be handled as insertions/deletions in the final mapping
@@ -111,35 +142,200 @@ public class GEDMatcher {
         return new GEDResult(totalCost, nodeMapping);
     }
 
+    private GEDResult matchSparse(int n1, int n2) {
+        // candidate pairs in CSR form, row i = src node i
+        int[] rowStart = new int[n1 + 1];
+        int[] colIndex = new int[Math.max(16, n1 * 4)];
+        float[] cost = new float[colIndex.length];
+        int count = 0;
+
+        Map<Long, List<Integer>> srcBuckets = buckets(srcFeatures, n1);
+        Map<Long, List<Integer>> dstBuckets = buckets(dstFeatures, n2);
+        // dst nodes by token hash (label up to the locals used), those occurring more often than that are left to
+        // the band
+        Map<Integer, List<Integer>> dstByTokens = new HashMap<>();
+        for (int j = 0; j < n2; j++) {
+            dstByTokens.computeIfAbsent(dstFeatures.getTokenHash(j), k -> new ArrayList<>()).add(j);
+        }
+
+        // position of each src node in its bucket
+        int[] bucketPosition = new int[n1];
+        for (List<Integer> bucket : srcBuckets.values()) {
+            for (int p = 0; p < bucket.size(); p++) {
+                bucketPosition[bucket.get(p)] = p;
+            }
+        }
+        int[] seen = new int[n2];  // src node + 1 that last listed the dst node, to keep rows free of duplicates
+        String[] candidateLabels = new String[2 * SPARSE_BAND + 1];
+        double[] similarities = new double[candidateLabels.length];
+        for (int i = 0; i < n1; i++) {
+            rowStart[i] = count;
+            long key = bucketKey(srcFeatures, i);
+            List<Integer> srcBucket = srcBuckets.get(key);
+            List<Integer> dstBucket = dstBuckets.get(key);
+            if (dstBucket == null) {
+                continue;
+            }
+
+            // the dst nodes around the same relative position in the bucket
+            int centre = srcBucket.size() == 1 ? 0
+                    : (int) ((long) bucketPosition[i] * (dstBucket.size() - 1) / (srcBucket.size() - 1));
+            int from = Math.max(0, centre - SPARSE_BAND);
+            int to = Math.min(dstBucket.size(), centre + SPARSE_BAND + 1);
+            List<Integer> sameTokens = dstByTokens.get(srcFeatures.getTokenHash(i));
+            int extra = sameTokens != null && sameTokens.size() <= SPARSE_BAND ? sameTokens.size() : 0;
+
+            int needed = count + (to - from) + extra;
+            if (needed > colIndex.length) {
+                colIndex = Arrays.copyOf(colIndex, Math.max(needed, colIndex.length * 2));
+                cost = Arrays.copyOf(cost, colIndex.length);
+            }
+            for (int p = from; p < to; p++) {
+                int j = dstBucket.get(p);
+                seen[j] = i + 1;
+                colIndex[count++] = j;
+            }
+            for (int k = 0; k < extra; k++) {
+                int j = sameTokens.get(k);
+                if (seen[j] != i + 1 && bucketKey(dstFeatures, j) == key) {
+                    seen[j] = i + 1;
+                    colIndex[count++] = j;
+                }
+            }
+
+            // score the row's label against all of its candidates at once
+            int candidates = count - rowStart[i];
+            if (candidateLabels.length < candidates) {
+                candidateLabels = new String[Math.max(candidates, candidateLabels.length * 2)];
+                similarities = new double[candidateLabels.length];
+            }
+            for (int k = 0; k < candidates; k++) {
+                candidateLabels[k] = dstFeatures.getLabel(colIndex[rowStart[i] + k]);
+            }
+            JaroWinklerSimilarity(srcFeatures.getLabel(i), candidateLabels, candidates, 0.0, similarities);
+            for (int k = 0; k < candidates; k++) {
+                cost[rowStart[i] + k] = (float) substitutionCost(i, colIndex[rowStart[i] + k], similarities[k]);
+            }
+        }
+        rowStart[n1] = count;
+
+        int[] assignment = SparseAssignment.minimizeAssignment(n1, n2, rowStart, colIndex, cost,
+                (float) (DELETION_COST + INSERTION_COST));
+
+        NodeMapping nodeMapping = new NodeMapping();
+        double totalCost = 0.0;
+        int substituted = 0;
+        for (int i = 0; i < n1; i++) {
+            int j = assignment[i];
+            if (j < 0) {
+                // deletion
+                totalCost += DELETION_COST;
+                continue;
+            }
+            totalCost += substitutionCost(i, j);
+            substituted++;
+            nodeMapping.addMapping(srcPdg.getNode(i), dstPdg.getNode(j));
+        }
+        // every dst node left over is an insertion
+        totalCost += INSERTION_COST * (n2 - substituted);
+
+        totalCost += computeEdgeMismatchPenalty(nodeMapping);
+
+        return new GEDResult(totalCost, nodeMapping);
+    }
+
     /**
-     * returns substitution cost between two nodes.
+     * lower bound on the distance match() returns for the two PDGs, from their signatures alone. used to skip pairs
+     * that cannot beat an already known distance.
+     *
+     * NB HungarianAlgorithm.minimizeAssignment leaves row and column 0 unassigned, so only nodes 1..n-1 take part in
+     * the assignment and the bound is taken over those.
+     */
+    public static double distanceLowerBound(PDGSignature src, PDGSignature dst) {
+        return distanceLowerBound(src, dst, DEFAULT_SPARSE_ABOVE);
+    }
+
+    public static double distanceLowerBound(PDGSignature src, PDGSignature dst, int sparseAbove) {
+        int n1 = src.nodeCount;
+        int n2 = dst.nodeCount;
+        int smaller = Math.min(n1, n2);
+        if (usesSparsePath(n1, n2, sparseAbove)) {
+            // only nodes with the same attribute are substituted, every other node is deleted or inserted. nodes may
+            // be deleted to avoid edge penalties, so those do not count towards the bound
+            int substitutable = Math.min(smaller, src.attribOverlap(dst));
+            double bound = DELETION_COST * (n1 - substitutable) + INSERTION_COST * (n2 - substitutable);
+            return bound * (1.0 - 1e-9);
+        }
+        if (Math.max(n1, n2) <= 1) {
+            return 0.0;
+        }
+
+        // every dummy row/column in 1..n-1 is paired with a real node, i.e. an insertion or deletion
+        int dummies = Math.abs(n1 - n2) - (smaller == 0 ? 1 : 0);
+        double bound = (n1 > n2 ? DELETION_COST : INSERTION_COST) * dummies;
+
+        // the smaller-1 real-real pairs are substitutions, those between nodes with different attributes cost at
+        // least BETA * ATTRIBUTE_PENALTY (a category mismatch costs 1.0, which is more)
+        int realPairs = Math.max(0, smaller - 1);
+        int attribMismatches = Math.max(0, realPairs - src.attribOverlap(dst));
+        bound += Math.min(1.0, BETA * ATTRIBUTE_PENALTY) * attribMismatches;
+
+        // if no src node but the start node is deleted, every src edge not touching it is between mapped nodes and
+        // needs its own edge in dst, or is penalised
+        if (n1 <= n2) {
+            int missingEdges = Math.max(0, src.edgeCount - src.startNodeDegree - dst.edgeCount);
+            bound += EDGE_PENALTY * missingEdges;
+        }
+
+        // shaved slightly so rounding in the summed costs cannot push the bound above the real distance
+        return bound * (1.0 - 1e-9);
+    }
+
+    private static boolean usesSparsePath(int n1, int n2, int sparseAbove) {
+        return Math.max(n1, n2) > sparseAbove;
+    }
+
+    /**
+     * returns substitution cost between src node i and dst node j.
      * considers node label similarity and node category similarity.
      */
-    private double substitutionCost(PDGNode n1, PDGNode n2) {
+    private double substitutionCost(int i, int j) {
         // base cost if categories differ
-        if (!NodeFeasibility.isSameNodeCategory(n1, n2)) {
+        if ((srcFeatures.getCategory(i) & dstFeatures.getCategory(j)) == 0) {
             return 1.0;  // or big penalty
         }
 
-        // compare the node "type" or attribute
-        double attributePenalty = n1.getAttrib().equals(n2.getAttrib()) ? 0.0 : 0.8;
-
         // get the textual content to compare.
-        String label1 = extractRelevantLabel(n1);
-        String label2 = extractRelevantLabel(n2);
+        double sim = JaroWinklerSimilarity(srcFeatures.getLabel(i), dstFeatures.getLabel(j)); // in [0..1], higher=better
+        return substitutionCost(i, j, sim);
+    }
+
+    // as substitutionCost(i, j), with the similarity of their labels already known
+    private double substitutionCost(int i, int j, double sim) {
+        if ((srcFeatures.getCategory(i) & dstFeatures.getCategory(j)) == 0) {
+            return 1.0;
+        }
+
+        // compare the node "type" or attribute
+        double attributePenalty = srcFeatures.getAttrib(i) == dstFeatures.getAttrib(j) ? 0.0 : ATTRIBUTE_PENALTY;
 
-        double sim = JaroWinklerSimilarity(label1, label2); // in [0..1], higher=better
         double stringCost = 1.0 - sim; // bigger difference -> bigger cost
 
-        double alpha = 0.1;  // weighting for syntactic differences, i.e. string difference
-        double beta  = 0.9;  // weighting for semantic difference, i.e. attribute difference
+        return ALPHA * stringCost + BETA * attributePenalty;
+    }
 
-        return alpha * stringCost + beta * attributePenalty;
+    // category mask and attribute of a node, the sparse path only pairs nodes that agree on both
+    private static long bucketKey(NodeFeatures features, int i) {
+        return ((long) features.getCategory(i) << 32) | features.getAttrib(i);
     }
 
-    private String extractRelevantLabel(PDGNode node) {
-        // remove beginning of  'Type: CFGNODE: <code begins here>'
-        return node.toString().substring(15);
+    // nodes by bucket key, each bucket in compact (bfs) order
+    private static Map<Long, List<Integer>> buckets(NodeFeatures features, int count) {
+        Map<Long, List<Integer>> buckets = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            buckets.computeIfAbsent(bucketKey(features, i), k -> new ArrayList<>()).add(i);
+        }
+        return buckets;
     }
 
     /**
@@ -147,20 +343,21 @@ public class GEDMatcher {
      */
     private double computeEdgeMismatchPenalty(NodeMapping mapping) {
         double mismatchCost = 0.0;
-        double edgePenalty = 0.5;  // this is complete guess work.
 
         Map<PDGNode, PDGNode> forwardMap = mapping.getNodeMapping();
 
-        // for each mapped edge (n1->m1) in old, see if (n2->m2) exists in new
-        for (PDGNode oldSrc : forwardMap.keySet()) {
-            PDGNode newSrc = forwardMap.get(oldSrc);
+        // for each mapped edge (n1->m1) in old, see if (n2->m2) exists in new. this walks the dependents lists rather
+        // than the CompactPDG edges, which merge a control and a data edge between the same pair into one, so that
+        // every entry of getDependents() is counted as it always has been
+        for (Map.Entry<PDGNode, PDGNode> entry : forwardMap.entrySet()) {
+            PDGNode newSrc = entry.getValue();
 
-            for (PDGNode oldTgt : oldSrc.getDependents()) {
+            for (PDGNode oldTgt : entry.getKey().getDependents()) {
                 PDGNode newTgt = forwardMap.get(oldTgt);
                 if (newTgt != null) {
                     // if the new edge does not exist, penalize
                     if (!newSrc.getDependents().contains(newTgt)) {
-                        mismatchCost += edgePenalty;
+                        mismatchCost += EDGE_PENALTY;
                     }
                 }
             }
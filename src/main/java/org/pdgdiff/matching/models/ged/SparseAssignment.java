@@ -0,0 +1,192 @@
+package org.pdgdiff.matching.models.ged;
+
+import java.util.Arrays;
+
+/**
+ * rectangular assignment problem on a sparse cost matrix, solved by successive shortest augmenting paths (as in
+ * Jonker-Volgenant): each row in turn is matched by a Dijkstra search over reduced costs, keeping dual potentials so
+ * that the reduced costs stay non-negative.
+ *
+ * the matrix is given in CSR form: the candidate columns of row i are colIndex[rowStart[i] .. rowStart[i + 1]) with
+ * their costs in cost[]. every row may also be left unassigned for unassignedCost, columns may always be left
+ * unassigned (at no cost). cells that are not listed are never assigned, which is what a cost of at least
+ * unassignedCost would amount to.
+ *
+ * unlike HungarianAlgorithm this needs neither a square nor a dense matrix, and takes O(candidates) memory.
+ */
+public class SparseAssignment {
+
+    /**
+     * returns assignment[row] = col, or -1 for rows left unassigned. the total cost is minimal.
+     */
+    public static int[] minimizeAssignment(int rows, int cols, int[] rowStart, int[] colIndex, float[] cost,
+                                           float unassignedCost) {
+        // every row gets a private dummy column (cols + row) standing for 'unassigned'
+        int allCols = cols + rows;
+        int[] rowMatch = new int[rows];
+        int[] colMatch = new int[allCols];
+        Arrays.fill(rowMatch, -1);
+        Arrays.fill(colMatch, -1);
+        double[] rowPotential = new double[rows];
+        double[] colPotential = new double[allCols];
+
+        double[] dist = new double[allCols];
+        int[] reachedFrom = new int[allCols];  // row the shortest path to a column comes from
+        boolean[] done = new boolean[allCols];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        int[] touched = new int[allCols];
+        int touchedCount;
+        int[] doneCols = new int[allCols];
+        int doneCount;
+        ColumnHeap heap = new ColumnHeap();
+
+        for (int source = 0; source < rows; source++) {
+            touchedCount = 0;
+            doneCount = 0;
+            heap.clear();
+
+            // dijkstra from the source row over alternating paths, until a free column is reached
+            int row = source;
+            double rowDist = 0.0;
+            int sink = -1;
+            while (true) {
+                for (int e = rowStart[row]; e <= rowStart[row + 1]; e++) {
+                    // the last iteration is the row's dummy column
+                    int col = e < rowStart[row + 1] ? colIndex[e] : cols + row;
+                    if (done[col]) {
+                        continue;
+                    }
+                    double c = e < rowStart[row + 1] ? cost[e] : unassignedCost;
+                    double d = rowDist + Math.max(0.0, c - rowPotential[row] - colPotential[col]);
+                    if (d < dist[col]) {
+                        if (dist[col] == Double.POSITIVE_INFINITY) {
+                            touched[touchedCount++] = col;
+                        }
+                        dist[col] = d;
+                        reachedFrom[col] = row;
+                        heap.push(d, col);
+                    }
+                }
+
+                int col = -1;
+                while (!heap.isEmpty()) {
+                    int candidate = heap.popColumn();
+                    if (!done[candidate]) {
+                        col = candidate;
+                        break;
+                    }
+                }
+                // cannot happen, the source row can always reach its dummy column
+                if (col < 0) {
+                    throw new IllegalStateException("no augmenting path for row " + source);
+                }
+                done[col] = true;
+                doneCols[doneCount++] = col;
+                if (colMatch[col] < 0) {
+                    sink = col;
+                    break;
+                }
+                // continue from the row the column is matched to, the matched edge has a reduced cost of 0
+                row = colMatch[col];
+                rowDist = dist[col];
+            }
+
+            // shift potentials by the distances (capped at the sink's), so that reduced costs stay >= 0 and the
+            // path found is tight
+            double sinkDist = dist[sink];
+            rowPotential[source] += sinkDist;
+            for (int k = 0; k < doneCount; k++) {
+                int col = doneCols[k];
+                double delta = dist[col] - sinkDist;
+                colPotential[col] += delta;
+                if (colMatch[col] >= 0) {
+                    rowPotential[colMatch[col]] -= delta;
+                }
+            }
+
+            // augment along the path
+            int col = sink;
+            while (true) {
+                int from = reachedFrom[col];
+                int previous = rowMatch[from];
+                rowMatch[from] = col;
+                colMatch[col] = from;
+                if (from == source) {
+                    break;
+                }
+                col = previous;
+            }
+
+            for (int k = 0; k < touchedCount; k++) {
+                dist[touched[k]] = Double.POSITIVE_INFINITY;
+                done[touched[k]] = false;
+            }
+        }
+
+        int[] assignment = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            assignment[i] = rowMatch[i] < cols ? rowMatch[i] : -1;
+        }
+        return assignment;
+    }
+
+    // binary min-heap of (distance, column), columns may be pushed more than once and are skipped once done
+    private static final class ColumnHeap {
+        private double[] keys = new double[64];
+        private int[] cols = new int[64];
+        private int size = 0;
+
+        void clear() {
+            size = 0;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(double key, int col) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                cols = Arrays.copyOf(cols, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                cols[i] = cols[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            cols[i] = col;
+        }
+
+        int popColumn() {
+            int top = cols[0];
+            size--;
+            double key = keys[size];
+            int col = cols[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                keys[i] = keys[child];
+                cols[i] = cols[child];
+                i = child;
+            }
+            keys[i] = key;
+            cols[i] = col;
+            return top;
+        }
+    }
+}
@@ -1,64 +1,149 @@
 package org.pdgdiff.matching.models.heuristic;
 
 
+import java.util.Arrays;
+
 /**
 * calculate % similarity between strings using Jaro-Winkler algorithm
+*
+* scoring allocates nothing: the match flags live in per-thread scratch buffers (s2's as generation stamps, so they
+* need no clearing between calls) that only grow to the longest strings seen. the variants taking a minSimilarity stop
+* as soon as the remaining characters cannot lift the score to it, and the batch variant scores one label against many
+* candidates with the label's characters loaded once.
 **/
 public class JaroWinklerSimilarity {
 
+    private static final double SCALING_FACTOR = 0.1;
+    private static final int MAX_PREFIX_LENGTH = 4;
+
+    // package-private so the tests can wind the generation stamps forward
+    static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
     public static double JaroWinklerSimilarity(String s1, String s2) {
-        double jaro = jaroSimilarity(s1, s2);
-        int prefixLength = commonPrefixLength(s1, s2);
-        double SCALING_FACTOR = 0.1;
+        return JaroWinklerSimilarity(s1, s2, 0.0);
+    }
 
-        return jaro + (prefixLength * SCALING_FACTOR * (1 - jaro));
+    /**
+     * as JaroWinklerSimilarity(s1, s2) if the similarity is at least minSimilarity, otherwise some value below
+     * minSimilarity (the search is cut short, so not necessarily the similarity itself)
+     */
+    public static double JaroWinklerSimilarity(String s1, String s2, double minSimilarity) {
+        Scratch scratch = SCRATCH.get();
+        scratch.load(s1);
+        return jaroWinkler(scratch, s1, s2, minSimilarity);
+    }
+
+    /**
+     * scores s1 against each of the candidates, out[k] being JaroWinklerSimilarity(s1, candidates[k], minSimilarity)
+     */
+    public static void JaroWinklerSimilarity(String s1, String[] candidates, int count, double minSimilarity,
+                                             double[] out) {
+        Scratch scratch = SCRATCH.get();
+        scratch.load(s1);
+        for (int k = 0; k < count; k++) {
+            out[k] = jaroWinkler(scratch, s1, candidates[k], minSimilarity);
+        }
     }
 
     // returns a double which is a similarity score between 0 and 1
     public static double jaroSimilarity(String s1, String s2) {
+        return jaroSimilarity(s1, s2, 0.0);
+    }
+
+    // as jaroSimilarity(s1, s2), but like JaroWinklerSimilarity gives up once minSimilarity cannot be reached
+    public static double jaroSimilarity(String s1, String s2, double minSimilarity) {
         if (s1.equals(s2)) {
             return 1.0;
         }
+        Scratch scratch = SCRATCH.get();
+        scratch.load(s1);
+        return jaro(scratch, s2, 0, minSimilarity);
+    }
+
+    public static int commonPrefixLength(String s1, String s2) {
+        int prefixLength = 0;
+        int maxPrefixLength = Math.min(MAX_PREFIX_LENGTH, Math.min(s1.length(), s2.length()));
+
+        for (int i = 0; i < maxPrefixLength; i++) {
+            if (s1.charAt(i) == s2.charAt(i)) {
+                prefixLength++;
+            } else {
+                break;
+            }
+        }
+
+        return prefixLength;
+    }
+
+    // s1 is loaded in scratch
+    private static double jaroWinkler(Scratch scratch, String s1, String s2, double minSimilarity) {
+        if (s1 == s2 || s1.equals(s2)) {
+            return 1.0;
+        }
+        int prefixLength = commonPrefixLength(s1, s2);
+        double jaro = jaro(scratch, s2, prefixLength, minSimilarity);
+        return winkler(jaro, prefixLength);
+    }
+
+    private static double winkler(double jaro, int prefixLength) {
+        return jaro + (prefixLength * SCALING_FACTOR * (1 - jaro));
+    }
+
+    /**
+     * jaro similarity of the loaded s1 and s2 (which differ). with minSimilarity > 0 returns 0 as soon as the jaro
+     * score, with the winkler boost for prefixLength, can no longer reach it.
+     */
+    private static double jaro(Scratch scratch, String s2, int prefixLength, double minSimilarity) {
+        int l1 = scratch.length;
+        int l2 = s2.length();
+        if (l1 == 0 || l2 == 0) {
+            return 0.0;
+        }
 
-        if (s1.isEmpty() || s2.isEmpty()) {
+        boolean bounded = minSimilarity > 0.0;
+        int maxMatches = Math.min(l1, l2);
+        if (bounded && upperBound(maxMatches, l1, l2, prefixLength) < minSimilarity) {
             return 0.0;
         }
 
         // max distance for matching characters is floor(max(|s1|, |s2|) / 2) - 1
-        int matchDistance = Math.max(s1.length(), s2.length()) / 2 - 1;
+        int matchDistance = Math.max(l1, l2) / 2 - 1;
 
-        boolean[] s1Matches = new boolean[s1.length()];
-        boolean[] s2Matches = new boolean[s2.length()];
+        char[] chars1 = scratch.chars;
+        int[] s2Matched = scratch.stampsFor(l2);
+        int stamp = scratch.generation;
+        char[] matchedChars1 = scratch.matched;
 
-        // counting matches and transpositions
+        // counting matches, remembering the matched s1 characters in order
         int matches = 0;
-        int transpositions = 0;
-
-        for (int i = 0; i < s1.length(); i++) {
+        for (int i = 0; i < l1; i++) {
             int start = Math.max(0, i - matchDistance);
-            int end = Math.min(i + matchDistance + 1, s2.length());
+            int end = Math.min(i + matchDistance + 1, l2);
+            char c = chars1[i];
 
             for (int j = start; j < end; j++) {
-                if (!s2Matches[j] && s1.charAt(i) == s2.charAt(j)) {
-                    s1Matches[i] = true;
-                    s2Matches[j] = true;
-                    matches++;
+                if (s2Matched[j] != stamp && c == s2.charAt(j)) {
+                    s2Matched[j] = stamp;
+                    matchedChars1[matches++] = c;
                     break;
                 }
             }
+
+            if (bounded && upperBound(Math.min(maxMatches, matches + l1 - i - 1), l1, l2, prefixLength) < minSimilarity) {
+                return 0.0;
+            }
         }
 
         if (matches == 0) {
             return 0.0;
         }
 
+        // transpositions, the matched characters of s1 and s2 in order
+        int transpositions = 0;
         int k = 0;
-        for (int i = 0; i < s1.length(); i++) {
-            if (s1Matches[i]) {
-                while (!s2Matches[k]) {
-                    k++;
-                }
-                if (s1.charAt(i) != s2.charAt(k)) {
+        for (int j = 0; j < l2 && k < matches; j++) {
+            if (s2Matched[j] == stamp) {
+                if (matchedChars1[k] != s2.charAt(j)) {
                     transpositions++;
                 }
                 k++;
@@ -68,24 +153,44 @@ public class JaroWinklerSimilarity {
         transpositions /= 2;
 
         // final similarity formula
-        return ((matches / (double) s1.length()) +
-                (matches / (double) s2.length()) +
+        return ((matches / (double) l1) +
+                (matches / (double) l2) +
                 ((matches - transpositions) / (double) matches)) / 3.0;
     }
 
-    public static int commonPrefixLength(String s1, String s2) {
-        int prefixLength = 0;
-        int maxPrefixLength = Math.min(4, Math.min(s1.length(), s2.length()));
+    // highest winkler score possible with at most matches matching characters (and no transpositions)
+    private static double upperBound(int matches, int l1, int l2, int prefixLength) {
+        double jaro = ((matches / (double) l1) + (matches / (double) l2) + 1.0) / 3.0;
+        return winkler(jaro, prefixLength);
+    }
 
-        for (int i = 0; i < maxPrefixLength; i++) {
-            if (s1.charAt(i) == s2.charAt(i)) {
-                prefixLength++;
-            } else {
-                break;
+    static final class Scratch {
+        char[] chars = new char[64];    // s1
+        char[] matched = new char[64];  // matched characters of s1, in order
+        int length;
+        int[] stamps = new int[64];     // s2 character j is matched in the current comparison if stamps[j] == generation
+        int generation = 0;
+
+        void load(String s1) {
+            length = s1.length();
+            if (chars.length < length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+                matched = new char[chars.length];
             }
+            s1.getChars(0, length, chars, 0);
         }
 
-        return prefixLength;
+        // stamps for a new comparison against a string of length l2
+        int[] stampsFor(int l2) {
+            if (stamps.length < l2) {
+                stamps = new int[Math.max(l2, stamps.length * 2)];
+                generation = 0;
+            }
+            if (++generation == 0) {
+                Arrays.fill(stamps, 0);
+                generation = 1;
+            }
+            return stamps;
+        }
     }
 }
-
@@ -0,0 +1,94 @@
+package org.pdgdiff.matching.models.heuristic;
+
+/**
+ * edit distance between strings (insertions, deletions and substitutions of single characters)
+ *
+ * the bounded variant only fills the diagonal band of width 2 * maxDistance + 1 of the dp matrix and stops as soon as
+ * every cell of a row exceeds maxDistance, so checking a pair against a threshold costs O(maxDistance * length) rather
+ * than O(length^2).
+ */
+public class LevenshteinDistance {
+
+    public static int distance(String s, String t) {
+        return distance(s, t, Math.max(s.length(), t.length()));
+    }
+
+    /**
+     * the distance between s and t if it is at most maxDistance, otherwise maxDistance + 1
+     */
+    public static int distance(String s, String t, int maxDistance) {
+        // distance is symmetric, keep the shorter string along the rows
+        if (s.length() > t.length()) {
+            String tmp = s;
+            s = t;
+            t = tmp;
+        }
+        int m = s.length();
+        int n = t.length();
+        int over = maxDistance + 1;
+        if (n - m > maxDistance) {
+            return over;
+        }
+        if (m == 0) {
+            return n;
+        }
+
+        int[] prev = new int[n + 1];
+        int[] cur = new int[n + 1];
+        for (int j = 0; j <= n; j++) {
+            prev[j] = j <= maxDistance ? j : over;
+        }
+
+        for (int i = 1; i <= m; i++) {
+            // only cells within maxDistance of the diagonal can stay within maxDistance
+            int from = Math.max(1, i - maxDistance);
+            int to = Math.min(n, i + maxDistance);
+            cur[from - 1] = from == 1 && i <= maxDistance ? i : over;
+            int rowMin = cur[from - 1];
+
+            char c = s.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int cost = c == t.charAt(j - 1) ? 0 : 1;
+                int d = Math.min(Math.min(prev[j] + 1, cur[j - 1] + 1), prev[j - 1] + cost);
+                if (d > over) {
+                    d = over;
+                }
+                cur[j] = d;
+                if (d < rowMin) {
+                    rowMin = d;
+                }
+            }
+            // the cell right of the band is read as prev[] by the next row
+            if (to < n) {
+                cur[to + 1] = over;
+            }
+            if (rowMin > maxDistance) {
+                return over;
+            }
+
+            int[] tmp = prev;
+            prev = cur;
+            cur = tmp;
+        }
+        return Math.min(prev[n], over);
+    }
+
+    /**
+     * largest distance d between strings whose longer one has maxLength characters for which the similarity
+     * 1 - d / maxLength is at least minSimilarity (or, if strict, greater than it). -1 if there is none.
+     */
+    public static int maxDistance(int maxLength, double minSimilarity, boolean strict) {
+        if (maxLength == 0) {
+            return strict && minSimilarity >= 1.0 ? -1 : 0;
+        }
+        int d = Math.min(maxLength, (int) Math.max(0.0, (1.0 - minSimilarity) * maxLength) + 1);
+        while (d >= 0 && !reaches(1.0 - (double) d / maxLength, minSimilarity, strict)) {
+            d--;
+        }
+        return d;
+    }
+
+    private static boolean reaches(double similarity, double minSimilarity, boolean strict) {
+        return strict ? similarity > minSimilarity : similarity >= minSimilarity;
+    }
+}
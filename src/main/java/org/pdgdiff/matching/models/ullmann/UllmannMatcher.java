@@ -1,6 +1,6 @@
 package org.pdgdiff.matching.models.ullmann;
 
-import org.pdgdiff.graph.GraphTraversal;
+import org.pdgdiff.graph.CompactPDG;
 import org.pdgdiff.graph.PDG;
 import org.pdgdiff.matching.NodeMapping;
 import soot.toolkits.graph.pdg.PDGNode;
@@ -10,26 +10,68 @@ import java.util.*;
 /**
  * UllmannMatcher class to perform graph matching using Ullmann's Algorithm.
  * This class contains methods to match two PDGs and return the node mappings between them.
+ *
+ * The candidate matrix M is kept as one bitset row (long[]) per src node over the dst nodes. Choosing a pair narrows
+ * the rows below it to the dst nodes whose adjacency to the chosen one agrees (so candidates left in a row are always
+ * feasible), and Ullmann's refinement then drops every candidate y of a row k for which some neighbour of k has no
+ * candidate adjacent to y. Instead of copying M at every depth, each word changed is recorded once per choice on a
+ * trail and restored from there when backtracking.
  */
 public class UllmannMatcher {
     private NodeMapping nodeMapping;
 
+    private final CompactPDG srcPdg;
+    private final CompactPDG dstPdg;
     private List<PDGNode> srcNodes;
     private List<PDGNode> dstNodes;
     private final int n;
     private final int m;
-    private int[][] compatMatrix; // Compatibility matrix
-    private Stack<int[][]> matBacklog;
+    private final int words; // longs per row of compatMatrix
+
+    private final long[][] compatMatrix; // src node -> bitset of dst nodes it can still be mapped to
+    private final long[][] srcAdjacency; // src node -> bitset of adjacent src nodes
+    private final long[][] dstAdjacency; // dst node -> bitset of adjacent dst nodes
+    private final int[] assignment;      // src node -> chosen dst node, valid below the current depth
+    private final int[] nextCandidate;   // next column (dst node) to try at each depth
+    private final int[] trailMark;       // trail size before the choice at each depth
+    private final int[] touched;         // scratch, the words of a row choose has to look at
+
+    // rows waiting to be refined again
+    private final int[] queue;
+    private final boolean[] queued;
+    private int queueHead = 0;
+    private int queueSize = 0;
+
+    // undo log, each entry is a word of compatMatrix (row * words + word) and the value it had
+    private int[] trailWord = new int[64];
+    private long[] trailValue = new long[64];
+    private int trailSize = 0;
+    // the choice a word was last trailed for, so that it is recorded at most once per choice
+    private final int[] trailedFor;
+    private int choice = 0;
 
     public UllmannMatcher(PDG srcPdg, PDG dstPdg) {
         this.nodeMapping = new NodeMapping();
 
-        this.srcNodes = new ArrayList<>(GraphTraversal.collectNodesBFS(srcPdg));
-        this.dstNodes = new ArrayList<>(GraphTraversal.collectNodesBFS(dstPdg));
+        this.srcPdg = srcPdg.getCompactPDG();
+        this.dstPdg = dstPdg.getCompactPDG();
+        // compact indices [0, reachableCount) are the BFS order, so list position == compact index
+        this.srcNodes = reachableNodes(this.srcPdg);
+        this.dstNodes = reachableNodes(this.dstPdg);
         this.n = srcNodes.size();
         this.m = dstNodes.size();
-        this.compatMatrix = new int[n][m];
-        this.matBacklog = new Stack<>();
+        this.words = (m + 63) >>> 6;
+
+        this.compatMatrix = new long[n][words];
+        this.srcAdjacency = adjacency(this.srcPdg, n);
+        this.dstAdjacency = adjacency(this.dstPdg, m);
+        this.assignment = new int[n];
+        this.nextCandidate = new int[n + 1];
+        this.trailMark = new int[n + 1];
+        this.touched = new int[words];
+        this.trailedFor = new int[n * words];
+        this.queue = new int[n];
+        this.queued = new boolean[n];
     }
 
     public NodeMapping match() {
@@ -39,8 +81,10 @@ public class UllmannMatcher {
 
         initializeM();
 
-        // start recursive search
-        if (matchRecursive(0)) {
+        for (int k = 0; k < n; k++) {
+            enqueue(k);
+        }
+        if (refine(-1) && search()) {
             return nodeMapping;
         } else {
             return null;
@@ -52,68 +96,195 @@ public class UllmannMatcher {
             PDGNode node1 = srcNodes.get(i);
             for (int j = 0; j < m; j++) {
                 PDGNode node2 = dstNodes.get(j);
-                compatMatrix[i][j] = nodesAreCompatible(node1, node2) ? 1 : 0;
+                if (nodesAreCompatible(node1, node2)) {
+                    compatMatrix[i][j >>> 6] |= 1L << j;
+                }
             }
         }
     }
 
-    private boolean matchRecursive(int depth) {
-        if (depth == n) {
-            // all nodes have been matched
-            buildNodeMapping();
-            return true;
+    /**
+     * depth-first search mapping src node depth onto each dst node left in its row in turn. iterative, the frame of
+     * each depth being its next candidate column and its trail mark, so the thread stack use does not grow with the
+     * number of nodes.
+     */
+    private boolean search() {
+        int depth = 0;
+        nextCandidate[0] = 0;
+        trailMark[0] = trailSize;
+        while (depth >= 0) {
+            if (depth == n) {
+                // all nodes have been matched
+                buildNodeMapping();
+                return true;
+            }
+
+            // undo the previous choice at this depth, if any
+            undo(trailMark[depth]);
+            int j = nextBit(compatMatrix[depth], nextCandidate[depth]);
+            if (j < 0) {
+                // no candidates left, go back to the depth below
+                depth--;
+                continue;
+            }
+            nextCandidate[depth] = j + 1;
+
+            if (choose(depth, j)) {
+                depth++;
+                nextCandidate[depth] = 0;
+                trailMark[depth] = trailSize;
+            }
         }
+        return false;
+    }
 
-        for (int j = 0; j < m; j++) {
-            if (compatMatrix[depth][j] == 1) {
-                if (isFeasible(depth, j)) {
-                    int[][] MBackup = copyMatrix(compatMatrix);
-                    // remove conflicting mappings
-                    for (int k = depth + 1; k < n; k++) {
-                        compatMatrix[k][j] = 0;
-                    }
-                    for (int l = 0; l < m; l++) {
-                        if (l != j) {
-                            compatMatrix[depth][l] = 0;
-                        }
-                    }
-                    compatMatrix[depth][j] = -1; // selected
+    /**
+     * maps src node i onto dst node j and narrows the rows of the src nodes not mapped yet accordingly. returns false
+     * if one of them is left without candidates, in which case the caller undoes the changes.
+     */
+    private boolean choose(int i, int j) {
+        choice++;
+        assignment[i] = j;
 
-                    matBacklog.push(MBackup);
-                    if (matchRecursive(depth + 1)) {
-                        return true;
-                    }
-                    compatMatrix = matBacklog.pop();
+        // row i only keeps j
+        for (int w = 0; w < words; w++) {
+            setWord(i, w, w == (j >>> 6) ? 1L << j : 0L);
+        }
+
+        // every later node loses j, and keeps only the dst nodes whose adjacency to j matches its adjacency to i. for
+        // a node not adjacent to i that only touches the words holding j or one of its neighbours
+        long[] adjJ = dstAdjacency[j];
+        int touchedCount = 0;
+        for (int w = 0; w < words; w++) {
+            if (adjJ[w] != 0 || w == (j >>> 6)) {
+                touched[touchedCount++] = w;
+            }
+        }
+        for (int k = i + 1; k < n; k++) {
+            boolean adjacent = (srcAdjacency[k][i >>> 6] & (1L << i)) != 0;
+            boolean changed = false;
+            int count = adjacent ? words : touchedCount;
+            for (int t = 0; t < count; t++) {
+                int w = adjacent ? t : touched[t];
+                long mask = adjacent ? adjJ[w] : ~adjJ[w];
+                if (w == (j >>> 6)) {
+                    mask &= ~(1L << j);
+                }
+                long value = compatMatrix[k][w] & mask;
+                if (value != compatMatrix[k][w]) {
+                    setWord(k, w, value);
+                    changed = true;
                 }
             }
+            if (changed) {
+                if (isEmpty(compatMatrix[k])) {
+                    clearQueue();
+                    return false;
+                }
+                enqueueNeighbours(k, i);
+            }
         }
-        return false;
+
+        return refine(i);
     }
 
-    private boolean isFeasible(int i, int j) {
-        // check adjacency compatibility
-        PDGNode srcNode = srcNodes.get(i);
-        PDGNode dstNode = dstNodes.get(j);
+    /**
+     * Ullmann's refinement over the src nodes after depth: a candidate y of node k is dropped if some neighbour x of
+     * k has no candidate adjacent to y. rows are revisited off a worklist, only when the row of a neighbour changed,
+     * until nothing changes. returns false if a row ends up empty.
+     */
+    private boolean refine(int depth) {
+        while (queueSize > 0) {
+            int k = queue[queueHead];
+            queueHead = (queueHead + 1) % n;
+            queueSize--;
+            queued[k] = false;
 
-        // for all prev mapped nodes
-        for (int k = 0; k < i; k++) {
-            int mappedIndex = -1;
-            // find the node in PDG2 that k in pdg1 is mapped to
-            for (int l = 0; l < m; l++) {
-                if (compatMatrix[k][l] == -1) {
-                    mappedIndex = l;
-                    break;
+            long[] row = compatMatrix[k];
+            boolean changed = false;
+            long any = 0;
+            for (int w = 0; w < words; w++) {
+                long bits = row[w];
+                long kept = bits;
+                while (bits != 0) {
+                    int y = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    if (!neighboursCanFollow(k, y, depth)) {
+                        kept &= ~(1L << y);
+                    }
+                }
+                if (kept != row[w]) {
+                    setWord(k, w, kept);
+                    changed = true;
                 }
+                any |= kept;
+            }
+            if (any == 0) {
+                clearQueue();
+                return false;
+            }
+            if (changed) {
+                enqueueNeighbours(k, depth);
             }
-            if (mappedIndex != -1) {
-                PDGNode mappedSrcNode = srcNodes.get(k);
-                PDGNode mappedDstNode = this.dstNodes.get(mappedIndex);
+        }
+        return true;
+    }
+
+    // queues the src nodes after depth adjacent to x, their candidates may depend on the ones x just lost
+    private void enqueueNeighbours(int x, int depth) {
+        long[] neighbours = srcAdjacency[x];
+        int from = depth + 1;
+        for (int w = from >>> 6; w < neighbours.length; w++) {
+            long bits = neighbours[w];
+            if (w == from >>> 6) {
+                bits &= -1L << from;
+            }
+            while (bits != 0) {
+                int k = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                enqueue(k);
+            }
+        }
+    }
+
+    private void enqueue(int k) {
+        if (!queued[k]) {
+            queued[k] = true;
+            queue[(queueHead + queueSize) % n] = k;
+            queueSize++;
+        }
+    }
 
-                // check if adjacency is preserved
-                boolean adjInPDG1 = areAdjacent(srcNode, mappedSrcNode);
-                boolean adjInPDG2 = areAdjacent(dstNode, mappedDstNode);
+    private void clearQueue() {
+        while (queueSize > 0) {
+            queued[queue[queueHead]] = false;
+            queueHead = (queueHead + 1) % n;
+            queueSize--;
+        }
+    }
 
-                if (adjInPDG1 != adjInPDG2) {
+    // true if every unmapped neighbour x of k still has a candidate adjacent to y
+    private boolean neighboursCanFollow(int k, int y, int depth) {
+        long[] neighbours = srcAdjacency[k];
+        long[] adjY = dstAdjacency[y];
+        int from = depth + 1;
+        for (int w = from >>> 6; w < neighbours.length; w++) {
+            long bits = neighbours[w];
+            if (w == from >>> 6) {
+                bits &= -1L << from;
+            }
+            while (bits != 0) {
+                int x = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (x == k) {
+                    continue;
+                }
+                long[] rowX = compatMatrix[x];
+                boolean found = false;
+                for (int v = 0; v < words && !found; v++) {
+                    found = (rowX[v] & adjY[v]) != 0;
+                }
+                if (!found) {
                     return false;
                 }
             }
@@ -121,34 +292,92 @@ public class UllmannMatcher {
         return true;
     }
 
-    private boolean areAdjacent(PDGNode n1, PDGNode n2) {
-        // chck if n1 and n2 are adjacent in the PDG
-        return n1.getDependents().contains(n2) || n1.getBackDependets().contains(n2)
-                || n2.getDependents().contains(n1) || n2.getBackDependets().contains(n1);
+    private void setWord(int row, int w, long value) {
+        long old = compatMatrix[row][w];
+        if (old == value) {
+            return;
+        }
+        int word = row * words + w;
+        if (trailedFor[word] != choice) {
+            trailedFor[word] = choice;
+            if (trailSize == trailWord.length) {
+                trailWord = Arrays.copyOf(trailWord, trailSize * 2);
+                trailValue = Arrays.copyOf(trailValue, trailSize * 2);
+            }
+            trailWord[trailSize] = word;
+            trailValue[trailSize] = old;
+            trailSize++;
+        }
+        compatMatrix[row][w] = value;
+    }
+
+    // restores compatMatrix to how it was when the trail had mark entries
+    private void undo(int mark) {
+        while (trailSize > mark) {
+            trailSize--;
+            int word = trailWord[trailSize];
+            compatMatrix[word / words][word % words] = trailValue[trailSize];
+        }
     }
 
-    private void buildNodeMapping() {
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < m; j++) {
-                if (compatMatrix[i][j] == -1) {
-                    nodeMapping.addMapping(srcNodes.get(i), dstNodes.get(j));
-                    break;
+    private boolean isEmpty(long[] row) {
+        for (int w = 0; w < words; w++) {
+            if (row[w] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // index of the first set bit at or after from, -1 if there is none
+    private int nextBit(long[] row, int from) {
+        int w = from >>> 6;
+        if (w >= words) {
+            return -1;
+        }
+        long bits = row[w] & (-1L << from);
+        while (true) {
+            if (bits != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (++w == words) {
+                return -1;
+            }
+            bits = row[w];
+        }
+    }
+
+    private static long[][] adjacency(CompactPDG pdg, int count) {
+        long[][] adjacency = new long[count][(count + 63) >>> 6];
+        for (int i = 0; i < count; i++) {
+            for (int e = pdg.neighbourStart(i); e < pdg.neighbourEnd(i); e++) {
+                int j = pdg.neighbourTarget(e);
+                if (j < count && j != i) {
+                    adjacency[i][j >>> 6] |= 1L << j;
+                    adjacency[j][i >>> 6] |= 1L << i;
                 }
             }
         }
+        return adjacency;
     }
 
-    private boolean nodesAreCompatible(PDGNode n1, PDGNode n2) {
-        // TODO: add more like VF2
-        // compare node types and attributes
-        return n1.getType().equals(n2.getType()) && n1.getAttrib().equals(n2.getAttrib());
+    private static List<PDGNode> reachableNodes(CompactPDG pdg) {
+        List<PDGNode> nodes = new ArrayList<>(pdg.getReachableCount());
+        for (int i = 0; i < pdg.getReachableCount(); i++) {
+            nodes.add(pdg.getNode(i));
+        }
+        return nodes;
     }
 
-    private int[][] copyMatrix(int[][] original) {
-        int[][] copy = new int[n][m];
+    private void buildNodeMapping() {
         for (int i = 0; i < n; i++) {
-            System.arraycopy(original[i], 0, copy[i], 0, m);
+            nodeMapping.addMapping(srcNodes.get(i), dstNodes.get(assignment[i]));
         }
-        return copy;
+    }
+
+    private boolean nodesAreCompatible(PDGNode n1, PDGNode n2) {
+        // TODO: add more like VF2
+        // compare node types and attributes
+        return n1.getType().equals(n2.getType()) && n1.getAttrib().equals(n2.getAttrib());
     }
 }
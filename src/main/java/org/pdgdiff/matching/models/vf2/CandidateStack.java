@@ -0,0 +1,33 @@
+package org.pdgdiff.matching.models.vf2;
+
+import java.util.Arrays;
+
+/**
+ * The candidate dst nodes of every frame of the VF2 search, one stack shared by all depths (a frame's candidates sit
+ * above those of the frames below it). grows as needed and is reused for the whole search, so exploring a state does
+ * not allocate.
+ */
+final class CandidateStack {
+    private int[] items = new int[64];
+    private int size = 0;
+
+    void push(int item) {
+        if (size == items.length) {
+            items = Arrays.copyOf(items, size * 2);
+        }
+        items[size++] = item;
+    }
+
+    int get(int i) {
+        return items[i];
+    }
+
+    int size() {
+        return size;
+    }
+
+    // drops everything from index size on, i.e. the candidates of the frames above
+    void truncate(int size) {
+        this.size = size;
+    }
+}
@@ -0,0 +1,41 @@
+package org.pdgdiff.matching.models.vf2;
+
+/**
+ * Limits on a single VF2 search: wall-clock time, number of states explored (pairs added to the mapping) and number of
+ * backtracks. a limit of 0 or less means that limit is not applied. once any limit is hit the search stops and
+ * VF2Matcher falls back to the largest partial mapping it has seen.
+ */
+public final class VF2Budget {
+    public static final VF2Budget UNLIMITED = new VF2Budget(0, 0, 0);
+
+    private final long maxMillis;
+    private final long maxStates;
+    private final long maxBacktracks;
+
+    public VF2Budget(long maxMillis, long maxStates, long maxBacktracks) {
+        this.maxMillis = maxMillis;
+        this.maxStates = maxStates;
+        this.maxBacktracks = maxBacktracks;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    public long getMaxStates() {
+        return maxStates;
+    }
+
+    public long getMaxBacktracks() {
+        return maxBacktracks;
+    }
+
+    public boolean isUnlimited() {
+        return maxMillis <= 0 && maxStates <= 0 && maxBacktracks <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "VF2Budget{maxMillis=" + maxMillis + ", maxStates=" + maxStates + ", maxBacktracks=" + maxBacktracks + "}";
+    }
+}
@@ -4,57 +4,193 @@ import org.pdgdiff.matching.NodeMapping;
 import org.pdgdiff.graph.PDG;
 import soot.toolkits.graph.pdg.PDGNode;
 
+import java.util.Collections;
 import java.util.Map;
 
 /**
  * VF2Matcher class to perform graph matching using the VF2 algorithm. This class contains methods to match two PDGs
  * using the VF2 algorithm and return the node mappings between the two PDGs.
+ *
+ * The search can be bounded by a VF2Budget. under a budget, if no complete mapping is found (because the budget ran
+ * out, or because there is none) the largest (consistent) partial mapping seen is returned instead, see getOutcome().
+ * so whether a pair gets a mapping depends on how similar its PDGs are, not on how long the search for one took.
  */
 public class VF2Matcher {
+
+    // how a match() call ended
+    public enum Outcome {
+        COMPLETE,           // a complete mapping was found
+        BUDGET_EXHAUSTED,   // the budget ran out, the best partial mapping was returned (if there was any)
+        FAILED              // the search space was exhausted without a complete mapping, under a budget the best
+                            // partial mapping was returned (if there was any)
+    }
+
+    // the clock is only read every this many backtracks
+    private static final int TIME_CHECK_INTERVAL = 256;
+
     private final PDG srcPdg;
     private final PDG dstPdg;
+    private final VF2Budget budget;
     private final NodeMapping nodeMapping;
 
+    private long deadline;
+    private long statesExplored;
+    private long backtracks;
+    private boolean budgetExhausted;
+    private Map<PDGNode, PDGNode> bestPartialMapping = Collections.emptyMap();
+    private Outcome outcome;
+
     public VF2Matcher(PDG srcPdg, PDG dstPdg) {
+        this(srcPdg, dstPdg, VF2Budget.UNLIMITED);
+    }
+
+    public VF2Matcher(PDG srcPdg, PDG dstPdg, VF2Budget budget) {
         this.srcPdg = srcPdg;
         this.dstPdg = dstPdg;
+        this.budget = budget;
         this.nodeMapping = new NodeMapping();
     }
 
     public NodeMapping match() {
+        deadline = budget.getMaxMillis() > 0 ? System.nanoTime() + budget.getMaxMillis() * 1_000_000 : Long.MAX_VALUE;
         // Initialize state
         VF2State state = new VF2State(srcPdg, dstPdg);
-        // Start recursive matching
-        if (matchRecursive(state)) {
+        if (search(state)) {
+            outcome = Outcome.COMPLETE;
             return nodeMapping;
+        } else if (budgetExhausted) {
+            outcome = Outcome.BUDGET_EXHAUSTED;
+            return partialMapping();
         } else {
             // No isomorphism found
+            outcome = Outcome.FAILED;
+            return budget.isUnlimited() ? null : partialMapping();
+        }
+    }
+
+    private NodeMapping partialMapping() {
+        if (bestPartialMapping.isEmpty()) {
             return null;
         }
+        for (Map.Entry<PDGNode, PDGNode> entry : bestPartialMapping.entrySet()) {
+            nodeMapping.addMapping(entry.getKey(), entry.getValue());
+        }
+        return nodeMapping;
+    }
+
+    // null until match() was called
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    // the largest partial mapping seen by the last match() call, whatever its outcome
+    public Map<PDGNode, PDGNode> getBestPartialMapping() {
+        return bestPartialMapping;
+    }
+
+    public long getStatesExplored() {
+        return statesExplored;
+    }
+
+    public long getBacktracks() {
+        return backtracks;
     }
 
 
     // TODO: investigate vf2, i believe it to be too strict. need to figure out way of mapping methods -> methods if they
     // TODO: are similar 'ish', dont' need exact matches when I am effectively looking at version differences.
-    private boolean matchRecursive(VF2State state) {
+    /**
+     * depth-first search over the states, iteratively with one preallocated frame per depth (rather than recursing
+     * once per mapped node), so deep searches on long methods need no extra thread stack. frame d holds the src node
+     * picked at depth d, the range of its candidates on the candidate stack, the next candidate to try and the dst
+     * node it is currently mapped to (if any).
+     */
+    private boolean search(VF2State state) {
         if (state.isComplete()) {
-            // Mapping is complete, transfer mappings to nodeMapping
-            for (Map.Entry<PDGNode, PDGNode> entry : state.getMapping().entrySet()) {
-                nodeMapping.addMapping(entry.getKey(), entry.getValue());
-            }
+            transferMapping(state);
             return true;
         }
 
-        // Generate candidate pairs
-        for (CandidatePair pair : state.generateCandidates()) {
-            if (state.isFeasible(pair)) {
-                state.addPair(pair);
-                if (matchRecursive(state)) {
-                    return true;
+        int maxDepth = state.getMaxDepth();
+        int[] frameSrc = new int[maxDepth + 1];
+        int[] frameCandidatesStart = new int[maxDepth + 1];
+        int[] frameNext = new int[maxDepth + 1];
+        int[] frameMapped = new int[maxDepth + 1];
+        CandidateStack candidates = new CandidateStack();
+
+        int top = 0;
+        pushFrame(state, candidates, top, frameSrc, frameCandidatesStart, frameNext, frameMapped);
+        while (top >= 0) {
+            if (frameMapped[top] != VF2State.NULL_NODE) {
+                // the state above this frame has been fully explored, undo this frame's pair
+                state.removePair(frameSrc[top], frameMapped[top]);
+                frameMapped[top] = VF2State.NULL_NODE;
+                backtracks++;
+                if (isOverBudget()) {
+                    budgetExhausted = true;
+                    return false;
                 }
-                state.removePair(pair);
             }
+
+            // next feasible candidate of this frame
+            int n1 = frameSrc[top];
+            int n2 = VF2State.NULL_NODE;
+            int end = candidates.size();
+            while (n1 != VF2State.NULL_NODE && frameNext[top] < end) {
+                int candidate = candidates.get(frameNext[top]++);
+                if (state.isFeasible(n1, candidate)) {
+                    n2 = candidate;
+                    break;
+                }
+            }
+            if (n2 == VF2State.NULL_NODE) {
+                // no candidates left, back to the frame below
+                candidates.truncate(frameCandidatesStart[top]);
+                top--;
+                continue;
+            }
+
+            state.addPair(n1, n2);
+            frameMapped[top] = n2;
+            statesExplored++;
+            // every state is consistent, so the deepest one is the best fallback. deepening by one at a time
+            // means at most min(n1, n2) snapshots are taken
+            if (state.getDepth() > bestPartialMapping.size()) {
+                bestPartialMapping = state.getMapping();
+            }
+            if (state.isComplete()) {
+                transferMapping(state);
+                return true;
+            }
+            top++;
+            pushFrame(state, candidates, top, frameSrc, frameCandidatesStart, frameNext, frameMapped);
         }
         return false;
     }
+
+    private static void pushFrame(VF2State state, CandidateStack candidates, int depth,
+                                  int[] frameSrc, int[] frameCandidatesStart, int[] frameNext, int[] frameMapped) {
+        frameCandidatesStart[depth] = candidates.size();
+        frameNext[depth] = candidates.size();
+        frameMapped[depth] = VF2State.NULL_NODE;
+        frameSrc[depth] = state.generateCandidates(candidates);
+    }
+
+    private void transferMapping(VF2State state) {
+        // Mapping is complete, transfer mappings to nodeMapping
+        for (Map.Entry<PDGNode, PDGNode> entry : state.getMapping().entrySet()) {
+            nodeMapping.addMapping(entry.getKey(), entry.getValue());
+        }
+    }
+
+    // only called after a backtrack, the search cannot go on for long without one (it is at most min(n1, n2) deep)
+    private boolean isOverBudget() {
+        if (budget.getMaxStates() > 0 && statesExplored >= budget.getMaxStates()) {
+            return true;
+        }
+        if (budget.getMaxBacktracks() > 0 && backtracks >= budget.getMaxBacktracks()) {
+            return true;
+        }
+        return deadline != Long.MAX_VALUE && backtracks % TIME_CHECK_INTERVAL == 0 && System.nanoTime() > deadline;
+    }
 }
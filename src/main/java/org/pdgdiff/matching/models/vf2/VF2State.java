@@ -1,7 +1,7 @@
 package org.pdgdiff.matching.models.vf2;
 
-import org.pdgdiff.matching.NodeFeasibility;
-import org.pdgdiff.graph.GraphTraversal;
+import org.pdgdiff.graph.CompactPDG;
+import org.pdgdiff.graph.NodeFeatures;
 import org.pdgdiff.graph.PDG;
 import soot.toolkits.graph.pdg.PDGNode;
 
@@ -10,104 +10,151 @@ import java.util.*;
 /**
  * VF2State class to store the state of the VF2 algorithm. This class contains methods to store the current state
  * of the VF2 algorithm and perform operations on the state.
+ *
+ * As in the original VF2 paper, the state is kept incrementally in int arrays indexed by CompactPDG node: core1/core2
+ * hold the partial mapping in both directions, and in1/in2 the depth at which a node entered its terminal set (T1/T2,
+ * the unmapped neighbours of mapped nodes), 0 if it is not in it. Adding a pair stamps its neighbours with the new
+ * depth and removing it clears exactly those stamps again, so both are O(degree) instead of rebuilding T1/T2 from the
+ * whole mapping on every backtrack.
  */
 class VF2State {
-    private final PDG srcPdg;
-    private final PDG dstPdg;
-    private final Map<PDGNode, PDGNode> mapping;  // The current partial mapping
+    static final int NULL_NODE = -1;
 
-    private final Set<PDGNode> T1;  // Nodes in PDG1 that are in the mapping or adjacent to mapped nodes
-    private final Set<PDGNode> T2;  // Same for PDG2
+    private final CompactPDG srcPdg;
+    private final CompactPDG dstPdg;
 
-    private final Set<PDGNode> unmappedSrcNodes;  // Unmapped nodes in PDG1 (the source pdg)
-    private final Set<PDGNode> unmappedDstNodes;  // Unmapped nodes in PDG2 (the dest pdg)
+    private final int[] core1;  // src node -> mapped dst node, or NULL_NODE
+    private final int[] core2;  // dst node -> mapped src node, or NULL_NODE
+    private final int[] order;  // src nodes in the order they were mapped, first depth entries are valid
+    private int depth = 0;      // size of the current partial mapping
 
-    public VF2State(PDG srcPdg, PDG dstPdg) {
-        this.srcPdg = srcPdg;
-        this.dstPdg = dstPdg;
-        this.mapping = new LinkedHashMap<>();
+    private final int[] in1;  // depth at which a node of PDG1 (the source pdg) entered T1, 0 if not in T1
+    private final int[] in2;  // same for PDG2 (the dest pdg)
+    private int t1Size = 0;   // number of unmapped nodes in T1
+    private int t2Size = 0;   // same for T2
 
-        this.unmappedSrcNodes = new LinkedHashSet<>(GraphTraversal.collectNodesBFS(srcPdg));
-        this.unmappedDstNodes = new LinkedHashSet<>(GraphTraversal.collectNodesBFS(dstPdg));
+    // node category / attribute, looked up once per pdg rather than per candidate
+    private final NodeFeatures features1;
+    private final NodeFeatures features2;
 
-        this.T1 = new LinkedHashSet<>();
-        this.T2 = new LinkedHashSet<>();
+    public VF2State(PDG srcPdg, PDG dstPdg) {
+        this.srcPdg = srcPdg.getCompactPDG();
+        this.dstPdg = dstPdg.getCompactPDG();
+        int n1 = this.srcPdg.size();
+        int n2 = this.dstPdg.size();
+
+        this.core1 = new int[n1];
+        this.core2 = new int[n2];
+        Arrays.fill(core1, NULL_NODE);
+        Arrays.fill(core2, NULL_NODE);
+        this.order = new int[Math.min(n1, n2)];
+
+        this.in1 = new int[n1];
+        this.in2 = new int[n2];
+
+        this.features1 = srcPdg.getNodeFeatures();
+        this.features2 = dstPdg.getNodeFeatures();
     }
 
     public boolean isComplete() {
         // once one of the graphs is fully matched (hence this is subgraph isomorphism)
 //TODO: consider allowing this:
 //        return mapping.size() >= Math.min(GraphTraversal.getNodeCount(srcPdg) * 0.5 , GraphTraversal.getNodeCount(dstPdg) * 0.5);
-        return mapping.size() >= Math.min(GraphTraversal.getNodeCount(srcPdg), GraphTraversal.getNodeCount(dstPdg));
+        return depth >= Math.min(srcPdg.getReachableCount(), dstPdg.getReachableCount());
+    }
+
+    // size of the current partial mapping
+    public int getDepth() {
+        return depth;
     }
 
+    // the current mapping, in the order the pairs were added
     public Map<PDGNode, PDGNode> getMapping() {
+        Map<PDGNode, PDGNode> mapping = new LinkedHashMap<>();
+        for (int d = 0; d < depth; d++) {
+            mapping.put(srcPdg.getNode(order[d]), dstPdg.getNode(core1[order[d]]));
+        }
         return mapping;
     }
 
-    public List<CandidatePair> generateCandidates() {
-        // TODO: If non determinism prevails, consider implementing a sort on these candidates
-        // TODO: probably need to sort by id e.g. CFGNODE 1 sorta thing. should hopefully work,
-        // If not implementing this here, possibly need to implement it in the matchRecursvie function.
-        List<CandidatePair> candidates = new ArrayList<>();
+    // the largest mapping possible, i.e. the deepest the search can go
+    public int getMaxDepth() {
+        return order.length;
+    }
 
-        if (!T1.isEmpty() && !T2.isEmpty()) {
+    /**
+     * picks the next src node to map and pushes the dst nodes it could be mapped to onto candidates. returns the src
+     * node, or NULL_NODE if there is none left.
+     */
+    public int generateCandidates(CandidateStack candidates) {
+        // nodes are picked in CompactPDG order (i.e. bfs order from the start node), which keeps this deterministic
+        if (t1Size > 0 && t2Size > 0) {
             // Pick nodes from T1 and T2
-            PDGNode n1 = selectNode(T1);
-            for (PDGNode n2 : T2) {
-                if (nodesAreCompatible(n1, n2)) {
-                    candidates.add(new CandidatePair(n1, n2));
+            int n1 = firstTerminal(core1, in1);
+            for (int n2 = 0; n2 < core2.length; n2++) {
+                if (core2[n2] == NULL_NODE && in2[n2] != 0 && nodesAreCompatible(n1, n2)) {
+                    candidates.push(n2);
                 }
             }
+            return n1;
         } else {
             // If T1 and T2 are empty, pick any unmapped nodes
-            PDGNode n1 = selectNode(unmappedSrcNodes);
-            for (PDGNode n2 : unmappedDstNodes) {
-                if (nodesAreCompatible(n1, n2)) {
-                    candidates.add(new CandidatePair(n1, n2));
+            int n1 = firstUnmapped(core1, srcPdg.getReachableCount());
+            if (n1 == NULL_NODE) {
+                return NULL_NODE;
+            }
+            for (int n2 = 0; n2 < dstPdg.getReachableCount(); n2++) {
+                if (core2[n2] == NULL_NODE && nodesAreCompatible(n1, n2)) {
+                    candidates.push(n2);
                 }
             }
+            return n1;
         }
-
-        return candidates;
     }
 
-    public boolean isFeasible(CandidatePair pair) {
+    public boolean isFeasible(int n1, int n2) {
         // Implement feasibility checks:
         // - Syntactic feasibility: node attributes match
         // - Semantic feasibility: the mapping is consistent with the graph structure
         // TODO arguably there is no point in doing checkSyntacticFeasibility here,
         //  as this is already tested when generating the candidates.
-        return checkSyntacticFeasibility(pair) && checkSemanticFeasibility(pair);
+        return checkSyntacticFeasibility(n1, n2) && checkSemanticFeasibility(n1, n2);
     }
 
-    public void addPair(CandidatePair pair) {
-        mapping.put(pair.n1, pair.n2);
-        unmappedSrcNodes.remove(pair.n1);
-        unmappedDstNodes.remove(pair.n2);
+    public void addPair(int n1, int n2) {
+        if (in1[n1] != 0) t1Size--;
+        if (in2[n2] != 0) t2Size--;
+
+        core1[n1] = n2;
+        core2[n2] = n1;
+        order[depth++] = n1;
 
         // Update T1 and T2
-        updateTerminalSets(pair.n1, pair.n2);
+        t1Size += stampTerminals(srcPdg, n1, core1, in1);
+        t2Size += stampTerminals(dstPdg, n2, core2, in2);
     }
 
-    public void removePair(CandidatePair pair) {
-        mapping.remove(pair.n1);
-        unmappedSrcNodes.add(pair.n1);
-        unmappedDstNodes.add(pair.n2);
+    public void removePair(int n1, int n2) {
+        // undo exactly what addPair stamped at this depth
+        t1Size -= clearTerminals(srcPdg, n1, core1, in1);
+        t2Size -= clearTerminals(dstPdg, n2, core2, in2);
 
-        // Recalculate T1 and T2
-        recalculateTerminalSets();
+        core1[n1] = NULL_NODE;
+        core2[n2] = NULL_NODE;
+        depth--;
+        if (in1[n1] != 0) t1Size++;
+        if (in2[n2] != 0) t2Size++;
     }
 
     // Helper methods...
 
-    private boolean nodesAreCompatible(PDGNode n1, PDGNode n2) {
+    private boolean nodesAreCompatible(int n1, int n2) {
         // check if the nodes are of the same semantic category (Stmt, Decl, etc.), todo should move this into semantic check section.
-        if (!NodeFeasibility.isSameNodeCategory(n1, n2)) {
+        if ((features1.getCategory(n1) & features2.getCategory(n2)) == 0) {
             return false;
         }
         // checks from teh following attributes; NORMAL, ENTRY, CONDHEADER, LOOPHEADER
-        if (!n1.getAttrib().equals(n2.getAttrib())) {
+        if (features1.getAttrib(n1) != features2.getAttrib(n2)) {
             return false;
         }
 
@@ -115,146 +162,90 @@ class VF2State {
     }
 
 
-    private boolean checkSyntacticFeasibility(CandidatePair pair) {
+    private boolean checkSyntacticFeasibility(int n1, int n2) {
         // Ensure that the nodes can be mapped based on their attributes
-        return nodesAreCompatible(pair.n1, pair.n2);
+        return nodesAreCompatible(n1, n2);
     }
 
-    private boolean checkSemanticFeasibility(CandidatePair pair) {
-        // cmp successors in PDG1 vs mapped successors in PDG2
-        for (PDGNode succInSrcPdg : srcPdg.getSuccsOf(pair.n1)) {
-            PDGNode succMappedInDstPdg = this.getMapping().get(succInSrcPdg);
-            if (succMappedInDstPdg != null) {
-                boolean dataEdge1 = srcPdg.hasDataEdge(pair.n1, succInSrcPdg);
-                boolean dataEdge2 = dstPdg.hasDataEdge(pair.n2, succMappedInDstPdg);
-                if (dataEdge1 != dataEdge2) {
-                    return false;
-                }
-
-                boolean ctrlEdge1 = srcPdg.hasControlEdge(pair.n1, succInSrcPdg);
-                boolean ctrlEdge2 = dstPdg.hasControlEdge(pair.n2, succMappedInDstPdg);
-                if (ctrlEdge1 != ctrlEdge2) {
-                    return false;
-                }
-            }
-        }
-
-        // cmp predecessors in PDG1 vs. mapped predecessors in PDG2
-        for (PDGNode predInSrcPdg : srcPdg.getPredsOf(pair.n1)) {
-            PDGNode predMappedInDstPdg = this.getMapping().get(predInSrcPdg);
-            if (predMappedInDstPdg != null) {
-                boolean dataEdge1 = srcPdg.hasDataEdge(predInSrcPdg, pair.n1);
-                boolean dataEdge2 = dstPdg.hasDataEdge(predMappedInDstPdg, pair.n2);
-                if (dataEdge1 != dataEdge2) {
-                    return false;
-                }
-
-                boolean ctrlEdge1 = srcPdg.hasControlEdge(predInSrcPdg, pair.n1);
-                boolean ctrlEdge2 = dstPdg.hasControlEdge(predMappedInDstPdg, pair.n2);
-                if (ctrlEdge1 != ctrlEdge2) {
-                    return false;
-                }
-            }
-        }
-
-        // cross-check every existing mapping pair so that edges from (pair.n1->mappedN1) in PDG1 match edges from (pair.n2->mappedN2) in PDG2.
-        for (Map.Entry<PDGNode, PDGNode> entry : this.getMapping().entrySet()) {
-            PDGNode alreadyMappedN1 = entry.getKey();
-            PDGNode alreadyMappedN2 = entry.getValue();
-
-            // Forward edges:
-            // if PDG1 has data/control edge from (pair.n1 -> alreadyMappedN1), then PDG2 must have the same edge type from (pair.n2 -> alreadyMappedN2)
-            boolean dataEdge1 = srcPdg.hasDataEdge(pair.n1, alreadyMappedN1);
-            boolean dataEdge2 = dstPdg.hasDataEdge(pair.n2, alreadyMappedN2);
-            if (dataEdge1 != dataEdge2) {
-                return false;
-            }
-            boolean ctrlEdge1 = srcPdg.hasControlEdge(pair.n1, alreadyMappedN1);
-            boolean ctrlEdge2 = dstPdg.hasControlEdge(pair.n2, alreadyMappedN2);
-            if (ctrlEdge1 != ctrlEdge2) {
-                return false;
-            }
+    /**
+     * every edge between the candidate and an already mapped node must exist, with the same dependency type(s), between
+     * their counterparts. checked from both sides, so only the edges of the two candidate nodes are visited rather than
+     * every pair in the mapping.
+     */
+    private boolean checkSemanticFeasibility(int n1, int n2) {
+        return edgesAreMirrored(srcPdg, n1, core1, dstPdg, n2)
+                && edgesAreMirrored(dstPdg, n2, core2, srcPdg, n1);
+    }
 
-            // Reverse edges:
-            // if PDG1 has data/control edge from (alreadyMappedN1 -> pair.n1), then PDG2 must have the same edge type from (alreadyMappedN2 -> pair.n2).
-            dataEdge1 = srcPdg.hasDataEdge(alreadyMappedN1, pair.n1);
-            dataEdge2 = dstPdg.hasDataEdge(alreadyMappedN2, pair.n2);
-            if (dataEdge1 != dataEdge2) {
+    private static boolean edgesAreMirrored(CompactPDG pdg, int node, int[] core, CompactPDG otherPdg, int otherNode) {
+        // successors of node that are mapped vs. the edge to their counterpart
+        for (int e = pdg.succStart(node); e < pdg.succEnd(node); e++) {
+            int mapped = core[pdg.succTarget(e)];
+            if (mapped != NULL_NODE && pdg.succKind(e) != otherPdg.edgeKind(otherNode, mapped)) {
                 return false;
             }
-            ctrlEdge1 = srcPdg.hasControlEdge(alreadyMappedN1, pair.n1);
-            ctrlEdge2 = dstPdg.hasControlEdge(alreadyMappedN2, pair.n2);
-            if (ctrlEdge1 != ctrlEdge2) {
+        }
+        // predecessors of node that are mapped vs. the edge from their counterpart
+        for (int e = pdg.predStart(node); e < pdg.predEnd(node); e++) {
+            int mapped = core[pdg.predTarget(e)];
+            if (mapped != NULL_NODE && pdg.predKind(e) != otherPdg.edgeKind(mapped, otherNode)) {
                 return false;
             }
         }
-
         return true;
-
     }
 
-    private void updateTerminalSets(PDGNode n1, PDGNode n2) {
-        // Add neighbours of n1 to T1 if they are not mapped
-        for (PDGNode neighbour : n1.getDependents()) {
-            if (!mapping.containsKey(neighbour)) {
-                T1.add(neighbour);
-            }
+    // stamps node and its neighbours that are not in the terminal set yet, returns how many unmapped ones were added
+    private int stampTerminals(CompactPDG pdg, int node, int[] core, int[] in) {
+        int added = 0;
+        if (in[node] == 0) {
+            in[node] = depth;
         }
-        for (PDGNode neighbour : n1.getBackDependets()) {
-            if (!mapping.containsKey(neighbour)) {
-                T1.add(neighbour);
+        for (int e = pdg.neighbourStart(node); e < pdg.neighbourEnd(node); e++) {
+            int neighbour = pdg.neighbourTarget(e);
+            if (in[neighbour] == 0) {
+                in[neighbour] = depth;
+                if (core[neighbour] == NULL_NODE) {
+                    added++;
+                }
             }
         }
+        return added;
+    }
 
-        // Same for n2
-        for (PDGNode neighbour : n2.getDependents()) {
-            if (!mapping.containsValue(neighbour)) {
-                T2.add(neighbour);
+    // reverts stampTerminals at the current depth (node still mapped), returns how many unmapped ones were removed
+    private int clearTerminals(CompactPDG pdg, int node, int[] core, int[] in) {
+        int removed = 0;
+        for (int e = pdg.neighbourStart(node); e < pdg.neighbourEnd(node); e++) {
+            int neighbour = pdg.neighbourTarget(e);
+            if (in[neighbour] == depth) {
+                in[neighbour] = 0;
+                if (core[neighbour] == NULL_NODE) {
+                    removed++;
+                }
             }
         }
-        for (PDGNode neighbour : n2.getBackDependets()) {
-            if (!mapping.containsValue(neighbour)) {
-                T2.add(neighbour);
-            }
+        if (in[node] == depth) {
+            in[node] = 0;
         }
-
-        // Remove n1 and n2 from T1 and T2
-        T1.remove(n1);
-        T2.remove(n2);
+        return removed;
     }
 
-    private void recalculateTerminalSets() {
-        T1.clear();
-        T2.clear();
-        for (PDGNode mappedNode1 : mapping.keySet()) {
-            for (PDGNode neighbour : mappedNode1.getDependents()) {
-                if (!mapping.containsKey(neighbour)) {
-                    T1.add(neighbour);
-                }
-            }
-            for (PDGNode neighbour : mappedNode1.getBackDependets()) {
-                if (!mapping.containsKey(neighbour)) {
-                    T1.add(neighbour);
-                }
-            }
-        }
-        for (PDGNode mappedNode2 : mapping.values()) {
-            for (PDGNode neighbour : mappedNode2.getDependents()) {
-                if (!mapping.containsValue(neighbour)) {
-                    T2.add(neighbour);
-                }
-            }
-            for (PDGNode neighbour : mappedNode2.getBackDependets()) {
-                if (!mapping.containsValue(neighbour)) {
-                    T2.add(neighbour);
-                }
+    private static int firstTerminal(int[] core, int[] in) {
+        for (int i = 0; i < core.length; i++) {
+            if (core[i] == NULL_NODE && in[i] != 0) {
+                return i;
             }
         }
+        return NULL_NODE;
     }
 
-    private PDGNode selectNode(Set<PDGNode> nodeSet) {
-        // TODO: implement a more sophisticated node selection strategy here
-        // ATM return any node from the set
-        return nodeSet.iterator().next();
+    private static int firstUnmapped(int[] core, int limit) {
+        for (int i = 0; i < limit; i++) {
+            if (core[i] == NULL_NODE) {
+                return i;
+            }
+        }
+        return NULL_NODE;
     }
 }
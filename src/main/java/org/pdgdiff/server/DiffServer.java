@@ -0,0 +1,150 @@
+package org.pdgdiff.server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.pdgdiff.DiffRequest;
+import org.pdgdiff.Main;
+import org.pdgdiff.matching.DiffContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+
+/**
+ * Long running diff server, so that JVM startup, class loading and JIT warm-up are paid once rather than per diff.
+ *
+ * POST /diff with a DiffRequest as JSON body, e.g.
+ * {"srcSourceFilePath": "...", "dstSourceFilePath": "...", "beforeDir": "...", "afterDir": "...",
+ *  "class1Name": "...", "class2Name": "...", "matchingStrategy": "GED"}
+ * responds with the contents of diff.json in the request's output directory (out/ unless set). GET /health responds once the server is up.
+ *
+ * Only listens on the loopback interface, and only takes bodies sent as application/json, which a web page cannot POST
+ * across origins without a preflight. An outputDir in a request must be a relative path, taken to be under out/, so a
+ * request cannot have the server write to (or clear) a directory elsewhere.
+ */
+public class DiffServer {
+    private static final Logger logger = LoggerFactory.getLogger(DiffServer.class);
+
+    public static final int DEFAULT_PORT = 8080;
+    // the directory all output of the server's diffs goes under
+    private static final Path OUTPUT_ROOT = Paths.get(DiffContext.DEFAULT_OUTPUT_DIR).toAbsolutePath().normalize();
+    private static final Gson gson = new Gson();
+
+    public static void start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/diff", DiffServer::handleDiff);
+        server.createContext("/health", exchange -> {
+            try {
+                respond(exchange, 200, "{\"status\": \"ok\"}");
+            } finally {
+                exchange.close();
+            }
+        });
+        // requests share the out/ folder unless they name their own outputDir, so are served strictly one after the other
+        server.setExecutor(Executors.newSingleThreadExecutor());
+        server.start();
+        logger.info("PDG Diff server listening on http://localhost:{}/diff", port);
+    }
+
+    private static void handleDiff(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, error("diff requests must be POSTed"));
+                return;
+            }
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            if (contentType == null || !contentType.trim().toLowerCase().startsWith("application/json")) {
+                respond(exchange, 415, error("diff requests must be sent as application/json"));
+                return;
+            }
+
+            DiffRequest request;
+            try (Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+                request = gson.fromJson(reader, DiffRequest.class);
+            } catch (JsonParseException e) {
+                respond(exchange, 400, error("malformed request: " + e.getMessage()));
+                return;
+            }
+            if (request == null || request.getMissingField() != null) {
+                String missing = request == null ? "request body" : request.getMissingField();
+                respond(exchange, 400, error("missing " + missing));
+                return;
+            }
+            if (request.getInvalidField() != null) {
+                respond(exchange, 400, error(request.getInvalidField()));
+                return;
+            }
+            if (request.hasOutputDir()) {
+                Path outputDir = resolveOutputDir(request.getOutputDir());
+                if (outputDir == null) {
+                    respond(exchange, 400, error("outputDir must be a relative path within "
+                            + DiffContext.DEFAULT_OUTPUT_DIR));
+                    return;
+                }
+                request.setOutputDir(outputDir.toString());
+            }
+
+            long start = System.nanoTime();
+            boolean success = Main.run(request);
+            Path diffOutput = Paths.get(request.getOutputDir(), "diff.json");
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            logger.info("Diffed {} -> {} in {}ms", request.getClass1Name(), request.getClass2Name(), millis);
+
+            if (!success || !Files.exists(diffOutput)) {
+                respond(exchange, 500, error("no diff could be produced, see the server log"));
+                return;
+            }
+            exchange.getResponseHeaders().add("X-Diff-Millis", Long.toString(millis));
+            respond(exchange, 200, new String(Files.readAllBytes(diffOutput), StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            logger.error("Diff request failed", e);
+            respond(exchange, 500, error(e.toString()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // the request's outputDir under OUTPUT_ROOT, null if it is absolute or leads out of it
+    private static Path resolveOutputDir(String outputDir) {
+        Path requested;
+        try {
+            requested = Paths.get(outputDir);
+        } catch (InvalidPathException e) {
+            return null;
+        }
+        if (requested.isAbsolute() || requested.getRoot() != null) {
+            return null;
+        }
+        Path resolved = OUTPUT_ROOT.resolve(requested).normalize();
+        return resolved.startsWith(OUTPUT_ROOT) ? resolved : null;
+    }
+
+    private static String error(String message) {
+        JsonObject body = new JsonObject();
+        body.addProperty("error", message);
+        return gson.toJson(body);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
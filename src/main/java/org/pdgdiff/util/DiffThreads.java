@@ -0,0 +1,192 @@
+package org.pdgdiff.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The thread pools a diff's work is spread over, shared by all diffs in the jvm. Work comes in two stages: CLASSES
+ * tasks (building or differencing the PDGs of one class) and METHODS tasks (building one PDG or the edit script of one
+ * method pair), which class tasks fan out into. Only class tasks wait on method tasks, never the other way round, so
+ * the two pools cannot starve each other however many diffs share them.
+ *
+ * Each pool has -Dpdgdiff.threads threads (by default one per core). With 1, tasks run on the submitting thread, one
+ * after another, as before there were pools.
+ */
+public final class DiffThreads {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiffThreads.class);
+
+    public enum Stage {
+        CLASSES,
+        METHODS
+    }
+
+    public static final int THREADS = threadsFromSystemProperties();
+
+    private static ExecutorService classPool;
+    private static ExecutorService methodPool;
+
+    private DiffThreads() {
+    }
+
+    /**
+     * submits the tasks to the stage's pool, each run with the SootContext active on the calling thread (and released
+     * again once done, so idle pool threads do not keep a scene alive). the futures are in the order of the tasks.
+     */
+    public static <T> List<Future<T>> submitAll(Stage stage, List<? extends Callable<T>> tasks) {
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        if (THREADS <= 1) {
+            for (Callable<T> task : tasks) {
+                FutureTask<T> future = new FutureTask<>(task);
+                future.run();
+                futures.add(future);
+            }
+            return futures;
+        }
+        ExecutorService pool = pool(stage);
+        SootContext sootContext = SootContext.active();
+        for (Callable<T> task : tasks) {
+            futures.add(submit(pool, sootContext, task));
+        }
+        return futures;
+    }
+
+    /**
+     * runs the tasks on the stage's pool, at most two per thread at a time, and hands their results to the consumer in
+     * the order of the tasks, each as soon as it and those before it are done. so only the results within that window
+     * are held at once, however many tasks there are. if a task or the consumer fails (or the wait is interrupted) the
+     * tasks not yet done are cancelled and the rest never started
+     */
+    public static <T> void forEachInOrder(Stage stage, List<? extends Callable<T>> tasks, ResultConsumer<T> consumer)
+            throws IOException, InterruptedException {
+        int window = 2 * THREADS;
+        Deque<Future<T>> inFlight = new ArrayDeque<>(window);
+        int next = 0;
+        try {
+            while (next < tasks.size() || !inFlight.isEmpty()) {
+                while (next < tasks.size() && inFlight.size() < window) {
+                    inFlight.add(submit(stage, tasks.get(next++)));
+                }
+                consumer.accept(get(inFlight.poll()));
+            }
+        } finally {
+            cancelAll(new ArrayList<>(inFlight));
+        }
+    }
+
+    // what forEachInOrder hands each result to
+    public interface ResultConsumer<T> {
+        void accept(T result) throws IOException, InterruptedException;
+    }
+
+    private static <T> Future<T> submit(Stage stage, Callable<T> task) {
+        if (THREADS <= 1) {
+            FutureTask<T> future = new FutureTask<>(task);
+            future.run();
+            return future;
+        }
+        return submit(pool(stage), SootContext.active(), task);
+    }
+
+    private static <T> Future<T> submit(ExecutorService pool, SootContext sootContext, Callable<T> task) {
+        return pool.submit(() -> {
+            sootContext.activate();
+            try {
+                return task.call();
+            } finally {
+                SootContext.release();
+            }
+        });
+    }
+
+    /**
+     * runs the tasks on the stage's pool and waits for all of them, returning their results in the order of the tasks.
+     * if one fails (or the wait is interrupted) those not yet done are cancelled
+     */
+    public static <T> List<T> invokeAll(Stage stage, List<? extends Callable<T>> tasks) throws InterruptedException {
+        List<Future<T>> futures = submitAll(stage, tasks);
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(get(future));
+            }
+        } finally {
+            cancelAll(futures);
+        }
+        return results;
+    }
+
+    /**
+     * waits for a task's result, rethrowing what the task threw (wrapped if it was a checked exception)
+     */
+    public static <T> T get(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    // cancels whichever tasks are not done yet, those not started are never run
+    public static void cancelAll(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private static synchronized ExecutorService pool(Stage stage) {
+        if (stage == Stage.CLASSES) {
+            if (classPool == null) {
+                classPool = newPool("pdgdiff-class-");
+            }
+            return classPool;
+        }
+        if (methodPool == null) {
+            methodPool = newPool("pdgdiff-method-");
+        }
+        return methodPool;
+    }
+
+    private static ExecutorService newPool(String namePrefix) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(THREADS, r -> {
+            Thread thread = new Thread(r, namePrefix + count.incrementAndGet());
+            // idle pool threads must not keep the jvm alive once the diff is done
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static int threadsFromSystemProperties() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String value = System.getProperty("pdgdiff.threads");
+        if (value != null) {
+            try {
+                threads = Math.max(1, Integer.parseInt(value));
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid pdgdiff.threads, using default: {}", threads);
+            }
+        }
+        return threads;
+    }
+}
@@ -0,0 +1,76 @@
+package org.pdgdiff.util;
+
+import soot.G;
+
+/**
+ * An isolated set of Soot globals (Scene, Options, PhaseOptions, ...), so that the before and after versions of a
+ * class can be loaded side by side instead of tearing down and rebuilding the one global scene in between.
+ *
+ * Soot reaches all of its singletons through G.v(), which is redirected here to the context active on the calling
+ * thread. Threads inherit the context of the thread that started them, and a thread that never activated one gets
+ * its own, so concurrent diffs (e.g. an abandoned batch worker and its replacement) never share Soot state.
+ */
+public final class SootContext {
+
+    private static final InheritableThreadLocal<SootContext> current = new InheritableThreadLocal<SootContext>() {
+        @Override
+        protected SootContext initialValue() {
+            return new SootContext();
+        }
+    };
+
+    private static volatile boolean installed = false;
+
+    private volatile G globals = new G();
+
+    private SootContext() {
+    }
+
+    public static SootContext create() {
+        install();
+        return new SootContext();
+    }
+
+    // makes this context the one Soot uses on the current thread
+    public void activate() {
+        install();
+        current.set(this);
+    }
+
+    // the context Soot uses on the current thread, e.g. to activate it on the threads work is handed on to
+    public static SootContext active() {
+        install();
+        return current.get();
+    }
+
+    // drops whichever context is active on the current thread, the next Soot call starts from a fresh one
+    public static void release() {
+        current.remove();
+    }
+
+    // installs the per context lookup, must happen before the first G.v() call to take effect for it. called on
+    // every way into a context, the check is a volatile read once installed
+    static void install() {
+        if (installed) {
+            return;
+        }
+        synchronized (SootContext.class) {
+            if (installed) {
+                return;
+            }
+            G.setGlobalObjectGetter(new G.GlobalObjectGetter() {
+                @Override
+                public G getG() {
+                    return current.get().globals;
+                }
+
+                // G.reset() only clears the active context
+                @Override
+                public void reset() {
+                    current.get().globals = new G();
+                }
+            });
+            installed = true;
+        }
+    }
+}
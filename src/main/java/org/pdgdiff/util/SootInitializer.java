@@ -1,10 +1,15 @@
 package org.pdgdiff.util;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import soot.G;
 import soot.Scene;
 import soot.options.Options;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 /**
  * SootInitializer class to initialize Soot, the static analysis framework of this specific implementation of the
@@ -12,54 +17,126 @@ import java.util.Collections;
  */
 public class SootInitializer {
 
+    private static final Logger logger = LoggerFactory.getLogger(SootInitializer.class);
+
+    static {
+        SootContext.install();
+    }
+
+    // loads every class in dir, in whole-program mode
     public static void initializeSoot(String dir) {
         resetSoot();
+        setCommonOptions();
 
-        // setting soot options
-        Options.v().set_prepend_classpath(true);
-        Options.v().set_allow_phantom_refs(true);
-        Options.v().set_output_format(Options.output_format_jimple);
-        Options.v().set_verbose(true); // Debug output
+        Options.v().set_soot_classpath(dir);
+        Options.v().set_process_dir(Collections.singletonList(dir));
 
-        // The following phase options are configured to preserve the original code structure, as well as poss.
-        // read https://www.sable.mcgill.ca/soot/tutorial/phase/phase.html
-        // in some cases however this is not possible because of how soot constructs Jimple, this is a limitation of
-        // the implementation of this approach
-        Options.v().set_keep_line_number(true);
+        Options.v().set_whole_program(true);
+        Options.v().set_no_bodies_for_excluded(true);
 
-        Options.v().setPhaseOption("jb", "use-original-names:true");
-        Options.v().setPhaseOption("jb", "use-original-bytecode:true");
-        Options.v().setPhaseOption("jj", "simplify-off:true");
 
-        Options.v().setPhaseOption("jb.dce", "enabled:false");  // Disable dead code elimination
-        Options.v().setPhaseOption("jb.dae", "enabled:false");  // Disable dead assignment elimination
-        Options.v().setPhaseOption("jb.uce", "enabled:false");  // Disable unreachable code elimination
-        Options.v().setPhaseOption("jb.cp", "enabled:false");  // Disable const propagation
-        Options.v().setPhaseOption("jb.ule", "enabled:false");  // Disable unused local elimination
-        Options.v().setPhaseOption("jop", "enabled:false");     // Disable optimizations like const folding
-        Options.v().setPhaseOption("wjop", "enabled:false");    // Disable whole-program optimizations
+        // finally loading necessary classes into the soot scene
+        Scene.v().loadNecessaryClasses();
+    }
 
-        Options.v().setPhaseOption("jb.tr", "enabled:false");   // Disable transformation on control flow
-        Options.v().setPhaseOption("bb", "enabled:false");      // Disable basic block merging or splitting
-        Options.v().setPhaseOption("jap", "enabled:false");     // Disable aggregation
-        Options.v().setPhaseOption("jtp.ls", "enabled:false");  // Disable loop simplification
-        Options.v().setPhaseOption("jop.uce", "enabled:false"); // Disable unreachable code elimination
-        Options.v().setPhaseOption("jop.cpf", "enabled:false");
+    /**
+     * only loads targetClass and its nested classes from dir (to BODIES), rather than every class in dir. anything
+     * they reference is resolved lazily from the classpath, so the cost no longer grows with the size of the project.
+     * falls back to loading all of dir if the class files cannot be found on disk (e.g. dir is a jar).
+     */
+    public static void initializeSoot(String dir, String targetClass) {
+        List<String> classNames = findClassFiles(dir, targetClass);
+        if (classNames.isEmpty()) {
+            logger.warn("Could not find class files for {} in {}, loading the whole directory instead", targetClass, dir);
+            initializeSoot(dir);
+            return;
+        }
 
+        resetSoot();
+        setCommonOptions();
 
         Options.v().set_soot_classpath(dir);
-        Options.v().set_process_dir(Collections.singletonList(dir));
-
-        Options.v().set_whole_program(true);
         Options.v().set_no_bodies_for_excluded(true);
+        // classes listed here are loaded with their bodies and marked as application classes
+        Options.v().classes().addAll(classNames);
 
-
-        // finally loading necessary classes into the soot scene
         Scene.v().loadNecessaryClasses();
     }
 
+    // names of targetClass and its nested classes (Outer$Inner, Outer$1, ...) as found in dir
+    private static List<String> findClassFiles(String dir, String targetClass) {
+        List<String> classNames = new ArrayList<>();
+        int lastDot = targetClass.lastIndexOf('.');
+        String packagePath = lastDot < 0 ? "" : targetClass.substring(0, lastDot).replace('.', File.separatorChar);
+        String simpleName = targetClass.substring(lastDot + 1);
+
+        File[] files = new File(dir, packagePath).listFiles();
+        if (files == null) {
+            return classNames;
+        }
+        for (File file : files) {
+            String fileName = file.getName();
+            if (!file.isFile() || !fileName.endsWith(".class")) {
+                continue;
+            }
+            String className = fileName.substring(0, fileName.length() - ".class".length());
+            if (className.equals(simpleName) || className.startsWith(simpleName + "$")) {
+                classNames.add(targetClass.substring(0, lastDot + 1) + className);
+            }
+        }
+        Collections.sort(classNames);
+        return classNames;
+    }
+
+    // The following phase options are configured to preserve the original code structure, as well as poss.
+    // read https://www.sable.mcgill.ca/soot/tutorial/phase/phase.html
+    // in some cases however this is not possible because of how soot constructs Jimple, this is a limitation of
+    // the implementation of this approach
+    private static final String[][] PHASE_OPTIONS = {
+            {"jb", "use-original-names:true"},
+            {"jb", "use-original-bytecode:true"},
+            {"jj", "simplify-off:true"},
+
+            {"jb.dce", "enabled:false"},  // Disable dead code elimination
+            {"jb.dae", "enabled:false"},  // Disable dead assignment elimination
+            {"jb.uce", "enabled:false"},  // Disable unreachable code elimination
+            {"jb.cp", "enabled:false"},   // Disable const propagation
+            {"jb.ule", "enabled:false"},  // Disable unused local elimination
+            {"jop", "enabled:false"},     // Disable optimizations like const folding
+            {"wjop", "enabled:false"},    // Disable whole-program optimizations
+
+            {"jb.tr", "enabled:false"},   // Disable transformation on control flow
+            {"bb", "enabled:false"},      // Disable basic block merging or splitting
+            {"jap", "enabled:false"},     // Disable aggregation
+            {"jtp.ls", "enabled:false"},  // Disable loop simplification
+            {"jop.uce", "enabled:false"}, // Disable unreachable code elimination
+            {"jop.cpf", "enabled:false"},
+    };
+
+    private static void setCommonOptions() {
+        // setting soot options
+        Options.v().set_prepend_classpath(true);
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_output_format(Options.output_format_jimple);
+        Options.v().set_verbose(false); // soot logs through slf4j too, see log.soot in simplelogger.properties
+        Options.v().set_keep_line_number(true);
+
+        for (String[] phaseOption : PHASE_OPTIONS) {
+            Options.v().setPhaseOption(phaseOption[0], phaseOption[1]);
+        }
+    }
+
+    // the options that shape the jimple (and so the pdgs) soot produces, e.g. for keying cached pdgs
+    public static String describeOptions() {
+        StringBuilder sb = new StringBuilder("keep_line_number:true;allow_phantom_refs:true;");
+        for (String[] phaseOption : PHASE_OPTIONS) {
+            sb.append(phaseOption[0]).append('=').append(phaseOption[1]).append(';');
+        }
+        return sb.toString();
+    }
+
 
-    // reset Soot (clean up)
+    // reset Soot (clean up), only affects the SootContext active on this thread
     public static void resetSoot() {
         G.reset();
     }
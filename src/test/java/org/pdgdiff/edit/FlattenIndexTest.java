@@ -0,0 +1,189 @@
+package org.pdgdiff.edit;
+
+import org.junit.Test;
+import org.pdgdiff.edit.model.Delete;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * FlattenIndex.bestMatch against the pairwise scan it replaces (every unused delete compared with a full levenshtein,
+ * ties to the earliest), over random scripts and thresholds, used greedily as the flatten pass does.
+ */
+public class FlattenIndexTest {
+
+    private static final String[] SNIPPETS = {
+            "int total = 0;",
+            "total += x;",
+            "return total;",
+            "if (total > limit) {",
+            "}",
+            "a = b;",
+            "for (int i = 0; i < n; i++) {",
+            "logger.debug(\"{} items\", n);"
+    };
+
+    private static final double[] THRESHOLDS = {0.0, 0.3, 0.5, 0.6, 0.7, 0.75, 0.9, 1.0};
+
+    @Test
+    public void matchesThePairwiseScanOnRandomScripts() {
+        Random random = new Random(42);
+        for (int script = 0; script < 400; script++) {
+            List<Delete> deletes = new ArrayList<>();
+            int deleteCount = random.nextInt(30);
+            for (int i = 0; i < deleteCount; i++) {
+                deletes.add(new Delete(null, random.nextInt(50), randomSnippet(random)));
+            }
+            List<String> inserts = new ArrayList<>();
+            int insertCount = 1 + random.nextInt(30);
+            for (int i = 0; i < insertCount; i++) {
+                inserts.add(randomSnippet(random));
+            }
+            double threshold = THRESHOLDS[random.nextInt(THRESHOLDS.length)];
+
+            assertSameMatches(deletes, inserts, threshold);
+        }
+    }
+
+    @Test
+    public void breaksTiesTowardsTheEarliestDelete() {
+        // the later deletes are each one substitution away from the first
+        List<Delete> deletes = Arrays.asList(
+                new Delete(null, 1, "abcdefgh"),
+                new Delete(null, 2, "abcdefgx"),
+                new Delete(null, 3, "xbcdefgh"));
+        FlattenIndex index = new FlattenIndex(deletes);
+
+        assertSame(deletes.get(0), index.bestMatch("abcdefgy", new HashSet<>(), 0.7));
+        assertSame(deletes.get(0), index.bestMatch("abcdefgh", new HashSet<>(), 0.7));
+        assertSame(deletes.get(1), index.bestMatch("abcdefgh", new HashSet<>(deletes.subList(0, 1)), 0.7));
+        assertSame(deletes.get(0), index.bestMatch("ybcdefgh", new HashSet<>(), 0.7));
+    }
+
+    @Test
+    public void keepsDeletesExactlyAtTheThreshold() {
+        // 3 edits in 10 characters, similarity 0.7
+        List<Delete> deletes = Collections.singletonList(new Delete(null, 1, "abcdefghij"));
+        FlattenIndex index = new FlattenIndex(deletes);
+
+        assertSame(deletes.get(0), index.bestMatch("abcdefgxyz", new HashSet<>(), 0.7));
+        assertNull(index.bestMatch("abcdefwxyz", new HashSet<>(), 0.7));
+    }
+
+    @Test
+    public void comparesShortSnippetsWithoutTheBigramFilter() {
+        // too short to share a bigram, but within the threshold
+        List<Delete> deletes = Arrays.asList(new Delete(null, 1, "}"), new Delete(null, 2, "ab"));
+        FlattenIndex index = new FlattenIndex(deletes);
+
+        assertSame(deletes.get(1), index.bestMatch("xb", new HashSet<>(), 0.5));
+        assertSame(deletes.get(0), index.bestMatch(" } ", new HashSet<>(), 0.7));
+        assertSame(deletes.get(0), index.bestMatch("", new HashSet<>(), 0.0));
+        assertNull(index.bestMatch("", new HashSet<>(), 0.1));
+    }
+
+    @Test
+    public void matchesIgnoringWhitespaceAndComments() {
+        List<Delete> deletes = Arrays.asList(
+                new Delete(null, 1, "total += y;"),
+                new Delete(null, 2, "total  +=  x; // add"));
+        FlattenIndex index = new FlattenIndex(deletes);
+
+        assertSame(deletes.get(1), index.bestMatch("total += x;", new HashSet<>(), 0.7));
+    }
+
+    // bestMatch for each insert in turn, marking matched deletes used, against the pairwise scan doing the same
+    private static void assertSameMatches(List<Delete> deletes, List<String> inserts, double threshold) {
+        FlattenIndex index = new FlattenIndex(deletes);
+        Set<Delete> usedByIndex = new HashSet<>();
+        Set<Delete> usedByScan = new HashSet<>();
+        for (String insert : inserts) {
+            Delete expected = pairwiseBestMatch(deletes, insert, usedByScan, threshold);
+            Delete actual = index.bestMatch(insert, usedByIndex, threshold);
+
+            assertSame(insert + " against " + deletes + " at " + threshold, expected, actual);
+            if (expected != null) {
+                usedByScan.add(expected);
+                usedByIndex.add(actual);
+            }
+        }
+    }
+
+    private static Delete pairwiseBestMatch(List<Delete> deletes, String code, Set<Delete> used, double threshold) {
+        double bestSimilarity = -1.0;
+        Delete best = null;
+        for (Delete del : deletes) {
+            if (used.contains(del)) {
+                continue;
+            }
+            double similarity = similarity(code, del.getCodeSnippet());
+            if (similarity > bestSimilarity) {
+                bestSimilarity = similarity;
+                best = del;
+            }
+        }
+        return best != null && bestSimilarity >= threshold ? best : null;
+    }
+
+    private static double similarity(String s1, String s2) {
+        String norm1 = RecoveryProcessor.normalizeCode(s1);
+        String norm2 = RecoveryProcessor.normalizeCode(s2);
+        int maxLength = Math.max(norm1.length(), norm2.length());
+        if (maxLength == 0) {
+            return 1.0;
+        }
+        return 1.0 - (double) fullDistance(norm1, norm2) / maxLength;
+    }
+
+    private static int fullDistance(String s, String t) {
+        int[][] dp = new int[s.length() + 1][t.length() + 1];
+        for (int i = 0; i <= s.length(); i++) {
+            dp[i][0] = i;
+        }
+        for (int j = 0; j <= t.length(); j++) {
+            dp[0][j] = j;
+        }
+        for (int i = 1; i <= s.length(); i++) {
+            for (int j = 1; j <= t.length(); j++) {
+                int cost = s.charAt(i - 1) == t.charAt(j - 1) ? 0 : 1;
+                dp[i][j] = Math.min(Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1), dp[i - 1][j - 1] + cost);
+            }
+        }
+        return dp[s.length()][t.length()];
+    }
+
+    // a snippet with a few character edits (so similarities land on either side of the thresholds), some whitespace
+    // or a comment, or a short one for the deletes the bigram filter cannot be used on
+    private static String randomSnippet(Random random) {
+        if (random.nextInt(10) == 0) {
+            return random.nextBoolean() ? "}" : "x" + random.nextInt(3);
+        }
+        StringBuilder sb = new StringBuilder(SNIPPETS[random.nextInt(SNIPPETS.length)]);
+        int edits = random.nextInt(6);
+        for (int e = 0; e < edits && sb.length() > 0; e++) {
+            char c = "abxyz0=;( ".charAt(random.nextInt(10));
+            int at = random.nextInt(sb.length());
+            switch (random.nextInt(3)) {
+                case 0:
+                    sb.insert(at, c);
+                    break;
+                case 1:
+                    sb.deleteCharAt(at);
+                    break;
+                default:
+                    sb.setCharAt(at, c);
+            }
+        }
+        if (random.nextInt(4) == 0) {
+            sb.append(" // ").append(random.nextInt(5));
+        }
+        return sb.toString();
+    }
+}
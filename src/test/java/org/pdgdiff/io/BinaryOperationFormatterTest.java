@@ -0,0 +1,208 @@
+package org.pdgdiff.io;
+
+import org.junit.Test;
+import org.pdgdiff.edit.RecoveryProcessor;
+import org.pdgdiff.edit.model.*;
+import org.pdgdiff.matching.GraphMatcherFactory;
+import org.pdgdiff.matching.StrategySettings;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * round trips of edit scripts through BinaryOperationFormatter and BinaryOperationReader, and how the reader copes
+ * with records it does not know and with truncated input.
+ */
+public class BinaryOperationFormatterTest {
+
+    private static final StrategySettings SETTINGS = new StrategySettings(
+            RecoveryProcessor.RecoveryStrategy.CLEANUP_AND_FLATTEN, GraphMatcherFactory.MatchingStrategy.VF2, true);
+
+    @Test
+    public void roundTripsEveryOperation() throws Exception {
+        List<EditOperation> ops = Arrays.asList(
+                new Insert(null, 12, "int total = 0;"),
+                new Delete(null, 40, "return total;"),
+                new Move(null, 7, 19, "total += x;"),
+                new Update(null, 3, 4, "a = b;", "a = c;", null),
+                new Update(null, 5, 5, "x++;", "x += 2;", new SyntaxDifference("changed", "$i0 = $i0 + 1", "$i0 = $i0 + 2")));
+
+        byte[] binary = write(ops);
+        BinaryOperationReader reader = new BinaryOperationReader(new ByteArrayInputStream(binary));
+        List<EditOperation> readBack = new ArrayList<>();
+        EditOperation op;
+        while ((op = reader.next()) != null) {
+            readBack.add(op);
+        }
+
+        assertEquals(ops, readBack);
+        assertEquals("CLEANUP_AND_FLATTEN", reader.getRecoveryStrategy());
+        assertEquals("VF2", reader.getMatchingStrategy());
+    }
+
+    @Test
+    public void keepsUpdatesWithAndWithoutSyntaxDifference() throws Exception {
+        List<EditOperation> ops = Arrays.asList(
+                new Update(null, 1, 2, "f();", "g();", null),
+                new Update(null, 3, 4, "h();", "k();", new SyntaxDifference("call target changed", "old", "new")));
+
+        List<EditOperation> readBack = roundTrip(ops);
+
+        assertNull(((Update) readBack.get(0)).getSyntaxDifference());
+        SyntaxDifference difference = ((Update) readBack.get(1)).getSyntaxDifference();
+        assertNotNull(difference);
+        // SyntaxDifference.equals does not compare messages
+        assertEquals("call target changed", difference.getMessage());
+        assertEquals("old", difference.getOldJimpleCode());
+        assertEquals("new", difference.getNewJimpleCode());
+    }
+
+    @Test
+    public void keepsNullStrings() throws Exception {
+        List<EditOperation> ops = Arrays.asList(
+                new Insert(null, 1, null),
+                new Update(null, 2, 3, null, "b;", new SyntaxDifference(null, null, "$i1 = 2")),
+                new Move(null, 4, 5, null));
+
+        List<EditOperation> readBack = roundTrip(ops);
+
+        assertEquals(ops, readBack);
+        assertNull(((Insert) readBack.get(0)).getCodeSnippet());
+        assertNull(((Update) readBack.get(1)).getOldCodeSnippet());
+        assertNull(((Update) readBack.get(1)).getSyntaxDifference().getMessage());
+        assertNull(((Update) readBack.get(1)).getSyntaxDifference().getOldJimpleCode());
+    }
+
+    @Test
+    public void keepsNegativeAndLargeLineNumbers() throws Exception {
+        // -1 for units hoisted to no source line, zigzag encoded
+        List<EditOperation> ops = Arrays.asList(
+                new Insert(null, -1, "a;"),
+                new Delete(null, 0, "b;"),
+                new Move(null, -1, Integer.MAX_VALUE, "c;"),
+                new Update(null, Integer.MIN_VALUE, -1, "d;", "e;", null));
+
+        assertEquals(ops, roundTrip(ops));
+    }
+
+    @Test
+    public void resetsTheStringTablePastItsLimit() throws Exception {
+        List<EditOperation> ops = new ArrayList<>();
+        for (int i = 0; i < BinaryOperationFormatter.STRING_TABLE_LIMIT + 10; i++) {
+            ops.add(new Insert(null, i, "line " + i));
+        }
+        // strings from before the reset are written again after it
+        ops.add(new Delete(null, 1, "line 0"));
+        ops.add(new Delete(null, 2, "CLEANUP_AND_FLATTEN"));
+
+        byte[] binary = write(ops);
+
+        assertEquals(1, countRecords(binary, BinaryOperationFormatter.TAG_RESET));
+        assertEquals(ops, BinaryOperationReader.readAll(new ByteArrayInputStream(binary)));
+    }
+
+    @Test
+    public void resetsBeforeAnUpdateThatStraddlesTheLimit() throws Exception {
+        // fill the table to just below its limit (the info record adds the two strategy names), so the strings of the
+        // update fit, only just fit or do not fit
+        for (int room = 0; room <= 6; room++) {
+            List<EditOperation> ops = new ArrayList<>();
+            ops.add(new Insert(null, 1, "keep"));
+            int fill = BinaryOperationFormatter.STRING_TABLE_LIMIT - 3 - room;
+            for (int i = 0; i < fill; i++) {
+                ops.add(new Insert(null, i, "line " + i));
+            }
+            ops.add(new Update(null, 2, 3, "keep", "brand new", null));
+            ops.add(new Update(null, 4, 5, "keep", "line 0", new SyntaxDifference("m", "old jimple", "new jimple")));
+
+            byte[] binary = write(ops);
+
+            assertEquals("room for " + room, ops, BinaryOperationReader.readAll(new ByteArrayInputStream(binary)));
+        }
+    }
+
+    @Test
+    public void skipsRecordsWithUnknownTags() throws Exception {
+        List<EditOperation> ops = Arrays.asList(new Insert(null, 1, "a;"), new Delete(null, 2, "b;"));
+        byte[] binary = write(ops);
+
+        // an unknown record with a 3 byte payload, just before the end record (the last 2 bytes)
+        byte[] unknown = {99, 3, 1, 2, 3};
+        byte[] withUnknown = new byte[binary.length + unknown.length];
+        System.arraycopy(binary, 0, withUnknown, 0, binary.length - 2);
+        System.arraycopy(unknown, 0, withUnknown, binary.length - 2, unknown.length);
+        System.arraycopy(binary, binary.length - 2, withUnknown, binary.length - 2 + unknown.length, 2);
+
+        assertEquals(ops, BinaryOperationReader.readAll(new ByteArrayInputStream(withUnknown)));
+    }
+
+    @Test
+    public void failsOnTruncatedInput() throws Exception {
+        List<EditOperation> ops = Arrays.asList(
+                new Insert(null, 1, "int total = 0;"),
+                new Update(null, 2, 3, "a;", "b;", new SyntaxDifference("m", "x", "y")));
+        byte[] binary = write(ops);
+
+        int header = BinaryOperationFormatter.MAGIC.length + 1;
+        for (int length = header; length < binary.length; length++) {
+            try {
+                BinaryOperationReader.readAll(new ByteArrayInputStream(Arrays.copyOf(binary, length)));
+                fail("read a script truncated to " + length + " of " + binary.length + " bytes");
+            } catch (EOFException expected) {
+                // ends before the end record
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsInputWithoutMagic() throws Exception {
+        BinaryOperationReader.readAll(new ByteArrayInputStream(new byte[]{'J', 'S', 'O', 'N', 1, 0, 0}));
+    }
+
+    @Test
+    public void readsAnEmptyScript() throws Exception {
+        assertEquals(Collections.emptyList(), roundTrip(Collections.emptyList()));
+    }
+
+    private static List<EditOperation> roundTrip(List<EditOperation> ops) throws Exception {
+        return BinaryOperationReader.readAll(new ByteArrayInputStream(write(ops)));
+    }
+
+    private static byte[] write(List<EditOperation> ops) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OperationStreamWriter writer = new OperationStreamWriter(new BinaryOperationFormatter(out), SETTINGS)) {
+            writer.write(ops);
+        }
+        return out.toByteArray();
+    }
+
+    // number of records with the given tag, walking the records after the magic and version
+    private static int countRecords(byte[] binary, int tag) {
+        int count = 0;
+        int position = BinaryOperationFormatter.MAGIC.length + 1;
+        while (position < binary.length) {
+            int recordTag = binary[position++];
+            int length = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = binary[position++] & 0xFF;
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            position += length;
+            if (recordTag == tag) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,121 @@
+package org.pdgdiff.matching.models.ged;
+
+import org.junit.Test;
+import org.pdgdiff.graph.CachedUnit;
+import org.pdgdiff.graph.GraphGenerator;
+import org.pdgdiff.graph.PDG;
+import soot.toolkits.graph.pdg.PDGNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * the sparse path against the dense one on PDGs small enough for the candidate band to cover every node, so the
+ * sparse path sees every pair the dense one does.
+ *
+ * the bodies are flat (every statement control dependent on the entry, data dependent on the one before) and of one
+ * statement kind, i.e. one bucket. the dense path leaves the entry out of the assignment (HungarianAlgorithm skips row
+ * and column 0), the sparse one pairs the two entries at no cost and, as every node is a dependent of the entry,
+ * without edge penalties, so both come to the same distance.
+ */
+public class GEDMatcherTest {
+
+    private static final String ENTRY = "r0 := @this: org.example.Synthetic";
+
+    @Test
+    public void sparseAndDensePathsAgreeWhenTheBandCoversEveryNode() {
+        Random random = new Random(29);
+        for (int pair = 0; pair < 200; pair++) {
+            // at most 33 nodes in the bucket, so the band of 32 either side of any position spans all of it
+            List<String> before = body(random, 1 + random.nextInt(32));
+            List<String> after = edit(random, before);
+            PDG src = flatPDG(before);
+            PDG dst = flatPDG(after);
+
+            GEDResult dense = new GEDMatcher(src, dst, Integer.MAX_VALUE).match();
+            GEDResult sparse = new GEDMatcher(src, dst, 0).match();
+
+            String message = before + " -> " + after;
+            // the sparse costs are floats
+            assertEquals(message, dense.distance, sparse.distance, 1e-5);
+            Map<PDGNode, PDGNode> expected = new HashMap<>(dense.nodeMapping.getNodeMapping());
+            expected.put(src.getStartNode(), dst.getStartNode());
+            assertEquals(message, expected, sparse.nodeMapping.getNodeMapping());
+        }
+    }
+
+    @Test
+    public void identicalBodiesHaveNoDistanceOnEitherPath() {
+        List<String> body = body(new Random(31), 20);
+        PDG src = flatPDG(body);
+        PDG dst = flatPDG(body);
+
+        assertEquals(0.0, new GEDMatcher(src, dst, Integer.MAX_VALUE).match().distance, 0.0);
+        assertEquals(0.0, new GEDMatcher(src, dst, 0).match().distance, 0.0);
+    }
+
+    // count assignments, each to a fresh local from the one before, all with distinct texts
+    private static List<String> body(Random random, int count) {
+        List<String> statements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            statements.add(assign(random, i));
+        }
+        return statements;
+    }
+
+    private static String assign(Random random, int local) {
+        String[] operators = {"+", "*", "-"};
+        return String.format("$i%d = $i%d %s %d", local, local - 1, operators[random.nextInt(3)], random.nextInt(100));
+    }
+
+    // some statements with another constant, and either some dropped or some new ones (on locals of their own)
+    // inserted. not both, as a dropped statement and an inserted one may be as similar as any other such pair, and which
+    // of those ties the assignment picks changes the edge penalties
+    private static List<String> edit(Random random, List<String> before) {
+        boolean inserting = random.nextBoolean();
+        List<String> after = new ArrayList<>();
+        for (String statement : before) {
+            int roll = random.nextInt(10);
+            if (roll == 0 && !inserting) {
+                continue;
+            }
+            after.add(roll == 1 ? statement.replaceAll("\\d+$", Integer.toString(100 + random.nextInt(100))) : statement);
+            if (inserting && random.nextInt(8) == 0 && after.size() < 32) {
+                after.add(assign(random, 500 + after.size()));
+            }
+        }
+        return after;
+    }
+
+    private static PDG flatPDG(List<String> statements) {
+        PDGNode entry = new PDGNode(new CachedUnit(ENTRY, 1, CachedUnit.Kind.OTHER), PDGNode.Type.CFGNODE);
+        FlatPDG pdg = new FlatPDG(entry);
+        pdg.addNode(entry);
+        PDGNode previous = null;
+        for (int i = 0; i < statements.size(); i++) {
+            PDGNode node = new PDGNode(new CachedUnit(statements.get(i), i + 2, CachedUnit.Kind.ASSIGN),
+                    PDGNode.Type.CFGNODE);
+            pdg.addNode(node);
+            pdg.addEdge(entry, node, GraphGenerator.DependencyTypes.CONTROL_DEPENDENCY);
+            entry.addDependent(node);
+            if (previous != null) {
+                pdg.addEdge(previous, node, GraphGenerator.DependencyTypes.DATA_DEPENDENCY);
+                previous.addDependent(node);
+            }
+            previous = node;
+        }
+        return pdg;
+    }
+
+    // startNode is only set by GraphGenerator and the PDGCache, in their package
+    private static final class FlatPDG extends PDG {
+        FlatPDG(PDGNode startNode) {
+            this.startNode = startNode;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.pdgdiff.matching.models.ged;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * SparseAssignment against HungarianAlgorithm on small random instances, dense ones and ones with cells left out, with
+ * an unassigned cost low enough that the optimum leaves some rows unassigned. the reference is the usual square
+ * reduction: every row gets a private dummy column for unassignedCost, every column a dummy row at no cost.
+ */
+public class SparseAssignmentTest {
+
+    // cells that may not be assigned, far above anything an optimal assignment would pay
+    private static final double FORBIDDEN = 1e6;
+
+    @Test
+    public void matchesTheHungarianAlgorithmOnDenseInstances() {
+        Random random = new Random(3);
+        for (int instance = 0; instance < 2000; instance++) {
+            assertOptimal(random, 1.0, random.nextInt(3) == 0 ? 0.5f : 2.0f);
+        }
+    }
+
+    @Test
+    public void matchesTheHungarianAlgorithmWithCellsLeftOut() {
+        Random random = new Random(5);
+        for (int instance = 0; instance < 2000; instance++) {
+            assertOptimal(random, 0.2 + random.nextDouble() * 0.6, random.nextInt(3) == 0 ? 0.5f : 2.0f);
+        }
+    }
+
+    @Test
+    public void leavesRowsUnassignedWhenThatIsCheaper() {
+        // row 0 would rather be unassigned than pay 5, row 1 takes column 1 for 1
+        int[] rowStart = {0, 1, 3};
+        int[] colIndex = {0, 0, 1};
+        float[] cost = {5f, 3f, 1f};
+
+        assertArrayEquals(new int[]{-1, 1}, SparseAssignment.minimizeAssignment(2, 2, rowStart, colIndex, cost, 2f));
+        assertArrayEquals(new int[]{0, 1}, SparseAssignment.minimizeAssignment(2, 2, rowStart, colIndex, cost, 6f));
+    }
+
+    @Test
+    public void handlesRowsWithoutCandidatesAndNoColumns() {
+        int[] rowStart = {0, 0, 1};
+        assertArrayEquals(new int[]{-1, 0}, SparseAssignment.minimizeAssignment(2, 1, rowStart, new int[]{0},
+                new float[]{0.5f}, 2f));
+        assertArrayEquals(new int[]{-1, -1}, SparseAssignment.minimizeAssignment(2, 0, new int[]{0, 0, 0},
+                new int[0], new float[0], 2f));
+    }
+
+    // a random instance of 1..7 rows and columns, each cell listed with the given probability
+    private static void assertOptimal(Random random, double density, float unassignedCost) {
+        int rows = 1 + random.nextInt(7);
+        int cols = 1 + random.nextInt(7);
+        double[][] cells = new double[rows][cols];
+        int[] rowStart = new int[rows + 1];
+        int[] colIndex = new int[rows * cols];
+        float[] cost = new float[rows * cols];
+        int count = 0;
+        for (int i = 0; i < rows; i++) {
+            rowStart[i] = count;
+            Arrays.fill(cells[i], Double.NaN);
+            for (int j = 0; j < cols; j++) {
+                if (random.nextDouble() < density) {
+                    // whole quarters, so float and double costs agree exactly
+                    float c = random.nextInt(13) / 4f;
+                    cells[i][j] = c;
+                    colIndex[count] = j;
+                    cost[count++] = c;
+                }
+            }
+        }
+        rowStart[rows] = count;
+        String instance = rows + "x" + cols + " " + Arrays.deepToString(cells) + " unassigned at " + unassignedCost;
+
+        int[] assignment = SparseAssignment.minimizeAssignment(rows, cols, rowStart, colIndex, cost, unassignedCost);
+
+        assertEquals(instance, rows, assignment.length);
+        boolean[] taken = new boolean[cols];
+        double total = 0.0;
+        for (int i = 0; i < rows; i++) {
+            int j = assignment[i];
+            if (j < 0) {
+                total += unassignedCost;
+                continue;
+            }
+            assertFalse(instance + ": column " + j + " assigned twice", taken[j]);
+            assertFalse(instance + ": cell " + i + "," + j + " is not listed", Double.isNaN(cells[i][j]));
+            taken[j] = true;
+            total += cells[i][j];
+        }
+        assertEquals(instance, referenceCost(cells, unassignedCost), total, 1e-4);
+    }
+
+    // optimal cost from HungarianAlgorithm on the square (rows + cols) reduction
+    private static double referenceCost(double[][] cells, double unassignedCost) {
+        int rows = cells.length;
+        int cols = cells[0].length;
+        int n = rows + cols;
+        // HungarianAlgorithm leaves row and column 0 out, so the reduction starts at 1
+        double[][] matrix = new double[n + 1][n + 1];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < n; j++) {
+                if (j < cols) {
+                    matrix[i + 1][j + 1] = Double.isNaN(cells[i][j]) ? FORBIDDEN : cells[i][j];
+                } else {
+                    // row i's own dummy column
+                    matrix[i + 1][j + 1] = j - cols == i ? unassignedCost : FORBIDDEN;
+                }
+            }
+        }
+        // the remaining cols rows are dummies, taking whatever columns the real rows left over at no cost
+        int[] assignment = HungarianAlgorithm.minimizeAssignment(matrix);
+        double total = 0.0;
+        for (int i = 1; i <= n; i++) {
+            total += matrix[i][assignment[i]];
+        }
+        assertTrue("reference used a forbidden cell", total < FORBIDDEN);
+        return total;
+    }
+}
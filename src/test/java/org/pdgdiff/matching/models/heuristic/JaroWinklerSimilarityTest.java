@@ -0,0 +1,263 @@
+package org.pdgdiff.matching.models.heuristic;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * JaroWinklerSimilarity against the implementation it replaced (allocating its match flags on every call, with no
+ * minSimilarity), including what the bounded variants return below minSimilarity and the scratch buffers' generation
+ * stamps across resizes and wrap around.
+ */
+public class JaroWinklerSimilarityTest {
+
+    private static final String[] TEMPLATES = {
+            "$i%d = $i%d + %d",
+            "if $i%d >= %d goto label%d",
+            "$r%d = virtualinvoke r0.<org.example.Service: java.lang.String lookup(int)>($i%d)",
+            "r%d.<org.example.Model: int count%d> = $i%d",
+            "return $i%d",
+            "goto label%d"
+    };
+
+    private static final double[] MIN_SIMILARITIES = {0.0, 0.3, 0.5, 0.7, 0.8, 0.9, 0.95, 1.0};
+
+    @Test
+    public void matchesTheLegacyAlgorithm() {
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            String s1 = randomString(random);
+            String s2 = random.nextInt(5) == 0 ? s1 : randomString(random);
+
+            double expected = legacySimilarity(s1, s2);
+            assertEquals(s1 + " / " + s2, expected, JaroWinklerSimilarity.JaroWinklerSimilarity(s1, s2), 1e-12);
+            assertEquals(s1 + " / " + s2, legacyJaro(s1, s2), JaroWinklerSimilarity.jaroSimilarity(s1, s2), 1e-12);
+        }
+    }
+
+    @Test
+    public void boundedVariantsAreExactAtOrAboveMinSimilarity() {
+        Random random = new Random(11);
+        for (int i = 0; i < 20000; i++) {
+            String s1 = randomString(random);
+            String s2 = random.nextInt(5) == 0 ? s1 : randomString(random);
+            double minSimilarity = MIN_SIMILARITIES[random.nextInt(MIN_SIMILARITIES.length)];
+
+            assertBounded(s1 + " / " + s2 + " at " + minSimilarity, legacySimilarity(s1, s2), minSimilarity,
+                    JaroWinklerSimilarity.JaroWinklerSimilarity(s1, s2, minSimilarity));
+            assertBounded(s1 + " / " + s2 + " at " + minSimilarity, legacyJaro(s1, s2), minSimilarity,
+                    JaroWinklerSimilarity.jaroSimilarity(s1, s2, minSimilarity));
+        }
+    }
+
+    @Test
+    public void batchScoresEachCandidateAsThePairwiseCallDoes() {
+        Random random = new Random(13);
+        for (int i = 0; i < 500; i++) {
+            String label = randomString(random);
+            String[] row = new String[1 + random.nextInt(40)];
+            for (int k = 0; k < row.length; k++) {
+                row[k] = random.nextInt(10) == 0 ? label : randomString(random);
+            }
+            int count = random.nextInt(row.length + 1);
+            double minSimilarity = MIN_SIMILARITIES[random.nextInt(MIN_SIMILARITIES.length)];
+            double[] out = new double[row.length];
+            Arrays.fill(out, -1.0);
+
+            JaroWinklerSimilarity.JaroWinklerSimilarity(label, row, count, minSimilarity, out);
+
+            for (int k = 0; k < row.length; k++) {
+                if (k < count) {
+                    assertBounded(label + " / " + row[k] + " at " + minSimilarity, legacySimilarity(label, row[k]),
+                            minSimilarity, out[k]);
+                } else {
+                    // candidates past count are left alone
+                    assertEquals(-1.0, out[k], 0.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void growsTheScratchBuffersForLongerStrings() {
+        Random random = new Random(17);
+        JaroWinklerSimilarity.Scratch scratch = JaroWinklerSimilarity.SCRATCH.get();
+        scratch.generation = 1000;
+        for (int length : new int[]{5, 63, 64, 65, 200, 1000, 3, 129}) {
+            String s1 = randomString(random, length);
+            String s2 = mutate(random, s1);
+            int stampsBefore = scratch.stamps.length;
+
+            assertEquals(legacySimilarity(s1, s2), JaroWinklerSimilarity.JaroWinklerSimilarity(s1, s2), 1e-12);
+            assertEquals(legacySimilarity(s2, s1), JaroWinklerSimilarity.JaroWinklerSimilarity(s2, s1), 1e-12);
+            assertTrue(scratch.chars.length >= Math.max(s1.length(), s2.length()));
+            assertTrue(scratch.stamps.length >= Math.max(s1.length(), s2.length()));
+            if (scratch.stamps.length > stampsBefore) {
+                // a fresh array, so the generations start again
+                assertTrue(scratch.generation <= 2);
+            }
+        }
+    }
+
+    @Test
+    public void clearsStaleStampsWhenTheGenerationWrapsAround() {
+        Random random = new Random(19);
+        JaroWinklerSimilarity.Scratch scratch = JaroWinklerSimilarity.SCRATCH.get();
+        String s1 = randomString(random, 40);
+        String s2 = mutate(random, s1);
+        // warm up so the buffers will not be resized, then leave stamps a generation from the last cycle would have
+        JaroWinklerSimilarity.JaroWinklerSimilarity(s1, s2);
+        Arrays.fill(scratch.stamps, 1);
+        scratch.generation = -1;
+
+        assertEquals(legacySimilarity(s1, s2), JaroWinklerSimilarity.JaroWinklerSimilarity(s1, s2), 1e-12);
+        assertEquals(1, scratch.generation);
+    }
+
+    @Test
+    public void keepsScoringAcrossTheWrapAround() {
+        Random random = new Random(23);
+        JaroWinklerSimilarity.Scratch scratch = JaroWinklerSimilarity.SCRATCH.get();
+        JaroWinklerSimilarity.JaroWinklerSimilarity(randomString(random, 300), randomString(random, 300));
+        scratch.generation = Integer.MAX_VALUE - 5;
+        for (int i = 0; i < 20; i++) {
+            String s1 = randomString(random, 1 + random.nextInt(60));
+            String s2 = mutate(random, s1);
+            assertEquals(legacySimilarity(s1, s2), JaroWinklerSimilarity.JaroWinklerSimilarity(s1, s2), 1e-12);
+        }
+        scratch.generation = -10;
+        for (int i = 0; i < 20; i++) {
+            String s1 = randomString(random, 1 + random.nextInt(60));
+            String s2 = mutate(random, s1);
+            assertEquals(legacySimilarity(s1, s2), JaroWinklerSimilarity.JaroWinklerSimilarity(s1, s2), 1e-12);
+        }
+        assertTrue(scratch.generation > 0);
+    }
+
+    @Test
+    public void scoresEmptyStrings() {
+        assertEquals(1.0, JaroWinklerSimilarity.JaroWinklerSimilarity("", ""), 0.0);
+        assertEquals(0.0, JaroWinklerSimilarity.JaroWinklerSimilarity("", "abc"), 0.0);
+        assertEquals(0.0, JaroWinklerSimilarity.JaroWinklerSimilarity("abc", ""), 0.0);
+        assertEquals(1.0, JaroWinklerSimilarity.JaroWinklerSimilarity("", "", 1.0), 0.0);
+    }
+
+    @Test
+    public void countsTheCommonPrefixUpToFourCharacters() {
+        assertEquals(0, JaroWinklerSimilarity.commonPrefixLength("abc", "xbc"));
+        assertEquals(2, JaroWinklerSimilarity.commonPrefixLength("abc", "abx"));
+        assertEquals(3, JaroWinklerSimilarity.commonPrefixLength("abc", "abcdef"));
+        assertEquals(4, JaroWinklerSimilarity.commonPrefixLength("abcdefgh", "abcdefgh"));
+        assertEquals(0, JaroWinklerSimilarity.commonPrefixLength("", "abc"));
+    }
+
+    // at or above minSimilarity the score itself, below it anything below minSimilarity
+    private static void assertBounded(String message, double expected, double minSimilarity, double actual) {
+        if (expected >= minSimilarity) {
+            assertEquals(message, expected, actual, 1e-12);
+        } else {
+            assertTrue(message + ": " + actual + " should be below the minimum", actual < minSimilarity);
+        }
+    }
+
+    // Jimple-like labels, as GEDMatcher scores, or short strings over a small alphabet
+    private static String randomString(Random random) {
+        if (random.nextBoolean()) {
+            Object[] args = new Object[5];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = random.nextInt(12);
+            }
+            return String.format(TEMPLATES[random.nextInt(TEMPLATES.length)], args);
+        }
+        return randomString(random, random.nextInt(12));
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(5)));
+        }
+        return sb.toString();
+    }
+
+    // s with a few characters swapped, replaced or dropped
+    private static String mutate(Random random, String s) {
+        StringBuilder sb = new StringBuilder(s);
+        int edits = 1 + random.nextInt(4);
+        for (int e = 0; e < edits && sb.length() > 1; e++) {
+            int at = random.nextInt(sb.length() - 1);
+            switch (random.nextInt(3)) {
+                case 0:
+                    char c = sb.charAt(at);
+                    sb.setCharAt(at, sb.charAt(at + 1));
+                    sb.setCharAt(at + 1, c);
+                    break;
+                case 1:
+                    sb.setCharAt(at, 'z');
+                    break;
+                default:
+                    sb.deleteCharAt(at);
+            }
+        }
+        return sb.toString();
+    }
+
+    // JaroWinklerSimilarity as it was before the scratch buffers and thresholds
+    private static double legacySimilarity(String s1, String s2) {
+        double jaro = legacyJaro(s1, s2);
+        int prefixLength = JaroWinklerSimilarity.commonPrefixLength(s1, s2);
+        return jaro + (prefixLength * 0.1 * (1 - jaro));
+    }
+
+    private static double legacyJaro(String s1, String s2) {
+        if (s1.equals(s2)) {
+            return 1.0;
+        }
+        if (s1.isEmpty() || s2.isEmpty()) {
+            return 0.0;
+        }
+
+        int matchDistance = Math.max(s1.length(), s2.length()) / 2 - 1;
+        boolean[] s1Matches = new boolean[s1.length()];
+        boolean[] s2Matches = new boolean[s2.length()];
+
+        int matches = 0;
+        int transpositions = 0;
+        for (int i = 0; i < s1.length(); i++) {
+            int start = Math.max(0, i - matchDistance);
+            int end = Math.min(i + matchDistance + 1, s2.length());
+            for (int j = start; j < end; j++) {
+                if (!s2Matches[j] && s1.charAt(i) == s2.charAt(j)) {
+                    s1Matches[i] = true;
+                    s2Matches[j] = true;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if (matches == 0) {
+            return 0.0;
+        }
+
+        int k = 0;
+        for (int i = 0; i < s1.length(); i++) {
+            if (s1Matches[i]) {
+                while (!s2Matches[k]) {
+                    k++;
+                }
+                if (s1.charAt(i) != s2.charAt(k)) {
+                    transpositions++;
+                }
+                k++;
+            }
+        }
+        transpositions /= 2;
+
+        return ((matches / (double) s1.length()) +
+                (matches / (double) s2.length()) +
+                ((matches - transpositions) / (double) matches)) / 3.0;
+    }
+}
@@ -0,0 +1,138 @@
+package org.pdgdiff.matching.models.heuristic;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * the banded, bounded distance against the full dp matrix, and maxDistance against trying every distance.
+ */
+public class LevenshteinDistanceTest {
+
+    @Test
+    public void boundedDistanceMatchesTheFullMatrix() {
+        Random random = new Random(17);
+        for (int i = 0; i < 20000; i++) {
+            String s = randomString(random, random.nextInt(14));
+            String t = random.nextBoolean() ? mutate(random, s, random.nextInt(5)) : randomString(random, random.nextInt(14));
+            int expected = fullDistance(s, t);
+
+            assertEquals(s + " / " + t, expected, LevenshteinDistance.distance(s, t));
+            for (int max = 0; max <= expected + 2; max++) {
+                assertEquals(s + " / " + t + " within " + max, Math.min(expected, max + 1),
+                        LevenshteinDistance.distance(s, t, max));
+            }
+        }
+    }
+
+    @Test
+    public void followsPathsAlongTheBorderOfTheBand() {
+        // the only alignments within the bound run along the outermost diagonal of the band
+        assertEquals(1, LevenshteinDistance.distance("abc", "xabc", 1));
+        assertEquals(1, LevenshteinDistance.distance("abc", "abcx", 1));
+        assertEquals(2, LevenshteinDistance.distance("aaaa", "bbaaaa", 2));
+        assertEquals(2, LevenshteinDistance.distance("aaaa", "aaaabb", 2));
+        assertEquals(4, LevenshteinDistance.distance("xyab", "abxy", 3));
+        assertEquals(4, LevenshteinDistance.distance("xyab", "abxy", 4));
+        assertEquals(2, LevenshteinDistance.distance("ab", "ba", 2));
+        // leaving the band and coming back is never cheaper than staying in it
+        assertEquals(3, LevenshteinDistance.distance("abcdef", "xbcdyz", 2));
+        assertEquals(3, LevenshteinDistance.distance("abcdef", "xbcdyz", 3));
+    }
+
+    @Test
+    public void handlesEmptyStrings() {
+        assertEquals(0, LevenshteinDistance.distance("", "", 0));
+        assertEquals(3, LevenshteinDistance.distance("", "abc", 3));
+        assertEquals(3, LevenshteinDistance.distance("abc", "", 3));
+        assertEquals(2, LevenshteinDistance.distance("", "abc", 1));
+        assertEquals(1, LevenshteinDistance.distance("abc", "", 0));
+    }
+
+    @Test
+    public void maxDistanceIsTheLargestDistanceReachingTheSimilarity() {
+        double[] similarities = {0.0, 0.1, 0.25, 1.0 / 3, 0.5, 2.0 / 3, 0.7, 0.75, 0.9, 0.99, 1.0};
+        for (int maxLength = 0; maxLength <= 60; maxLength++) {
+            for (double minSimilarity : similarities) {
+                for (boolean strict : new boolean[]{false, true}) {
+                    assertEquals(maxLength + " " + minSimilarity + " " + strict,
+                            bruteForceMaxDistance(maxLength, minSimilarity, strict),
+                            LevenshteinDistance.maxDistance(maxLength, minSimilarity, strict));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void maxDistanceAtSimilaritiesThatAreExactlyReachable() {
+        // 1 - 3 / 10 reaches 0.7 only non-strictly, a similarity of exactly 1 only non-strictly too
+        assertEquals(3, LevenshteinDistance.maxDistance(10, 0.7, false));
+        assertEquals(2, LevenshteinDistance.maxDistance(10, 0.7, true));
+        assertEquals(0, LevenshteinDistance.maxDistance(4, 1.0, false));
+        assertEquals(-1, LevenshteinDistance.maxDistance(4, 1.0, true));
+        assertEquals(0, LevenshteinDistance.maxDistance(0, 1.0, false));
+        assertEquals(-1, LevenshteinDistance.maxDistance(0, 1.0, true));
+        assertEquals(4, LevenshteinDistance.maxDistance(4, 0.0, false));
+        assertEquals(3, LevenshteinDistance.maxDistance(4, 0.0, true));
+    }
+
+    // the textbook (m + 1) x (n + 1) matrix
+    static int fullDistance(String s, String t) {
+        int[][] dp = new int[s.length() + 1][t.length() + 1];
+        for (int i = 0; i <= s.length(); i++) {
+            dp[i][0] = i;
+        }
+        for (int j = 0; j <= t.length(); j++) {
+            dp[0][j] = j;
+        }
+        for (int i = 1; i <= s.length(); i++) {
+            for (int j = 1; j <= t.length(); j++) {
+                int cost = s.charAt(i - 1) == t.charAt(j - 1) ? 0 : 1;
+                dp[i][j] = Math.min(Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1), dp[i - 1][j - 1] + cost);
+            }
+        }
+        return dp[s.length()][t.length()];
+    }
+
+    private static int bruteForceMaxDistance(int maxLength, double minSimilarity, boolean strict) {
+        if (maxLength == 0) {
+            // two empty strings, similarity 1
+            return (strict ? 1.0 > minSimilarity : 1.0 >= minSimilarity) ? 0 : -1;
+        }
+        int best = -1;
+        for (int d = 0; d <= maxLength; d++) {
+            double similarity = 1.0 - (double) d / maxLength;
+            if (strict ? similarity > minSimilarity : similarity >= minSimilarity) {
+                best = d;
+            }
+        }
+        return best;
+    }
+
+    // a small alphabet, so random strings share characters and have distances of every size
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(4)));
+        }
+        return sb.toString();
+    }
+
+    private static String mutate(Random random, String s, int edits) {
+        StringBuilder sb = new StringBuilder(s);
+        for (int e = 0; e < edits; e++) {
+            int op = random.nextInt(3);
+            char c = (char) ('a' + random.nextInt(4));
+            if (op == 0 || sb.length() == 0) {
+                sb.insert(random.nextInt(sb.length() + 1), c);
+            } else if (op == 1) {
+                sb.deleteCharAt(random.nextInt(sb.length()));
+            } else {
+                sb.setCharAt(random.nextInt(sb.length()), c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,310 @@
+package org.pdgdiff.matching.models.ullmann;
+
+import org.junit.Test;
+import org.pdgdiff.graph.CachedUnit;
+import org.pdgdiff.graph.CompactPDG;
+import org.pdgdiff.graph.GraphGenerator;
+import org.pdgdiff.graph.PDG;
+import org.pdgdiff.matching.NodeMapping;
+import soot.toolkits.graph.pdg.PDGNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * UllmannMatcher (bitset rows, undo trail, worklist refinement) against the search it replaced, which copied the whole
+ * candidate matrix at every depth and checked each candidate against the earlier choices. the refinement only prunes
+ * candidates that cannot lead to a mapping, so the first mapping found, or the lack of one, must be the same.
+ */
+public class UllmannMatcherTest {
+
+    private static final PDGNode.Attribute[] ATTRIBUTES = {
+            PDGNode.Attribute.NORMAL, PDGNode.Attribute.NORMAL, PDGNode.Attribute.NORMAL, PDGNode.Attribute.CONDHEADER
+    };
+
+    @Test
+    public void findsTheSameMappingForIsomorphicGraphs() {
+        Random random = new Random(37);
+        for (int pair = 0; pair < 500; pair++) {
+            Graph src = randomGraph(random, 1 + random.nextInt(12));
+            Graph dst = relabelled(random, src, 0);
+
+            NodeMapping mapping = assertSameAsLegacy(src.pdg, dst.pdg);
+            assertNotNull(mapping);
+            assertPreservesAdjacency(src.pdg, dst.pdg, mapping);
+        }
+    }
+
+    @Test
+    public void findsTheSameMappingIntoLargerGraphs() {
+        Random random = new Random(41);
+        for (int pair = 0; pair < 500; pair++) {
+            Graph src = randomGraph(random, 1 + random.nextInt(12));
+            Graph dst = relabelled(random, src, 1 + random.nextInt(4));
+
+            NodeMapping mapping = assertSameAsLegacy(src.pdg, dst.pdg);
+            assertNotNull(mapping);
+            assertPreservesAdjacency(src.pdg, dst.pdg, mapping);
+        }
+    }
+
+    @Test
+    public void agreesOnUnrelatedGraphs() {
+        // mostly no mapping, sometimes one by chance
+        Random random = new Random(43);
+        for (int pair = 0; pair < 2000; pair++) {
+            int size = 1 + random.nextInt(8);
+            Graph src = randomGraph(random, size);
+            Graph dst = randomGraph(random, size + random.nextInt(3));
+
+            NodeMapping mapping = assertSameAsLegacy(src.pdg, dst.pdg);
+            if (mapping != null) {
+                assertPreservesAdjacency(src.pdg, dst.pdg, mapping);
+            }
+        }
+    }
+
+    @Test
+    public void findsTheSameMappingPastOneWordOfCandidates() {
+        // more than 64 dst nodes, so the rows span several words
+        Random random = new Random(47);
+        for (int pair = 0; pair < 5; pair++) {
+            Graph src = randomGraph(random, 60 + random.nextInt(20));
+            Graph dst = relabelled(random, src, 1 + random.nextInt(6));
+
+            assertNotNull(assertSameAsLegacy(src.pdg, dst.pdg));
+        }
+    }
+
+    @Test
+    public void rejectsGraphsWithTheSameNodesButOtherEdges() {
+        // a path a - b - c against a triangle
+        Graph path = new Graph(3);
+        path.edge(0, 1);
+        path.edge(1, 2);
+        Graph triangle = new Graph(3);
+        triangle.edge(0, 1);
+        triangle.edge(1, 2);
+        triangle.edge(0, 2);
+
+        assertNull(assertSameAsLegacy(path.pdg, triangle.pdg));
+        assertNull(assertSameAsLegacy(triangle.pdg, path.pdg));
+    }
+
+    @Test
+    public void rejectsNodesWithOtherAttributes() {
+        Graph src = new Graph(2);
+        src.edge(0, 1);
+        Graph dst = new Graph(2);
+        dst.edge(0, 1);
+        dst.nodes.get(1).setAttrib(PDGNode.Attribute.LOOPHEADER);
+
+        assertNull(assertSameAsLegacy(src.pdg, dst.pdg));
+    }
+
+    @Test
+    public void rejectsALargerSrcGraph() {
+        Graph src = new Graph(3);
+        src.edge(0, 1);
+        src.edge(0, 2);
+        Graph dst = new Graph(2);
+        dst.edge(0, 1);
+
+        assertNull(new UllmannMatcher(src.pdg, dst.pdg).match());
+    }
+
+    // the mapping UllmannMatcher finds, after checking it is the one the legacy search finds
+    private static NodeMapping assertSameAsLegacy(PDG src, PDG dst) {
+        Map<PDGNode, PDGNode> expected = LegacyUllmann.match(src, dst);
+        NodeMapping actual = new UllmannMatcher(src, dst).match();
+        if (expected == null) {
+            assertNull(actual);
+        } else {
+            assertNotNull(actual);
+            assertEquals(expected, actual.getNodeMapping());
+        }
+        return actual;
+    }
+
+    private static void assertPreservesAdjacency(PDG src, PDG dst, NodeMapping mapping) {
+        CompactPDG srcCompact = src.getCompactPDG();
+        CompactPDG dstCompact = dst.getCompactPDG();
+        Map<PDGNode, PDGNode> map = mapping.getNodeMapping();
+        assertEquals(srcCompact.getReachableCount(), map.size());
+        for (Map.Entry<PDGNode, PDGNode> a : map.entrySet()) {
+            for (Map.Entry<PDGNode, PDGNode> b : map.entrySet()) {
+                if (a.getKey() != b.getKey()) {
+                    assertEquals(srcCompact.areAdjacent(srcCompact.indexOf(a.getKey()), srcCompact.indexOf(b.getKey())),
+                            dstCompact.areAdjacent(dstCompact.indexOf(a.getValue()), dstCompact.indexOf(b.getValue())));
+                }
+            }
+        }
+    }
+
+    // a spanning tree of dependents from node 0, so every node is reachable, and a few more edges either way
+    private static Graph randomGraph(Random random, int size) {
+        Graph graph = new Graph(size);
+        for (int i = 1; i < size; i++) {
+            graph.nodes.get(i).setAttrib(ATTRIBUTES[random.nextInt(ATTRIBUTES.length)]);
+            graph.edge(random.nextInt(i), i);
+        }
+        int extra = random.nextInt(size + 1);
+        for (int e = 0; e < extra; e++) {
+            int from = random.nextInt(size);
+            int to = random.nextInt(size);
+            if (from != to) {
+                graph.edge(from, to);
+            }
+        }
+        return graph;
+    }
+
+    // the same graph on fresh nodes with its edges added in another order (so bfs numbers its nodes differently),
+    // plus extra nodes hanging off it
+    private static Graph relabelled(Random random, Graph graph, int extraNodes) {
+        int size = graph.nodes.size();
+        Graph copy = new Graph(size + extraNodes);
+        for (int i = 0; i < size; i++) {
+            copy.nodes.get(i).setAttrib(graph.nodes.get(i).getAttrib());
+        }
+        List<int[]> edges = new ArrayList<>(graph.edges);
+        Collections.shuffle(edges, random);
+        for (int[] edge : edges) {
+            copy.edge(edge[0], edge[1]);
+        }
+        for (int i = size; i < size + extraNodes; i++) {
+            copy.edge(random.nextInt(i), i);
+        }
+        return copy;
+    }
+
+    // a PDG built up edge by edge, as GraphGenerator adds them
+    private static final class Graph {
+        final List<PDGNode> nodes = new ArrayList<>();
+        final List<int[]> edges = new ArrayList<>();
+        final PDG pdg;
+
+        Graph(int size) {
+            for (int i = 0; i < size; i++) {
+                nodes.add(new PDGNode(new CachedUnit("$i" + i + " = " + i, i + 1, CachedUnit.Kind.ASSIGN),
+                        PDGNode.Type.CFGNODE));
+            }
+            pdg = new TestPDG(nodes.get(0));
+            for (PDGNode node : nodes) {
+                pdg.addNode(node);
+            }
+        }
+
+        void edge(int from, int to) {
+            if (pdg.containsAnyEdge(nodes.get(from), nodes.get(to))) {
+                return;
+            }
+            edges.add(new int[]{from, to});
+            pdg.addEdge(nodes.get(from), nodes.get(to), GraphGenerator.DependencyTypes.DATA_DEPENDENCY);
+            nodes.get(from).addDependent(nodes.get(to));
+        }
+    }
+
+    // startNode is only set by GraphGenerator and the PDGCache, in their package
+    private static final class TestPDG extends PDG {
+        TestPDG(PDGNode startNode) {
+            this.startNode = startNode;
+        }
+    }
+
+    // UllmannMatcher's search as it was before the bitset rows
+    private static final class LegacyUllmann {
+        private final CompactPDG srcPdg;
+        private final CompactPDG dstPdg;
+        private final int n;
+        private final int m;
+        private final int[][] compatMatrix;
+
+        private LegacyUllmann(PDG src, PDG dst) {
+            this.srcPdg = src.getCompactPDG();
+            this.dstPdg = dst.getCompactPDG();
+            this.n = srcPdg.getReachableCount();
+            this.m = dstPdg.getReachableCount();
+            this.compatMatrix = new int[n][m];
+        }
+
+        static Map<PDGNode, PDGNode> match(PDG src, PDG dst) {
+            LegacyUllmann legacy = new LegacyUllmann(src, dst);
+            if (legacy.n > legacy.m) {
+                return null;
+            }
+            for (int i = 0; i < legacy.n; i++) {
+                for (int j = 0; j < legacy.m; j++) {
+                    PDGNode a = legacy.srcPdg.getNode(i);
+                    PDGNode b = legacy.dstPdg.getNode(j);
+                    legacy.compatMatrix[i][j] = a.getType().equals(b.getType()) && a.getAttrib().equals(b.getAttrib())
+                            ? 1 : 0;
+                }
+            }
+            return legacy.search(0) ? legacy.mapping() : null;
+        }
+
+        private boolean search(int depth) {
+            if (depth == n) {
+                return true;
+            }
+            for (int j = 0; j < m; j++) {
+                if (compatMatrix[depth][j] == 1 && isFeasible(depth, j)) {
+                    int[][] backup = new int[n][];
+                    for (int i = 0; i < n; i++) {
+                        backup[i] = compatMatrix[i].clone();
+                    }
+                    for (int k = depth + 1; k < n; k++) {
+                        compatMatrix[k][j] = 0;
+                    }
+                    for (int l = 0; l < m; l++) {
+                        if (l != j) {
+                            compatMatrix[depth][l] = 0;
+                        }
+                    }
+                    compatMatrix[depth][j] = -1;
+                    if (search(depth + 1)) {
+                        return true;
+                    }
+                    for (int i = 0; i < n; i++) {
+                        compatMatrix[i] = backup[i];
+                    }
+                }
+            }
+            return false;
+        }
+
+        private boolean isFeasible(int i, int j) {
+            for (int k = 0; k < i; k++) {
+                int mapped = selected(k);
+                if (mapped != -1 && srcPdg.areAdjacent(i, k) != dstPdg.areAdjacent(j, mapped)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int selected(int k) {
+            for (int l = 0; l < m; l++) {
+                if (compatMatrix[k][l] == -1) {
+                    return l;
+                }
+            }
+            return -1;
+        }
+
+        private Map<PDGNode, PDGNode> mapping() {
+            Map<PDGNode, PDGNode> mapping = new IdentityHashMap<>();
+            for (int i = 0; i < n; i++) {
+                mapping.put(srcPdg.getNode(i), dstPdg.getNode(selected(i)));
+            }
+            return mapping;
+        }
+    }
+}